@@ -299,6 +299,18 @@ public final class AnimChannel {
     BitSet getAffectedBones(){
         return affectedBones;
     }
+
+    Animation getAnimation() {
+        return animation;
+    }
+
+    Animation getBlendFrom() {
+        return blendFrom;
+    }
+
+    boolean isBlending() {
+        return blendFrom != null && blendAmount != 1.0f;
+    }
     
     public void reset(boolean rewind){
         if(rewind){
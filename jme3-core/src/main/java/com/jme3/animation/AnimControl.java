@@ -41,6 +41,7 @@ import com.jme3.scene.control.Control;
 import com.jme3.util.TempVars;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map.Entry;
@@ -86,6 +87,48 @@ public final class AnimControl extends AbstractControl implements Cloneable {
      * Animation event listeners
      */
     private transient ArrayList<AnimEventListener> listeners = new ArrayList<AnimEventListener>();
+    /**
+     * Number of frames between two evaluations of the animations
+     */
+    private transient int updateInterval = 1;
+    /**
+     * Frames left until the next evaluation and time accumulated since the
+     * last one
+     */
+    private transient int framesToUpdate;
+    private transient float pendingTpf;
+    /**
+     * Bones whose tracks are evaluated, null for all bones
+     */
+    private transient BitSet evaluatedBones;
+    /**
+     * Cache used to share poses with other controls, may be null
+     */
+    private transient AnimPoseCache poseCache;
+    /**
+     * Key of the pose currently held by the skeleton, null if it cannot
+     * be shared
+     */
+    transient AnimPoseCache.Key poseKey;
+    /**
+     * Set while the channels are updated for a shared pose, bone tracks
+     * are not sampled then.
+     */
+    private transient boolean poseShared;
+    /**
+     * Stage evaluating this control, null to evaluate it in controlUpdate
+     */
+    private transient AnimEvaluationStage evaluationStage;
+    /**
+     * Index of this control in the queue of the stage, -1 if not queued
+     */
+    transient int stageIndex = -1;
+    /**
+     * Evaluation counters
+     */
+    private transient long evaluationCount;
+    private transient long sharedEvaluationCount;
+    private transient long skippedEvaluationCount;
 
     /**
      * Creates a new animation control for the given skeleton.
@@ -114,6 +157,12 @@ public final class AnimControl extends AbstractControl implements Cloneable {
             clone.spatial = spatial;
             clone.channels = new ArrayList<AnimChannel>();
             clone.listeners = new ArrayList<AnimEventListener>();
+            clone.evaluatedBones = evaluatedBones != null ? (BitSet) evaluatedBones.clone() : null;
+            clone.poseKey = null;
+            clone.stageIndex = -1;
+            clone.framesToUpdate = clone.getUpdateOffset();
+            clone.pendingTpf = 0;
+            clone.resetEvaluationCounts();
 
             if (skeleton != null) {
                 clone.skeleton = new Skeleton(skeleton);
@@ -318,23 +367,276 @@ public final class AnimControl extends AbstractControl implements Cloneable {
         return a.getLength();
     }
 
+    /**
+     * Sets the number of frames between two evaluations of the animations.
+     * <p>
+     * Skipped frames accumulate their time, so the animations keep playing 
+     * at the same speed, only the pose is updated less often. Controls
+     * with the same interval are spread over different frames.
+     * 
+     * @param updateInterval the interval in frames, 1 (the default) 
+     * evaluates the animations every frame.
+     * 
+     * @see AnimLodControl
+     */
+    public void setUpdateInterval(int updateInterval) {
+        if (updateInterval < 1) {
+            throw new IllegalArgumentException("updateInterval must be at least 1");
+        }
+        if (updateInterval != this.updateInterval) {
+            this.updateInterval = updateInterval;
+            framesToUpdate = getUpdateOffset();
+        }
+    }
+
+    /**
+     * @return The number of frames until the first evaluation after the 
+     * interval was set, between 1 and the interval. It differs between 
+     * controls so that they do not all evaluate on the same frame.
+     */
+    int getUpdateOffset() {
+        return 1 + (hashCode() & 0x7fffffff) % updateInterval;
+    }
+
+    /**
+     * @return The number of frames between two evaluations of the animations.
+     * 
+     * @see #setUpdateInterval(int) 
+     */
+    public int getUpdateInterval() {
+        return updateInterval;
+    }
+
+    /**
+     * Restricts the evaluation of bone tracks to the given bones, 
+     * by index in the skeleton. Bones not in the set stay in bind pose
+     * relative to their parent. The set is not copied and should not be 
+     * modified once given to the control.
+     * 
+     * @param evaluatedBones the bones to evaluate, or null to evaluate all
+     * of them (the default).
+     */
+    public void setEvaluatedBones(BitSet evaluatedBones) {
+        this.evaluatedBones = evaluatedBones;
+    }
+
+    /**
+     * @return The bones whose tracks are evaluated, or null for all bones.
+     * 
+     * @see #setEvaluatedBones(java.util.BitSet) 
+     */
+    public BitSet getEvaluatedBones() {
+        return evaluatedBones;
+    }
+
+    /**
+     * Sets a cache used to share poses between controls. When this control
+     * plays a single animation, without blending, at the same time as another
+     * control using the same cache and the same animation data, the pose of
+     * the other control is copied instead of being evaluated again.
+     * <p>
+     * Poses are only shared between skeletons of the same model, as obtained
+     * by cloning it, and assume the bones are not modified after the 
+     * animation update.
+     * 
+     * @param poseCache the cache, or null to disable sharing (the default).
+     */
+    public void setPoseCache(AnimPoseCache poseCache) {
+        this.poseCache = poseCache;
+        this.poseKey = null;
+    }
+
+    /**
+     * @return The cache used to share poses, or null.
+     * 
+     * @see #setPoseCache(com.jme3.animation.AnimPoseCache) 
+     */
+    public AnimPoseCache getPoseCache() {
+        return poseCache;
+    }
+
+    /**
+     * @return The number of times the animations were evaluated.
+     */
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * @return The number of times the pose was copied from another control
+     * instead of being evaluated.
+     * 
+     * @see #setPoseCache(com.jme3.animation.AnimPoseCache) 
+     */
+    public long getSharedEvaluationCount() {
+        return sharedEvaluationCount;
+    }
+
+    /**
+     * @return The number of frames where the evaluation was skipped.
+     * 
+     * @see #setUpdateInterval(int) 
+     */
+    public long getSkippedEvaluationCount() {
+        return skippedEvaluationCount;
+    }
+
+    /**
+     * Resets the evaluation counters to zero.
+     */
+    public void resetEvaluationCounts() {
+        evaluationCount = 0;
+        sharedEvaluationCount = 0;
+        skippedEvaluationCount = 0;
+    }
+
+    /**
+     * Sets the stage evaluating this control. Instead of evaluating its 
+     * animations during its update, the control is queued in the stage, 
+     * which evaluates the queued controls concurrently. Controls that touch
+     * more than their skeleton, see {@link AnimEvaluationStage}, are still
+     * evaluated during their update.
+     * 
+     * @param evaluationStage the stage, or null to evaluate the animations
+     * during the update of the control (the default).
+     * 
+     * @see AnimEvaluationStage
+     */
+    public void setEvaluationStage(AnimEvaluationStage evaluationStage) {
+        this.evaluationStage = evaluationStage;
+    }
+
+    /**
+     * @return The stage evaluating this control, or null.
+     * 
+     * @see #setEvaluationStage(com.jme3.animation.AnimEvaluationStage) 
+     */
+    public AnimEvaluationStage getEvaluationStage() {
+        return evaluationStage;
+    }
+
+    /**
+     * @return True if the animations currently played only affect the 
+     * skeleton of this control and no listener is notified, so that it can
+     * be evaluated on another thread.
+     */
+    boolean isConcurrentSafe() {
+        if (skeleton == null || poseCache != null || !listeners.isEmpty()
+                || skeleton.hasAttachmentNodes()) {
+            return false;
+        }
+        for (int i = 0; i < channels.size(); i++) {
+            AnimChannel channel = channels.get(i);
+            if (!hasOnlyBoneTracks(channel.getAnimation())
+                    || !hasOnlyBoneTracks(channel.getBlendFrom())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasOnlyBoneTracks(Animation anim) {
+        if (anim != null) {
+            for (Track track : anim.getTracks()) {
+                if (!(track instanceof BoneTrack)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the track of the bone with the given index has to be
+     * sampled.
+     */
+    boolean isBoneEvaluated(int boneIndex) {
+        return !poseShared && (evaluatedBones == null || evaluatedBones.get(boneIndex));
+    }
+
+    /**
+     * @return The channel played by this control if its pose can be shared, 
+     * null otherwise.
+     */
+    AnimChannel getShareableChannel() {
+        if (skeleton == null || channels.size() != 1) {
+            return null;
+        }
+        AnimChannel channel = channels.get(0);
+        if (channel.getAnimation() == null
+                || channel.isBlending()
+                || channel.getAffectedBones() != null
+                || skeleton.hasUserControlledBones()) {
+            return null;
+        }
+        return channel;
+    }
+
     /**
      * Internal use only.
      */
     @Override
     protected void controlUpdate(float tpf) {
-        if (skeleton != null) {
-            skeleton.reset(); // reset skeleton to bind pose
+        pendingTpf += tpf;
+        if (--framesToUpdate > 0) {
+            skippedEvaluationCount++;
+            return;
+        }
+        framesToUpdate = updateInterval;
+        tpf = pendingTpf;
+        pendingTpf = 0;
+
+        if (evaluationStage != null) {
+            evaluationStage.enqueue(this, tpf);
+        } else {
+            evaluate(tpf);
+        }
+    }
+
+    /**
+     * Evaluates the animations of the channels, advancing them by the 
+     * given time.
+     */
+    void evaluate(float tpf) {
+        AnimPoseCache.Key key = null;
+        AnimControl source = null;
+        if (poseCache != null) {
+            key = poseCache.createKey(this, tpf);
+            if (key != null) {
+                source = poseCache.getSource(key, this);
+            }
         }
 
         TempVars vars = TempVars.get();
-        for (int i = 0; i < channels.size(); i++) {
-            channels.get(i).update(tpf, vars);
+        if (source != null) {
+            // Other tracks still run, only bone tracks are skipped
+            poseShared = true;
+            for (int i = 0; i < channels.size(); i++) {
+                channels.get(i).update(tpf, vars);
+            }
+            poseShared = false;
+            skeleton.copyPose(source.skeleton);
+            sharedEvaluationCount++;
+        } else {
+            if (skeleton != null) {
+                skeleton.reset(); // reset skeleton to bind pose
+            }
+
+            for (int i = 0; i < channels.size(); i++) {
+                channels.get(i).update(tpf, vars);
+            }
+
+            if (skeleton != null) {
+                skeleton.updateWorldVectors();
+            }
+            evaluationCount++;
         }
         vars.release();
 
-        if (skeleton != null) {
-            skeleton.updateWorldVectors();
+        if (poseCache != null) {
+            poseCache.register(key, this);
+        } else {
+            poseKey = null;
         }
     }
 
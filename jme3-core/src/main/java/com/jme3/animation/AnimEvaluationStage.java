@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.scene.Spatial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <code>AnimEvaluationStage</code> evaluates the animations of many 
+ * {@link AnimControl}s concurrently.
+ * <p>
+ * Controls using the stage (see 
+ * {@link AnimControl#setEvaluationStage(com.jme3.animation.AnimEvaluationStage) })
+ * queue themselves during the scene update. {@link #evaluate() } then
+ * evaluates their channels and the skinning matrices of their skeletons 
+ * across the threads of the stage, and returns once all results are 
+ * available for rendering. 
+ * <p>
+ * Only controls that write to nothing but their own skeleton are queued.
+ * Controls playing animations with tracks other than bone tracks, controls
+ * with bone attachment nodes, controls with listeners and controls sharing
+ * poses through an {@link AnimPoseCache} touch the scene graph or shared
+ * state, they are evaluated right away during their update, as without a
+ * stage. The rendered poses are therefore the same as with a serial update,
+ * but until {@link #evaluate() } is called the skeletons of the queued 
+ * controls still hold the pose of the previous evaluation.
+ * 
+ * @see com.jme3.app.state.ParallelAnimationState
+ */
+public class AnimEvaluationStage {
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int threadCount;
+    private boolean enabled = true;
+
+    private final ArrayList<AnimControl> queue = new ArrayList<AnimControl>();
+    private float[] queuedTpf = new float[16];
+
+    private AnimControl[] parallel = new AnimControl[16];
+    private float[] parallelTpf = new float[16];
+    private SkeletonControl[] parallelSkinning = new SkeletonControl[16];
+    private final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    private final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+    private int serialCount;
+    private int lastParallelCount;
+    private int lastSerialCount;
+
+    /**
+     * Creates a stage with one thread per available processor.
+     */
+    public AnimEvaluationStage() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a stage with its own pool of daemon threads.
+     * 
+     * @param threadCount the number of threads
+     */
+    public AnimEvaluationStage(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private int nextThreadId = 0;
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jME3-anim-" + (nextThreadId++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.ownsExecutor = true;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Creates a stage running on the given executor, which is not shut down
+     * by {@link #shutdown() }.
+     * 
+     * @param executor the executor
+     * @param threadCount the number of threads of the executor, used to 
+     * split the work
+     */
+    public AnimEvaluationStage(ExecutorService executor, int threadCount) {
+        this.executor = executor;
+        this.ownsExecutor = false;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Enables or disables the stage. While disabled, controls are evaluated
+     * right away when they are queued, as if they did not use the stage.
+     * 
+     * @param enabled true to defer evaluation to {@link #evaluate() }
+     */
+    public void setEnabled(boolean enabled) {
+        if (!enabled) {
+            evaluate();
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return True if controls are queued until {@link #evaluate() }.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The number of controls waiting for evaluation.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return The number of controls evaluated concurrently during the last
+     * call to {@link #evaluate() }.
+     */
+    public int getLastParallelCount() {
+        return lastParallelCount;
+    }
+
+    /**
+     * @return The number of controls evaluated on the calling thread since
+     * the previous call to {@link #evaluate() }, during their update or 
+     * during the last call.
+     */
+    public int getLastSerialCount() {
+        return lastSerialCount;
+    }
+
+    /**
+     * Queues a control to be evaluated with the given time step, or 
+     * evaluates it right away if it cannot be evaluated concurrently.
+     */
+    void enqueue(AnimControl control, float tpf) {
+        if (!enabled) {
+            control.evaluate(tpf);
+            return;
+        }
+        if (control.stageIndex < 0 && !control.isConcurrentSafe()) {
+            control.evaluate(tpf);
+            serialCount++;
+            return;
+        }
+        if (control.stageIndex >= 0) {
+            // updated twice in the same frame
+            queuedTpf[control.stageIndex] += tpf;
+            return;
+        }
+        int index = queue.size();
+        if (index == queuedTpf.length) {
+            float[] newTpf = new float[index * 2];
+            System.arraycopy(queuedTpf, 0, newTpf, 0, index);
+            queuedTpf = newTpf;
+        }
+        queue.add(control);
+        queuedTpf[index] = tpf;
+        control.stageIndex = index;
+    }
+
+    /**
+     * Evaluates all the queued controls and computes the skinning matrices
+     * of their skeletons. Must be called once per frame, after the scene 
+     * update and before rendering, from the thread updating the scene.
+     * <p>
+     * A control that was given a listener or an attachment node after it
+     * was queued is evaluated on the calling thread. It may then have moved
+     * spatials, so the geometric state of the scene has to be updated again
+     * before rendering.
+     * 
+     * @return True if such a control was evaluated.
+     */
+    public boolean evaluate() {
+        int count = queue.size();
+        if (count == 0) {
+            lastParallelCount = 0;
+            lastSerialCount = serialCount;
+            serialCount = 0;
+            return false;
+        }
+        if (parallel.length < count) {
+            parallel = new AnimControl[count];
+            parallelTpf = new float[count];
+            parallelSkinning = new SkeletonControl[count];
+        }
+
+        try {
+            return evaluate(count);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                queue.get(i).stageIndex = -1;
+            }
+            queue.clear();
+        }
+    }
+
+    private boolean evaluate(int count) {
+        // Controls that stopped being safe since they were queued are done
+        // first, on the calling thread.
+        int numParallel = 0;
+        for (int i = 0; i < count; i++) {
+            AnimControl control = queue.get(i);
+            SkeletonControl skinning = getSkinningControl(control);
+            if (control.isConcurrentSafe()) {
+                parallel[numParallel] = control;
+                parallelTpf[numParallel] = queuedTpf[i];
+                parallelSkinning[numParallel] = skinning;
+                numParallel++;
+            } else {
+                control.evaluate(queuedTpf[i]);
+                if (skinning != null) {
+                    control.getSkeleton().computeSkinningMatrices();
+                    skinning.skinningMatricesUpdated();
+                }
+            }
+        }
+        lastParallelCount = numParallel;
+        lastSerialCount = serialCount + count - numParallel;
+        serialCount = 0;
+
+        if (numParallel > 0) {
+            try {
+                evaluateParallel(numParallel);
+            } finally {
+                for (int i = 0; i < numParallel; i++) {
+                    if (parallelSkinning[i] != null) {
+                        parallelSkinning[i].skinningMatricesUpdated();
+                    }
+                    parallel[i] = null;
+                    parallelSkinning[i] = null;
+                }
+            }
+        }
+        return numParallel < count;
+    }
+
+    private static SkeletonControl getSkinningControl(AnimControl control) {
+        Spatial spatial = control.getSpatial();
+        if (spatial == null) {
+            return null;
+        }
+        SkeletonControl skinning = spatial.getControl(SkeletonControl.class);
+        if (skinning == null || !skinning.isEnabled() || skinning.getSkeleton() != control.getSkeleton()) {
+            return null;
+        }
+        return skinning;
+    }
+
+    private void evaluateParallel(int numParallel) {
+        int numTasks = Math.min(numParallel, threadCount * 4);
+        tasks.clear();
+        for (int t = 0; t < numTasks; t++) {
+            final int start = numParallel * t / numTasks;
+            final int end = numParallel * (t + 1) / numTasks;
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int i = start; i < end; i++) {
+                        parallel[i].evaluate(parallelTpf[i]);
+                        if (parallelSkinning[i] != null) {
+                            parallel[i].getSkeleton().computeSkinningMatrices();
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        for (int t = 0; t < numTasks; t++) {
+            futures.add(executor.submit(tasks.get(t)));
+        }
+
+        boolean interrupted = false;
+        try {
+            for (Future<Void> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException ex) {
+                        // the results are needed for rendering
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Animation evaluation failed", cause);
+        } finally {
+            tasks.clear();
+            futures.clear();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the queued controls and stops the threads of the stage if 
+     * it created them. The stage is disabled afterwards.
+     */
+    public void shutdown() {
+        setEnabled(false);
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.control.AreaUtils;
+import com.jme3.scene.control.Control;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Determines the animation level of detail of a model from its distance to
+ * the camera, or from the area it covers on the screen, and applies it to the 
+ * {@link AnimControl} of the same spatial.
+ * <p>
+ * Each level has an update interval (see 
+ * {@link AnimControl#setUpdateInterval(int) }) and a maximum bone depth, bones
+ * deeper in the hierarchy than that are not evaluated (see 
+ * {@link AnimControl#setEvaluatedBones(java.util.BitSet) }). The level is
+ * measured in every viewport rendering the model and the most detailed one
+ * is used for the next update. Models that were not rendered use the 
+ * culled level.
+ */
+public class AnimLodControl extends AbstractControl implements Cloneable {
+
+    private float[] distances = {25f, 50f, 100f};
+    private float[] screenAreas;
+    private int[] updateIntervals = {1, 2, 4, 8};
+    private int[] boneDepths = {-1};
+    private int culledLevel = -1;
+
+    private transient int level;
+    private transient int renderedLevel = Integer.MAX_VALUE;
+    private transient Skeleton maskSkeleton;
+    private transient BitSet[] boneMasks;
+
+    /**
+     * Creates a new <code>AnimLodControl</code> with three distance 
+     * thresholds at 25, 50 and 100 world units, updating the animations 
+     * every 1, 2, 4 and 8 frames.
+     */
+    public AnimLodControl() {
+    }
+
+    /**
+     * Selects levels by distance from the camera to the center of the model's
+     * bounds. Level <code>i</code> is used from <code>distances[i - 1]</code> 
+     * up to <code>distances[i]</code>.
+     * 
+     * @param distances the increasing thresholds between levels
+     */
+    public void setDistances(float... distances) {
+        this.distances = distances;
+        this.screenAreas = null;
+    }
+
+    /**
+     * @return The distance thresholds, or null if levels are selected by
+     * screen area.
+     */
+    public float[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * Selects levels by the area covered by the model's bounds on the screen.
+     * Level <code>i</code> is used when the area is below 
+     * <code>screenAreas[i - 1]</code> but not below <code>screenAreas[i]</code>.
+     * 
+     * @param screenAreas the decreasing thresholds between levels, in pixels
+     */
+    public void setScreenAreas(float... screenAreas) {
+        this.screenAreas = screenAreas;
+        this.distances = null;
+    }
+
+    /**
+     * @return The screen area thresholds, or null if levels are selected by
+     * distance.
+     */
+    public float[] getScreenAreas() {
+        return screenAreas;
+    }
+
+    /**
+     * Sets the update interval of each level, in frames. Levels without a 
+     * value use the last one.
+     * 
+     * @param updateIntervals the update intervals, starting at level 0
+     */
+    public void setUpdateIntervals(int... updateIntervals) {
+        if (updateIntervals.length == 0) {
+            throw new IllegalArgumentException("At least one update interval is required");
+        }
+        this.updateIntervals = updateIntervals;
+    }
+
+    /**
+     * @return The update interval of each level.
+     */
+    public int[] getUpdateIntervals() {
+        return updateIntervals;
+    }
+
+    /**
+     * Sets the maximum depth of evaluated bones for each level, root bones
+     * having a depth of zero. A negative depth evaluates all bones. Levels 
+     * without a value use the last one.
+     * 
+     * @param boneDepths the maximum bone depths, starting at level 0
+     */
+    public void setBoneDepths(int... boneDepths) {
+        if (boneDepths.length == 0) {
+            throw new IllegalArgumentException("At least one bone depth is required");
+        }
+        this.boneDepths = boneDepths;
+        this.boneMasks = null;
+    }
+
+    /**
+     * @return The maximum depth of evaluated bones for each level.
+     */
+    public int[] getBoneDepths() {
+        return boneDepths;
+    }
+
+    /**
+     * Sets the level used when the model was not rendered during the last
+     * frame.
+     * 
+     * @param culledLevel the level, or -1 to use the least detailed level
+     * (the default).
+     */
+    public void setCulledLevel(int culledLevel) {
+        this.culledLevel = culledLevel;
+    }
+
+    /**
+     * @return The level used when the model was not rendered.
+     */
+    public int getCulledLevel() {
+        return culledLevel;
+    }
+
+    /**
+     * @return The number of levels, one more than the number of thresholds.
+     */
+    public int getNumLevels() {
+        float[] thresholds = distances != null ? distances : screenAreas;
+        return thresholds != null ? thresholds.length + 1 : 1;
+    }
+
+    /**
+     * @return The level currently applied.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public Control cloneForSpatial(Spatial spatial) {
+        AnimLodControl clone = (AnimLodControl) super.cloneForSpatial(spatial);
+        clone.level = 0;
+        clone.renderedLevel = Integer.MAX_VALUE;
+        clone.maskSkeleton = null;
+        clone.boneMasks = null;
+        return clone;
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+        int numLevels = getNumLevels();
+        if (renderedLevel != Integer.MAX_VALUE) {
+            level = renderedLevel;
+        } else if (culledLevel >= 0) {
+            level = Math.min(culledLevel, numLevels - 1);
+        } else {
+            level = numLevels - 1;
+        }
+        renderedLevel = Integer.MAX_VALUE;
+
+        AnimControl control = spatial.getControl(AnimControl.class);
+        if (control != null) {
+            control.setUpdateInterval(valueAt(updateIntervals, level));
+            control.setEvaluatedBones(getBoneMask(control.getSkeleton(), level));
+        }
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+        BoundingVolume bv = spatial.getWorldBound();
+        Camera cam = vp.getCamera();
+        float distance = bv.distanceTo(cam.getLocation());
+
+        int newLevel = 0;
+        if (distances != null) {
+            while (newLevel < distances.length && distance >= distances[newLevel]) {
+                newLevel++;
+            }
+        } else if (screenAreas != null) {
+            float area = AreaUtils.calcScreenArea(bv, distance, cam.getWidth());
+            while (newLevel < screenAreas.length && area < screenAreas[newLevel]) {
+                newLevel++;
+            }
+        }
+        renderedLevel = Math.min(renderedLevel, newLevel);
+    }
+
+    private static int valueAt(int[] values, int level) {
+        return values[Math.min(level, values.length - 1)];
+    }
+
+    private BitSet getBoneMask(Skeleton skeleton, int level) {
+        int maxDepth = valueAt(boneDepths, level);
+        if (skeleton == null || maxDepth < 0) {
+            return null;
+        }
+        if (maskSkeleton != skeleton || boneMasks == null || boneMasks.length != getNumLevels()) {
+            maskSkeleton = skeleton;
+            boneMasks = new BitSet[getNumLevels()];
+        }
+        BitSet mask = boneMasks[level];
+        if (mask == null) {
+            mask = new BitSet(skeleton.getBoneCount());
+            for (int i = 0; i < skeleton.getBoneCount(); i++) {
+                int depth = 0;
+                for (Bone b = skeleton.getBone(i).getParent(); b != null; b = b.getParent()) {
+                    depth++;
+                }
+                if (depth <= maxDepth) {
+                    mask.set(i);
+                }
+            }
+            boneMasks[level] = mask;
+        }
+        return mask;
+    }
+
+    @Override
+    public void write(JmeExporter ex) throws IOException {
+        super.write(ex);
+        OutputCapsule oc = ex.getCapsule(this);
+        oc.write(distances, "distances", null);
+        oc.write(screenAreas, "screenAreas", null);
+        oc.write(updateIntervals, "updateIntervals", null);
+        oc.write(boneDepths, "boneDepths", null);
+        oc.write(culledLevel, "culledLevel", -1);
+    }
+
+    @Override
+    public void read(JmeImporter im) throws IOException {
+        super.read(im);
+        InputCapsule ic = im.getCapsule(this);
+        distances = ic.readFloatArray("distances", null);
+        screenAreas = ic.readFloatArray("screenAreas", null);
+        updateIntervals = ic.readIntArray("updateIntervals", new int[]{1});
+        boneDepths = ic.readIntArray("boneDepths", new int[]{-1});
+        culledLevel = ic.readInt("culledLevel", -1);
+    }
+}
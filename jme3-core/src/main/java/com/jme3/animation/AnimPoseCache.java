@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * <code>AnimPoseCache</code> lets {@link AnimControl}s playing the same 
+ * animation at the same time share a single evaluation of the pose. 
+ * <p>
+ * Typically one cache is set on all the clones of a crowd model with 
+ * {@link AnimControl#setPoseCache(com.jme3.animation.AnimPoseCache) }.
+ * The cache holds at most one entry per control and needs no per frame
+ * maintenance. It must only be used from the thread updating the controls.
+ */
+public final class AnimPoseCache {
+
+    private final HashMap<Key, AnimControl> sources = new HashMap<Key, AnimControl>();
+    private float timeQuantum = 0;
+
+    /**
+     * Creates a new pose cache matching exact animation times.
+     */
+    public AnimPoseCache() {
+    }
+
+    /**
+     * Sets the time step under which two animation times are considered the
+     * same. Larger values share more poses at the price of small timing 
+     * errors, zero (the default) only shares identical times.
+     * 
+     * @param timeQuantum the time step in seconds
+     */
+    public void setTimeQuantum(float timeQuantum) {
+        if (timeQuantum < 0) {
+            throw new IllegalArgumentException("timeQuantum cannot be negative");
+        }
+        this.timeQuantum = timeQuantum;
+        sources.clear();
+    }
+
+    /**
+     * @return The time step under which two animation times are considered
+     * the same.
+     * 
+     * @see #setTimeQuantum(float) 
+     */
+    public float getTimeQuantum() {
+        return timeQuantum;
+    }
+
+    /**
+     * @return The number of poses currently available for sharing.
+     */
+    public int size() {
+        return sources.size();
+    }
+
+    /**
+     * Removes all poses from the cache.
+     */
+    public void clear() {
+        sources.clear();
+    }
+
+    /**
+     * @return The key of the pose the control is about to evaluate when
+     * advanced by the given time, or null if that pose cannot be shared.
+     */
+    Key createKey(AnimControl control, float tpf) {
+        AnimChannel channel = control.getShareableChannel();
+        if (channel == null) {
+            return null;
+        }
+
+        // Bone tracks are shared by all the clones of a model, unlike 
+        // the animations themselves.
+        Track clip = null;
+        for (Track track : channel.getAnimation().getTracks()) {
+            if (track instanceof BoneTrack) {
+                clip = track;
+                break;
+            }
+        }
+        if (clip == null) {
+            return null;
+        }
+
+        long time;
+        if (timeQuantum > 0) {
+            time = (long) Math.floor(channel.getTime() / timeQuantum);
+        } else {
+            time = Float.floatToIntBits(channel.getTime());
+        }
+        // channels only share if they advance the same way, so that they 
+        // stay in step after the update as well
+        return new Key(clip, time, Float.floatToIntBits(tpf), Float.floatToIntBits(channel.getSpeed()),
+                       channel.getLoopMode(), control.getSkeleton().getBoneCount(), control.getEvaluatedBones());
+    }
+
+    /**
+     * @return A control other than the given one whose skeleton currently 
+     * holds the pose with the given key, or null.
+     */
+    AnimControl getSource(Key key, AnimControl control) {
+        AnimControl source = sources.get(key);
+        if (source == null || source == control || source.getPoseCache() != this) {
+            return null;
+        }
+        if (!key.equals(source.poseKey) || source.getSkeleton().hasUserControlledBones()) {
+            // the source moved on or its pose was changed by the user
+            sources.remove(key);
+            return null;
+        }
+        return source;
+    }
+
+    /**
+     * Records that the skeleton of the control holds the pose with the given 
+     * key, which replaces its previous pose.
+     */
+    void register(Key key, AnimControl control) {
+        Key previous = control.poseKey;
+        if (previous != null && !previous.equals(key) && sources.get(previous) == control) {
+            sources.remove(previous);
+        }
+        control.poseKey = key;
+        if (key != null) {
+            sources.put(key, control);
+        }
+    }
+
+    static final class Key {
+
+        private final Track clip;
+        private final long time;
+        private final int tpf;
+        private final int speed;
+        private final LoopMode loopMode;
+        private final int boneCount;
+        private final BitSet evaluatedBones;
+
+        Key(Track clip, long time, int tpf, int speed, LoopMode loopMode, int boneCount, BitSet evaluatedBones) {
+            this.clip = clip;
+            this.time = time;
+            this.tpf = tpf;
+            this.speed = speed;
+            this.loopMode = loopMode;
+            this.boneCount = boneCount;
+            this.evaluatedBones = evaluatedBones;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return clip == other.clip
+                    && time == other.time
+                    && tpf == other.tpf
+                    && speed == other.speed
+                    && loopMode == other.loopMode
+                    && boneCount == other.boneCount
+                    && (evaluatedBones == null
+                        ? other.evaluatedBones == null
+                        : evaluatedBones.equals(other.evaluatedBones));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(clip);
+            hash = 31 * hash + (int) (time ^ (time >>> 32));
+            hash = 31 * hash + tpf;
+            hash = 31 * hash + speed;
+            hash = 31 * hash + (loopMode != null ? loopMode.hashCode() : 0);
+            hash = 31 * hash + boneCount;
+            hash = 31 * hash + (evaluatedBones != null ? evaluatedBones.hashCode() : 0);
+            return hash;
+        }
+    }
+}
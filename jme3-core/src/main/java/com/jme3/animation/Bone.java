@@ -472,6 +472,29 @@ public final class Bone implements Savable {
         }
     }
 
+    /**
+     * Copies the local and model transforms of the given bone, which must be
+     * the same bone in a skeleton with the same bind pose, and updates 
+     * the attach node if not null.
+     * 
+     * @param source the bone to copy the pose from
+     */
+    final void copyPose(Bone source) {
+        localPos.set(source.localPos);
+        localRot.set(source.localRot);
+        localScale.set(source.localScale);
+        modelPos.set(source.modelPos);
+        modelRot.set(source.modelRot);
+        modelScale.set(source.modelScale);
+        currentWeightSum = -1;
+
+        if (attachNode != null) {
+            attachNode.setLocalTranslation(modelPos);
+            attachNode.setLocalRotation(modelRot);
+            attachNode.setLocalScale(modelScale);
+        }
+    }
+
     /**
      * Updates world transforms for this bone and it's children.
      */
@@ -822,4 +845,8 @@ public final class Bone implements Savable {
     public boolean hasUserControl(){
         return userControl;
     }
+
+    boolean hasAttachmentsNode() {
+        return attachNode != null;
+    }
 }
@@ -57,6 +57,10 @@ public final class BoneTrack implements Track {
     private CompactQuaternionArray rotations;
     private CompactVector3Array scales;
     private float[] times;
+    /**
+     * Interpolate with curves through the keyframes instead of linearly.
+     */
+    private boolean curve = false;
     
     /**
      * Serialization-only. Do not use.
@@ -175,6 +179,51 @@ public final class BoneTrack implements Track {
         }
     }
 
+    /**
+     * Sets the keyframes from already compacted arrays, see 
+     * {@link TrackCompressor}.
+     */
+    void setKeyframes(float[] times, CompactVector3Array translations, 
+            CompactQuaternionArray rotations, CompactVector3Array scales) {
+        this.times = times;
+        this.translations = translations;
+        this.rotations = rotations;
+        this.scales = scales;
+    }
+
+    CompactVector3Array getCompactTranslations() {
+        return translations;
+    }
+
+    CompactQuaternionArray getCompactRotations() {
+        return rotations;
+    }
+
+    CompactVector3Array getCompactScales() {
+        return scales;
+    }
+
+    /**
+     * Sets whether the transforms are interpolated along Catmull-Rom curves 
+     * through the keyframes, which follows smooth motion with fewer keyframes
+     * than linear interpolation.
+     * 
+     * @param curve true for curves, false for linear interpolation (the
+     * default)
+     */
+    public void setCurveInterpolation(boolean curve) {
+        this.curve = curve;
+    }
+
+    /**
+     * @return True if the transforms are interpolated along curves.
+     * 
+     * @see #setCurveInterpolation(boolean) 
+     */
+    public boolean isCurveInterpolation() {
+        return curve;
+    }
+
     /**
      * 
      * Modify the bone which this track modifies in the skeleton to contain
@@ -192,56 +241,17 @@ public final class BoneTrack implements Track {
         if (affectedBones != null && !affectedBones.get(targetBoneIndex)) {
             return;
         }
+        if (!control.isBoneEvaluated(targetBoneIndex)) {
+            return;
+        }
         
         Bone target = control.getSkeleton().getBone(targetBoneIndex);
 
         Vector3f tempV = vars.vect1;
         Vector3f tempS = vars.vect2;
         Quaternion tempQ = vars.quat1;
-        Vector3f tempV2 = vars.vect3;
-        Vector3f tempS2 = vars.vect4;
-        Quaternion tempQ2 = vars.quat2;
-        
-        int lastFrame = times.length - 1;
-        if (time < 0 || lastFrame == 0) {
-            rotations.get(0, tempQ);
-            translations.get(0, tempV);
-            if (scales != null) {
-                scales.get(0, tempS);
-            }
-        } else if (time >= times[lastFrame]) {
-            rotations.get(lastFrame, tempQ);
-            translations.get(lastFrame, tempV);
-            if (scales != null) {
-                scales.get(lastFrame, tempS);
-            }
-        } else {
-            int startFrame = 0;
-            int endFrame = 1;
-            // use lastFrame so we never overflow the array
-            int i;
-            for (i = 0; i < lastFrame && times[i] < time; i++) {
-                startFrame = i;
-                endFrame = i + 1;
-            }
-
-            float blend = (time - times[startFrame])
-                    / (times[endFrame] - times[startFrame]);
-
-            rotations.get(startFrame, tempQ);
-            translations.get(startFrame, tempV);
-            if (scales != null) {
-                scales.get(startFrame, tempS);
-            }
-            rotations.get(endFrame, tempQ2);
-            translations.get(endFrame, tempV2);
-            if (scales != null) {
-                scales.get(endFrame, tempS2);
-            }
-            tempQ.nlerp(tempQ2, blend);
-            tempV.interpolateLocal(tempV2, blend);
-            tempS.interpolateLocal(tempS2, blend);
-        }
+        KeyframeSampler.sample(time, times, curve, translations, rotations, scales, 
+                               tempV, tempQ, tempS, vars);
 
 //        if (weight != 1f) {
             target.blendAnimTransforms(tempV, tempQ, scales != null ? tempS : null, weight);
@@ -285,7 +295,27 @@ public final class BoneTrack implements Track {
         }
         
         // Need to use the constructor here because of the final fields used in this class
-        return new BoneTrack(targetBoneIndex, times, translations, rotations, scales);
+        BoneTrack clone = new BoneTrack(targetBoneIndex, times, translations, rotations, scales);
+        clone.curve = curve;
+        clone.keepQuantized(this.translations, this.rotations, this.scales);
+        return clone;
+    }
+
+    /**
+     * Replaces the arrays created by clone() with copies of the quantized 
+     * arrays of the original track, so the clone keeps their storage.
+     */
+    private void keepQuantized(CompactVector3Array translations, 
+            CompactQuaternionArray rotations, CompactVector3Array scales) {
+        if (translations instanceof QuantizedVector3Array) {
+            this.translations = new QuantizedVector3Array(translations);
+        }
+        if (rotations instanceof QuantizedQuaternionArray) {
+            this.rotations = new QuantizedQuaternionArray(rotations);
+        }
+        if (scales instanceof QuantizedVector3Array) {
+            this.scales = new QuantizedVector3Array(scales);
+        }
     }
     
     @Override
@@ -296,6 +326,7 @@ public final class BoneTrack implements Track {
         oc.write(rotations, "rotations", null);
         oc.write(times, "times", null);
         oc.write(scales, "scales", null);
+        oc.write(curve, "curve", false);
     }
 
     @Override
@@ -307,6 +338,7 @@ public final class BoneTrack implements Track {
         rotations = (CompactQuaternionArray) ic.readSavable("rotations", null);
         times = ic.readFloatArray("times", null);
         scales = (CompactVector3Array) ic.readSavable("scales", null);
+        curve = ic.readBoolean("curve", false);
 
         //Backward compatibility for old j3o files generated before revision 6807
         if (im.getFormatVersion() == 0){
@@ -136,7 +136,7 @@ public abstract class CompactArray<T> {
      * return a float array of serialized data
      * @return 
      */
-    public final float[] getSerializedData() {
+    public float[] getSerializedData() {
         serialize();
         return array;
     }
@@ -162,10 +162,18 @@ public abstract class CompactArray<T> {
     /**
      * @return compacted array's primitive size
      */
-    protected final int getSerializedSize() {
+    protected int getSerializedSize() {
         return Array.getLength(getSerializedData());
     }
 
+    /**
+     * @return approximate number of bytes used by the data and the index
+     */
+    int getByteSize() {
+        int size = getSerializedSize() * 4;
+        return index != null ? size + index.length * 4 : size;
+    }
+
     /**
      * Ensure the capacity for the given array and the given size
      * @param arr the array
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.math.Vector4f;
+import com.jme3.util.TempVars;
+
+/**
+ * Samples the keyframes of transform tracks, either with linear 
+ * interpolation or with Catmull-Rom curves through the keyframes.
+ */
+final class KeyframeSampler {
+
+    private KeyframeSampler() {
+    }
+
+    /**
+     * Samples the keyframes at the given time. Null arrays leave their
+     * store untouched.
+     * 
+     * @param time the time to sample at
+     * @param times the keyframe times
+     * @param curve true to interpolate with curves, false for linear
+     * @param translations the translations, may be null
+     * @param rotations the rotations, may be null
+     * @param scales the scales, may be null
+     * @param storeT store for the translation
+     * @param storeR store for the rotation
+     * @param storeS store for the scale
+     * @param vars temp vars, vect3, vect4, quat2 and vect4f1 are used
+     */
+    static void sample(float time, float[] times, boolean curve, 
+            CompactVector3Array translations, CompactQuaternionArray rotations, CompactVector3Array scales,
+            Vector3f storeT, Quaternion storeR, Vector3f storeS, TempVars vars) {
+        Vector3f tempV2 = vars.vect3;
+        Vector3f tempS2 = vars.vect4;
+        Quaternion tempQ2 = vars.quat2;
+
+        int lastFrame = times.length - 1;
+        if (time < 0 || lastFrame == 0) {
+            if (rotations != null) {
+                rotations.get(0, storeR);
+            }
+            if (translations != null) {
+                translations.get(0, storeT);
+            }
+            if (scales != null) {
+                scales.get(0, storeS);
+            }
+        } else if (time >= times[lastFrame]) {
+            if (rotations != null) {
+                rotations.get(lastFrame, storeR);
+            }
+            if (translations != null) {
+                translations.get(lastFrame, storeT);
+            }
+            if (scales != null) {
+                scales.get(lastFrame, storeS);
+            }
+        } else {
+            int startFrame = 0;
+            int endFrame = 1;
+            // use lastFrame so we never overflow the array
+            for (int i = 0; i < lastFrame && times[i] < time; i++) {
+                startFrame = i;
+                endFrame = i + 1;
+            }
+
+            float blend = (time - times[startFrame])
+                    / (times[endFrame] - times[startFrame]);
+
+            if (curve) {
+                int prevFrame = Math.max(startFrame - 1, 0);
+                int nextFrame = Math.min(endFrame + 1, lastFrame);
+                Vector4f w = vars.vect4f1;
+                curveWeights(times, prevFrame, startFrame, endFrame, nextFrame, blend, w);
+                if (rotations != null) {
+                    curve(rotations, prevFrame, startFrame, endFrame, nextFrame, w, storeR, tempQ2);
+                }
+                if (translations != null) {
+                    curve(translations, prevFrame, startFrame, endFrame, nextFrame, w, storeT, tempV2);
+                }
+                if (scales != null) {
+                    curve(scales, prevFrame, startFrame, endFrame, nextFrame, w, storeS, tempS2);
+                }
+                return;
+            }
+
+            if (rotations != null) {
+                rotations.get(startFrame, storeR);
+                rotations.get(endFrame, tempQ2);
+                storeR.nlerp(tempQ2, blend);
+            }
+            if (translations != null) {
+                translations.get(startFrame, storeT);
+                translations.get(endFrame, tempV2);
+                storeT.interpolateLocal(tempV2, blend);
+            }
+            if (scales != null) {
+                scales.get(startFrame, storeS);
+                scales.get(endFrame, tempS2);
+                storeS.interpolateLocal(tempS2, blend);
+            }
+        }
+    }
+
+    /**
+     * Computes the weights of the four keyframes around a segment for a 
+     * Catmull-Rom curve with non uniform times. The curve between frames 
+     * <code>k1</code> and <code>k2</code> is the weighted sum of the values 
+     * at <code>k0</code>, <code>k1</code>, <code>k2</code> and 
+     * <code>k3</code>. At the ends of the track <code>k0 == k1</code> or 
+     * <code>k3 == k2</code>.
+     * 
+     * @param times the keyframe times
+     * @param u the position in the segment, from 0 to 1
+     * @param store the four weights
+     */
+    static void curveWeights(float[] times, int k0, int k1, int k2, int k3, float u, Vector4f store) {
+        float u2 = u * u;
+        float u3 = u2 * u;
+        float h00 = 2 * u3 - 3 * u2 + 1;
+        float h10 = u3 - 2 * u2 + u;
+        float h01 = -2 * u3 + 3 * u2;
+        float h11 = u3 - u2;
+
+        float dt = times[k2] - times[k1];
+        // tangents are (p2 - p0) / (t2 - t0) and (p3 - p1) / (t3 - t1)
+        float a = h10 * dt / (times[k2] - times[k0]);
+        float b = h11 * dt / (times[k3] - times[k1]);
+        store.x = -a;
+        store.y = h00 - b;
+        store.z = h01 + a;
+        store.w = b;
+        if (k0 == k1) {
+            store.y += store.x;
+            store.x = 0;
+        }
+        if (k3 == k2) {
+            store.z += store.w;
+            store.w = 0;
+        }
+    }
+
+    private static void curve(CompactVector3Array values, int k0, int k1, int k2, int k3,
+            Vector4f w, Vector3f store, Vector3f temp) {
+        float x = 0, y = 0, z = 0;
+        values.get(k0, temp);
+        x += w.x * temp.x;
+        y += w.x * temp.y;
+        z += w.x * temp.z;
+        values.get(k1, temp);
+        x += w.y * temp.x;
+        y += w.y * temp.y;
+        z += w.y * temp.z;
+        values.get(k2, temp);
+        x += w.z * temp.x;
+        y += w.z * temp.y;
+        z += w.z * temp.z;
+        values.get(k3, temp);
+        x += w.w * temp.x;
+        y += w.w * temp.y;
+        z += w.w * temp.z;
+        store.set(x, y, z);
+    }
+
+    private static void curve(CompactQuaternionArray values, int k0, int k1, int k2, int k3,
+            Vector4f w, Quaternion store, Quaternion temp) {
+        // all the keyframes are taken in the hemisphere of k1
+        values.get(k1, store);
+        float x = w.y * store.getX();
+        float y = w.y * store.getY();
+        float z = w.y * store.getZ();
+        float ww = w.y * store.getW();
+
+        values.get(k0, temp);
+        float weight = temp.dot(store) < 0 ? -w.x : w.x;
+        x += weight * temp.getX();
+        y += weight * temp.getY();
+        z += weight * temp.getZ();
+        ww += weight * temp.getW();
+        values.get(k2, temp);
+        weight = temp.dot(store) < 0 ? -w.z : w.z;
+        x += weight * temp.getX();
+        y += weight * temp.getY();
+        z += weight * temp.getZ();
+        ww += weight * temp.getW();
+        values.get(k3, temp);
+        weight = temp.dot(store) < 0 ? -w.w : w.w;
+        x += weight * temp.getX();
+        y += weight * temp.getY();
+        z += weight * temp.getZ();
+        ww += weight * temp.getW();
+
+        store.set(x, y, z, ww);
+        store.normalizeLocal();
+    }
+}
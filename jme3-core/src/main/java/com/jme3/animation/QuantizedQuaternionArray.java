@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import java.io.IOException;
+
+/**
+ * A {@link CompactQuaternionArray} that stores each rotation in 48 bits 
+ * instead of 128. The three smallest components are quantized to 15 bits 
+ * each and the largest one is recomputed from the unit length, which keeps
+ * the error below 0.0001 radians. The values are decoded on access,
+ * {@link #getSerializedData()} returns a decoded copy.
+ * <p>
+ * Modifying the array through {@link #add(com.jme3.math.Quaternion[]) } or 
+ * {@link #set(int, java.lang.Object) } decodes it into the float array of
+ * a regular compact array, {@link #freeze() } quantizes it again.
+ * 
+ * @see TrackCompressor
+ */
+public class QuantizedQuaternionArray extends CompactQuaternionArray {
+
+    private static final float RANGE = FastMath.sqrt(2f);
+    private static final int MAX_VALUE = 0x7FFF;
+
+    // null while the values are decoded into the array of the base class
+    private short[] data;
+
+    /**
+     * Serialization only. Do not use.
+     */
+    public QuantizedQuaternionArray() {
+    }
+
+    /**
+     * Creates a quantized copy of the given array. The index of
+     * duplicated values is kept, a quantized source is copied as it is.
+     * 
+     * @param source the array to quantize
+     */
+    public QuantizedQuaternionArray(CompactQuaternionArray source) {
+        if (source instanceof QuantizedQuaternionArray && ((QuantizedQuaternionArray) source).data != null) {
+            data = ((QuantizedQuaternionArray) source).data.clone();
+        } else {
+            quantize(source.getSerializedData());
+        }
+        index = source.index != null ? source.index.clone() : null;
+    }
+
+    private void quantize(float[] src) {
+        int count = src.length / 4;
+        data = new short[count * 3];
+        for (int i = 0; i < count; i++) {
+            encode(src, i * 4, i * 3);
+        }
+    }
+
+    private void encode(float[] src, int in, int out) {
+        int largest = 0;
+        float max = Math.abs(src[in]);
+        for (int c = 1; c < 4; c++) {
+            float v = Math.abs(src[in + c]);
+            if (v > max) {
+                max = v;
+                largest = c;
+            }
+        }
+        float norm = FastMath.sqrt(src[in] * src[in] + src[in + 1] * src[in + 1]
+                + src[in + 2] * src[in + 2] + src[in + 3] * src[in + 3]);
+        if (norm == 0f) {
+            // degenerate rotation, store identity
+            data[out] = (short) ((3 >> 1) << 15 | quantize(0f));
+            data[out + 1] = (short) ((3 & 1) << 15 | quantize(0f));
+            data[out + 2] = (short) quantize(0f);
+            return;
+        }
+        // q and -q are the same rotation, make the dropped component positive
+        float scale = src[in + largest] < 0 ? -1f / norm : 1f / norm;
+        int[] q = new int[3];
+        for (int c = 0, j = 0; c < 4; c++) {
+            if (c != largest) {
+                q[j++] = quantize(src[in + c] * scale);
+            }
+        }
+        data[out] = (short) ((largest >> 1) << 15 | q[0]);
+        data[out + 1] = (short) ((largest & 1) << 15 | q[1]);
+        data[out + 2] = (short) q[2];
+    }
+
+    private static int quantize(float v) {
+        float f = (v * RANGE + 1f) * 0.5f;
+        return Math.round(FastMath.clamp(f, 0f, 1f) * MAX_VALUE);
+    }
+
+    private static float dequantize(int v) {
+        return ((v & MAX_VALUE) / (float) MAX_VALUE * 2f - 1f) / RANGE;
+    }
+
+    /**
+     * Decodes the values into the array of the base class before they 
+     * are modified.
+     */
+    private void decodeForUpdate() {
+        if (data != null) {
+            array = decode();
+            data = null;
+        }
+    }
+
+    private float[] decode() {
+        int count = data.length / 3;
+        float[] values = new float[count * 4];
+        Quaternion q = new Quaternion();
+        for (int i = 0; i < count; i++) {
+            deserialize(i, q);
+            values[i * 4] = q.getX();
+            values[i * 4 + 1] = q.getY();
+            values[i * 4 + 2] = q.getZ();
+            values[i * 4 + 3] = q.getW();
+        }
+        return values;
+    }
+
+    @Override
+    public void add(Quaternion... objArray) {
+        decodeForUpdate();
+        super.add(objArray);
+    }
+
+    /**
+     * Quantizes the values again after they were modified.
+     */
+    @Override
+    public void freeze() {
+        super.freeze();
+        if (data == null && array != null) {
+            quantize(array);
+            array = null;
+        }
+    }
+
+    @Override
+    public float[] getSerializedData() {
+        return data != null ? decode() : super.getSerializedData();
+    }
+
+    @Override
+    protected void serialize(int i, Quaternion store) {
+        decodeForUpdate();
+        super.serialize(i, store);
+    }
+
+    @Override
+    protected Quaternion deserialize(int i, Quaternion store) {
+        if (data == null) {
+            return super.deserialize(i, store);
+        }
+        int j = i * 3;
+        int s0 = data[j], s1 = data[j + 1];
+        int largest = (s0 >> 15 & 1) << 1 | (s1 >> 15 & 1);
+        float a = dequantize(s0);
+        float b = dequantize(s1);
+        float c = dequantize(data[j + 2]);
+        float d = FastMath.sqrt(Math.max(0f, 1f - a * a - b * b - c * c));
+        switch (largest) {
+            case 0:
+                store.set(d, a, b, c);
+                break;
+            case 1:
+                store.set(a, d, b, c);
+                break;
+            case 2:
+                store.set(a, b, d, c);
+                break;
+            default:
+                store.set(a, b, c, d);
+                break;
+        }
+        return store;
+    }
+
+    @Override
+    protected int getSerializedSize() {
+        return data != null ? data.length / 3 * 4 : super.getSerializedSize();
+    }
+
+    @Override
+    int getByteSize() {
+        if (data == null) {
+            return super.getByteSize();
+        }
+        int size = data.length * 2;
+        return index != null ? size + index.length * 4 : size;
+    }
+
+    @Override
+    public void write(JmeExporter ex) throws IOException {
+        // modified values are saved quantized without changing this array
+        QuantizedQuaternionArray quantized = data != null ? this : new QuantizedQuaternionArray(this);
+        OutputCapsule out = ex.getCapsule(this);
+        out.write(quantized.data, "data", null);
+        out.write(index, "index", null);
+    }
+
+    @Override
+    public void read(JmeImporter im) throws IOException {
+        InputCapsule in = im.getCapsule(this);
+        data = in.readShortArray("data", null);
+        index = in.readIntArray("index", null);
+    }
+}
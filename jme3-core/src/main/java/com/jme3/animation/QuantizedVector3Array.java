@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.math.Vector3f;
+import java.io.IOException;
+
+/**
+ * A {@link CompactVector3Array} that stores each component in 16 bits, 
+ * relative to the bounds of all the values in the array. The error is at 
+ * most 1/131070 of the extent of the values on each axis. The values are
+ * decoded on access, {@link #getSerializedData()} returns a decoded copy.
+ * <p>
+ * Modifying the array through {@link #add(com.jme3.math.Vector3f[]) } or 
+ * {@link #set(int, java.lang.Object) } decodes it into the float array of
+ * a regular compact array, {@link #freeze() } quantizes it again.
+ * 
+ * @see TrackCompressor
+ */
+public class QuantizedVector3Array extends CompactVector3Array {
+
+    private static final int MAX_VALUE = 0xFFFF;
+
+    // null while the values are decoded into the array of the base class
+    private short[] data;
+    private float[] offset;
+    private float[] scale;
+
+    /**
+     * Serialization only. Do not use.
+     */
+    public QuantizedVector3Array() {
+    }
+
+    /**
+     * Creates a quantized copy of the given array. The index of
+     * duplicated values is kept, a quantized source is copied as it is.
+     * 
+     * @param source the array to quantize
+     */
+    public QuantizedVector3Array(CompactVector3Array source) {
+        if (source instanceof QuantizedVector3Array && ((QuantizedVector3Array) source).data != null) {
+            QuantizedVector3Array quantized = (QuantizedVector3Array) source;
+            data = quantized.data.clone();
+            offset = quantized.offset.clone();
+            scale = quantized.scale.clone();
+        } else {
+            quantize(source.getSerializedData());
+        }
+        index = source.index != null ? source.index.clone() : null;
+    }
+
+    private void quantize(float[] src) {
+        offset = new float[3];
+        scale = new float[3];
+        for (int c = 0; c < 3; c++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = c; i < src.length; i += 3) {
+                min = Math.min(min, src[i]);
+                max = Math.max(max, src[i]);
+            }
+            offset[c] = min;
+            scale[c] = (max - min) / MAX_VALUE;
+        }
+        data = new short[src.length];
+        for (int i = 0; i < src.length; i++) {
+            int c = i % 3;
+            if (scale[c] > 0f) {
+                data[i] = (short) Math.round((src[i] - offset[c]) / scale[c]);
+            }
+        }
+    }
+
+    private float[] decode() {
+        float[] values = new float[data.length];
+        for (int i = 0; i < data.length; i++) {
+            int c = i % 3;
+            values[i] = offset[c] + (data[i] & MAX_VALUE) * scale[c];
+        }
+        return values;
+    }
+
+    /**
+     * Decodes the values into the array of the base class before they 
+     * are modified.
+     */
+    private void decodeForUpdate() {
+        if (data != null) {
+            array = decode();
+            data = null;
+        }
+    }
+
+    @Override
+    public void add(Vector3f... objArray) {
+        decodeForUpdate();
+        super.add(objArray);
+    }
+
+    /**
+     * Quantizes the values again after they were modified.
+     */
+    @Override
+    public void freeze() {
+        super.freeze();
+        if (data == null && array != null) {
+            quantize(array);
+            array = null;
+        }
+    }
+
+    @Override
+    public float[] getSerializedData() {
+        return data != null ? decode() : super.getSerializedData();
+    }
+
+    @Override
+    protected void serialize(int i, Vector3f store) {
+        decodeForUpdate();
+        super.serialize(i, store);
+    }
+
+    @Override
+    protected Vector3f deserialize(int i, Vector3f store) {
+        if (data == null) {
+            return super.deserialize(i, store);
+        }
+        int j = i * 3;
+        store.set(offset[0] + (data[j] & MAX_VALUE) * scale[0],
+                  offset[1] + (data[j + 1] & MAX_VALUE) * scale[1],
+                  offset[2] + (data[j + 2] & MAX_VALUE) * scale[2]);
+        return store;
+    }
+
+    @Override
+    protected int getSerializedSize() {
+        return data != null ? data.length : super.getSerializedSize();
+    }
+
+    @Override
+    int getByteSize() {
+        if (data == null) {
+            return super.getByteSize();
+        }
+        int size = data.length * 2 + 6 * 4;
+        return index != null ? size + index.length * 4 : size;
+    }
+
+    @Override
+    public void write(JmeExporter ex) throws IOException {
+        // modified values are saved quantized without changing this array
+        QuantizedVector3Array quantized = data != null ? this : new QuantizedVector3Array(this);
+        OutputCapsule out = ex.getCapsule(this);
+        out.write(quantized.data, "data", null);
+        out.write(quantized.offset, "offset", null);
+        out.write(quantized.scale, "scale", null);
+        out.write(index, "index", null);
+    }
+
+    @Override
+    public void read(JmeImporter im) throws IOException {
+        InputCapsule in = im.getCapsule(this);
+        data = in.readShortArray("data", null);
+        offset = in.readFloatArray("offset", null);
+        scale = in.readFloatArray("scale", null);
+        index = in.readIntArray("index", null);
+    }
+}
@@ -178,6 +178,42 @@ public final class Skeleton implements Savable {
         }
     }
 
+    /**
+     * Copies the current pose of the given skeleton, which must have been
+     * created from the same skeleton as this one.
+     * 
+     * @param source the skeleton to copy the pose from
+     */
+    void copyPose(Skeleton source) {
+        for (int i = 0; i < boneList.length; i++) {
+            boneList[i].copyPose(source.boneList[i]);
+        }
+    }
+
+    /**
+     * @return True if at least one bone is under user control.
+     */
+    boolean hasUserControlledBones() {
+        for (int i = 0; i < boneList.length; i++) {
+            if (boneList[i].hasUserControl()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if at least one bone has an attachments node.
+     */
+    boolean hasAttachmentNodes() {
+        for (int i = 0; i < boneList.length; i++) {
+            if (boneList[i].hasAttachmentsNode()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * returns the array of all root bones of this skeleton
      * @return 
@@ -252,6 +288,14 @@ public final class Skeleton implements Savable {
         return skinningMatrixes;
     }
 
+    /**
+     * @return The skinning matrices as last computed by 
+     * {@link #computeSkinningMatrices() }.
+     */
+    Matrix4f[] getSkinningMatrices() {
+        return skinningMatrixes;
+    }
+
     /**
      * returns the number of bones of this skeleton
      * @return 
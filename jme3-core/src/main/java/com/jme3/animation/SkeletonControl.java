@@ -34,9 +34,10 @@ package com.jme3.animation;
 import com.jme3.export.*;
 import com.jme3.material.MatParam;
 import com.jme3.material.Material;
-import com.jme3.math.FastMath;
 import com.jme3.math.Matrix4f;
+import com.jme3.renderer.Caps;
 import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.Renderer;
 import com.jme3.renderer.RendererException;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.*;
@@ -44,15 +45,15 @@ import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.control.AbstractControl;
 import com.jme3.scene.control.Control;
 import com.jme3.shader.VarType;
+import com.jme3.texture.Texture;
 import com.jme3.util.SafeArrayList;
-import com.jme3.util.TempVars;
 import java.io.IOException;
 import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -105,6 +106,48 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
      * Bone offset matrices, recreated each frame
      */
     private transient Matrix4f[] offsetMatrices;
+    /**
+     * Executor used to split software skinning of large meshes, may be null
+     */
+    private transient ExecutorService skinningExecutor;
+    /**
+     * Bone offset matrices packed for software skinning
+     */
+    private transient float[] palette;
+    /**
+     * Palette and targets of the last software skinning, used to skip
+     * frames where the pose did not change
+     */
+    private transient float[] skinnedPalette;
+    private transient Mesh[] skinnedTargets;
+    /**
+     * Set when the skinning matrices were computed by an evaluation stage
+     * since the last update
+     */
+    private transient boolean skinningMatricesUpdated;
+    /**
+     * Whether the bone matrices should be passed to the shaders in a float
+     * texture rather than in a uniform array when hardware skinning is used
+     */
+    private transient boolean boneTextureDesired = false;
+    /**
+     * Whether the renderer and the materials of the targets support the 
+     * bone matrix texture, valid while {@link #boneTextureTested} is set
+     */
+    private transient boolean boneTextureTested = false;
+    private transient boolean boneTextureSupported = false;
+    private transient Renderer boneTextureRenderer;
+    /**
+     * Materials of the targets in scene order, used to notice when they 
+     * change and the bone texture support has to be tested again
+     */
+    private transient Material[] targetMaterials = new Material[0];
+    private transient int targetMaterialCount;
+    /**
+     * The texture holding the bone matrices, null when the uniform array is
+     * used
+     */
+    private transient SkinningPalette bonePalette;
     /**
      * Material references used for hardware skinning
      */
@@ -116,9 +159,13 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     public SkeletonControl() {
     }
 
-    private void switchToHardware() {
+    private int getNumberOfBones() {
         // Next full 10 bones (e.g. 30 on 24 bones)
-        int numBones = ((skeleton.getBoneCount() / 10) + 1) * 10;
+        return ((skeleton.getBoneCount() / 10) + 1) * 10;
+    }
+
+    private void switchToHardware() {
+        int numBones = getNumberOfBones();
         for (Material m : materials) {
             m.setInt("NumberOfBones", numBones);
         }
@@ -130,6 +177,8 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     }
 
     private void switchToSoftware() {
+        skinnedPalette = null;
+        switchToBoneUniforms();
         for (Material m : materials) {
             if (m.getParam("NumberOfBones") != null) {
                 m.clearParam("NumberOfBones");
@@ -157,6 +206,17 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         }
 
         switchToHardware();
+        if (isBoneTextureSupported(rm)) {
+            switchToBoneTexture();
+            try {
+                rm.preloadScene(spatial);
+                return true;
+            } catch (RendererException e) {
+                Logger.getLogger(SkeletonControl.class.getName()).log(Level.WARNING, "Could not use a bone matrix texture due to shader compile error:", e);
+                boneTextureDesired = false;
+                switchToBoneUniforms();
+            }
+        }
         
         try {
             rm.preloadScene(spatial);
@@ -167,6 +227,60 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         }
     }
 
+    private boolean isBoneTextureSupported(RenderManager rm) {
+        if (!boneTextureDesired) {
+            return false;
+        }
+        Renderer renderer = rm.getRenderer();
+        if (!boneTextureTested || boneTextureRenderer != renderer) {
+            boneTextureSupported = testBoneTextureSupported(renderer.getCaps());
+            boneTextureRenderer = renderer;
+            boneTextureTested = true;
+        }
+        return boneTextureSupported;
+    }
+
+    private boolean testBoneTextureSupported(EnumSet<Caps> caps) {
+        if (!caps.contains(Caps.FloatTexture) || !caps.contains(Caps.VertexTextureFetch)) {
+            return false;
+        }
+        if (!caps.contains(Caps.NonPowerOfTwoTextures) 
+                && !caps.contains(Caps.PartialNonPowerOfTwoTextures)) {
+            // the texture would be rescaled
+            return false;
+        }
+        for (Material m : materials) {
+            if (m.getMaterialDef().getMaterialParam("BoneMatrixTexture") == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void switchToBoneTexture() {
+        if (bonePalette == null || bonePalette.getBoneCount() != getNumberOfBones()) {
+            bonePalette = new SkinningPalette(getNumberOfBones());
+        }
+        for (Material m : materials) {
+            if (m.getParam("BoneMatrices") != null) {
+                m.clearParam("BoneMatrices");
+            }
+            m.setTexture("BoneMatrixTexture", bonePalette.getTexture());
+        }
+    }
+
+    private void switchToBoneUniforms() {
+        if (bonePalette == null) {
+            return;
+        }
+        for (Material m : materials) {
+            if (m.getParam("BoneMatrixTexture") != null) {
+                m.clearParam("BoneMatrixTexture");
+            }
+        }
+        bonePalette = null;
+    }
+
     /**
      * Specifies if hardware skinning is preferred. If it is preferred and
      * supported by GPU, it shall be enabled, if its not preferred, or not
@@ -194,6 +308,65 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     public boolean isHardwareSkinningUsed() {
         return hwSkinningEnabled;
     }
+
+    /**
+     * Specifies if the bone matrices should be passed to the shaders in a
+     * float texture when hardware skinning is used. The texture is shared by
+     * all the materials of the model and only the bones that changed since 
+     * the previous frame are uploaded, while the uniform array is uploaded 
+     * again for every material. 
+     * <p>
+     * The texture is only used when the renderer supports float textures, 
+     * non-power-of-two textures and texture fetches in vertex shaders, and 
+     * when all the materials declare a BoneMatrixTexture parameter. Set to 
+     * false by default.
+     * 
+     * @see #isBoneTextureUsed() 
+     */
+    public void setBoneTexturePreferred(boolean preferred) {
+        boneTextureDesired = preferred;
+        boneTextureTested = false;
+    }
+
+    /**
+     * @return True if a bone matrix texture is preferred to a uniform array.
+     * 
+     * @see #setBoneTexturePreferred(boolean) 
+     */
+    public boolean isBoneTexturePreferred() {
+        return boneTextureDesired;
+    }
+
+    /**
+     * @return True if hardware skinning currently gets the bone matrices 
+     * from a texture.
+     */
+    public boolean isBoneTextureUsed() {
+        return hwSkinningEnabled && bonePalette != null;
+    }
+
+    /**
+     * Sets an executor used when software skinning is in effect. Large meshes
+     * are then split into vertex ranges that are skinned concurrently by the
+     * executor, the render thread waits for all of them to complete.
+     * <p>
+     * The executor is not shut down by this control.
+     * 
+     * @param executor the executor, or null to skin on the render thread 
+     * (the default)
+     */
+    public void setSoftwareSkinningExecutor(ExecutorService executor) {
+        this.skinningExecutor = executor;
+    }
+
+    /**
+     * @return The executor used for software skinning, or null.
+     * 
+     * @see #setSoftwareSkinningExecutor(java.util.concurrent.ExecutorService) 
+     */
+    public ExecutorService getSoftwareSkinningExecutor() {
+        return skinningExecutor;
+    }
     
     /**
      * Creates a skeleton control. The list of targets will be acquired
@@ -213,6 +386,7 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
                 if (mesh.isAnimated()) {
                     targets.add(mesh);
                     materials.add(geom.getMaterial());
+                    addTargetMaterial(geom.getMaterial());
                 }
             } else if (child instanceof Node) {
                 findTargets((Node) child);
@@ -226,21 +400,65 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         updateTargetsAndMaterials(spatial);
     }
 
-    private void controlRenderSoftware() {
-        resetToBind(); // reset morph meshes to bind pose
+    /**
+     * Called by {@link AnimEvaluationStage} after it computed the skinning 
+     * matrices of the skeleton for this frame.
+     */
+    void skinningMatricesUpdated() {
+        skinningMatricesUpdated = true;
+    }
 
-        offsetMatrices = skeleton.computeSkinningMatrices();
+    private Matrix4f[] getSkinningMatrices() {
+        if (skinningMatricesUpdated) {
+            return skeleton.getSkinningMatrices();
+        }
+        return skeleton.computeSkinningMatrices();
+    }
 
-        for (Mesh mesh : targets) {
+    private void controlRenderSoftware() {
+        offsetMatrices = getSkinningMatrices();
+        palette = SoftwareSkinning.packPalette(offsetMatrices, palette);
+
+        Mesh[] meshes = targets.getArray();
+        if (skinnedPalette != null
+                && Arrays.equals(palette, skinnedPalette)
+                && Arrays.equals(meshes, skinnedTargets)) {
+            // The pose did not change since the targets were last skinned.
+            return;
+        }
+
+        for (Mesh mesh : meshes) {
             // NOTE: This assumes that code higher up
             // Already ensured those targets are animated
             // otherwise a crash will happen in skin update
-            softwareSkinUpdate(mesh, offsetMatrices);
-        }     
+            Buffer bwBuff = mesh.getBuffer(Type.BoneWeight).getData();
+            Buffer biBuff = mesh.getBuffer(Type.BoneIndex).getData();
+            if (!biBuff.hasArray() || !bwBuff.hasArray()) {
+                mesh.prepareForAnim(true); // prepare for software animation
+            }
+            // skins from the bind pose, morph meshes are reset as well
+            SoftwareSkinning.skin(mesh, palette, skinningExecutor);
+        }
+
+        if (skinnedPalette == null || skinnedPalette.length != palette.length) {
+            skinnedPalette = new float[palette.length];
+        }
+        System.arraycopy(palette, 0, skinnedPalette, 0, palette.length);
+        skinnedTargets = meshes.clone();
     }
     
-    private void controlRenderHardware() {
-        offsetMatrices = skeleton.computeSkinningMatrices();
+    private void controlRenderHardware(RenderManager rm) {
+        offsetMatrices = getSkinningMatrices();
+        if (isBoneTextureSupported(rm)) {
+            if (bonePalette == null) {
+                switchToBoneTexture();
+            }
+            controlRenderBoneTexture(rm);
+            return;
+        } else if (bonePalette != null) {
+            switchToBoneUniforms();
+        }
+
         for (Material m : materials) {
             MatParam currentParam = m.getParam("BoneMatrices");
 
@@ -261,6 +479,24 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         }
     }
 
+    private void controlRenderBoneTexture(RenderManager rm) {
+        Texture bones = bonePalette.getTexture();
+        for (Material m : materials) {
+            MatParam currentParam = m.getParam("BoneMatrixTexture");
+            if (currentParam == null) {
+                // material of a mesh added since the texture was set up
+                m.setTexture("BoneMatrixTexture", bones);
+            } else if (currentParam.getValue() != bones) {
+                throw new UnsupportedOperationException(
+                        "Material instances cannot be shared when hardware skinning is used. " +
+                        "Ensure all models use unique material instances."
+                );
+            }
+        }
+        palette = SoftwareSkinning.packPalette(offsetMatrices, palette);
+        bonePalette.update(palette, rm.getRenderer());
+    }
+
     
     @Override
     protected void controlRender(RenderManager rm, ViewPort vp) {
@@ -291,7 +527,7 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
             }
 
             if (hwSkinningEnabled) {
-                controlRenderHardware();
+                controlRenderHardware(rm);
             } else {
                 controlRenderSoftware();
             }
@@ -303,48 +539,9 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     @Override
     protected void controlUpdate(float tpf) {
         wasMeshUpdated = false;
+        skinningMatricesUpdated = false;
      }
 
-    //only do this for software updates
-    void resetToBind() {
-        for (Mesh mesh : targets) {
-            if (mesh.isAnimated()) {
-                Buffer bwBuff = mesh.getBuffer(Type.BoneWeight).getData();
-                Buffer biBuff = mesh.getBuffer(Type.BoneIndex).getData();
-                if (!biBuff.hasArray() || !bwBuff.hasArray()) {
-                    mesh.prepareForAnim(true); // prepare for software animation
-                }
-                VertexBuffer bindPos = mesh.getBuffer(Type.BindPosePosition);
-                VertexBuffer bindNorm = mesh.getBuffer(Type.BindPoseNormal);
-                VertexBuffer pos = mesh.getBuffer(Type.Position);
-                VertexBuffer norm = mesh.getBuffer(Type.Normal);
-                FloatBuffer pb = (FloatBuffer) pos.getData();
-                FloatBuffer nb = (FloatBuffer) norm.getData();
-                FloatBuffer bpb = (FloatBuffer) bindPos.getData();
-                FloatBuffer bnb = (FloatBuffer) bindNorm.getData();
-                pb.clear();
-                nb.clear();
-                bpb.clear();
-                bnb.clear();
-
-                //reseting bind tangents if there is a bind tangent buffer
-                VertexBuffer bindTangents = mesh.getBuffer(Type.BindPoseTangent);
-                if (bindTangents != null) {
-                    VertexBuffer tangents = mesh.getBuffer(Type.Tangent);
-                    FloatBuffer tb = (FloatBuffer) tangents.getData();
-                    FloatBuffer btb = (FloatBuffer) bindTangents.getData();
-                    tb.clear();
-                    btb.clear();
-                    tb.put(btb).clear();
-                }
-
-
-                pb.put(bpb).clear();
-                nb.put(bnb).clear();
-            }
-        }
-    }
-
     public Control cloneForSpatial(Spatial spatial) {
         Node clonedNode = (Node) spatial;
         SkeletonControl clone = new SkeletonControl();
@@ -362,6 +559,8 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         clone.hwSkinningEnabled = this.hwSkinningEnabled;
         clone.hwSkinningSupported = this.hwSkinningSupported;
         clone.hwSkinningTested = this.hwSkinningTested;
+        clone.skinningExecutor = this.skinningExecutor;
+        clone.boneTextureDesired = this.boneTextureDesired;
         
         clone.setSpatial(clonedNode);
 
@@ -421,282 +620,6 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         return targets.toArray(new Mesh[targets.size()]);
     }
 
-    /**
-     * Update the mesh according to the given transformation matrices
-     *
-     * @param mesh then mesh
-     * @param offsetMatrices the transformation matrices to apply
-     */
-    private void softwareSkinUpdate(Mesh mesh, Matrix4f[] offsetMatrices) {
-
-        VertexBuffer tb = mesh.getBuffer(Type.Tangent);
-        if (tb == null) {
-            //if there are no tangents use the classic skinning
-            applySkinning(mesh, offsetMatrices);
-        } else {
-            //if there are tangents use the skinning with tangents
-            applySkinningTangents(mesh, offsetMatrices, tb);
-        }
-
-
-    }
-
-    /**
-     * Method to apply skinning transforms to a mesh's buffers
-     *
-     * @param mesh the mesh
-     * @param offsetMatrices the offset matices to apply
-     */
-    private void applySkinning(Mesh mesh, Matrix4f[] offsetMatrices) {
-        int maxWeightsPerVert = mesh.getMaxNumWeights();
-        if (maxWeightsPerVert <= 0) {
-            throw new IllegalStateException("Max weights per vert is incorrectly set!");
-        }
-
-        int fourMinusMaxWeights = 4 - maxWeightsPerVert;
-
-        // NOTE: This code assumes the vertex buffer is in bind pose
-        // resetToBind() has been called this frame
-        VertexBuffer vb = mesh.getBuffer(Type.Position);
-        FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.rewind();
-
-        VertexBuffer nb = mesh.getBuffer(Type.Normal);
-        FloatBuffer fnb = (FloatBuffer) nb.getData();
-        fnb.rewind();
-
-        // get boneIndexes and weights for mesh
-        ByteBuffer ib = (ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData();
-        FloatBuffer wb = (FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData();
-
-        ib.rewind();
-        wb.rewind();
-
-        float[] weights = wb.array();
-        byte[] indices = ib.array();
-        int idxWeights = 0;
-
-        TempVars vars = TempVars.get();
-
-        float[] posBuf = vars.skinPositions;
-        float[] normBuf = vars.skinNormals;
-
-        int iterations = (int) FastMath.ceil(fvb.limit() / ((float) posBuf.length));
-        int bufLength = posBuf.length;
-        for (int i = iterations - 1; i >= 0; i--) {
-            // read next set of positions and normals from native buffer
-            bufLength = Math.min(posBuf.length, fvb.remaining());
-            fvb.get(posBuf, 0, bufLength);
-            fnb.get(normBuf, 0, bufLength);
-            int verts = bufLength / 3;
-            int idxPositions = 0;
-
-            // iterate vertices and apply skinning transform for each effecting bone
-            for (int vert = verts - 1; vert >= 0; vert--) {
-                // Skip this vertex if the first weight is zero.
-                if (weights[idxWeights] == 0) {
-                    idxPositions += 3;
-                    idxWeights += 4;
-                    continue;
-                }
-
-                float nmx = normBuf[idxPositions];
-                float vtx = posBuf[idxPositions++];
-                float nmy = normBuf[idxPositions];
-                float vty = posBuf[idxPositions++];
-                float nmz = normBuf[idxPositions];
-                float vtz = posBuf[idxPositions++];
-
-                float rx = 0, ry = 0, rz = 0, rnx = 0, rny = 0, rnz = 0;
-
-                for (int w = maxWeightsPerVert - 1; w >= 0; w--) {
-                    float weight = weights[idxWeights];
-                    Matrix4f mat = offsetMatrices[indices[idxWeights++] & 0xff];
-
-                    rx += (mat.m00 * vtx + mat.m01 * vty + mat.m02 * vtz + mat.m03) * weight;
-                    ry += (mat.m10 * vtx + mat.m11 * vty + mat.m12 * vtz + mat.m13) * weight;
-                    rz += (mat.m20 * vtx + mat.m21 * vty + mat.m22 * vtz + mat.m23) * weight;
-
-                    rnx += (nmx * mat.m00 + nmy * mat.m01 + nmz * mat.m02) * weight;
-                    rny += (nmx * mat.m10 + nmy * mat.m11 + nmz * mat.m12) * weight;
-                    rnz += (nmx * mat.m20 + nmy * mat.m21 + nmz * mat.m22) * weight;
-                }
-
-                idxWeights += fourMinusMaxWeights;
-
-                idxPositions -= 3;
-                normBuf[idxPositions] = rnx;
-                posBuf[idxPositions++] = rx;
-                normBuf[idxPositions] = rny;
-                posBuf[idxPositions++] = ry;
-                normBuf[idxPositions] = rnz;
-                posBuf[idxPositions++] = rz;
-            }
-
-            fvb.position(fvb.position() - bufLength);
-            fvb.put(posBuf, 0, bufLength);
-            fnb.position(fnb.position() - bufLength);
-            fnb.put(normBuf, 0, bufLength);
-        }
-
-        vars.release();
-
-        vb.updateData(fvb);
-        nb.updateData(fnb);
-
-    }
-
-    /**
-     * Specific method for skinning with tangents to avoid cluttering the
-     * classic skinning calculation with null checks that would slow down the
-     * process even if tangents don't have to be computed. Also the iteration
-     * has additional indexes since tangent has 4 components instead of 3 for
-     * pos and norm
-     *
-     * @param maxWeightsPerVert maximum number of weights per vertex
-     * @param mesh the mesh
-     * @param offsetMatrices the offsetMaytrices to apply
-     * @param tb the tangent vertexBuffer
-     */
-    private void applySkinningTangents(Mesh mesh, Matrix4f[] offsetMatrices, VertexBuffer tb) {
-        int maxWeightsPerVert = mesh.getMaxNumWeights();
-
-        if (maxWeightsPerVert <= 0) {
-            throw new IllegalStateException("Max weights per vert is incorrectly set!");
-        }
-
-        int fourMinusMaxWeights = 4 - maxWeightsPerVert;
-
-        // NOTE: This code assumes the vertex buffer is in bind pose
-        // resetToBind() has been called this frame
-        VertexBuffer vb = mesh.getBuffer(Type.Position);
-        FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.rewind();
-
-        VertexBuffer nb = mesh.getBuffer(Type.Normal);
-
-        FloatBuffer fnb = (FloatBuffer) nb.getData();
-        fnb.rewind();
-
-
-        FloatBuffer ftb = (FloatBuffer) tb.getData();
-        ftb.rewind();
-
-
-        // get boneIndexes and weights for mesh
-        ByteBuffer ib = (ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData();
-        FloatBuffer wb = (FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData();
-
-        ib.rewind();
-        wb.rewind();
-
-        float[] weights = wb.array();
-        byte[] indices = ib.array();
-        int idxWeights = 0;
-
-        TempVars vars = TempVars.get();
-
-
-        float[] posBuf = vars.skinPositions;
-        float[] normBuf = vars.skinNormals;
-        float[] tanBuf = vars.skinTangents;
-
-        int iterations = (int) FastMath.ceil(fvb.limit() / ((float) posBuf.length));
-        int bufLength = 0;
-        int tanLength = 0;
-        for (int i = iterations - 1; i >= 0; i--) {
-            // read next set of positions and normals from native buffer
-            bufLength = Math.min(posBuf.length, fvb.remaining());
-            tanLength = Math.min(tanBuf.length, ftb.remaining());
-            fvb.get(posBuf, 0, bufLength);
-            fnb.get(normBuf, 0, bufLength);
-            ftb.get(tanBuf, 0, tanLength);
-            int verts = bufLength / 3;
-            int idxPositions = 0;
-            //tangents has their own index because of the 4 components
-            int idxTangents = 0;
-
-            // iterate vertices and apply skinning transform for each effecting bone
-            for (int vert = verts - 1; vert >= 0; vert--) {
-                // Skip this vertex if the first weight is zero.
-                if (weights[idxWeights] == 0) {
-                    idxTangents += 4;
-                    idxPositions += 3;
-                    idxWeights += 4;
-                    continue;
-                }
-
-                float nmx = normBuf[idxPositions];
-                float vtx = posBuf[idxPositions++];
-                float nmy = normBuf[idxPositions];
-                float vty = posBuf[idxPositions++];
-                float nmz = normBuf[idxPositions];
-                float vtz = posBuf[idxPositions++];
-
-                float tnx = tanBuf[idxTangents++];
-                float tny = tanBuf[idxTangents++];
-                float tnz = tanBuf[idxTangents++];
-
-                // skipping the 4th component of the tangent since it doesn't have to be transformed
-                idxTangents++;
-
-                float rx = 0, ry = 0, rz = 0, rnx = 0, rny = 0, rnz = 0, rtx = 0, rty = 0, rtz = 0;
-
-                for (int w = maxWeightsPerVert - 1; w >= 0; w--) {
-                    float weight = weights[idxWeights];
-                    Matrix4f mat = offsetMatrices[indices[idxWeights++] & 0xff];
-
-                    rx += (mat.m00 * vtx + mat.m01 * vty + mat.m02 * vtz + mat.m03) * weight;
-                    ry += (mat.m10 * vtx + mat.m11 * vty + mat.m12 * vtz + mat.m13) * weight;
-                    rz += (mat.m20 * vtx + mat.m21 * vty + mat.m22 * vtz + mat.m23) * weight;
-
-                    rnx += (nmx * mat.m00 + nmy * mat.m01 + nmz * mat.m02) * weight;
-                    rny += (nmx * mat.m10 + nmy * mat.m11 + nmz * mat.m12) * weight;
-                    rnz += (nmx * mat.m20 + nmy * mat.m21 + nmz * mat.m22) * weight;
-
-                    rtx += (tnx * mat.m00 + tny * mat.m01 + tnz * mat.m02) * weight;
-                    rty += (tnx * mat.m10 + tny * mat.m11 + tnz * mat.m12) * weight;
-                    rtz += (tnx * mat.m20 + tny * mat.m21 + tnz * mat.m22) * weight;
-                }
-
-                idxWeights += fourMinusMaxWeights;
-
-                idxPositions -= 3;
-
-                normBuf[idxPositions] = rnx;
-                posBuf[idxPositions++] = rx;
-                normBuf[idxPositions] = rny;
-                posBuf[idxPositions++] = ry;
-                normBuf[idxPositions] = rnz;
-                posBuf[idxPositions++] = rz;
-
-                idxTangents -= 4;
-
-                tanBuf[idxTangents++] = rtx;
-                tanBuf[idxTangents++] = rty;
-                tanBuf[idxTangents++] = rtz;
-
-                //once again skipping the 4th component of the tangent
-                idxTangents++;
-            }
-
-            fvb.position(fvb.position() - bufLength);
-            fvb.put(posBuf, 0, bufLength);
-            fnb.position(fnb.position() - bufLength);
-            fnb.put(normBuf, 0, bufLength);
-            ftb.position(ftb.position() - tanLength);
-            ftb.put(tanBuf, 0, tanLength);
-        }
-
-        vars.release();
-
-        vb.updateData(fvb);
-        nb.updateData(fnb);
-        tb.updateData(ftb);
-
-
-    }
-
     @Override
     public void write(JmeExporter ex) throws IOException {
         super.write(ex);
@@ -712,12 +635,30 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         skeleton = (Skeleton) in.readSavable("skeleton", null);
     }
 
+    private void addTargetMaterial(Material material) {
+        if (targetMaterialCount == targetMaterials.length) {
+            targetMaterials = Arrays.copyOf(targetMaterials, targetMaterialCount * 2 + 4);
+        }
+        if (targetMaterials[targetMaterialCount] != material) {
+            targetMaterials[targetMaterialCount] = material;
+            boneTextureTested = false;
+        }
+        targetMaterialCount++;
+    }
+
     private void updateTargetsAndMaterials(Spatial spatial) {
+        int previousCount = targetMaterialCount;
+        targetMaterialCount = 0;
         targets.clear();
         materials.clear();           
         if (spatial != null && spatial instanceof Node) {
             Node node = (Node) spatial;                        
             findTargets(node);
         }
+        if (targetMaterialCount < previousCount) {
+            // targets were removed
+            Arrays.fill(targetMaterials, targetMaterialCount, targetMaterials.length, null);
+            boneTextureTested = false;
+        }
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.renderer.Renderer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ColorSpace;
+import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Bone matrices of a skeleton stored in a float texture, used by 
+ * {@link SkeletonControl} for hardware skinning instead of a uniform array.
+ * <p>
+ * Each bone takes three RGBA32F texels holding the rows of the upper 3x4 
+ * part of its skinning matrix, in the layout of 
+ * {@link SoftwareSkinning#packPalette(com.jme3.math.Matrix4f[], float[]) }. 
+ * The texture is shared by all the materials of the skinned meshes, so the 
+ * matrices are uploaded once per frame rather than once per draw, and only 
+ * the range of bones that changed since the previous frame is uploaded.
+ */
+final class SkinningPalette {
+
+    /**
+     * Number of texels per bone.
+     */
+    static final int TEXELS_PER_BONE = SoftwareSkinning.PALETTE_STRIDE / 4;
+
+    private final Texture2D texture;
+    private final Image image;
+    private final FloatBuffer data;
+    private final int boneCount;
+    /**
+     * Image holding the changed range of bones for a partial upload
+     */
+    private final Image range;
+    private int uploadCount;
+    private int uploadedBoneCount;
+
+    /**
+     * Creates a palette for the given number of bones. The texture is 
+     * uploaded in full the first time it is bound.
+     * 
+     * @param boneCount the number of bones, must match NUM_BONES in the
+     * shader
+     */
+    SkinningPalette(int boneCount) {
+        this.boneCount = boneCount;
+        ByteBuffer bytes = BufferUtils.createByteBuffer(boneCount * SoftwareSkinning.PALETTE_STRIDE * 4);
+        data = bytes.asFloatBuffer();
+        image = new Image(Format.RGBA32F, boneCount * TEXELS_PER_BONE, 1, bytes, ColorSpace.Linear);
+        texture = new Texture2D(image);
+        texture.setName("BoneMatrixTexture");
+        texture.setMagFilter(Texture.MagFilter.Nearest);
+        texture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+        texture.setWrap(Texture.WrapMode.EdgeClamp);
+        range = new Image(Format.RGBA32F, 1, 1, null, ColorSpace.Linear);
+    }
+
+    Texture2D getTexture() {
+        return texture;
+    }
+
+    int getBoneCount() {
+        return boneCount;
+    }
+
+    /**
+     * @return the number of partial uploads done by 
+     * {@link #update(float[], com.jme3.renderer.Renderer) }
+     */
+    int getUploadCount() {
+        return uploadCount;
+    }
+
+    /**
+     * @return the number of bones uploaded by the partial uploads
+     */
+    int getUploadedBoneCount() {
+        return uploadedBoneCount;
+    }
+
+    /**
+     * Writes the bones of the packed palette that changed into the texture
+     * and uploads them. Must be called on the render thread.
+     * 
+     * @param palette the packed bone matrices
+     * @param renderer the renderer used to upload the texture
+     * @return the number of bones between the first and the last one that 
+     * changed
+     */
+    int update(float[] palette, Renderer renderer) {
+        int bones = Math.min(boneCount, palette.length / SoftwareSkinning.PALETTE_STRIDE);
+        int first = -1;
+        int last = -1;
+        for (int b = 0; b < bones; b++) {
+            int start = b * SoftwareSkinning.PALETTE_STRIDE;
+            int end = start + SoftwareSkinning.PALETTE_STRIDE;
+            boolean changed = false;
+            for (int i = start; i < end; i++) {
+                if (data.get(i) != palette[i]) {
+                    changed = true;
+                    break;
+                }
+            }
+            if (changed) {
+                for (int i = start; i < end; i++) {
+                    data.put(i, palette[i]);
+                }
+                if (first == -1) {
+                    first = b;
+                }
+                last = b;
+            }
+        }
+
+        if (first == -1) {
+            return 0;
+        }
+        int count = last - first + 1;
+        if (image.getId() == -1 || image.isUpdateNeeded()) {
+            // not uploaded yet, the whole image goes up when it is bound
+            image.setUpdateNeeded();
+            return count;
+        }
+
+        ByteBuffer bytes = image.getData(0).duplicate();
+        bytes.position(first * SoftwareSkinning.PALETTE_STRIDE * 4);
+        bytes.limit((last + 1) * SoftwareSkinning.PALETTE_STRIDE * 4);
+        range.setWidth(count * TEXELS_PER_BONE);
+        range.setData(0, bytes.slice());
+        renderer.modifyTexture(texture, range, first * TEXELS_PER_BONE, 0);
+        uploadCount++;
+        uploadedBoneCount += count;
+        return count;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.Matrix4f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.util.TempVars;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Software skinning of a mesh, used by {@link SkeletonControl} when hardware
+ * skinning is not available.
+ * <p>
+ * The bone matrices are packed into a flat palette of 3x4 rows and the
+ * vertices are skinned straight from the bind pose buffers, one vertex range
+ * at a time. Ranges are independent of each other, so a mesh can be split
+ * across the threads of an executor.
+ */
+final class SoftwareSkinning {
+
+    /**
+     * Number of floats per bone in a packed palette.
+     */
+    static final int PALETTE_STRIDE = 12;
+
+    /**
+     * Minimum number of vertices handled by a single task when a mesh is 
+     * skinned in parallel. Meshes smaller than twice this size are skinned 
+     * on the calling thread.
+     */
+    static final int MIN_RANGE_SIZE = 2048;
+
+    private SoftwareSkinning() {
+    }
+
+    /**
+     * Packs the upper 3x4 part of the given matrices into a palette, 
+     * row by row.
+     * 
+     * @param matrices the skinning matrices
+     * @param palette the palette to fill, or null to allocate one
+     * @return the palette
+     */
+    static float[] packPalette(Matrix4f[] matrices, float[] palette) {
+        int size = matrices.length * PALETTE_STRIDE;
+        if (palette == null || palette.length != size) {
+            palette = new float[size];
+        }
+        int idx = 0;
+        for (Matrix4f mat : matrices) {
+            palette[idx++] = mat.m00;
+            palette[idx++] = mat.m01;
+            palette[idx++] = mat.m02;
+            palette[idx++] = mat.m03;
+            palette[idx++] = mat.m10;
+            palette[idx++] = mat.m11;
+            palette[idx++] = mat.m12;
+            palette[idx++] = mat.m13;
+            palette[idx++] = mat.m20;
+            palette[idx++] = mat.m21;
+            palette[idx++] = mat.m22;
+            palette[idx++] = mat.m23;
+        }
+        return palette;
+    }
+
+    /**
+     * Skins the position, normal and (if present) tangent buffers of the mesh
+     * from its bind pose.
+     * 
+     * @param mesh the animated mesh, prepared for software animation
+     * @param palette the packed palette, see {@link #packPalette(Matrix4f[], float[]) }
+     * @param executor executor to split the mesh across, or null to skin it 
+     * on the calling thread
+     */
+    static void skin(Mesh mesh, float[] palette, ExecutorService executor) {
+        int maxWeightsPerVert = mesh.getMaxNumWeights();
+        if (maxWeightsPerVert <= 0) {
+            throw new IllegalStateException("Max weights per vert is incorrectly set!");
+        }
+
+        VertexBuffer vb = mesh.getBuffer(Type.Position);
+        VertexBuffer nb = mesh.getBuffer(Type.Normal);
+        VertexBuffer tb = mesh.getBuffer(Type.Tangent);
+        VertexBuffer bindTb = mesh.getBuffer(Type.BindPoseTangent);
+
+        final Range whole = new Range();
+        whole.palette = palette;
+        whole.maxWeights = maxWeightsPerVert;
+        whole.weights = ((FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData()).array();
+        whole.indices = ((ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData()).array();
+        whole.bindPos = (FloatBuffer) mesh.getBuffer(Type.BindPosePosition).getData();
+        whole.bindNorm = (FloatBuffer) mesh.getBuffer(Type.BindPoseNormal).getData();
+        whole.pos = (FloatBuffer) vb.getData();
+        whole.norm = (FloatBuffer) nb.getData();
+        if (tb != null && bindTb != null) {
+            whole.bindTan = (FloatBuffer) bindTb.getData();
+            whole.tan = (FloatBuffer) tb.getData();
+            whole.tanComps = tb.getNumComponents();
+        }
+
+        int vertexCount = whole.pos.capacity() / 3;
+        if (executor == null || vertexCount < MIN_RANGE_SIZE * 2) {
+            whole.split(0, vertexCount).run();
+        } else {
+            int numRanges = vertexCount / MIN_RANGE_SIZE;
+            List<Future<?>> futures = new ArrayList<Future<?>>(numRanges);
+            for (int i = 0; i < numRanges; i++) {
+                Range range = whole.split(vertexCount * i / numRanges,
+                                          vertexCount * (i + 1) / numRanges);
+                futures.add(executor.submit(range));
+            }
+            waitFor(futures);
+        }
+
+        whole.pos.clear();
+        whole.norm.clear();
+        vb.updateData(whole.pos);
+        nb.updateData(whole.norm);
+        if (whole.tan != null) {
+            whole.tan.clear();
+            tb.updateData(whole.tan);
+        }
+    }
+
+    private static void waitFor(List<Future<?>> futures) {
+        boolean interrupted = false;
+        try {
+            for (Future<?> f : futures) {
+                while (true) {
+                    try {
+                        f.get();
+                        break;
+                    } catch (InterruptedException ex) {
+                        // Ranges write into the mesh buffers, they must be
+                        // finished before returning.
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Software skinning failed", cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A range of vertices to skin. Ranges created with {@link #split(int, int) }
+     * work on their own buffer views, so ranges of the same mesh can run 
+     * concurrently.
+     */
+    private static final class Range implements Runnable {
+
+        float[] palette;
+        float[] weights;
+        byte[] indices;
+        int maxWeights;
+        int tanComps;
+        FloatBuffer bindPos, bindNorm, bindTan;
+        FloatBuffer pos, norm, tan;
+        int start, end;
+
+        Range split(int start, int end) {
+            Range range = new Range();
+            range.palette = palette;
+            range.weights = weights;
+            range.indices = indices;
+            range.maxWeights = maxWeights;
+            range.tanComps = tanComps;
+            range.bindPos = bindPos.duplicate();
+            range.bindNorm = bindNorm.duplicate();
+            range.pos = pos.duplicate();
+            range.norm = norm.duplicate();
+            if (tan != null) {
+                range.bindTan = bindTan.duplicate();
+                range.tan = tan.duplicate();
+            }
+            range.start = start;
+            range.end = end;
+            return range;
+        }
+
+        @Override
+        public void run() {
+            TempVars vars = TempVars.get();
+            try {
+                int batch = vars.skinPositions.length / 3;
+                for (int first = start; first < end; first += batch) {
+                    int count = Math.min(batch, end - first);
+                    if (tan == null) {
+                        skin(vars, first, count);
+                    } else {
+                        skinTangents(vars, first, count);
+                    }
+                }
+            } finally {
+                vars.release();
+            }
+        }
+
+        private void skin(TempVars vars, int first, int count) {
+            float[] posBuf = vars.skinPositions;
+            float[] normBuf = vars.skinNormals;
+            int length = count * 3;
+
+            bindPos.limit(bindPos.capacity()).position(first * 3);
+            bindPos.get(posBuf, 0, length);
+            bindNorm.limit(bindNorm.capacity()).position(first * 3);
+            bindNorm.get(normBuf, 0, length);
+
+            float[] palette = this.palette;
+            float[] weights = this.weights;
+            byte[] indices = this.indices;
+            int maxWeights = this.maxWeights;
+
+            int idxWeights = first * 4;
+            for (int idxPositions = 0; idxPositions < length; idxPositions += 3, idxWeights += 4) {
+                // Skip this vertex if the first weight is zero,
+                // it keeps its bind pose.
+                if (weights[idxWeights] == 0) {
+                    continue;
+                }
+
+                float vtx = posBuf[idxPositions];
+                float vty = posBuf[idxPositions + 1];
+                float vtz = posBuf[idxPositions + 2];
+                float nmx = normBuf[idxPositions];
+                float nmy = normBuf[idxPositions + 1];
+                float nmz = normBuf[idxPositions + 2];
+
+                float rx = 0, ry = 0, rz = 0, rnx = 0, rny = 0, rnz = 0;
+
+                for (int w = 0; w < maxWeights; w++) {
+                    float weight = weights[idxWeights + w];
+                    int m = (indices[idxWeights + w] & 0xff) * PALETTE_STRIDE;
+
+                    float m00 = palette[m], m01 = palette[m + 1], m02 = palette[m + 2], m03 = palette[m + 3];
+                    float m10 = palette[m + 4], m11 = palette[m + 5], m12 = palette[m + 6], m13 = palette[m + 7];
+                    float m20 = palette[m + 8], m21 = palette[m + 9], m22 = palette[m + 10], m23 = palette[m + 11];
+
+                    rx += (m00 * vtx + m01 * vty + m02 * vtz + m03) * weight;
+                    ry += (m10 * vtx + m11 * vty + m12 * vtz + m13) * weight;
+                    rz += (m20 * vtx + m21 * vty + m22 * vtz + m23) * weight;
+
+                    rnx += (nmx * m00 + nmy * m01 + nmz * m02) * weight;
+                    rny += (nmx * m10 + nmy * m11 + nmz * m12) * weight;
+                    rnz += (nmx * m20 + nmy * m21 + nmz * m22) * weight;
+                }
+
+                posBuf[idxPositions] = rx;
+                posBuf[idxPositions + 1] = ry;
+                posBuf[idxPositions + 2] = rz;
+                normBuf[idxPositions] = rnx;
+                normBuf[idxPositions + 1] = rny;
+                normBuf[idxPositions + 2] = rnz;
+            }
+
+            pos.limit(pos.capacity()).position(first * 3);
+            pos.put(posBuf, 0, length);
+            norm.limit(norm.capacity()).position(first * 3);
+            norm.put(normBuf, 0, length);
+        }
+
+        /**
+         * Same as {@link #skin(TempVars, int, int) } but also transforms the 
+         * tangents, kept separate so meshes without tangents don't pay for
+         * the extra checks.
+         */
+        private void skinTangents(TempVars vars, int first, int count) {
+            float[] posBuf = vars.skinPositions;
+            float[] normBuf = vars.skinNormals;
+            float[] tanBuf = vars.skinTangents;
+            int length = count * 3;
+
+            bindPos.limit(bindPos.capacity()).position(first * 3);
+            bindPos.get(posBuf, 0, length);
+            bindNorm.limit(bindNorm.capacity()).position(first * 3);
+            bindNorm.get(normBuf, 0, length);
+            int tanComps = this.tanComps;
+            bindTan.limit(bindTan.capacity()).position(first * tanComps);
+            bindTan.get(tanBuf, 0, count * tanComps);
+
+            float[] palette = this.palette;
+            float[] weights = this.weights;
+            byte[] indices = this.indices;
+            int maxWeights = this.maxWeights;
+
+            int idxWeights = first * 4;
+            int idxTangents = 0;
+            for (int idxPositions = 0; idxPositions < length; 
+                    idxPositions += 3, idxTangents += tanComps, idxWeights += 4) {
+                if (weights[idxWeights] == 0) {
+                    continue;
+                }
+
+                float vtx = posBuf[idxPositions];
+                float vty = posBuf[idxPositions + 1];
+                float vtz = posBuf[idxPositions + 2];
+                float nmx = normBuf[idxPositions];
+                float nmy = normBuf[idxPositions + 1];
+                float nmz = normBuf[idxPositions + 2];
+                // the 4th component of the tangent, if any, doesn't have to be transformed
+                float tnx = tanBuf[idxTangents];
+                float tny = tanBuf[idxTangents + 1];
+                float tnz = tanBuf[idxTangents + 2];
+
+                float rx = 0, ry = 0, rz = 0, rnx = 0, rny = 0, rnz = 0, rtx = 0, rty = 0, rtz = 0;
+
+                for (int w = 0; w < maxWeights; w++) {
+                    float weight = weights[idxWeights + w];
+                    int m = (indices[idxWeights + w] & 0xff) * PALETTE_STRIDE;
+
+                    float m00 = palette[m], m01 = palette[m + 1], m02 = palette[m + 2], m03 = palette[m + 3];
+                    float m10 = palette[m + 4], m11 = palette[m + 5], m12 = palette[m + 6], m13 = palette[m + 7];
+                    float m20 = palette[m + 8], m21 = palette[m + 9], m22 = palette[m + 10], m23 = palette[m + 11];
+
+                    rx += (m00 * vtx + m01 * vty + m02 * vtz + m03) * weight;
+                    ry += (m10 * vtx + m11 * vty + m12 * vtz + m13) * weight;
+                    rz += (m20 * vtx + m21 * vty + m22 * vtz + m23) * weight;
+
+                    rnx += (nmx * m00 + nmy * m01 + nmz * m02) * weight;
+                    rny += (nmx * m10 + nmy * m11 + nmz * m12) * weight;
+                    rnz += (nmx * m20 + nmy * m21 + nmz * m22) * weight;
+
+                    rtx += (tnx * m00 + tny * m01 + tnz * m02) * weight;
+                    rty += (tnx * m10 + tny * m11 + tnz * m12) * weight;
+                    rtz += (tnx * m20 + tny * m21 + tnz * m22) * weight;
+                }
+
+                posBuf[idxPositions] = rx;
+                posBuf[idxPositions + 1] = ry;
+                posBuf[idxPositions + 2] = rz;
+                normBuf[idxPositions] = rnx;
+                normBuf[idxPositions + 1] = rny;
+                normBuf[idxPositions + 2] = rnz;
+                tanBuf[idxTangents] = rtx;
+                tanBuf[idxTangents + 1] = rty;
+                tanBuf[idxTangents + 2] = rtz;
+            }
+
+            pos.limit(pos.capacity()).position(first * 3);
+            pos.put(posBuf, 0, length);
+            norm.limit(norm.capacity()).position(first * 3);
+            norm.put(normBuf, 0, length);
+            tan.limit(tan.capacity()).position(first * tanComps);
+            tan.put(tanBuf, 0, count * tanComps);
+        }
+    }
+}
@@ -69,6 +69,11 @@ public class SpatialTrack implements Track {
      */
     private float[] times;
 
+    /**
+     * Interpolate with curves through the keyframes instead of linearly.
+     */
+    private boolean curve = false;
+
     public SpatialTrack() {
     }
 
@@ -102,56 +107,8 @@ public class SpatialTrack implements Track {
         Vector3f tempV = vars.vect1;
         Vector3f tempS = vars.vect2;
         Quaternion tempQ = vars.quat1;
-        Vector3f tempV2 = vars.vect3;
-        Vector3f tempS2 = vars.vect4;
-        Quaternion tempQ2 = vars.quat2;
-        
-        int lastFrame = times.length - 1;
-        if (time < 0 || lastFrame == 0) {
-            if (rotations != null)
-                rotations.get(0, tempQ);
-            if (translations != null)
-                translations.get(0, tempV);
-            if (scales != null) {
-                scales.get(0, tempS);
-            }
-        } else if (time >= times[lastFrame]) {
-            if (rotations != null)
-                rotations.get(lastFrame, tempQ);
-            if (translations != null)
-                translations.get(lastFrame, tempV);
-            if (scales != null) {
-                scales.get(lastFrame, tempS);
-            }
-        } else {
-            int startFrame = 0;
-            int endFrame = 1;
-            // use lastFrame so we never overflow the array
-            for (int i = 0; i < lastFrame && times[i] < time; ++i) {
-                startFrame = i;
-                endFrame = i + 1;
-            }
-
-            float blend = (time - times[startFrame]) / (times[endFrame] - times[startFrame]);
-
-            if (rotations != null)
-                rotations.get(startFrame, tempQ);
-            if (translations != null)
-                translations.get(startFrame, tempV);
-            if (scales != null) {
-                scales.get(startFrame, tempS);
-            }
-            if (rotations != null)
-                rotations.get(endFrame, tempQ2);
-            if (translations != null)
-                translations.get(endFrame, tempV2);
-            if (scales != null) {
-                scales.get(endFrame, tempS2);
-            }
-            tempQ.nlerp(tempQ2, blend);
-            tempV.interpolateLocal(tempV2, blend);
-            tempS.interpolateLocal(tempS2, blend);
-        }
+        KeyframeSampler.sample(time, times, curve, translations, rotations, scales, 
+                               tempV, tempQ, tempS, vars);
         
         if (translations != null)
             spatial.setLocalTranslation(tempV);
@@ -201,6 +158,50 @@ public class SpatialTrack implements Track {
         }
     }
 
+    /**
+     * Sets the keyframes from already compacted arrays, see 
+     * {@link TrackCompressor}.
+     */
+    void setKeyframes(float[] times, CompactVector3Array translations, 
+            CompactQuaternionArray rotations, CompactVector3Array scales) {
+        this.times = times;
+        this.translations = translations;
+        this.rotations = rotations;
+        this.scales = scales;
+    }
+
+    CompactVector3Array getCompactTranslations() {
+        return translations;
+    }
+
+    CompactQuaternionArray getCompactRotations() {
+        return rotations;
+    }
+
+    CompactVector3Array getCompactScales() {
+        return scales;
+    }
+
+    /**
+     * Sets whether the transforms are interpolated along Catmull-Rom curves 
+     * through the keyframes.
+     * 
+     * @param curve true for curves, false for linear interpolation (the
+     * default)
+     * 
+     * @see BoneTrack#setCurveInterpolation(boolean) 
+     */
+    public void setCurveInterpolation(boolean curve) {
+        this.curve = curve;
+    }
+
+    /**
+     * @return True if the transforms are interpolated along curves.
+     */
+    public boolean isCurveInterpolation() {
+        return curve;
+    }
+
     /**
      * @return the array of rotations of this track
      */
@@ -255,7 +256,27 @@ public class SpatialTrack implements Track {
         Vector3f[] scalesCopy = this.getScales() == null ? null : Arrays.copyOf(this.getScales(), tablesLength);
 
         //need to use the constructor here because of the final fields used in this class
-        return new SpatialTrack(timesCopy, translationsCopy, rotationsCopy, scalesCopy);
+        SpatialTrack clone = new SpatialTrack(timesCopy, translationsCopy, rotationsCopy, scalesCopy);
+        clone.curve = curve;
+        clone.keepQuantized(translations, rotations, scales);
+        return clone;
+    }
+
+    /**
+     * Replaces the arrays created by clone() with copies of the quantized 
+     * arrays of the original track, so the clone keeps their storage.
+     */
+    private void keepQuantized(CompactVector3Array translations, 
+            CompactQuaternionArray rotations, CompactVector3Array scales) {
+        if (translations instanceof QuantizedVector3Array) {
+            this.translations = new QuantizedVector3Array(translations);
+        }
+        if (rotations instanceof QuantizedQuaternionArray) {
+            this.rotations = new QuantizedQuaternionArray(rotations);
+        }
+        if (scales instanceof QuantizedVector3Array) {
+            this.scales = new QuantizedVector3Array(scales);
+        }
     }
 	
     @Override
@@ -265,6 +286,7 @@ public class SpatialTrack implements Track {
         oc.write(rotations, "rotations", null);
         oc.write(times, "times", null);
         oc.write(scales, "scales", null);
+        oc.write(curve, "curve", false);
     }
 
     @Override
@@ -274,5 +296,6 @@ public class SpatialTrack implements Track {
         rotations = (CompactQuaternionArray) ic.readSavable("rotations", null);
         times = ic.readFloatArray("times", null);
         scales = (CompactVector3Array) ic.readSavable("scales", null);
+        curve = ic.readBoolean("curve", false);
     }
 }
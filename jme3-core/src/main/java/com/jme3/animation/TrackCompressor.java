@@ -0,0 +1,573 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compresses the keyframes of {@link BoneTrack}s and {@link SpatialTrack}s.
+ * <p>
+ * Keyframes that can be interpolated from their neighbours within the 
+ * given tolerances are removed, and the remaining values are quantized 
+ * with {@link QuantizedVector3Array} and {@link QuantizedQuaternionArray}
+ * when that stays within the tolerances as well. Optionally the tracks are 
+ * interpolated along curves through the keyframes (see 
+ * {@link BoneTrack#setCurveInterpolation(boolean)}), which usually needs 
+ * fewer keyframes for smooth motion such as motion capture.
+ * <p>
+ * The compressed tracks are regular tracks and are saved in j3o files like
+ * any other. The compressor keeps statistics of everything it compressed
+ * since the last {@link #resetStatistics()}.
+ * <p>
+ * Usage:
+ * <code><pre>
+ * TrackCompressor compressor = new TrackCompressor();
+ * compressor.setRotationTolerance(0.002f);
+ * compressor.compress(model.getControl(AnimControl.class));
+ * System.out.println(compressor.getCompressedSize() + " bytes");
+ * </pre></code>
+ */
+public class TrackCompressor {
+
+    private float translationTolerance = 0.001f;
+    private float rotationTolerance = 0.001f;
+    private float scaleTolerance = 0.001f;
+    private boolean quantize = true;
+    private boolean curves = false;
+
+    private int originalSize;
+    private int compressedSize;
+    private int originalKeyCount;
+    private int compressedKeyCount;
+    private float maxTranslationError;
+    private float maxRotationError;
+    private float maxScaleError;
+
+    /**
+     * Creates a track compressor with tolerances of 0.001 units and 
+     * radians.
+     */
+    public TrackCompressor() {
+    }
+
+    /**
+     * @param tolerance the maximum distance between a compressed and an
+     * original translation, in local units
+     */
+    public void setTranslationTolerance(float tolerance) {
+        this.translationTolerance = tolerance;
+    }
+
+    public float getTranslationTolerance() {
+        return translationTolerance;
+    }
+
+    /**
+     * @param tolerance the maximum angle between a compressed and an
+     * original rotation, in radians
+     */
+    public void setRotationTolerance(float tolerance) {
+        this.rotationTolerance = tolerance;
+    }
+
+    public float getRotationTolerance() {
+        return rotationTolerance;
+    }
+
+    /**
+     * @param tolerance the maximum distance between a compressed and an
+     * original scale
+     */
+    public void setScaleTolerance(float tolerance) {
+        this.scaleTolerance = tolerance;
+    }
+
+    public float getScaleTolerance() {
+        return scaleTolerance;
+    }
+
+    /**
+     * @param quantize true to quantize the keyframe values when the 
+     * tolerances allow it (the default)
+     */
+    public void setQuantize(boolean quantize) {
+        this.quantize = quantize;
+    }
+
+    public boolean isQuantize() {
+        return quantize;
+    }
+
+    /**
+     * @param curves true to interpolate the compressed tracks along curves,
+     * false to interpolate them linearly (the default). Tracks that do not
+     * stay within the tolerances with curves are interpolated linearly.
+     */
+    public void setCurves(boolean curves) {
+        this.curves = curves;
+    }
+
+    public boolean isCurves() {
+        return curves;
+    }
+
+    /**
+     * Compresses a bone track.
+     * 
+     * @param track the track to compress, it is not modified
+     * @return the compressed track
+     */
+    public BoneTrack compress(BoneTrack track) {
+        Keyframes keys = compress(track.getTimes(), track.getTranslations(), 
+                track.getRotations(), track.getScales(), 
+                size(track.getTimes(), track.getCompactTranslations(), 
+                     track.getCompactRotations(), track.getCompactScales()));
+        BoneTrack result = new BoneTrack(track.getTargetBoneIndex());
+        result.setKeyframes(keys.times, keys.translations, keys.rotations, keys.scales);
+        result.setCurveInterpolation(keys.curve);
+        return result;
+    }
+
+    /**
+     * Compresses a spatial track.
+     * 
+     * @param track the track to compress, it is not modified
+     * @return the compressed track
+     */
+    public SpatialTrack compress(SpatialTrack track) {
+        Keyframes keys = compress(track.getTimes(), track.getTranslations(), 
+                track.getRotations(), track.getScales(), 
+                size(track.getTimes(), track.getCompactTranslations(), 
+                     track.getCompactRotations(), track.getCompactScales()));
+        SpatialTrack result = new SpatialTrack();
+        result.setKeyframes(keys.times, keys.translations, keys.rotations, keys.scales);
+        result.setCurveInterpolation(keys.curve);
+        return result;
+    }
+
+    /**
+     * Compresses all the bone and spatial tracks of an animation. Other 
+     * tracks are kept as they are.
+     * 
+     * @param anim the animation to compress, it is not modified
+     * @return a new animation with the compressed tracks
+     */
+    public Animation compress(Animation anim) {
+        Track[] tracks = anim.getTracks();
+        Track[] result = new Track[tracks.length];
+        for (int i = 0; i < tracks.length; i++) {
+            if (tracks[i] instanceof BoneTrack) {
+                result[i] = compress((BoneTrack) tracks[i]);
+            } else if (tracks[i] instanceof SpatialTrack) {
+                result[i] = compress((SpatialTrack) tracks[i]);
+            } else {
+                result[i] = tracks[i];
+            }
+        }
+        Animation compressed = new Animation(anim.getName(), anim.getLength());
+        compressed.setTracks(result);
+        return compressed;
+    }
+
+    /**
+     * Replaces all the animations of the control with compressed ones. Note
+     * that clones of a model share the animations of the original, they 
+     * use the compressed animations as well.
+     * 
+     * @param control the control whose animations to compress
+     */
+    public void compress(AnimControl control) {
+        for (String name : new ArrayList<String>(control.getAnimationNames())) {
+            control.addAnim(compress(control.getAnim(name)));
+        }
+    }
+
+    /**
+     * @return the size in bytes of the keyframes of all tracks before 
+     * compression
+     */
+    public int getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * @return the size in bytes of the keyframes of all tracks after 
+     * compression
+     */
+    public int getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * @return the number of keyframes of all tracks before compression
+     */
+    public int getOriginalKeyCount() {
+        return originalKeyCount;
+    }
+
+    /**
+     * @return the number of keyframes of all tracks after compression
+     */
+    public int getCompressedKeyCount() {
+        return compressedKeyCount;
+    }
+
+    /**
+     * @return the largest translation error measured at the original 
+     * keyframe times and halfway between them
+     */
+    public float getMaxTranslationError() {
+        return maxTranslationError;
+    }
+
+    /**
+     * @return the largest rotation error in radians measured at the 
+     * original keyframe times and halfway between them
+     */
+    public float getMaxRotationError() {
+        return maxRotationError;
+    }
+
+    /**
+     * @return the largest scale error measured at the original keyframe
+     * times and halfway between them
+     */
+    public float getMaxScaleError() {
+        return maxScaleError;
+    }
+
+    /**
+     * Resets the sizes, keyframe counts and errors.
+     */
+    public void resetStatistics() {
+        originalSize = 0;
+        compressedSize = 0;
+        originalKeyCount = 0;
+        compressedKeyCount = 0;
+        maxTranslationError = 0;
+        maxRotationError = 0;
+        maxScaleError = 0;
+    }
+
+    private static int size(float[] times, CompactArray<?> translations, 
+            CompactArray<?> rotations, CompactArray<?> scales) {
+        int size = times.length * 4;
+        if (translations != null) {
+            size += translations.getByteSize();
+        }
+        if (rotations != null) {
+            size += rotations.getByteSize();
+        }
+        if (scales != null) {
+            size += scales.getByteSize();
+        }
+        return size;
+    }
+
+    private Keyframes compress(float[] times, Vector3f[] translations, 
+            Quaternion[] rotations, Vector3f[] scales, int size) {
+        int count = times.length;
+
+        // quantize the channels that stay within the tolerance with all keys
+        Source source = new Source(times, translations, rotations, scales);
+        if (quantize) {
+            boolean[] all = new boolean[count];
+            Arrays.fill(all, true);
+            source.quantizeT = true;
+            source.quantizeR = true;
+            source.quantizeS = true;
+            Errors errors = measure(source.build(all, false), source);
+            source.quantizeT = errors.translation <= translationTolerance;
+            source.quantizeR = errors.rotation <= rotationTolerance;
+            source.quantizeS = errors.scale <= scaleTolerance;
+        }
+
+        Keyframes keys = reduce(source, curves);
+        if (curves && !keys.errors.isWithin(this)) {
+            // curves overshoot where the original motion is not smooth,
+            // use linear interpolation for this track
+            keys = reduce(source, false);
+        }
+
+        originalSize += size;
+        compressedSize += size(keys.times, keys.translations, keys.rotations, keys.scales);
+        originalKeyCount += count;
+        compressedKeyCount += keys.times.length;
+        maxTranslationError = Math.max(maxTranslationError, keys.errors.translation);
+        maxRotationError = Math.max(maxRotationError, keys.errors.rotation);
+        maxScaleError = Math.max(maxScaleError, keys.errors.scale);
+        return keys;
+    }
+
+    /**
+     * Repeatedly adds the worst key between each pair of kept keys until
+     * the original keys and the midpoints between them are within the 
+     * tolerances, or until no key can be added.
+     */
+    private Keyframes reduce(Source source, boolean curve) {
+        int count = source.times.length;
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        while (true) {
+            Keyframes keys = source.build(keep, curve);
+            keys.errors = measure(keys, source);
+            boolean added = false;
+            int worst = -1;
+            float worstError = 1f;
+            for (int i = 1; i < count; i++) {
+                if (keep[i]) {
+                    if (worst != -1) {
+                        keep[worst] = true;
+                        added = true;
+                    }
+                    worst = -1;
+                    worstError = 1f;
+                } else if (keys.errors.relative[i] > worstError) {
+                    worst = i;
+                    worstError = keys.errors.relative[i];
+                }
+            }
+            if (!added) {
+                return keys;
+            }
+        }
+    }
+
+    /**
+     * Samples the keyframes at each original keyframe time and halfway 
+     * between them, and measures the difference to the original track. The
+     * relative error of a midpoint is attributed to the keys on both sides.
+     */
+    private Errors measure(Keyframes keys, Source source) {
+        Errors errors = new Errors(source.times.length);
+        Vector3f t = new Vector3f();
+        Quaternion r = new Quaternion();
+        Vector3f s = new Vector3f();
+        TempVars vars = TempVars.get();
+        try {
+            for (int j = 0; j < source.sampleTimes.length; j++) {
+                KeyframeSampler.sample(source.sampleTimes[j], keys.times, keys.curve, 
+                        keys.translations, keys.rotations, keys.scales, t, r, s, vars);
+                float relative = 0f;
+                if (source.translations != null) {
+                    float e = t.distance(source.sampleTranslations[j]);
+                    errors.translation = Math.max(errors.translation, e);
+                    relative = Math.max(relative, e / translationTolerance);
+                }
+                if (source.rotations != null) {
+                    float e = angle(r, source.sampleRotations[j]);
+                    errors.rotation = Math.max(errors.rotation, e);
+                    relative = Math.max(relative, e / rotationTolerance);
+                }
+                if (source.scales != null) {
+                    float e = s.distance(source.sampleScales[j]);
+                    errors.scale = Math.max(errors.scale, e);
+                    relative = Math.max(relative, e / scaleTolerance);
+                }
+                int i = j >> 1;
+                errors.relative[i] = Math.max(errors.relative[i], relative);
+                if ((j & 1) == 1) {
+                    errors.relative[i + 1] = Math.max(errors.relative[i + 1], relative);
+                }
+            }
+        } finally {
+            vars.release();
+        }
+        return errors;
+    }
+
+    /**
+     * Returns the angle between two rotations, computed from the distance
+     * between the quaternions which is more precise than the dot product
+     * for small angles.
+     */
+    private static float angle(Quaternion a, Quaternion b) {
+        float la = FastMath.sqrt(a.norm());
+        float lb = FastMath.sqrt(b.norm());
+        if (la == 0f || lb == 0f) {
+            return 0f;
+        }
+        float sign = a.dot(b) < 0 ? -1f / lb : 1f / lb;
+        float x = a.getX() / la - b.getX() * sign;
+        float y = a.getY() / la - b.getY() * sign;
+        float z = a.getZ() / la - b.getZ() * sign;
+        float w = a.getW() / la - b.getW() * sign;
+        float distance = FastMath.sqrt(x * x + y * y + z * z + w * w);
+        return 4f * FastMath.asin(Math.min(distance * 0.5f, 1f));
+    }
+
+    private static CompactVector3Array compact(Vector3f[] values, boolean quantize) {
+        CompactVector3Array array = new CompactVector3Array();
+        array.add(values);
+        array.freeze();
+        if (array.getCompactObjectSize() == values.length) {
+            // no duplicates, drop the index
+            array = new CompactVector3Array(array.getSerializedData(), null);
+        }
+        return quantize ? new QuantizedVector3Array(array) : array;
+    }
+
+    private static CompactQuaternionArray compact(Quaternion[] values, boolean quantize) {
+        CompactQuaternionArray array = new CompactQuaternionArray();
+        array.add(values);
+        array.freeze();
+        if (array.getCompactObjectSize() == values.length) {
+            // no duplicates, drop the index
+            array = new CompactQuaternionArray(array.getSerializedData(), null);
+        }
+        return quantize ? new QuantizedQuaternionArray(array) : array;
+    }
+
+    /**
+     * The original keyframes of a track, and the original track sampled at 
+     * the keyframes and halfway between them.
+     */
+    private static class Source {
+
+        final float[] times;
+        final Vector3f[] translations;
+        final Quaternion[] rotations;
+        final Vector3f[] scales;
+        final float[] sampleTimes;
+        final Vector3f[] sampleTranslations;
+        final Quaternion[] sampleRotations;
+        final Vector3f[] sampleScales;
+        boolean quantizeT;
+        boolean quantizeR;
+        boolean quantizeS;
+
+        Source(float[] times, Vector3f[] translations, Quaternion[] rotations, Vector3f[] scales) {
+            this.times = times;
+            this.translations = translations;
+            this.rotations = rotations;
+            this.scales = scales;
+
+            int count = times.length * 2 - 1;
+            sampleTimes = new float[count];
+            sampleTranslations = new Vector3f[count];
+            sampleRotations = new Quaternion[count];
+            sampleScales = new Vector3f[count];
+            for (int j = 0; j < count; j++) {
+                int i = j >> 1;
+                sampleTimes[j] = (j & 1) == 0 ? times[i] : (times[i] + times[i + 1]) * 0.5f;
+                sampleTranslations[j] = new Vector3f();
+                sampleRotations[j] = new Quaternion();
+                sampleScales[j] = new Vector3f();
+            }
+            boolean[] all = new boolean[times.length];
+            Arrays.fill(all, true);
+            Keyframes keys = build(all, false);
+            TempVars vars = TempVars.get();
+            try {
+                for (int j = 0; j < count; j++) {
+                    KeyframeSampler.sample(sampleTimes[j], keys.times, false,
+                            keys.translations, keys.rotations, keys.scales, 
+                            sampleTranslations[j], sampleRotations[j], sampleScales[j], vars);
+                }
+            } finally {
+                vars.release();
+            }
+        }
+
+        /**
+         * Builds the compact arrays of the kept keyframes.
+         */
+        Keyframes build(boolean[] keep, boolean curve) {
+            int count = 0;
+            for (boolean k : keep) {
+                if (k) {
+                    count++;
+                }
+            }
+            float[] t = new float[count];
+            Vector3f[] tr = translations != null ? new Vector3f[count] : null;
+            Quaternion[] rot = rotations != null ? new Quaternion[count] : null;
+            Vector3f[] sc = scales != null ? new Vector3f[count] : null;
+            for (int i = 0, j = 0; i < keep.length; i++) {
+                if (keep[i]) {
+                    t[j] = times[i];
+                    if (tr != null) {
+                        tr[j] = translations[i];
+                    }
+                    if (rot != null) {
+                        rot[j] = rotations[i];
+                    }
+                    if (sc != null) {
+                        sc[j] = scales[i];
+                    }
+                    j++;
+                }
+            }
+            Keyframes keys = new Keyframes();
+            keys.times = t;
+            keys.curve = curve;
+            keys.translations = tr != null ? compact(tr, quantizeT) : null;
+            keys.rotations = rot != null ? compact(rot, quantizeR) : null;
+            keys.scales = sc != null ? compact(sc, quantizeS) : null;
+            return keys;
+        }
+    }
+
+    private static class Keyframes {
+
+        float[] times;
+        boolean curve;
+        CompactVector3Array translations;
+        CompactQuaternionArray rotations;
+        CompactVector3Array scales;
+        Errors errors;
+    }
+
+    private static class Errors {
+
+        final float[] relative;
+        float translation;
+        float rotation;
+        float scale;
+
+        Errors(int count) {
+            relative = new float[count];
+        }
+
+        boolean isWithin(TrackCompressor compressor) {
+            return translation <= compressor.translationTolerance
+                    && rotation <= compressor.rotationTolerance
+                    && scale <= compressor.scaleTolerance;
+        }
+    }
+}
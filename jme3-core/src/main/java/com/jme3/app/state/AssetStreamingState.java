@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.app.state;
+
+import com.jme3.app.Application;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.AssetStreamer;
+import com.jme3.renderer.RenderManager;
+import com.jme3.scene.Spatial;
+
+/**
+ * An app state that drives an {@link AssetStreamer}: assets are loaded in 
+ * the background by priority and delivered during {@link #update(float) }
+ * within a per frame time budget. Streamed models are preloaded with
+ * {@link RenderManager#preloadScene(com.jme3.scene.Spatial) } before they are 
+ * delivered so that their buffers and textures are uploaded as part of that 
+ * budget instead of on the first frame they are rendered.
+ * <p>
+ * Requests can be made as soon as the state is created; the loading threads
+ * are started when the state is initialized and results are only delivered
+ * while it is attached and enabled.
+ */
+public class AssetStreamingState extends BaseAppState {
+
+    private final AssetStreamer streamer;
+    private RenderManager renderManager;
+    private boolean preload = true;
+
+    public AssetStreamingState(AssetManager assetManager) {
+        this(assetManager, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public AssetStreamingState(AssetManager assetManager, int threadCount) {
+        streamer = new AssetStreamer(assetManager, threadCount) {
+            @Override
+            protected void prepareAsset(Object asset) {
+                if (preload && renderManager != null && asset instanceof Spatial) {
+                    renderManager.preloadScene((Spatial) asset);
+                }
+            }
+        };
+    }
+
+    public AssetStreamer getStreamer() {
+        return streamer;
+    }
+
+    /**
+     * @see AssetStreamer#request(com.jme3.asset.AssetKey, float, com.jme3.asset.AssetStreamer.Listener) 
+     */
+    public <T> AssetStreamer.Request<T> request(AssetKey<T> key, float priority, AssetStreamer.Listener<T> listener) {
+        return streamer.request(key, priority, listener);
+    }
+
+    /**
+     * @see AssetStreamer#setFrameBudget(float) 
+     */
+    public void setFrameBudget(float millis) {
+        streamer.setFrameBudget(millis);
+    }
+
+    public float getFrameBudget() {
+        return streamer.getFrameBudget();
+    }
+
+    /**
+     * Sets whether streamed models are uploaded to the GPU before they
+     * are delivered. True by default.
+     */
+    public void setPreload(boolean preload) {
+        this.preload = preload;
+    }
+
+    public boolean isPreload() {
+        return preload;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        renderManager = app.getRenderManager();
+        streamer.start();
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        streamer.shutdown();
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    @Override
+    public void update(float tpf) {
+        streamer.update();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.app.state;
+
+import com.jme3.animation.AnimControl;
+import com.jme3.animation.AnimEvaluationStage;
+import com.jme3.app.Application;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+import java.util.List;
+
+/**
+ * An app state that drives an {@link AnimEvaluationStage}: the animations of
+ * the controls using the stage are evaluated concurrently in 
+ * {@link #render(com.jme3.renderer.RenderManager) }, after the scene update 
+ * and before the scene is rendered. Only the skeletons are changed then, 
+ * controls that also move spatials or notify listeners are evaluated during
+ * the scene update, see {@link AnimEvaluationStage}.
+ * <p>
+ * Controls can be assigned to the stage with {@link #attach(com.jme3.scene.Spatial) }
+ * or with {@link AnimControl#setEvaluationStage(com.jme3.animation.AnimEvaluationStage) }.
+ * While the state is disabled or detached, the controls are evaluated during
+ * their own update as usual.
+ */
+public class ParallelAnimationState extends BaseAppState {
+
+    private final AnimEvaluationStage stage;
+
+    public ParallelAnimationState() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelAnimationState(int threadCount) {
+        stage = new AnimEvaluationStage(threadCount);
+        stage.setEnabled(false);
+    }
+
+    public AnimEvaluationStage getStage() {
+        return stage;
+    }
+
+    /**
+     * Assigns all the animation controls in the given scene to the stage.
+     */
+    public void attach(Spatial scene) {
+        setStage(scene, stage);
+    }
+
+    /**
+     * Removes all the animation controls in the given scene from the stage.
+     */
+    public void detach(Spatial scene) {
+        setStage(scene, null);
+    }
+
+    private void setStage(Spatial scene, final AnimEvaluationStage stage) {
+        scene.depthFirstTraversal(new SceneGraphVisitor() {
+            @Override
+            public void visit(Spatial spatial) {
+                AnimControl control = spatial.getControl(AnimControl.class);
+                if (control != null) {
+                    control.setEvaluationStage(stage);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void initialize(Application app) {
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        stage.shutdown();
+    }
+
+    @Override
+    protected void onEnable() {
+        stage.setEnabled(true);
+    }
+
+    @Override
+    protected void onDisable() {
+        stage.setEnabled(false);
+    }
+
+    @Override
+    public void render(RenderManager rm) {
+        if (stage.evaluate()) {
+            // a control was evaluated here and may have moved spatials
+            updateGeometricState(rm.getPreViews());
+            updateGeometricState(rm.getMainViews());
+            updateGeometricState(rm.getPostViews());
+        }
+    }
+
+    private void updateGeometricState(List<ViewPort> viewPorts) {
+        for (int i = 0; i < viewPorts.size(); i++) {
+            List<Spatial> scenes = viewPorts.get(i).getScenes();
+            for (int j = 0; j < scenes.size(); j++) {
+                scenes.get(j).updateGeometricState();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.app.state;
+
+import com.jme3.app.Application;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.AssetStreamer;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Spatial;
+import com.jme3.texture.TextureStreamer;
+
+/**
+ * An app state that drives a {@link TextureStreamer}. Each frame the
+ * usage of the streamed textures is estimated from the scenes of all 
+ * enabled main view ports, and finer mipmap levels are loaded on a 
+ * background thread of its own {@link AssetStreamer}. Replaced images are
+ * deleted from video memory right away.
+ * <p>
+ * Textures are registered with {@link #getTextureStreamer() }.
+ */
+public class TextureStreamingState extends BaseAppState {
+
+    private final AssetStreamer streamer;
+    private final TextureStreamer textureStreamer;
+
+    public TextureStreamingState(AssetManager assetManager) {
+        this(assetManager, 1);
+    }
+
+    public TextureStreamingState(AssetManager assetManager, int threadCount) {
+        streamer = new AssetStreamer(assetManager, threadCount);
+        textureStreamer = new TextureStreamer(streamer);
+    }
+
+    public TextureStreamer getTextureStreamer() {
+        return textureStreamer;
+    }
+
+    public AssetStreamer getStreamer() {
+        return streamer;
+    }
+
+    @Override
+    protected void initialize(Application app) {
+        textureStreamer.setRenderer(app.getRenderer());
+        streamer.start();
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        streamer.shutdown();
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+
+    @Override
+    public void update(float tpf) {
+        streamer.update();
+        textureStreamer.update();
+    }
+
+    @Override
+    public void render(RenderManager rm) {
+        for (ViewPort vp : rm.getMainViews()) {
+            if (!vp.isEnabled()) {
+                continue;
+            }
+            for (Spatial scene : vp.getScenes()) {
+                textureStreamer.reportUsage(scene, vp.getCamera());
+            }
+        }
+    }
+}
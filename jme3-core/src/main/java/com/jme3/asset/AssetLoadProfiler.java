@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <code>AssetLoadProfiler</code> collects the {@link AssetLoadRecord}s of
+ * all asset requests made while it is registered with an 
+ * {@link AssetManager}, and writes them out as a report sorted by the time
+ * each request took, followed by totals per loader class.
+ * <p>
+ * Typical use is to register the profiler before a loading screen and 
+ * write the report when it ends:
+ * <pre>
+ * AssetLoadProfiler profiler = new AssetLoadProfiler();
+ * assetManager.addAssetEventListener(profiler);
+ * // ... load the level ...
+ * assetManager.removeAssetEventListener(profiler);
+ * profiler.writeReport(new FileWriter("loading.txt"), 50);
+ * </pre>
+ */
+public class AssetLoadProfiler implements AssetStatsListener {
+
+    private final List<AssetLoadRecord> records = new ArrayList<AssetLoadRecord>();
+    private final List<AssetKey<?>> missingDependencies = new ArrayList<AssetKey<?>>();
+
+    @SuppressWarnings("rawtypes")
+    public void assetLoaded(AssetKey key) {
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void assetRequested(AssetKey key) {
+    }
+
+    @SuppressWarnings("rawtypes")
+    public synchronized void assetDependencyNotFound(AssetKey parentKey, AssetKey dependentAssetKey) {
+        missingDependencies.add(dependentAssetKey);
+    }
+
+    public synchronized void assetLoadRecorded(AssetLoadRecord record) {
+        records.add(record);
+    }
+
+    /**
+     * @return A copy of the records collected so far, in completion order.
+     */
+    public synchronized List<AssetLoadRecord> getRecords() {
+        return new ArrayList<AssetLoadRecord>(records);
+    }
+
+    /**
+     * Discards all collected records.
+     */
+    public synchronized void reset() {
+        records.clear();
+        missingDependencies.clear();
+    }
+
+    /**
+     * Writes a human readable report of the collected records.
+     * 
+     * @param out The writer to write to, it is not closed.
+     * @param maxAssets The maximum number of requests to list individually,
+     * the slowest ones are listed first.
+     */
+    public void writeReport(Writer out, int maxAssets) throws IOException {
+        List<AssetLoadRecord> sorted = getRecords();
+        List<AssetKey<?>> missing;
+        synchronized (this) {
+            missing = new ArrayList<AssetKey<?>>(missingDependencies);
+        }
+        Collections.sort(sorted, new Comparator<AssetLoadRecord>() {
+            public int compare(AssetLoadRecord a, AssetLoadRecord b) {
+                return a.getTotalTime() < b.getTotalTime() ? 1
+                        : a.getTotalTime() > b.getTotalTime() ? -1 : 0;
+            }
+        });
+
+        long totalTime = 0;
+        long totalBytes = 0;
+        int hits = 0;
+        int failures = 0;
+        for (AssetLoadRecord record : sorted) {
+            if (record.getParentKey() == null) {
+                // dependencies are already part of their parent's time
+                totalTime += record.getTotalTime();
+            }
+            totalBytes += record.getBytesRead();
+            if (record.getCacheOutcome() == AssetLoadRecord.CacheOutcome.Hit) {
+                hits++;
+            }
+            if (record.isFailed()) {
+                failures++;
+            }
+        }
+
+        out.write(format("Asset loading report: %d requests (%d cache hits, %d failed), "
+                + "%.2f ms in top level requests, %d bytes read%n",
+                sorted.size(), hits, failures, totalTime / 1e6, totalBytes));
+        out.write(format("%n%10s %9s %9s %9s %9s %10s %-9s %-24s %s%n",
+                "total ms", "locate", "load", "process", "clone", "bytes", "cache", "loader", "asset"));
+        int count = Math.min(maxAssets, sorted.size());
+        for (int i = 0; i < count; i++) {
+            AssetLoadRecord record = sorted.get(i);
+            out.write(format("%10.2f %9.2f %9.2f %9.2f %9.2f %10d %-9s %-24s %s%s%n",
+                    record.getTotalTime() / 1e6,
+                    record.getLocateTime() / 1e6,
+                    record.getLoadTime() / 1e6,
+                    record.getProcessTime() / 1e6,
+                    record.getCloneTime() / 1e6,
+                    record.getBytesRead(),
+                    record.getCacheOutcome(),
+                    loaderName(record),
+                    record.getKey(),
+                    record.isFailed() ? " (failed)" : ""));
+        }
+        if (count < sorted.size()) {
+            out.write(format("... %d more%n", sorted.size() - count));
+        }
+
+        Map<String, long[]> loaders = new LinkedHashMap<String, long[]>();
+        for (AssetLoadRecord record : sorted) {
+            if (record.getLoaderClass() == null) {
+                continue;
+            }
+            long[] totals = loaders.get(loaderName(record));
+            if (totals == null) {
+                totals = new long[3];
+                loaders.put(loaderName(record), totals);
+            }
+            totals[0]++;
+            totals[1] += record.getLoadTime();
+            totals[2] += record.getBytesRead();
+        }
+        out.write(format("%n%-24s %6s %10s %12s%n", "loader", "count", "load ms", "bytes"));
+        for (Map.Entry<String, long[]> entry : loaders.entrySet()) {
+            long[] totals = entry.getValue();
+            out.write(format("%-24s %6d %10.2f %12d%n", 
+                    entry.getKey(), totals[0], totals[1] / 1e6, totals[2]));
+        }
+
+        if (!missing.isEmpty()) {
+            out.write(format("%nMissing dependencies:%n"));
+            for (AssetKey<?> key : missing) {
+                out.write(format("  %s%n", key));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes all collected records as comma separated values, one line
+     * per request in completion order, times in milliseconds.
+     * 
+     * @param out The writer to write to, it is not closed.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("asset,parent,loader,cache,locateMs,loadMs,processMs,cloneMs,totalMs,bytes,failed\n");
+        for (AssetLoadRecord record : getRecords()) {
+            out.write(format("\"%s\",\"%s\",%s,%s,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%b\n",
+                    record.getKey(),
+                    record.getParentKey() != null ? record.getParentKey() : "",
+                    record.getLoaderClass() != null ? record.getLoaderClass().getName() : "",
+                    record.getCacheOutcome(),
+                    record.getLocateTime() / 1e6,
+                    record.getLoadTime() / 1e6,
+                    record.getProcessTime() / 1e6,
+                    record.getCloneTime() / 1e6,
+                    record.getTotalTime() / 1e6,
+                    record.getBytesRead(),
+                    record.isFailed()));
+        }
+        out.flush();
+    }
+
+    private static String loaderName(AssetLoadRecord record) {
+        return record.getLoaderClass() != null ? record.getLoaderClass().getSimpleName() : "-";
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.US, format, args);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+/**
+ * <code>AssetLoadRecord</code> holds the measurements taken by the
+ * {@link DesktopAssetManager} for a single asset request. Records are
+ * delivered to every registered {@link AssetStatsListener} once the request
+ * has completed, whether it succeeded or not.
+ * <p>
+ * All times are in nanoseconds. Loading an asset also loads its
+ * dependencies, so the load time of an asset includes the time spent on
+ * the requests made for its dependencies, which are recorded separately
+ * with the top level asset as their {@link #getParentKey() parent}.
+ */
+public class AssetLoadRecord {
+
+    /**
+     * Result of looking up the asset in its cache.
+     */
+    public enum CacheOutcome {
+        /**
+         * The asset was found in the cache and was not loaded.
+         */
+        Hit,
+        /**
+         * The asset was not in the cache and had to be loaded.
+         */
+        Miss,
+        /**
+         * The asset key specifies no cache.
+         */
+        NotCached
+    }
+
+    private final AssetKey<?> key;
+    private final AssetKey<?> parentKey;
+    private final long startTime;
+    private Class<? extends AssetLoader> loaderClass;
+    private CacheOutcome cacheOutcome = CacheOutcome.NotCached;
+    private long locateTime;
+    private long loadTime;
+    private long processTime;
+    private long cloneTime;
+    private long totalTime;
+    private long bytesRead;
+    private boolean failed;
+
+    AssetLoadRecord(AssetKey<?> key, AssetKey<?> parentKey) {
+        this.key = key;
+        this.parentKey = parentKey;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * @return The key of the requested asset.
+     */
+    public AssetKey<?> getKey() {
+        return key;
+    }
+
+    /**
+     * @return The key of the top level asset that was being loaded when
+     * this asset was requested as one of its dependencies, or null if the
+     * asset was requested directly by the application.
+     */
+    public AssetKey<?> getParentKey() {
+        return parentKey;
+    }
+
+    /**
+     * @return The class of the loader that loaded the asset, or null if
+     * the asset was taken from the cache or could not be located.
+     */
+    public Class<? extends AssetLoader> getLoaderClass() {
+        return loaderClass;
+    }
+
+    public CacheOutcome getCacheOutcome() {
+        return cacheOutcome;
+    }
+
+    /**
+     * @return Time spent by the locators to find the asset.
+     */
+    public long getLocateTime() {
+        return locateTime;
+    }
+
+    /**
+     * @return Time spent inside {@link AssetLoader#load(com.jme3.asset.AssetInfo) }.
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * @return Time spent in {@link AssetProcessor#postProcess(com.jme3.asset.AssetKey, java.lang.Object) }.
+     */
+    public long getProcessTime() {
+        return processTime;
+    }
+
+    /**
+     * @return Time spent creating the clone handed out for a 
+     * {@link CloneableSmartAsset}.
+     */
+    public long getCloneTime() {
+        return cloneTime;
+    }
+
+    /**
+     * @return Time from the request to its completion.
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return Number of bytes read from the streams of the located asset.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return True if the request ended with an exception.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    void setLoaderClass(Class<? extends AssetLoader> loaderClass) {
+        this.loaderClass = loaderClass;
+    }
+
+    void setCacheOutcome(CacheOutcome cacheOutcome) {
+        this.cacheOutcome = cacheOutcome;
+    }
+
+    void setLocateTime(long locateTime) {
+        this.locateTime = locateTime;
+    }
+
+    void setLoadTime(long loadTime) {
+        this.loadTime = loadTime;
+    }
+
+    void setProcessTime(long processTime) {
+        this.processTime = processTime;
+    }
+
+    void setCloneTime(long cloneTime) {
+        this.cloneTime = cloneTime;
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    void finish(boolean failed) {
+        this.failed = failed;
+        this.totalTime = System.nanoTime() - startTime;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[key=" + key
+                + ", cache=" + cacheOutcome
+                + ", total=" + totalTime / 1000000f + " ms"
+                + ", bytes=" + bytesRead
+                + (failed ? ", failed" : "") + "]";
+    }
+}
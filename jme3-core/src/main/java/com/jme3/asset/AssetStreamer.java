@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>AssetStreamer</code> loads assets in the background in order of 
+ * priority, and hands the results to the application on the render thread
+ * within a time budget per frame.
+ * <p>
+ * Requests with a lower priority value are loaded first, so the distance 
+ * of the object to the camera can be used directly as priority. The 
+ * priority of a request can be changed while it waits to be loaded, and a 
+ * request can be cancelled at any time before its result is delivered.
+ * <p>
+ * Loaded assets are delivered to their {@link Listener} from 
+ * {@link #update() }, which must be called once per frame from the render 
+ * thread, for example through {@link com.jme3.app.state.AssetStreamingState}.
+ * Each call delivers results, most important first, until the
+ * {@link #setFrameBudget(float) frame budget} is used up.
+ * <p>
+ * The loading threads are started by {@link #start() }, requests made 
+ * before that wait in the queue.
+ */
+public class AssetStreamer {
+
+    private static final Logger logger = Logger.getLogger(AssetStreamer.class.getName());
+
+    /**
+     * Receives the results of streamed requests on the render thread.
+     */
+    public interface Listener<T> {
+
+        /**
+         * Called when the requested asset has been loaded.
+         */
+        public void assetStreamed(Request<T> request, T asset);
+
+        /**
+         * Called when the requested asset could not be loaded.
+         */
+        public void assetFailed(Request<T> request, Throwable error);
+    }
+
+    /**
+     * The lifecycle of a {@link Request}.
+     */
+    public enum State {
+        /**
+         * Waiting for a loading thread.
+         */
+        Queued,
+        /**
+         * Being loaded.
+         */
+        Loading,
+        /**
+         * Loaded, waiting to be delivered on the render thread.
+         */
+        Loaded,
+        /**
+         * Delivered to the listener.
+         */
+        Delivered,
+        /**
+         * Cancelled before delivery.
+         */
+        Cancelled
+    }
+
+    /**
+     * A pending asset request, returned by 
+     * {@link AssetStreamer#request(com.jme3.asset.AssetKey, float, com.jme3.asset.AssetStreamer.Listener) }.
+     */
+    public static final class Request<T> {
+
+        private final AssetStreamer streamer;
+        private final AssetKey<T> key;
+        private final Listener<T> listener;
+        private final long sequence;
+        private volatile float priority;
+        private State state = State.Queued;
+        private T asset;
+        private Throwable error;
+
+        private Request(AssetStreamer streamer, AssetKey<T> key, float priority, Listener<T> listener, long sequence) {
+            this.streamer = streamer;
+            this.key = key;
+            this.priority = priority;
+            this.listener = listener;
+            this.sequence = sequence;
+        }
+
+        public AssetKey<T> getKey() {
+            return key;
+        }
+
+        public float getPriority() {
+            return priority;
+        }
+
+        /**
+         * Changes the priority of the request. Has an effect on the load
+         * order if the request is still queued, and on the delivery order
+         * if it is loaded but not yet delivered.
+         */
+        public void setPriority(float priority) {
+            streamer.reprioritize(this, priority);
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        /**
+         * Cancels the request. A request that is being loaded finishes 
+         * loading but its result is not delivered.
+         * 
+         * @return false if the result was already delivered.
+         */
+        public boolean cancel() {
+            return streamer.cancel(this);
+        }
+
+        @Override
+        public String toString() {
+            return "Request[key=" + key + ", priority=" + priority + ", state=" + getState() + "]";
+        }
+    }
+
+    private static final Comparator<Request<?>> PRIORITY_ORDER = new Comparator<Request<?>>() {
+        public int compare(Request<?> a, Request<?> b) {
+            int c = Float.compare(a.priority, b.priority);
+            if (c == 0) {
+                c = a.sequence < b.sequence ? -1 : a.sequence > b.sequence ? 1 : 0;
+            }
+            return c;
+        }
+    };
+
+    private final AssetManager assetManager;
+    // both queues and the priorities of the requests in them are only 
+    // accessed while holding the lock, the loading threads wait on it
+    private final Object lock = new Object();
+    private final PriorityQueue<Request<?>> queued
+            = new PriorityQueue<Request<?>>(64, PRIORITY_ORDER);
+    private final PriorityQueue<Request<?>> loaded
+            = new PriorityQueue<Request<?>>(64, PRIORITY_ORDER);
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Thread[] threads;
+    private volatile boolean running = true;
+    private boolean started = false;
+    private long frameBudget = 2000000;
+
+    /**
+     * Creates a streamer with one loading thread per available core,
+     * minus one for the render thread.
+     */
+    public AssetStreamer(AssetManager assetManager) {
+        this(assetManager, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public AssetStreamer(AssetManager assetManager, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one loading thread is required");
+        }
+        this.assetManager = assetManager;
+        this.threads = new Thread[threadCount];
+    }
+
+    /**
+     * Starts the loading threads, does nothing if they are already started.
+     * 
+     * @throws IllegalStateException If the streamer has been shut down.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (!running) {
+                throw new IllegalStateException("The streamer has been shut down");
+            }
+            if (started) {
+                return;
+            }
+            started = true;
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(new Runnable() {
+                    public void run() {
+                        loadLoop();
+                    }
+                }, "jME3-streamer-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+        }
+    }
+
+    /**
+     * Sets the time {@link #update() } may spend delivering results each 
+     * frame. At least one result is delivered per frame regardless.
+     * 
+     * @param millis the budget in milliseconds, 2 by default
+     */
+    public void setFrameBudget(float millis) {
+        frameBudget = (long) (millis * 1000000);
+    }
+
+    public float getFrameBudget() {
+        return frameBudget / 1000000f;
+    }
+
+    /**
+     * Queues an asset for loading.
+     * 
+     * @param key The key of the asset.
+     * @param priority The priority, lower values are loaded first.
+     * @param listener The listener to deliver the result to.
+     * @return The request, which can be reprioritized or cancelled.
+     */
+    public <T> Request<T> request(AssetKey<T> key, float priority, Listener<T> listener) {
+        if (key == null || listener == null) {
+            throw new IllegalArgumentException("key and listener cannot be null");
+        }
+        if (!running) {
+            throw new IllegalStateException("The streamer has been shut down");
+        }
+        Request<T> request = new Request<T>(this, key, priority, listener, nextSequence.getAndIncrement());
+        synchronized (lock) {
+            queued.add(request);
+            lock.notify();
+        }
+        return request;
+    }
+
+    /**
+     * @return The number of requests waiting for a loading thread.
+     */
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queued.size();
+        }
+    }
+
+    /**
+     * @return The number of loaded requests waiting to be delivered.
+     */
+    public int getLoadedCount() {
+        synchronized (lock) {
+            return loaded.size();
+        }
+    }
+
+    /**
+     * Delivers loaded results to their listeners until the frame budget is 
+     * used up. Must be called from the render thread.
+     * 
+     * @return The number of results delivered.
+     */
+    public int update() {
+        long start = System.nanoTime();
+        int delivered = 0;
+        do {
+            Request<?> request;
+            synchronized (lock) {
+                request = loaded.poll();
+            }
+            if (request == null) {
+                break;
+            }
+            if (deliver(request)) {
+                delivered++;
+            }
+        } while (System.nanoTime() - start < frameBudget);
+        return delivered;
+    }
+
+    /**
+     * Called on the render thread for every successfully loaded asset 
+     * before it is delivered, and counted against the frame budget. 
+     * Does nothing by default.
+     */
+    protected void prepareAsset(Object asset) {
+    }
+
+    /**
+     * Stops the loading threads. Queued requests are dropped.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            queued.clear();
+            loaded.clear();
+            lock.notifyAll();
+        }
+        for (Thread thread : threads) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private <T> boolean deliver(Request<T> request) {
+        T asset;
+        Throwable error;
+        synchronized (request) {
+            if (request.state != State.Loaded) {
+                return false;
+            }
+            request.state = State.Delivered;
+            asset = request.asset;
+            error = request.error;
+            request.asset = null;
+        }
+        if (error != null) {
+            request.listener.assetFailed(request, error);
+        } else {
+            prepareAsset(asset);
+            request.listener.assetStreamed(request, asset);
+        }
+        return true;
+    }
+
+    private <T> void load(Request<T> request) {
+        synchronized (request) {
+            if (request.state != State.Queued) {
+                return;
+            }
+            request.state = State.Loading;
+        }
+        T asset = null;
+        Throwable error = null;
+        try {
+            asset = assetManager.loadAsset(request.key);
+        } catch (Throwable t) {
+            // Errors too, such as running out of memory for one large asset,
+            // the thread goes on with the next request
+            logger.log(Level.WARNING, "Failed to stream asset " + request.key, t);
+            error = t;
+        }
+        boolean deliver;
+        synchronized (request) {
+            deliver = request.state == State.Loading;
+            if (deliver) {
+                request.state = State.Loaded;
+                request.asset = asset;
+                request.error = error;
+            }
+        }
+        if (deliver) {
+            synchronized (lock) {
+                loaded.add(request);
+            }
+        }
+    }
+
+    private void loadLoop() {
+        while (running) {
+            Request<?> request;
+            synchronized (lock) {
+                while (running && queued.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        // woken up by shutdown()
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                request = queued.poll();
+            }
+            load(request);
+        }
+    }
+
+    private void reprioritize(Request<?> request, float priority) {
+        // the queues do not reorder on their own, reinsert the request
+        synchronized (lock) {
+            if (queued.remove(request)) {
+                request.priority = priority;
+                queued.add(request);
+            } else if (loaded.remove(request)) {
+                request.priority = priority;
+                loaded.add(request);
+            } else {
+                request.priority = priority;
+            }
+        }
+    }
+
+    private boolean cancel(Request<?> request) {
+        synchronized (request) {
+            if (request.state == State.Delivered) {
+                return false;
+            }
+            request.state = State.Cancelled;
+            request.asset = null;
+        }
+        synchronized (lock) {
+            queued.remove(request);
+            loaded.remove(request);
+        }
+        return true;
+    }
+}
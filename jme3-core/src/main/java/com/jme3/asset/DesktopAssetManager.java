@@ -47,6 +47,8 @@ import com.jme3.shader.ShaderGenerator;
 import com.jme3.shader.ShaderKey;
 import com.jme3.system.JmeSystem;
 import com.jme3.texture.Texture;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -255,15 +257,30 @@ public class DesktopAssetManager implements AssetManager {
      * other error.
      */
     protected <T> T loadLocatedAsset(AssetKey<T> key, AssetInfo info, AssetProcessor proc, AssetCache cache) {
+        return loadLocatedAsset(key, info, proc, cache, null);
+    }
+
+    private <T> T loadLocatedAsset(AssetKey<T> key, AssetInfo info, AssetProcessor proc, AssetCache cache, AssetLoadRecord record) {
         AssetLoader loader = handler.aquireLoader(key);
         Object obj;
+        CountingAssetInfo countingInfo = null;
+        long time = System.nanoTime();
         try {
             handler.establishParentKey(key);
+            if (record != null) {
+                record.setLoaderClass(loader.getClass());
+                countingInfo = new CountingAssetInfo(info, record);
+                info = countingInfo;
+            }
             obj = loader.load(info);
         } catch (IOException ex) {
             throw new AssetLoadException("An exception has occured while loading asset: " + key, ex);
         } finally {
             handler.releaseParentKey(key);
+            if (record != null) {
+                countingInfo.countFileStreams();
+                record.setLoadTime(System.nanoTime() - time);
+            }
         }
         if (obj == null) {
             throw new AssetLoadException("Error occured while loading asset \""
@@ -276,7 +293,11 @@ public class DesktopAssetManager implements AssetManager {
 
             if (proc != null) {
                 // do processing on asset before caching
+                time = System.nanoTime();
                 obj = proc.postProcess(key, obj);
+                if (record != null) {
+                    record.setProcessTime(System.nanoTime() - time);
+                }
             }
 
             if (cache != null) {
@@ -341,7 +362,15 @@ public class DesktopAssetManager implements AssetManager {
         
         AssetProcessor proc = handler.getProcessor(key.getProcessorType());
         StreamAssetInfo info = new StreamAssetInfo(this, key, inputStream);
-        return loadLocatedAsset(key, info, proc, null);
+        AssetLoadRecord record = createLoadRecord(key);
+        boolean failed = true;
+        try {
+            T obj = loadLocatedAsset(key, info, proc, null, record);
+            failed = false;
+            return obj;
+        } finally {
+            notifyLoadRecorded(record, failed);
+        }
     }
     
     @Override
@@ -353,13 +382,33 @@ public class DesktopAssetManager implements AssetManager {
             listener.assetRequested(key);
         }
         
+        AssetLoadRecord record = createLoadRecord(key);
+        boolean failed = true;
+        try {
+            T obj = loadAsset(key, record);
+            failed = false;
+            return obj;
+        } finally {
+            notifyLoadRecorded(record, failed);
+        }
+    }
+
+    private <T> T loadAsset(AssetKey<T> key, AssetLoadRecord record){
         AssetCache cache = handler.getCache(key.getCacheType());
         AssetProcessor proc = handler.getProcessor(key.getProcessorType());
         
         Object obj = cache != null ? cache.getFromCache(key) : null;
+        if (record != null && cache != null) {
+            record.setCacheOutcome(obj != null ? AssetLoadRecord.CacheOutcome.Hit
+                                               : AssetLoadRecord.CacheOutcome.Miss);
+        }
         if (obj == null){
             // Asset not in cache, load it from file system.
+            long time = System.nanoTime();
             AssetInfo info = handler.tryLocate(key);
+            if (record != null) {
+                record.setLocateTime(System.nanoTime() - time);
+            }
             if (info == null){
                 if (handler.getParentKey() != null){
                     // Inform event listener that an asset has failed to load.
@@ -373,18 +422,170 @@ public class DesktopAssetManager implements AssetManager {
                 throw new AssetNotFoundException(key.toString());
             }
             
-            obj = loadLocatedAsset(key, info, proc, cache);
+            obj = loadLocatedAsset(key, info, proc, cache, record);
         }
 
         T clone = (T) obj;
         
         if (obj instanceof CloneableSmartAsset) {
+            long time = System.nanoTime();
             clone = registerAndCloneSmartAsset(key, clone, proc, cache);
+            if (record != null) {
+                record.setCloneTime(System.nanoTime() - time);
+            }
         }
         
         return clone;
     }
 
+    /**
+     * Creates the record for a request if any {@link AssetStatsListener}
+     * is registered, null otherwise.
+     */
+    private AssetLoadRecord createLoadRecord(AssetKey<?> key) {
+        for (AssetEventListener listener : eventListeners) {
+            if (listener instanceof AssetStatsListener) {
+                return new AssetLoadRecord(key, handler.getParentKey());
+            }
+        }
+        return null;
+    }
+
+    private void notifyLoadRecorded(AssetLoadRecord record, boolean failed) {
+        if (record == null) {
+            return;
+        }
+        record.finish(failed);
+        for (AssetEventListener listener : eventListeners) {
+            if (listener instanceof AssetStatsListener) {
+                ((AssetStatsListener) listener).assetLoadRecorded(record);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from the streams of the wrapped AssetInfo
+     * into an {@link AssetLoadRecord}.
+     * <p>
+     * File streams stay file streams so that loaders can still read them
+     * through their FileChannel, see {@link CountingFileInputStream}.
+     */
+    private static class CountingAssetInfo extends AssetInfo {
+
+        private final AssetInfo info;
+        private final AssetLoadRecord record;
+        private final List<CountingFileInputStream> fileStreams = new ArrayList<CountingFileInputStream>(1);
+
+        public CountingAssetInfo(AssetInfo info, AssetLoadRecord record) {
+            super(info.getManager(), info.getKey());
+            this.info = info;
+            this.record = record;
+        }
+
+        @Override
+        public InputStream openStream() {
+            InputStream in = info.openStream();
+            if (in == null) {
+                return null;
+            }
+            if (in instanceof FileInputStream) {
+                try {
+                    CountingFileInputStream fileIn = new CountingFileInputStream((FileInputStream) in, record);
+                    fileStreams.add(fileIn);
+                    return fileIn;
+                } catch (IOException ex) {
+                    logger.log(Level.FINE, "Cannot count the bytes read from " + info, ex);
+                }
+            }
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        record.addBytesRead(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0) {
+                        record.addBytesRead(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Counts the file streams the loader left open.
+         */
+        public void countFileStreams() {
+            for (CountingFileInputStream fileIn : fileStreams) {
+                fileIn.count();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return info.toString();
+        }
+    }
+
+    /**
+     * A file stream sharing the descriptor of a located file stream.
+     * <p>
+     * Reads through {@link #getChannel() } bypass the stream methods, so the 
+     * bytes read are counted from the advance of the file position instead,
+     * less the skipped bytes. They are added to the record when the stream 
+     * is closed or when the loader returns, whichever happens first.
+     */
+    private static class CountingFileInputStream extends FileInputStream {
+
+        private final FileInputStream in;
+        private final AssetLoadRecord record;
+        private final long start;
+        private long skipped;
+        private boolean counted;
+
+        public CountingFileInputStream(FileInputStream in, AssetLoadRecord record) throws IOException {
+            super(in.getFD());
+            this.in = in;
+            this.record = record;
+            this.start = getChannel().position();
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long s = super.skip(n);
+            skipped += s;
+            return s;
+        }
+
+        void count() {
+            if (counted) {
+                return;
+            }
+            counted = true;
+            try {
+                record.addBytesRead(getChannel().position() - start - skipped);
+            } catch (IOException ex) {
+                logger.log(Level.FINE, "Cannot count the bytes read from a file stream", ex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            count();
+            try {
+                super.close();
+            } finally {
+                in.close();
+            }
+        }
+    }
+
     public Object loadAsset(String name){
         return loadAsset(new AssetKey(name));
     }
@@ -59,6 +59,7 @@ public class TextureKey extends AssetKey<Texture> {
     private boolean generateMips;
     private boolean flipY;
     private int anisotropy;
+    private int skipMipLevels;
     private Texture.Type textureTypeHint = Texture.Type.TwoDimensional;
 
     public TextureKey(String name, boolean flipY) {
@@ -94,7 +95,8 @@ public class TextureKey extends AssetKey<Texture> {
                 type = " (" + textureTypeHint.toString() + ")";
                 break;
         }
-        return name + (flipY ? " (Flipped)" : "") + type + (generateMips ? " (Mipmapped)" : "");
+        return name + (flipY ? " (Flipped)" : "") + type + (generateMips ? " (Mipmapped)" : "")
+                + (skipMipLevels > 0 ? " (Skip " + skipMipLevels + " Mips)" : "");
     }
     
     @Override
@@ -167,6 +169,30 @@ public class TextureKey extends AssetKey<Texture> {
         textureTypeHint = asTexture3D ? Type.ThreeDimensional : Type.TwoDimensional;
     }
 
+    /**
+     * @return The number of top mipmap levels the loader discards.
+     * @see #setSkipMipLevels(int) 
+     */
+    public int getSkipMipLevels() {
+        return skipMipLevels;
+    }
+
+    /**
+     * Discards the given number of top (largest) mipmap levels when 
+     * loading the texture, the smallest level is always kept. 
+     * Reduces load time and memory use for textures that are not 
+     * needed at full resolution. Only honored by loaders of formats that
+     * store a mipmap chain, such as DDS.
+     * 
+     * @param skipMipLevels The number of mipmap levels to skip, 0 by default.
+     */
+    public void setSkipMipLevels(int skipMipLevels) {
+        if (skipMipLevels < 0) {
+            throw new IllegalArgumentException("skipMipLevels cannot be negative");
+        }
+        this.skipMipLevels = skipMipLevels;
+    }
+
     /**
      * The type of texture expected to be returned.
      * 
@@ -209,6 +235,9 @@ public class TextureKey extends AssetKey<Texture> {
         if (this.textureTypeHint != other.textureTypeHint) {
             return false;
         }
+        if (this.skipMipLevels != other.skipMipLevels) {
+            return false;
+        }
         return true;
     }
 
@@ -220,6 +249,7 @@ public class TextureKey extends AssetKey<Texture> {
         hash = 17 * hash + (this.flipY ? 1 : 0);
         hash = 17 * hash + this.anisotropy;
         hash = 17 * hash + (this.textureTypeHint != null ? this.textureTypeHint.hashCode() : 0);
+        hash = 17 * hash + this.skipMipLevels;
         return hash;
     }
     
@@ -231,6 +261,7 @@ public class TextureKey extends AssetKey<Texture> {
         oc.write(generateMips, "generate_mips", false);
         oc.write(anisotropy, "anisotropy", 0);
         oc.write(textureTypeHint, "tex_type", Type.TwoDimensional);
+        oc.write(skipMipLevels, "skip_mip_levels", 0);
         
         // Backwards compat
         oc.write(textureTypeHint == Type.CubeMap, "as_cubemap", false);
@@ -243,6 +274,7 @@ public class TextureKey extends AssetKey<Texture> {
         flipY = ic.readBoolean("flip_y", false);
         generateMips = ic.readBoolean("generate_mips", false);
         anisotropy = ic.readInt("anisotropy", 0);
+        skipMipLevels = ic.readInt("skip_mip_levels", 0);
         boolean asCube = ic.readBoolean("as_cubemap", false);
         
         if (asCube) {
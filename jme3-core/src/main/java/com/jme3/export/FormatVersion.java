@@ -48,6 +48,19 @@ public final class FormatVersion {
      */
     public static final int SIGNATURE = 0x4A4D4533;
     
+    /**
+     * Flag set in the written version number of binary files whose object 
+     * data is stored in compressed chunks. Importers that do not know the
+     * flag see a version from the future and refuse to load the file.
+     */
+    public static final int FLAG_COMPRESSED = 0x10000;
+    
+    /**
+     * Mask extracting the actual version number from a written version 
+     * number that may carry flags.
+     */
+    public static final int VERSION_MASK = 0xFFFF;
+    
     private FormatVersion(){
     }
 }
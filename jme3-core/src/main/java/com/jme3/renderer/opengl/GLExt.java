@@ -49,6 +49,8 @@ public interface GLExt {
 	public static final int GL_COMPRESSED_RGBA_S3TC_DXT3_EXT = 0x83F2;
 	public static final int GL_COMPRESSED_RGBA_S3TC_DXT5_EXT = 0x83F3;
 	public static final int GL_COMPRESSED_RGB_S3TC_DXT1_EXT = 0x83F0;
+	public static final int GL_COMPRESSED_RED_RGTC1 = 0x8DBB;
+	public static final int GL_COMPRESSED_RG_RGTC2 = 0x8DBD;
 	public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT1_EXT = 0x8C4D;
 	public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT3_EXT = 0x8C4E;
 	public static final int GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT = 0x8C4F;
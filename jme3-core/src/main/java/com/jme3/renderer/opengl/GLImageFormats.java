@@ -227,6 +227,11 @@ public final class GLImageFormats {
             formatComp(formatToGL, Format.DXT5,  GLExt.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE);
         }
         
+        if (caps.contains(Caps.TextureCompressionRGTC)) {
+            formatComp(formatToGL, Format.RGTC1, GLExt.GL_COMPRESSED_RED_RGTC1, GL.GL_RED, GL.GL_UNSIGNED_BYTE);
+            formatComp(formatToGL, Format.RGTC2, GLExt.GL_COMPRESSED_RG_RGTC2,  GL3.GL_RG, GL.GL_UNSIGNED_BYTE);
+        }
+        
         if (caps.contains(Caps.TextureCompressionETC2)) {
             formatComp(formatToGL, Format.ETC1, GLExt.GL_COMPRESSED_RGB8_ETC2, GL.GL_RGB, GL.GL_UNSIGNED_BYTE);
         } else if (caps.contains(Caps.TextureCompressionETC1)) {
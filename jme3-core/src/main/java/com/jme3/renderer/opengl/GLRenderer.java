@@ -342,6 +342,10 @@ public final class GLRenderer implements Renderer {
             caps.add(Caps.TextureCompressionS3TC);
         }
 
+        if (hasExtension("GL_ARB_texture_compression_rgtc") || caps.contains(Caps.OpenGL30)) {
+            caps.add(Caps.TextureCompressionRGTC);
+        }
+
         if (hasExtension("GL_ARB_ES3_compatibility")) {
             caps.add(Caps.TextureCompressionETC2);
             caps.add(Caps.TextureCompressionETC1);
@@ -2146,6 +2150,51 @@ public final class GLRenderer implements Renderer {
         img.clearUpdateNeeded();
     }
 
+    /**
+     * Checks if only the dirty region of the image can be uploaded instead
+     * of the whole image. This requires the image to be a plain 2D 
+     * texture that was already uploaded once.
+     */
+    private boolean canUpdateTexSubImage(Image img, Texture.Type type) {
+        if (!img.hasDirtyRegion() || img.getId() == -1 || type != Texture.Type.TwoDimensional) {
+            return false;
+        }
+        Image.Format format = img.getFormat();
+        return !img.hasMipmaps() && img.getMultiSamples() <= 1
+                && !format.isCompressed() && !format.isDepthFormat()
+                && img.getData().size() == 1 && img.getData(0) != null;
+    }
+
+    /**
+     * Uploads only the dirty region of an image, regenerating mipmaps 
+     * if the texture requires them.
+     * 
+     * @see Image#setUpdateNeeded(int, int, int, int) 
+     */
+    private void updateTexSubImageData(Image img, int unit) {
+        int target = GL.GL_TEXTURE_2D;
+        bindTextureAndUnit(target, img, unit);
+
+        int x = Math.max(0, img.getDirtyX());
+        int y = Math.max(0, img.getDirtyY());
+        int width = Math.min(img.getWidth(), img.getDirtyX() + img.getDirtyWidth()) - x;
+        int height = Math.min(img.getHeight(), img.getDirtyY() + img.getDirtyHeight()) - y;
+        if (width > 0 && height > 0) {
+            texUtil.uploadSubTexture(img, target, 0, x, y, width, height, linearizeSrgbImages);
+        }
+
+        if (img.isGeneratedMipmapsRequired()) {
+            if (caps.contains(Caps.FrameBuffer) || gl2 == null) {
+                glfbo.glGenerateMipmapEXT(target);
+            }
+            // Otherwise GL_GENERATE_MIPMAP is already set on the texture 
+            // and the driver regenerates them on upload.
+            img.setMipmapsGenerated(true);
+        }
+
+        img.clearUpdateNeeded();
+    }
+
     @Override
     public void setTexture(int unit, Texture tex) {
         Image image = tex.getImage();
@@ -2167,7 +2216,11 @@ public final class GLRenderer implements Renderer {
                 scaleToPot = true;
             }
 
-            updateTexImageData(image, tex.getType(), unit, scaleToPot);
+            if (!scaleToPot && canUpdateTexSubImage(image, tex.getType())) {
+                updateTexSubImageData(image, unit);
+            } else {
+                updateTexImageData(image, tex.getType(), unit, scaleToPot);
+            }
         }
 
         int texId = image.getId();
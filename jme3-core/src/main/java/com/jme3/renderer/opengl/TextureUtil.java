@@ -37,6 +37,7 @@ import com.jme3.renderer.RendererException;
 import com.jme3.texture.Image;
 import com.jme3.texture.Image.Format;
 import com.jme3.texture.image.ColorSpace;
+import com.jme3.util.BufferUtils;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
 import java.util.logging.Level;
@@ -55,6 +56,7 @@ final class TextureUtil {
     private final GL2 gl2;
     private final GLExt glext;
     private GLImageFormat[][] formats;
+    private ByteBuffer subImageBuffer;
     
     public TextureUtil(GL gl, GL2 gl2, GLExt glext) {
         this.gl = gl;
@@ -291,7 +293,7 @@ final class TextureUtil {
         }
     }
 
-    public void uploadSubTexture(Image image, int target, int index, int x, int y, boolean linearizeSrgb) {
+    private GLImageFormat getSubTextureFormat(Image image, int target, boolean linearizeSrgb) {
         if (target != GL.GL_TEXTURE_2D || image.getDepth() > 1) {
             throw new UnsupportedOperationException("Updating non-2D texture is not supported");
         }
@@ -313,8 +315,10 @@ final class TextureUtil {
         }
         
         boolean getSrgbFormat = image.getColorSpace() == ColorSpace.sRGB && linearizeSrgb;
-        GLImageFormat oglFormat = getImageFormatWithError(jmeFormat, getSrgbFormat);
-        
+        return getImageFormatWithError(jmeFormat, getSrgbFormat);
+    }
+    
+    private ByteBuffer getSubTextureData(Image image, int index) {
         ByteBuffer data = null;
         
         if (index >= 0) {
@@ -324,6 +328,13 @@ final class TextureUtil {
         if (data == null) {
             throw new IndexOutOfBoundsException("The image index " + index + " is not valid for the given image");
         }
+        
+        return data;
+    }
+
+    public void uploadSubTexture(Image image, int target, int index, int x, int y, boolean linearizeSrgb) {
+        GLImageFormat oglFormat = getSubTextureFormat(image, target, linearizeSrgb);
+        ByteBuffer data = getSubTextureData(image, index);
 
         data.position(0);
         data.limit(data.capacity());
@@ -331,4 +342,53 @@ final class TextureUtil {
         gl.glTexSubImage2D(target, 0, x, y, image.getWidth(), image.getHeight(), 
                            oglFormat.format, oglFormat.dataType, data);
     }
+    
+    /**
+     * Uploads a rectangle of the image to the same position in the texture
+     * currently bound to the given target.
+     * <p>
+     * GL_UNPACK_ROW_LENGTH is not available on all targets, so unless the 
+     * rectangle spans whole rows, its rows are first copied into a 
+     * tightly packed buffer.
+     */
+    public void uploadSubTexture(Image image, int target, int index, int x, int y, 
+                                 int width, int height, boolean linearizeSrgb) {
+        GLImageFormat oglFormat = getSubTextureFormat(image, target, linearizeSrgb);
+        ByteBuffer data = getSubTextureData(image, index);
+        
+        int bpp = image.getFormat().getBitsPerPixel() / 8;
+        int rowSize = image.getWidth() * bpp;
+        int start = y * rowSize + x * bpp;
+        
+        if (width == image.getWidth()) {
+            data.limit(start + height * rowSize);
+            data.position(start);
+            gl.glTexSubImage2D(target, 0, x, y, width, height, 
+                               oglFormat.format, oglFormat.dataType, data);
+        } else {
+            int subRowSize = width * bpp;
+            ByteBuffer sub = getSubImageBuffer(subRowSize * height);
+            for (int j = 0; j < height; j++) {
+                data.limit(start + j * rowSize + subRowSize);
+                data.position(start + j * rowSize);
+                sub.put(data);
+            }
+            sub.flip();
+            gl.glTexSubImage2D(target, 0, x, y, width, height, 
+                               oglFormat.format, oglFormat.dataType, sub);
+        }
+        
+        data.clear();
+    }
+    
+    private ByteBuffer getSubImageBuffer(int size) {
+        if (subImageBuffer == null || subImageBuffer.capacity() < size) {
+            if (subImageBuffer != null) {
+                BufferUtils.destroyDirectBuffer(subImageBuffer);
+            }
+            subImageBuffer = BufferUtils.createByteBuffer(size);
+        }
+        subImageBuffer.clear();
+        return subImageBuffer;
+    }
 }
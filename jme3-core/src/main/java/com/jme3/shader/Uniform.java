@@ -275,6 +275,12 @@ public class Uniform extends ShaderVariable {
                 Matrix4f[] m4a = (Matrix4f[]) value;
                 if (multiData == null) {
                     multiData = BufferUtils.createFloatBuffer(m4a.length * 16);
+                } else if (!updateNeeded && varType == type 
+                        && multiData.limit() == m4a.length * 16
+                        && equals(m4a, multiData)) {
+                    // Same matrices as uploaded last time, e.g. a bone 
+                    // palette that did not change since the previous frame
+                    return;
                 } else {
                     multiData = BufferUtils.ensureLargeEnough(multiData, m4a.length * 16);
                 }
@@ -305,6 +311,22 @@ public class Uniform extends ShaderVariable {
         updateNeeded = true;
     }
 
+    /**
+     * Compares the matrices to the column major data in the buffer.
+     */
+    private static boolean equals(Matrix4f[] matrices, FloatBuffer fb) {
+        for (int i = 0, j = 0; i < matrices.length; i++, j += 16) {
+            Matrix4f m = matrices[i];
+            if (fb.get(j) != m.m00 || fb.get(j + 1) != m.m10 || fb.get(j + 2) != m.m20 || fb.get(j + 3) != m.m30
+                    || fb.get(j + 4) != m.m01 || fb.get(j + 5) != m.m11 || fb.get(j + 6) != m.m21 || fb.get(j + 7) != m.m31
+                    || fb.get(j + 8) != m.m02 || fb.get(j + 9) != m.m12 || fb.get(j + 10) != m.m22 || fb.get(j + 11) != m.m32
+                    || fb.get(j + 12) != m.m03 || fb.get(j + 13) != m.m13 || fb.get(j + 14) != m.m23 || fb.get(j + 15) != m.m33) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void setVector4Length(int length){
         if (location == -1)
             return;
@@ -299,7 +299,23 @@ public class Image extends NativeObject implements Savable /*, Cloneable*/ {
          * 
          * Requires {@link Caps#TextureCompressionETC1}.
          */
-        ETC1(4, false, true, false);
+        ETC1(4, false, true, false),
+        
+        /**
+         * RGTC compression of the red component, also known as BC4.
+         * 
+         * Requires {@link Caps#TextureCompressionRGTC}.
+         */
+        RGTC1(4, false, true, false),
+        
+        /**
+         * RGTC compression of the red and green components, also known as 
+         * BC5. Typically used for normal maps, the shader has to reconstruct
+         * the blue component.
+         * 
+         * Requires {@link Caps#TextureCompressionRGTC}.
+         */
+        RGTC2(8, false, true, false);
 
         private int bpp;
         private boolean isDepth;
@@ -375,6 +391,11 @@ public class Image extends NativeObject implements Savable /*, Cloneable*/ {
     protected boolean mipsWereGenerated = false;
     protected boolean needGeneratedMips = false;
     protected LastTextureState lastTextureState = new LastTextureState();
+    
+    // the rectangle that changed since the last upload, only valid
+    // while dirtyRegion is true, otherwise the whole image is updated
+    protected boolean dirtyRegion = false;
+    protected int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
 
     /**
      * Internal use only.
@@ -434,12 +455,97 @@ public class Image extends NativeObject implements Savable /*, Cloneable*/ {
     @Override
     public void setUpdateNeeded() {
         super.setUpdateNeeded();
+        dirtyRegion = false;
         if (isGeneratedMipmapsRequired() && !hasMipmaps()) {
             // Mipmaps are no longer valid, since the image was changed.
             setMipmapsGenerated(false);
         }
     }
     
+    /**
+     * Sets the update needed flag for a rectangle of the image only.
+     * <p>
+     * Rectangles marked before the next upload are merged into their 
+     * bounding rectangle. If the renderer supports it, only that rectangle
+     * is uploaded to VRAM instead of the whole image, which is much cheaper 
+     * for small changes to a large image, such as painting on a terrain 
+     * alpha map. If the whole image is already marked for an update, 
+     * this does nothing.
+     * 
+     * @param x The x coordinate of the first changed pixel.
+     * @param y The y coordinate of the first changed pixel.
+     * @param width The width of the changed rectangle.
+     * @param height The height of the changed rectangle.
+     */
+    public void setUpdateNeeded(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (isUpdateNeeded() && !dirtyRegion) {
+            // A full update is already pending.
+            return;
+        }
+        if (dirtyRegion) {
+            dirtyMinX = Math.min(dirtyMinX, x);
+            dirtyMinY = Math.min(dirtyMinY, y);
+            dirtyMaxX = Math.max(dirtyMaxX, x + width);
+            dirtyMaxY = Math.max(dirtyMaxY, y + height);
+        } else {
+            dirtyMinX = x;
+            dirtyMinY = y;
+            dirtyMaxX = x + width;
+            dirtyMaxY = y + height;
+        }
+        setUpdateNeeded();
+        dirtyRegion = true;
+    }
+    
+    @Override
+    public void clearUpdateNeeded() {
+        super.clearUpdateNeeded();
+        dirtyRegion = false;
+    }
+    
+    /**
+     * @return True if an update is needed only for the rectangle given by
+     * {@link #getDirtyX() }, {@link #getDirtyY() }, {@link #getDirtyWidth() }
+     * and {@link #getDirtyHeight() }, false if the whole image needs
+     * to be updated or no update is needed.
+     * 
+     * @see #setUpdateNeeded(int, int, int, int) 
+     */
+    public boolean hasDirtyRegion() {
+        return dirtyRegion && isUpdateNeeded();
+    }
+    
+    /**
+     * @return The x coordinate of the dirty rectangle.
+     */
+    public int getDirtyX() {
+        return dirtyMinX;
+    }
+    
+    /**
+     * @return The y coordinate of the dirty rectangle.
+     */
+    public int getDirtyY() {
+        return dirtyMinY;
+    }
+    
+    /**
+     * @return The width of the dirty rectangle.
+     */
+    public int getDirtyWidth() {
+        return dirtyMaxX - dirtyMinX;
+    }
+    
+    /**
+     * @return The height of the dirty rectangle.
+     */
+    public int getDirtyHeight() {
+        return dirtyMaxY - dirtyMinY;
+    }
+    
     /**
      * Determine if the image is NPOT.
      *
@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture;
+
+import com.jme3.asset.AssetStreamer;
+import com.jme3.asset.TextureKey;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.material.MatParam;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.math.FastMath;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.Renderer;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.texture.Image.Format;
+import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>TextureStreamer</code> keeps only the mipmap levels of textures 
+ * that are actually needed in memory, within a memory budget.
+ * <p>
+ * Textures are loaded normally with their top levels skipped, see
+ * {@link TextureKey#setSkipMipLevels(int) }, and then registered. That 
+ * coarse base image always stays resident. Every frame the application 
+ * reports how large the textures appear on screen, either directly with 
+ * {@link #reportUsage(com.jme3.texture.Texture, float) } or estimated from
+ * the bounds of the geometries that use them with
+ * {@link #reportUsage(com.jme3.scene.Spatial, com.jme3.renderer.Camera) }.
+ * From that {@link #update() } derives the mipmap level each texture needs,
+ * distributes the memory budget by importance, requests finer levels 
+ * through an {@link AssetStreamer} and drops levels no longer needed.
+ * Levels are dropped on the render thread by copying the remaining mipmap 
+ * chain, finer levels are loaded in the background and swapped in once
+ * the streamer delivers them.
+ * <p>
+ * All methods must be called from the render thread, and the streamer 
+ * must be updated every frame, for example through 
+ * {@link com.jme3.app.state.TextureStreamingState}.
+ */
+public class TextureStreamer {
+
+    private static final Logger logger = Logger.getLogger(TextureStreamer.class.getName());
+
+    /**
+     * The streaming state of a registered texture. Levels are counted 
+     * from the full resolution image, level 0.
+     */
+    public static final class StreamedTexture {
+
+        private final Texture texture;
+        private final TextureKey key;
+        private final int baseLevel;
+        private final int levelCount;
+        private final int fullWidth;
+        private final int fullHeight;
+        private final int layers;
+        private int residentLevel;
+        private int targetLevel;
+        private boolean ownsImage;
+        private float screenSize;
+        private float importance;
+        private long lastUsedFrame = Long.MIN_VALUE;
+        private AssetStreamer.Request<Texture> request;
+        private int requestedLevel;
+
+        private StreamedTexture(Texture texture, TextureKey key, int baseLevel) {
+            Image image = texture.getImage();
+            this.texture = texture;
+            this.key = key;
+            this.baseLevel = baseLevel;
+            this.residentLevel = baseLevel;
+            this.targetLevel = baseLevel;
+            this.levelCount = baseLevel + Math.max(1, image.getMipMapSizes() == null ? 1 : image.getMipMapSizes().length);
+            this.fullWidth = image.getWidth() << baseLevel;
+            this.fullHeight = image.getHeight() << baseLevel;
+            this.layers = image.getData().size();
+        }
+
+        public Texture getTexture() {
+            return texture;
+        }
+
+        /**
+         * @return The coarsest level, always resident.
+         */
+        public int getBaseLevel() {
+            return baseLevel;
+        }
+
+        /**
+         * @return The finest level currently in memory.
+         */
+        public int getResidentLevel() {
+            return residentLevel;
+        }
+
+        /**
+         * @return The level the texture is streamed towards, after the
+         * memory budget is applied.
+         */
+        public int getTargetLevel() {
+            return targetLevel;
+        }
+
+        /**
+         * @return True while finer levels are being loaded.
+         */
+        public boolean isLoading() {
+            return request != null;
+        }
+
+        /**
+         * @return The amount of bytes the given level and all coarser
+         * levels take.
+         */
+        public long getMemory(int level) {
+            Format format = texture.getImage().getFormat();
+            long memory = 0;
+            for (int i = level; i < levelCount; i++) {
+                int w = Math.max(fullWidth >> i, 1);
+                int h = Math.max(fullHeight >> i, 1);
+                if (format.isCompressed()) {
+                    memory += ((w + 3) / 4) * ((h + 3) / 4) * format.getBitsPerPixel() * 2;
+                } else {
+                    memory += w * h * format.getBitsPerPixel() / 8;
+                }
+            }
+            return memory * layers;
+        }
+
+        @Override
+        public String toString() {
+            return "StreamedTexture[" + texture.getName() + ", resident=" + residentLevel 
+                    + ", target=" + targetLevel + "]";
+        }
+    }
+
+    /**
+     * Key of the levels loaded by the streamer. Being of its own class it 
+     * never equals the keys of textures loaded by the application, so that 
+     * the images it loads are not shared and can be deleted when replaced.
+     */
+    private static class LevelKey extends TextureKey {
+
+        public LevelKey(TextureKey key, int level) {
+            super(key.getName(), key.isFlipY());
+            setAnisotropy(key.getAnisotropy());
+            setTextureTypeHint(key.getTextureTypeHint());
+            setSkipMipLevels(level);
+        }
+    }
+
+    private static final Comparator<StreamedTexture> IMPORTANCE_ORDER = new Comparator<StreamedTexture>() {
+        public int compare(StreamedTexture a, StreamedTexture b) {
+            return Float.compare(b.importance, a.importance);
+        }
+    };
+
+    private final AssetStreamer streamer;
+    private final IdentityHashMap<Texture, StreamedTexture> textures
+            = new IdentityHashMap<Texture, StreamedTexture>();
+    private final ArrayList<StreamedTexture> sorted = new ArrayList<StreamedTexture>();
+    private Renderer renderer;
+    private long memoryBudget = 256L * 1024 * 1024;
+    private float mipBias = 0;
+    private int evictionDelay = 60;
+    private long frame;
+
+    /**
+     * @param streamer The streamer used to load finer levels.
+     */
+    public TextureStreamer(AssetStreamer streamer) {
+        this.streamer = streamer;
+    }
+
+    /**
+     * Sets the renderer used to delete images from video memory as soon 
+     * as they are replaced. Without a renderer, replaced images are 
+     * deleted once they are garbage collected.
+     */
+    public void setRenderer(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Sets the amount of memory all registered textures may take 
+     * together. The base levels always stay resident, the remaining budget 
+     * goes to the most important textures first.
+     * 
+     * @param bytes The budget in bytes, 256 MB by default.
+     */
+    public void setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Biases the level selected for a given screen size. Positive values
+     * select coarser levels, for example to compensate for textures that 
+     * are repeated across their geometry.
+     * 
+     * @param mipBias The bias in levels, 0 by default.
+     */
+    public void setMipBias(float mipBias) {
+        this.mipBias = mipBias;
+    }
+
+    public float getMipBias() {
+        return mipBias;
+    }
+
+    /**
+     * Sets for how many frames the levels of a texture that is no longer
+     * used are kept in memory, as long as the budget allows.
+     * 
+     * @param frames The delay in frames, 60 by default.
+     */
+    public void setEvictionDelay(int frames) {
+        this.evictionDelay = frames;
+    }
+
+    public int getEvictionDelay() {
+        return evictionDelay;
+    }
+
+    /**
+     * Registers a texture for streaming. The texture must have been loaded
+     * with a {@link TextureKey}, its current image is taken as the base 
+     * level and is never dropped. Images are replaced on the texture 
+     * itself, so the same instance should be used by all materials.
+     * 
+     * @param texture The texture to stream.
+     * @return The streaming state of the texture.
+     */
+    public StreamedTexture register(Texture texture) {
+        StreamedTexture st = textures.get(texture);
+        if (st != null) {
+            return st;
+        }
+        if (!(texture.getKey() instanceof TextureKey)) {
+            throw new IllegalArgumentException("Streamed textures must be loaded with a TextureKey");
+        }
+        TextureKey key = (TextureKey) texture.getKey();
+        st = new StreamedTexture(texture, key, key.getSkipMipLevels());
+        textures.put(texture, st);
+        return st;
+    }
+
+    /**
+     * Stops streaming the texture. It keeps the levels currently resident.
+     */
+    public void unregister(Texture texture) {
+        StreamedTexture st = textures.remove(texture);
+        if (st != null && st.request != null) {
+            st.request.cancel();
+            st.request = null;
+        }
+    }
+
+    /**
+     * @return The streaming state of the texture, or null if it is not
+     * registered.
+     */
+    public StreamedTexture getStreamedTexture(Texture texture) {
+        return textures.get(texture);
+    }
+
+    public Collection<StreamedTexture> getStreamedTextures() {
+        return Collections.unmodifiableCollection(textures.values());
+    }
+
+    /**
+     * @return The amount of bytes the resident levels of all registered
+     * textures take.
+     */
+    public long getResidentMemory() {
+        long memory = 0;
+        for (StreamedTexture st : textures.values()) {
+            memory += st.getMemory(st.residentLevel);
+        }
+        return memory;
+    }
+
+    /**
+     * Reports that the texture was used this frame, covering the given
+     * amount of pixels across on screen. Multiple reports in a frame keep
+     * the largest size. Unregistered textures are ignored.
+     * 
+     * @param texture The texture.
+     * @param screenSize The size of the texture on screen in pixels.
+     */
+    public void reportUsage(Texture texture, float screenSize) {
+        StreamedTexture st = textures.get(texture);
+        if (st == null) {
+            return;
+        }
+        if (st.lastUsedFrame != frame) {
+            st.lastUsedFrame = frame;
+            st.screenSize = screenSize;
+        } else {
+            st.screenSize = Math.max(st.screenSize, screenSize);
+        }
+    }
+
+    /**
+     * Reports the usage of all textures in the materials of the visible 
+     * geometries in the scene, estimating their screen size from the 
+     * projected size of the world bound of the geometries. Assumes each
+     * texture is mapped once across its geometry, use 
+     * {@link #setMipBias(float) } to compensate for other mappings.
+     * 
+     * @param scene The scene, its world bounds must be up to date.
+     * @param cam The camera the scene is rendered with.
+     */
+    public void reportUsage(Spatial scene, final Camera cam) {
+        if (textures.isEmpty()) {
+            return;
+        }
+        final int planeState = cam.getPlaneState();
+        scene.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                Material material = geom.getMaterial();
+                BoundingVolume bound = geom.getWorldBound();
+                if (material == null || bound == null 
+                        || geom.getCullHint() == Spatial.CullHint.Always) {
+                    return;
+                }
+                cam.setPlaneState(0);
+                if (cam.contains(bound) == Camera.FrustumIntersect.Outside) {
+                    return;
+                }
+                float screenSize = getScreenSize(bound, cam);
+                for (MatParam param : material.getParams()) {
+                    if (param instanceof MatParamTexture) {
+                        reportUsage(((MatParamTexture) param).getTextureValue(), screenSize);
+                    }
+                }
+            }
+        });
+        cam.setPlaneState(planeState);
+    }
+
+    /**
+     * Estimates the size of the bound on screen in pixels.
+     */
+    private static float getScreenSize(BoundingVolume bound, Camera cam) {
+        float radius;
+        if (bound instanceof BoundingSphere) {
+            radius = ((BoundingSphere) bound).getRadius();
+        } else if (bound instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) bound;
+            radius = FastMath.sqrt(box.getXExtent() * box.getXExtent()
+                    + box.getYExtent() * box.getYExtent()
+                    + box.getZExtent() * box.getZExtent());
+        } else {
+            return cam.getHeight();
+        }
+
+        float viewHeight = cam.getFrustumTop() - cam.getFrustumBottom();
+        if (cam.isParallelProjection()) {
+            return 2 * radius * cam.getHeight() / viewHeight;
+        }
+        float distance = cam.getDirection().dot(bound.getCenter().subtract(cam.getLocation())) - radius;
+        distance = Math.max(distance, cam.getFrustumNear());
+        return 2 * radius * cam.getHeight() * cam.getFrustumNear() / (distance * viewHeight);
+    }
+
+    /**
+     * Selects the level each texture needs, applies the memory budget,
+     * drops levels that are no longer needed and requests finer levels.
+     * Must be called once per frame, after the usage was reported.
+     */
+    public void update() {
+        sorted.clear();
+        long remaining = memoryBudget;
+        for (StreamedTexture st : textures.values()) {
+            remaining -= st.getMemory(st.baseLevel);
+            st.targetLevel = st.baseLevel;
+            if (st.lastUsedFrame == frame) {
+                int size = Math.max(st.fullWidth, st.fullHeight);
+                float level = FastMath.log(size / Math.max(st.screenSize, 1f), 2) + mipBias;
+                st.targetLevel = Math.max(0, Math.min(st.baseLevel, (int) level));
+                st.importance = st.screenSize / size;
+                sorted.add(st);
+            } else if (frame - st.lastUsedFrame <= evictionDelay) {
+                st.importance = -(frame - st.lastUsedFrame);
+                sorted.add(st);
+            }
+        }
+
+        // spend the budget on the most important textures first
+        Collections.sort(sorted, IMPORTANCE_ORDER);
+        for (StreamedTexture st : sorted) {
+            long base = st.getMemory(st.baseLevel);
+            while (st.targetLevel < st.baseLevel && st.getMemory(st.targetLevel) - base > remaining) {
+                st.targetLevel++;
+            }
+            remaining -= st.getMemory(st.targetLevel) - base;
+        }
+        // then keep finer levels that are already resident while memory
+        // is left, so that they are not reloaded when needed again soon
+        for (StreamedTexture st : sorted) {
+            if (st.residentLevel < st.targetLevel) {
+                long extra = st.getMemory(st.residentLevel) - st.getMemory(st.targetLevel);
+                if (extra <= remaining) {
+                    st.targetLevel = st.residentLevel;
+                    remaining -= extra;
+                }
+            }
+        }
+        sorted.clear();
+
+        for (StreamedTexture st : textures.values()) {
+            if (st.targetLevel > st.residentLevel) {
+                dropLevels(st, st.targetLevel);
+            }
+            if (st.targetLevel < st.residentLevel) {
+                requestLevel(st, st.targetLevel);
+            } else if (st.request != null) {
+                st.request.cancel();
+                st.request = null;
+            }
+        }
+
+        frame++;
+    }
+
+    private void requestLevel(final StreamedTexture st, int level) {
+        float priority = -st.importance;
+        if (st.request != null) {
+            if (st.requestedLevel == level) {
+                st.request.setPriority(priority);
+                return;
+            }
+            st.request.cancel();
+        }
+        st.requestedLevel = level;
+        st.request = streamer.request(new LevelKey(st.key, level), priority, new AssetStreamer.Listener<Texture>() {
+            public void assetStreamed(AssetStreamer.Request<Texture> request, Texture asset) {
+                if (st.request != request) {
+                    return;
+                }
+                st.request = null;
+                int loadedLevel = ((TextureKey) request.getKey()).getSkipMipLevels();
+                if (textures.get(st.texture) == st && loadedLevel < st.residentLevel) {
+                    replaceImage(st, asset.getImage(), loadedLevel);
+                }
+            }
+
+            public void assetFailed(AssetStreamer.Request<Texture> request, Throwable error) {
+                if (st.request == request) {
+                    st.request = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the levels finer than the given level from the resident image,
+     * copying the rest of the mipmap chain into new buffers.
+     */
+    private void dropLevels(StreamedTexture st, int level) {
+        Image image = st.texture.getImage();
+        int[] sizes = image.getMipMapSizes();
+        int drop = level - st.residentLevel;
+        if (sizes == null || drop >= sizes.length) {
+            return;
+        }
+        int offset = 0;
+        for (int i = 0; i < drop; i++) {
+            offset += sizes[i];
+        }
+        int[] newSizes = new int[sizes.length - drop];
+        System.arraycopy(sizes, drop, newSizes, 0, newSizes.length);
+
+        ArrayList<ByteBuffer> data = new ArrayList<ByteBuffer>(image.getData().size());
+        for (ByteBuffer buffer : image.getData()) {
+            ByteBuffer src = buffer.duplicate();
+            src.clear();
+            src.position(offset);
+            ByteBuffer dst = BufferUtils.createByteBuffer(src.remaining());
+            dst.put(src).flip();
+            data.add(dst);
+        }
+
+        Image dropped = new Image(image.getFormat(),
+                Math.max(image.getWidth() >> drop, 1),
+                Math.max(image.getHeight() >> drop, 1),
+                image.getDepth(), data, newSizes, image.getColorSpace());
+        replaceImage(st, dropped, level);
+    }
+
+    private void replaceImage(StreamedTexture st, Image image, int level) {
+        Image old = st.texture.getImage();
+        st.texture.setImage(image);
+        if (st.ownsImage && renderer != null) {
+            renderer.deleteImage(old);
+        }
+        st.ownsImage = true;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "{0} level {1} -> {2}", 
+                    new Object[]{st.texture.getName(), st.residentLevel, level});
+        }
+        st.residentLevel = level;
+    }
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.image;
+
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses images into the block compressed formats
+ * {@link Format#DXT1}, {@link Format#DXT1A}, {@link Format#DXT3},
+ * {@link Format#DXT5}, {@link Format#RGTC1} and {@link Format#RGTC2},
+ * so that images created at runtime take a quarter to an eighth of the
+ * video memory.
+ * <p>
+ * The source can be in any format supported by {@link ImageRaster}. All
+ * its slices and mip levels are compressed, the components are taken as
+ * stored, so an sRGB image stays sRGB. RGTC formats hold the red (and
+ * green) components of the source, for example the X and Y of a normal map.
+ * <p>
+ * If an executor is set, rows of blocks are compressed on its threads.
+ * A compressor can be reused but not shared between threads while
+ * changing its settings.
+ */
+public class BlockCompressor {
+
+    /**
+     * Trade off between compression speed and quality.
+     */
+    public enum Quality {
+        /**
+         * Color endpoints from the inset bounding box of the block, alpha
+         * endpoints from its range. Several times faster than
+         * {@link #High}, suitable for textures updated every few frames.
+         */
+        Fast,
+        /**
+         * Color endpoints along the principal axis of the block, refined by
+         * least squares, and the better of both alpha modes.
+         */
+        High
+    }
+
+    /**
+     * Minimum number of blocks compressed by a task.
+     */
+    private static final int BLOCKS_PER_TASK = 1024;
+
+    private Quality quality = Quality.High;
+    private ExecutorService executor;
+
+    public BlockCompressor() {
+    }
+
+    public BlockCompressor(Quality quality, ExecutorService executor) {
+        setQuality(quality);
+        this.executor = executor;
+    }
+
+    public Quality getQuality() {
+        return quality;
+    }
+
+    public void setQuality(Quality quality) {
+        if (quality == null) {
+            throw new IllegalArgumentException("quality cannot be null");
+        }
+        this.quality = quality;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor the blocks are compressed on, null compresses on the
+     * calling thread.
+     *
+     * @param executor The executor or null
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns true if images can be compressed into the format.
+     *
+     * @param format The format to check
+     * @return true if the format is supported
+     */
+    public static boolean isFormatSupported(Format format) {
+        switch (format) {
+            case DXT1:
+            case DXT1A:
+            case DXT3:
+            case DXT5:
+            case RGTC1:
+            case RGTC2:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the size in bytes of one compressed 4x4 block.
+     */
+    private static int getBlockSize(Format format) {
+        return format == Format.DXT1 || format == Format.DXT1A || format == Format.RGTC1 ? 8 : 16;
+    }
+
+    /**
+     * Compresses the image. The source image is not modified.
+     *
+     * @param image The image to compress
+     * @param format The compressed format, see
+     * {@link #isFormatSupported(com.jme3.texture.Image.Format) }
+     * @return A new image in the given format with the same size, slices
+     * and mip levels as the source
+     */
+    public Image compress(Image image, Format format) {
+        if (!isFormatSupported(format)) {
+            throw new UnsupportedOperationException("Cannot compress to format " + format);
+        }
+        if (image.getFormat().isCompressed()) {
+            throw new UnsupportedOperationException("The image is already compressed");
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int levels = image.hasMipmaps() ? image.getMipMapSizes().length : 1;
+        int blockSize = getBlockSize(format);
+
+        int[] mipSizes = new int[levels];
+        int totalSize = 0;
+        for (int level = 0; level < levels; level++) {
+            int w = Math.max(1, width >> level);
+            int h = Math.max(1, height >> level);
+            mipSizes[level] = ((w + 3) / 4) * ((h + 3) / 4) * blockSize;
+            totalSize += mipSizes[level];
+        }
+
+        ArrayList<ByteBuffer> data = new ArrayList<ByteBuffer>();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int slice = 0; slice < image.getData().size(); slice++) {
+            ByteBuffer out = BufferUtils.createByteBuffer(totalSize);
+            data.add(out);
+            int offset = 0;
+            for (int level = 0; level < levels; level++) {
+                int blocksX = (Math.max(1, width >> level) + 3) / 4;
+                int blocksY = (Math.max(1, height >> level) + 3) / 4;
+                int rowsPerTask = Math.max(1, BLOCKS_PER_TASK / blocksX);
+                for (int row = 0; row < blocksY; row += rowsPerTask) {
+                    BlockTask task = new BlockTask(image, slice, level, format, quality,
+                                                   out, offset, row,
+                                                   Math.min(blocksY, row + rowsPerTask));
+                    if (executor == null || rowsPerTask >= blocksY) {
+                        task.run();
+                    } else {
+                        futures.add(executor.submit(task));
+                    }
+                }
+                offset += mipSizes[level];
+            }
+        }
+        waitFor(futures);
+
+        return new Image(format, width, height, image.getDepth(), data,
+                         levels > 1 ? mipSizes : null,
+                         format == Format.RGTC1 || format == Format.RGTC2
+                         ? ColorSpace.Linear : image.getColorSpace());
+    }
+
+    private static void waitFor(List<Future<?>> futures) {
+        boolean interrupted = false;
+        try {
+            for (Future<?> f : futures) {
+                while (true) {
+                    try {
+                        f.get();
+                        break;
+                    } catch (InterruptedException ex) {
+                        // Blocks are written into the result, they must be
+                        // finished before returning it.
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Block compression failed", cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Compresses a range of block rows of one slice and mip level.
+     */
+    private static final class BlockTask implements Runnable {
+
+        private final Image image;
+        private final int slice, level;
+        private final Format format;
+        private final boolean high;
+        private final ByteBuffer out;
+        private final int offset;
+        private final int firstRow, endRow;
+
+        // texels of the current block
+        private final int[] r = new int[16], g = new int[16], b = new int[16], a = new int[16];
+        private final int[] indices = new int[16];
+        private final int[] bestIndices = new int[16];
+        private final int[] palette = new int[12];
+        private final int[] alphaPalette = new int[8];
+        private final boolean[] transparentTexels = new boolean[16];
+        // endpoints in 8 bit per component space
+        private final float[] ends = new float[6];
+
+        BlockTask(Image image, int slice, int level, Format format, Quality quality,
+                  ByteBuffer out, int offset, int firstRow, int endRow) {
+            this.image = image;
+            this.slice = slice;
+            this.level = level;
+            this.format = format;
+            this.high = quality == Quality.High;
+            this.out = out;
+            this.offset = offset;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        public void run() {
+            // Some codecs read through the position of the buffer, every task
+            // needs its own view of the data.
+            ByteBuffer data = image.getData(slice);
+            Image view = new Image(image.getFormat(), image.getWidth(), image.getHeight(),
+                                   data.duplicate().order(data.order()),
+                                   image.getMipMapSizes(), image.getColorSpace());
+            ImageRaster raster = ImageRaster.create(view, 0, level, false);
+            int width = raster.getWidth();
+            int height = raster.getHeight();
+            int blocksX = (width + 3) / 4;
+            int blockSize = getBlockSize(format);
+            int[] texels = new int[width * 4];
+
+            for (int by = firstRow; by < endRow; by++) {
+                int rows = Math.min(4, height - by * 4);
+                raster.getPixels(0, by * 4, width, rows, texels, 0);
+                int pos = offset + by * blocksX * blockSize;
+                for (int bx = 0; bx < blocksX; bx++) {
+                    // edge blocks repeat the last row and column
+                    for (int i = 0; i < 16; i++) {
+                        int x = Math.min(bx * 4 + (i & 3), width - 1);
+                        int y = Math.min(i >> 2, rows - 1);
+                        int argb = texels[y * width + x];
+                        a[i] = argb >>> 24;
+                        r[i] = (argb >> 16) & 0xff;
+                        g[i] = (argb >> 8) & 0xff;
+                        b[i] = argb & 0xff;
+                    }
+                    switch (format) {
+                        case DXT1:
+                            encodeColor(pos, false, false);
+                            break;
+                        case DXT1A:
+                            encodeColor(pos, true, false);
+                            break;
+                        case DXT3:
+                            encodeExplicitAlpha(pos);
+                            encodeColor(pos + 8, false, true);
+                            break;
+                        case DXT5:
+                            encodeAlpha(a, pos);
+                            encodeColor(pos + 8, false, true);
+                            break;
+                        case RGTC1:
+                            encodeAlpha(r, pos);
+                            break;
+                        case RGTC2:
+                            encodeAlpha(r, pos);
+                            encodeAlpha(g, pos + 8);
+                            break;
+                    }
+                    pos += blockSize;
+                }
+            }
+        }
+
+        private static int to565(float red, float green, float blue) {
+            int r5 = Math.min(31, Math.max(0, (int) (red * 31f / 255f + 0.5f)));
+            int g6 = Math.min(63, Math.max(0, (int) (green * 63f / 255f + 0.5f)));
+            int b5 = Math.min(31, Math.max(0, (int) (blue * 31f / 255f + 0.5f)));
+            return (r5 << 11) | (g6 << 5) | b5;
+        }
+
+        private static void expand565(int color, int[] store, int index) {
+            int r5 = (color >> 11) & 31;
+            int g6 = (color >> 5) & 63;
+            int b5 = color & 31;
+            store[index] = (r5 << 3) | (r5 >> 2);
+            store[index + 1] = (g6 << 2) | (g6 >> 4);
+            store[index + 2] = (b5 << 3) | (b5 >> 2);
+        }
+
+        private void putShort(int pos, int value) {
+            out.put(pos, (byte) value);
+            out.put(pos + 1, (byte) (value >> 8));
+        }
+
+        private void putInt(int pos, int value) {
+            putShort(pos, value);
+            putShort(pos + 2, value >>> 16);
+        }
+
+        /**
+         * Chooses the palette entry closest to each texel and returns the
+         * total squared error. Texels marked transparent use entry 3.
+         */
+        private int assignIndices(int c0, int c1, boolean threeColor, boolean[] transparent, int[] store) {
+            expand565(c0, palette, 0);
+            expand565(c1, palette, 3);
+            for (int c = 0; c < 3; c++) {
+                if (threeColor) {
+                    palette[6 + c] = (palette[c] + palette[3 + c]) / 2;
+                } else {
+                    palette[6 + c] = (2 * palette[c] + palette[3 + c]) / 3;
+                    palette[9 + c] = (palette[c] + 2 * palette[3 + c]) / 3;
+                }
+            }
+            int entries = threeColor ? 3 : 4;
+            int error = 0;
+            for (int i = 0; i < 16; i++) {
+                if (transparent != null && transparent[i]) {
+                    store[i] = 3;
+                    continue;
+                }
+                int best = 0;
+                int bestDist = Integer.MAX_VALUE;
+                for (int e = 0; e < entries; e++) {
+                    int dr = r[i] - palette[e * 3];
+                    int dg = g[i] - palette[e * 3 + 1];
+                    int db = b[i] - palette[e * 3 + 2];
+                    int dist = dr * dr + dg * dg + db * db;
+                    if (dist < bestDist) {
+                        bestDist = dist;
+                        best = e;
+                    }
+                }
+                store[i] = best;
+                error += bestDist;
+            }
+            return error;
+        }
+
+        /**
+         * Encodes the color part of a block. DXT3 and DXT5 blocks are 
+         * always decoded with four colors, so they use any endpoint order 
+         * and equal endpoints with all four indices.
+         * 
+         * @param alpha true to use the transparent entry of DXT1A
+         * @param forceFourColor true for the color part of DXT3 and DXT5
+         */
+        private void encodeColor(int pos, boolean alpha, boolean forceFourColor) {
+            boolean[] transparent = null;
+            int opaque = 16;
+            if (alpha) {
+                for (int i = 0; i < 16; i++) {
+                    transparentTexels[i] = a[i] < 128;
+                    if (transparentTexels[i]) {
+                        transparent = transparentTexels;
+                        opaque--;
+                    }
+                }
+            }
+            if (opaque == 0) {
+                putShort(pos, 0);
+                putShort(pos + 2, 0);
+                putInt(pos + 4, -1);
+                return;
+            }
+
+            if (high) {
+                principalAxisEndpoints(transparent, ends);
+            } else {
+                boundingBoxEndpoints(transparent, ends);
+            }
+            int c0 = to565(ends[0], ends[1], ends[2]);
+            int c1 = to565(ends[3], ends[4], ends[5]);
+
+            boolean threeColor = !forceFourColor && transparent != null;
+            int bestC0 = 0, bestC1 = 0;
+            int bestError = Integer.MAX_VALUE;
+            int iterations = high && !threeColor ? 3 : 1;
+            for (int it = 0; it < iterations; it++) {
+                // order the endpoints for the wanted mode, in DXT1 equal 
+                // endpoints only work with index 0 or transparent texels
+                boolean equal = c0 == c1 && !forceFourColor;
+                if (!forceFourColor && (c0 < c1) != threeColor && c0 != c1) {
+                    int t = c0;
+                    c0 = c1;
+                    c1 = t;
+                }
+                int error = assignIndices(c0, c1, threeColor || equal, transparent, indices);
+                if (equal) {
+                    for (int i = 0; i < 16; i++) {
+                        if (indices[i] != 3) {
+                            indices[i] = 0;
+                        }
+                    }
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    bestC0 = c0;
+                    bestC1 = c1;
+                    System.arraycopy(indices, 0, bestIndices, 0, 16);
+                }
+                if (error == 0 || it == iterations - 1 || !refineEndpoints(c0, c1, ends)) {
+                    break;
+                }
+                c0 = to565(ends[0], ends[1], ends[2]);
+                c1 = to565(ends[3], ends[4], ends[5]);
+            }
+
+            putShort(pos, bestC0);
+            putShort(pos + 2, bestC1);
+            int bits = 0;
+            for (int i = 15; i >= 0; i--) {
+                bits = (bits << 2) | bestIndices[i];
+            }
+            putInt(pos + 4, bits);
+        }
+
+        private void boundingBoxEndpoints(boolean[] transparent, float[] ends) {
+            int minR = 255, minG = 255, minB = 255;
+            int maxR = 0, maxG = 0, maxB = 0;
+            for (int i = 0; i < 16; i++) {
+                if (transparent != null && transparent[i]) {
+                    continue;
+                }
+                minR = Math.min(minR, r[i]);
+                minG = Math.min(minG, g[i]);
+                minB = Math.min(minB, b[i]);
+                maxR = Math.max(maxR, r[i]);
+                maxG = Math.max(maxG, g[i]);
+                maxB = Math.max(maxB, b[i]);
+            }
+            // inset the box so the interpolated colors cover the block better
+            float insetR = (maxR - minR) / 16f;
+            float insetG = (maxG - minG) / 16f;
+            float insetB = (maxB - minB) / 16f;
+            ends[0] = maxR - insetR;
+            ends[1] = maxG - insetG;
+            ends[2] = maxB - insetB;
+            ends[3] = minR + insetR;
+            ends[4] = minG + insetG;
+            ends[5] = minB + insetB;
+        }
+
+        private void principalAxisEndpoints(boolean[] transparent, float[] ends) {
+            float meanR = 0, meanG = 0, meanB = 0;
+            int count = 0;
+            for (int i = 0; i < 16; i++) {
+                if (transparent == null || !transparent[i]) {
+                    meanR += r[i];
+                    meanG += g[i];
+                    meanB += b[i];
+                    count++;
+                }
+            }
+            meanR /= count;
+            meanG /= count;
+            meanB /= count;
+
+            float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+            for (int i = 0; i < 16; i++) {
+                if (transparent == null || !transparent[i]) {
+                    float dr = r[i] - meanR, dg = g[i] - meanG, db = b[i] - meanB;
+                    rr += dr * dr;
+                    rg += dr * dg;
+                    rb += dr * db;
+                    gg += dg * dg;
+                    gb += dg * db;
+                    bb += db * db;
+                }
+            }
+
+            // power iteration for the axis of largest variance
+            float axisR = 1, axisG = 1, axisB = 1;
+            for (int it = 0; it < 8; it++) {
+                float nr = rr * axisR + rg * axisG + rb * axisB;
+                float ng = rg * axisR + gg * axisG + gb * axisB;
+                float nb = rb * axisR + gb * axisG + bb * axisB;
+                float length = Math.max(Math.abs(nr), Math.max(Math.abs(ng), Math.abs(nb)));
+                if (length == 0) {
+                    break;
+                }
+                axisR = nr / length;
+                axisG = ng / length;
+                axisB = nb / length;
+            }
+
+            float minT = Float.MAX_VALUE, maxT = -Float.MAX_VALUE;
+            float lengthSquared = axisR * axisR + axisG * axisG + axisB * axisB;
+            for (int i = 0; i < 16; i++) {
+                if (transparent == null || !transparent[i]) {
+                    float t = ((r[i] - meanR) * axisR + (g[i] - meanG) * axisG
+                             + (b[i] - meanB) * axisB) / lengthSquared;
+                    minT = Math.min(minT, t);
+                    maxT = Math.max(maxT, t);
+                }
+            }
+            ends[0] = clamp(meanR + axisR * maxT);
+            ends[1] = clamp(meanG + axisG * maxT);
+            ends[2] = clamp(meanB + axisB * maxT);
+            ends[3] = clamp(meanR + axisR * minT);
+            ends[4] = clamp(meanG + axisG * minT);
+            ends[5] = clamp(meanB + axisB * minT);
+        }
+
+        private static float clamp(float value) {
+            return value < 0 ? 0 : (value > 255 ? 255 : value);
+        }
+
+        /**
+         * Solves for the endpoints that best fit the texels with the current
+         * four color indices. Returns false if the system is degenerate.
+         */
+        private boolean refineEndpoints(int c0, int c1, float[] ends) {
+            float aa = 0, ab = 0, bb2 = 0;
+            float ar = 0, ag = 0, abl = 0, br = 0, bg = 0, bbl = 0;
+            for (int i = 0; i < 16; i++) {
+                float w;
+                switch (indices[i]) {
+                    case 0:
+                        w = 1;
+                        break;
+                    case 1:
+                        w = 0;
+                        break;
+                    case 2:
+                        w = 2f / 3f;
+                        break;
+                    default:
+                        w = 1f / 3f;
+                        break;
+                }
+                float v = 1 - w;
+                aa += w * w;
+                ab += w * v;
+                bb2 += v * v;
+                ar += w * r[i];
+                ag += w * g[i];
+                abl += w * b[i];
+                br += v * r[i];
+                bg += v * g[i];
+                bbl += v * b[i];
+            }
+            float det = aa * bb2 - ab * ab;
+            if (Math.abs(det) < 1e-6f) {
+                return false;
+            }
+            float inv = 1f / det;
+            ends[0] = clamp((bb2 * ar - ab * br) * inv);
+            ends[1] = clamp((bb2 * ag - ab * bg) * inv);
+            ends[2] = clamp((bb2 * abl - ab * bbl) * inv);
+            ends[3] = clamp((aa * br - ab * ar) * inv);
+            ends[4] = clamp((aa * bg - ab * ag) * inv);
+            ends[5] = clamp((aa * bbl - ab * abl) * inv);
+            return true;
+        }
+
+        private void encodeExplicitAlpha(int pos) {
+            long bits = 0;
+            for (int i = 15; i >= 0; i--) {
+                bits = (bits << 4) | ((a[i] * 15 + 127) / 255);
+            }
+            for (int i = 0; i < 8; i++) {
+                out.put(pos + i, (byte) (bits >>> (i * 8)));
+            }
+        }
+
+        /**
+         * Encodes 16 values into an interpolated block, as used for the
+         * alpha of DXT5 and the channels of RGTC.
+         */
+        private void encodeAlpha(int[] values, int pos) {
+            int min = 255, max = 0;
+            int innerMin = 255, innerMax = 0;
+            for (int i = 0; i < 16; i++) {
+                int v = values[i];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                if (v != 0 && v != 255) {
+                    innerMin = Math.min(innerMin, v);
+                    innerMax = Math.max(innerMax, v);
+                }
+            }
+
+            // eight values between max and min
+            int a0 = max, a1 = min;
+            int error = assignAlpha(values, a0, a1, indices);
+            System.arraycopy(indices, 0, bestIndices, 0, 16);
+
+            if (high && error > 0 && innerMin <= innerMax && (min == 0 || max == 255)) {
+                // six values between min and max plus exact 0 and 255
+                int sixError = assignAlpha(values, innerMin, innerMax, indices);
+                if (sixError < error) {
+                    a0 = innerMin;
+                    a1 = innerMax;
+                    System.arraycopy(indices, 0, bestIndices, 0, 16);
+                }
+            }
+
+            out.put(pos, (byte) a0);
+            out.put(pos + 1, (byte) a1);
+            long bits = 0;
+            for (int i = 15; i >= 0; i--) {
+                bits = (bits << 3) | bestIndices[i];
+            }
+            for (int i = 0; i < 6; i++) {
+                out.put(pos + 2 + i, (byte) (bits >>> (i * 8)));
+            }
+        }
+
+        private int assignAlpha(int[] values, int a0, int a1, int[] store) {
+            alphaPalette[0] = a0;
+            alphaPalette[1] = a1;
+            if (a0 > a1) {
+                for (int i = 1; i < 7; i++) {
+                    alphaPalette[i + 1] = ((7 - i) * a0 + i * a1 + 3) / 7;
+                }
+            } else {
+                for (int i = 1; i < 5; i++) {
+                    alphaPalette[i + 1] = ((5 - i) * a0 + i * a1 + 2) / 5;
+                }
+                alphaPalette[6] = 0;
+                alphaPalette[7] = 255;
+            }
+            int error = 0;
+            for (int i = 0; i < 16; i++) {
+                int best = 0;
+                int bestDist = Integer.MAX_VALUE;
+                for (int e = 0; e < 8; e++) {
+                    int d = values[i] - alphaPalette[e];
+                    if (d * d < bestDist) {
+                        bestDist = d * d;
+                        best = e;
+                    }
+                }
+                store[i] = best;
+                error += bestDist;
+            }
+            return error;
+        }
+    }
+}
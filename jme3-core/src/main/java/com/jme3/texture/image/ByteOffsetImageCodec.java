@@ -35,6 +35,16 @@ import java.nio.ByteBuffer;
 
 public class ByteOffsetImageCodec extends ImageCodec {
 
+    private static final float[] UNORM = new float[256];
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            UNORM[i] = (float) i / 255;
+            SRGB_TO_LINEAR[i] = (float) Math.pow(UNORM[i], GAMMA);
+        }
+    }
+
     private final int redPos, greenPos, bluePos, alphaPos;
     
     public ByteOffsetImageCodec(int bpp, int flags,  int alphaPos, int redPos, int greenPos, int bluePos) {
@@ -86,4 +96,113 @@ public class ByteOffsetImageCodec extends ImageCodec {
         buf.put(tmp, 0, bpp);
     }
     
+    @Override
+    public void readPixels(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                           boolean toLinear, float[] store, int storeOffset, 
+                           int[] components, byte[] tmp) {
+        float[] color = toLinear ? SRGB_TO_LINEAR : UNORM;
+        int i = (y * width + x) * bpp + offset;
+        int end = storeOffset + count * 4;
+        for (int j = storeOffset; j < end; j += 4, i += bpp) {
+            float r = redPos != -1 ? color[buf.get(i + redPos) & 0xff] : 1;
+            if (isGray) {
+                store[j] = store[j + 1] = store[j + 2] = r;
+            } else {
+                store[j] = r;
+                store[j + 1] = greenPos != -1 ? color[buf.get(i + greenPos) & 0xff] : 1;
+                store[j + 2] = bluePos != -1 ? color[buf.get(i + bluePos) & 0xff] : 1;
+            }
+            store[j + 3] = alphaPos != -1 ? UNORM[buf.get(i + alphaPos) & 0xff] : 1;
+        }
+    }
+
+    @Override
+    public void writePixels(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                            boolean fromLinear, float[] colors, int colorsOffset, 
+                            int[] components, byte[] tmp) {
+        int i = (y * width + x) * bpp + offset;
+        int end = colorsOffset + count * 4;
+        for (int j = colorsOffset; j < end; j += 4, i += bpp) {
+            float r = colors[j], g = colors[j + 1], b = colors[j + 2];
+            if (fromLinear) {
+                r = toSrgb(r);
+                g = toSrgb(g);
+                b = toSrgb(b);
+            }
+            if (isGray) {
+                r = g = b = r * 0.27f + g * 0.67f + b * 0.06f;
+            }
+            if (alphaPos != -1) {
+                buf.put(i + alphaPos, toByte(colors[j + 3]));
+            }
+            if (redPos != -1) {
+                buf.put(i + redPos, toByte(r));
+            }
+            if (greenPos != -1) {
+                buf.put(i + greenPos, toByte(g));
+            }
+            if (bluePos != -1) {
+                buf.put(i + bluePos, toByte(b));
+            }
+        }
+    }
+
+    /**
+     * Reads a run of pixels from a row packed as ARGB integers, 8 bits 
+     * per component. Missing components are 255, luminance is replicated.
+     */
+    public void readPixelsARGB(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                               int[] store, int storeOffset) {
+        int i = (y * width + x) * bpp + offset;
+        int end = storeOffset + count;
+        for (int j = storeOffset; j < end; j++, i += bpp) {
+            int r = redPos != -1 ? buf.get(i + redPos) & 0xff : 0xff;
+            int g, b;
+            if (isGray) {
+                g = b = r;
+            } else {
+                g = greenPos != -1 ? buf.get(i + greenPos) & 0xff : 0xff;
+                b = bluePos != -1 ? buf.get(i + bluePos) & 0xff : 0xff;
+            }
+            int a = alphaPos != -1 ? buf.get(i + alphaPos) & 0xff : 0xff;
+            store[j] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * Writes a run of ARGB packed integers into a row. 
+     */
+    public void writePixelsARGB(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                                int[] colors, int colorsOffset) {
+        int i = (y * width + x) * bpp + offset;
+        int end = colorsOffset + count;
+        for (int j = colorsOffset; j < end; j++, i += bpp) {
+            int argb = colors[j];
+            int r = (argb >> 16) & 0xff;
+            if (isGray) {
+                float gray = UNORM[r] * 0.27f + UNORM[(argb >> 8) & 0xff] * 0.67f 
+                           + UNORM[argb & 0xff] * 0.06f;
+                r = toByte(gray) & 0xff;
+            }
+            if (alphaPos != -1) {
+                buf.put(i + alphaPos, (byte) (argb >>> 24));
+            }
+            if (redPos != -1) {
+                buf.put(i + redPos, (byte) r);
+            }
+            if (greenPos != -1) {
+                buf.put(i + greenPos, (byte) (argb >> 8));
+            }
+            if (bluePos != -1) {
+                buf.put(i + bluePos, (byte) argb);
+            }
+        }
+    }
+
+    /**
+     * Same rounding as {@link ImageRaster#setPixel(int, int, com.jme3.math.ColorRGBA) }.
+     */
+    private static byte toByte(float c) {
+        return (byte) Math.min((int) (c * 255 + 0.5f), 255);
+    }
 }
@@ -48,6 +48,7 @@ public class DefaultImageRaster extends ImageRaster {
     private final byte[] temp;
     private final boolean convertToLinear;
     private int slice;
+    private float[] row;
     
     private void rangeCheck(int x, int y) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
@@ -150,7 +151,16 @@ public class DefaultImageRaster extends ImageRaster {
                 break;
         }     
         codec.writeComponents(getBuffer(), x, y, width, offset, components, temp);
-        image.setUpdateNeeded();
+        setUpdateNeeded(x, y, 1, 1);
+    }
+    
+    private void setUpdateNeeded(int x, int y, int width, int height) {
+        if (offset == 0) {
+            // Only the written pixels of the base level need to be uploaded.
+            image.setUpdateNeeded(x, y, width, height);
+        } else {
+            image.setUpdateNeeded();
+        }
     }
     
     private ByteBuffer getBuffer(){
@@ -191,6 +201,9 @@ public class DefaultImageRaster extends ImageRaster {
         }
         if (codec.isGray) {
             store.g = store.b = store.r;
+            if (codec.maxAlpha == 0) {
+                store.a = 1;
+            }
         } else {
             if (codec.maxRed == 0) {
                 store.r = 1;
@@ -213,4 +226,82 @@ public class DefaultImageRaster extends ImageRaster {
         
         return store;
     }
+    
+    @Override
+    public void getPixels(int x, int y, int width, int height, float[] store, int offset) {
+        rangeCheck(x, y, width, height);
+        ByteBuffer buf = getBuffer();
+        for (int j = 0; j < height; j++) {
+            codec.readPixels(buf, x, y + j, width, this.width, this.offset, 
+                             convertToLinear, store, offset + j * width * 4, components, temp);
+        }
+    }
+    
+    @Override
+    public void setPixels(int x, int y, int width, int height, float[] colors, int offset) {
+        rangeCheck(x, y, width, height);
+        ByteBuffer buf = getBuffer();
+        for (int j = 0; j < height; j++) {
+            codec.writePixels(buf, x, y + j, width, this.width, this.offset, 
+                              convertToLinear, colors, offset + j * width * 4, components, temp);
+        }
+        setUpdateNeeded(x, y, width, height);
+    }
+    
+    @Override
+    public void getPixels(int x, int y, int width, int height, int[] store, int offset) {
+        rangeCheck(x, y, width, height);
+        ByteBuffer buf = getBuffer();
+        if (codec instanceof ByteOffsetImageCodec && !convertToLinear) {
+            ByteOffsetImageCodec bytes = (ByteOffsetImageCodec) codec;
+            for (int j = 0; j < height; j++) {
+                bytes.readPixelsARGB(buf, x, y + j, width, this.width, this.offset, 
+                                     store, offset + j * width);
+            }
+            return;
+        }
+        float[] colors = getRow(width);
+        for (int j = 0; j < height; j++) {
+            codec.readPixels(buf, x, y + j, width, this.width, this.offset, 
+                             convertToLinear, colors, 0, components, temp);
+            for (int i = 0; i < width; i++) {
+                store[offset++] = toARGB(colors[i * 4], colors[i * 4 + 1], 
+                                         colors[i * 4 + 2], colors[i * 4 + 3]);
+            }
+        }
+    }
+    
+    @Override
+    public void setPixels(int x, int y, int width, int height, int[] colors, int offset) {
+        rangeCheck(x, y, width, height);
+        ByteBuffer buf = getBuffer();
+        if (codec instanceof ByteOffsetImageCodec && !convertToLinear) {
+            ByteOffsetImageCodec bytes = (ByteOffsetImageCodec) codec;
+            for (int j = 0; j < height; j++) {
+                bytes.writePixelsARGB(buf, x, y + j, width, this.width, this.offset, 
+                                      colors, offset + j * width);
+            }
+        } else {
+            float[] row = getRow(width);
+            for (int j = 0; j < height; j++) {
+                for (int i = 0; i < width; i++) {
+                    int argb = colors[offset++];
+                    row[i * 4    ] = ((argb >> 16) & 0xff) / 255f;
+                    row[i * 4 + 1] = ((argb >> 8) & 0xff) / 255f;
+                    row[i * 4 + 2] = (argb & 0xff) / 255f;
+                    row[i * 4 + 3] = (argb >>> 24) / 255f;
+                }
+                codec.writePixels(buf, x, y + j, width, this.width, this.offset, 
+                                  convertToLinear, row, 0, components, temp);
+            }
+        }
+        setUpdateNeeded(x, y, width, height);
+    }
+    
+    private float[] getRow(int width) {
+        if (row == null || row.length < width * 4) {
+            row = new float[width * 4];
+        }
+        return row;
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.image;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Codec for formats made of 32 bit little endian floats in R, G, B, A 
+ * order, such as {@link com.jme3.texture.Image.Format#RGBA32F}.
+ */
+class FloatImageCodec extends ImageCodec {
+
+    private final int count;
+
+    public FloatImageCodec(int count, int flags) {
+        super(count * 4, flags | FLAG_F32,
+                count == 4 ? -1 : 0,
+                -1,
+                count >= 2 ? -1 : 0,
+                count >= 3 ? -1 : 0);
+        this.count = count;
+    }
+
+    private static int getBits(ByteBuffer buf, int index) {
+        int bits = buf.getInt(index);
+        if (buf.order() != ByteOrder.LITTLE_ENDIAN) {
+            bits = Integer.reverseBytes(bits);
+        }
+        return bits;
+    }
+
+    private static void putBits(ByteBuffer buf, int index, int bits) {
+        if (buf.order() != ByteOrder.LITTLE_ENDIAN) {
+            bits = Integer.reverseBytes(bits);
+        }
+        buf.putInt(index, bits);
+    }
+
+    private static float getFloat(ByteBuffer buf, int index) {
+        return Float.intBitsToFloat(getBits(buf, index));
+    }
+
+    private static void putFloat(ByteBuffer buf, int index, float value) {
+        putBits(buf, index, Float.floatToIntBits(value));
+    }
+
+    @Override
+    public void readComponents(ByteBuffer buf, int x, int y, int width, int offset, int[] components, byte[] tmp) {
+        int i = (y * width + x) * bpp + offset;
+        for (int c = 0; c < count; c++) {
+            // components are stored as a, r, g, b
+            components[(c + 1) & 3] = getBits(buf, i + c * 4);
+        }
+    }
+
+    @Override
+    public void writeComponents(ByteBuffer buf, int x, int y, int width, int offset, int[] components, byte[] tmp) {
+        int i = (y * width + x) * bpp + offset;
+        for (int c = 0; c < count; c++) {
+            putBits(buf, i + c * 4, components[(c + 1) & 3]);
+        }
+    }
+
+    @Override
+    public void readPixels(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                           boolean toLinear, float[] store, int storeOffset, 
+                           int[] components, byte[] tmp) {
+        int i = (y * width + x) * bpp + offset;
+        int end = storeOffset + count * 4;
+        for (int j = storeOffset; j < end; j += 4, i += bpp) {
+            for (int c = 0; c < this.count; c++) {
+                store[j + c] = getFloat(buf, i + c * 4);
+            }
+            fillMissing(store, j);
+            if (toLinear) {
+                toLinear(store, j);
+            }
+        }
+    }
+
+    @Override
+    public void writePixels(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                            boolean fromLinear, float[] colors, int colorsOffset, 
+                            int[] components, byte[] tmp) {
+        int i = (y * width + x) * bpp + offset;
+        int end = colorsOffset + count * 4;
+        for (int j = colorsOffset; j < end; j += 4, i += bpp) {
+            float r = colors[j], g = colors[j + 1], b = colors[j + 2];
+            if (fromLinear) {
+                r = toSrgb(r);
+                g = toSrgb(g);
+                b = toSrgb(b);
+            }
+            if (isGray) {
+                putFloat(buf, i, r * 0.27f + g * 0.67f + b * 0.06f);
+                continue;
+            }
+            putFloat(buf, i, r);
+            putFloat(buf, i + 4, g);
+            putFloat(buf, i + 8, b);
+            if (this.count == 4) {
+                putFloat(buf, i + 12, colors[j + 3]);
+            }
+        }
+    }
+}
@@ -31,6 +31,8 @@
  */
 package com.jme3.texture.image;
 
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
 import com.jme3.texture.Image;
 import com.jme3.texture.Image.Format;
 import java.nio.ByteBuffer;
@@ -39,6 +41,9 @@ import java.util.EnumMap;
 abstract class ImageCodec {
     
     public static final int FLAG_F16 = 1, FLAG_F32 = 2, FLAG_GRAY = 4; //, FLAG_ALPHAONLY = 8, FLAG_SHAREDEXP = 16;
+    
+    // Gamma used by ColorRGBA for sRGB conversions
+    protected static final float GAMMA = 2.2f, INV_GAMMA = 1f / GAMMA;
     private static final EnumMap<Image.Format, ImageCodec> params = new EnumMap<Image.Format, ImageCodec>(Image.Format.class);
     
     protected final int bpp, type, maxAlpha, maxRed, maxGreen, maxBlue;
@@ -69,8 +74,7 @@ abstract class ImageCodec {
         
         params.put(Format.Luminance16F, new BitMaskImageCodec(2, FLAG_GRAY | FLAG_F16, 0, 16, 0, 0,
                                                                                         0, 0, 0, 0));
-        params.put(Format.Luminance32F, new BitMaskImageCodec(4, FLAG_GRAY | FLAG_F32, 0, 32, 0, 0,
-                                                                                        0, 0, 0, 0));
+        params.put(Format.Luminance32F, new FloatImageCodec(1, FLAG_GRAY));
         
         // == INTENSITY ==
         // ??
@@ -103,9 +107,7 @@ abstract class ImageCodec {
         
         params.put(Format.RGB8,     new ByteOffsetImageCodec(3, 0, -1, 0, 1, 2));
        
-        params.put(Format.RGB32F,        new ByteAlignedImageCodec(12, FLAG_F32,
-                                                                   0,  4, 4, 4,
-                                                                   0,  0, 4, 8));
+        params.put(Format.RGB32F,        new FloatImageCodec(3, 0));
         
         ByteAlignedImageCodec rgb16f = new ByteAlignedImageCodec(6, FLAG_F16,
                                                             0, 2, 2, 2,
@@ -144,15 +146,160 @@ abstract class ImageCodec {
                                                             2, 2, 2,  2,
                                                             6, 0, 2,  4));
         
-        params.put(Format.RGBA32F,        new ByteAlignedImageCodec(16, FLAG_F32,
-                                                            4, 4, 4, 4,
-                                                            12, 0, 4, 8));
+        params.put(Format.RGBA32F,        new FloatImageCodec(4, 0));
     }
     
     public abstract void readComponents(ByteBuffer buf, int x, int y, int width, int offset, int[] components, byte[] tmp);
     
     public abstract void writeComponents(ByteBuffer buf, int x, int y, int width, int offset, int[] components, byte[] tmp);
     
+    /**
+     * Reads a run of pixels from a row as RGBA floats, four per pixel.
+     * Missing components are set to 1, luminance is replicated in R, G and B,
+     * exactly as {@link ImageRaster#getPixel(int, int, com.jme3.math.ColorRGBA) }.
+     * Codecs override this with paths that skip the per pixel component 
+     * decoding.
+     * 
+     * @param buf The image data
+     * @param x The first pixel to read
+     * @param y The row to read
+     * @param count The number of pixels to read
+     * @param width The width of the image
+     * @param offset The byte offset of the mipmap level in the data
+     * @param toLinear If true, colors are converted from sRGB to linear
+     * @param store The array to store the colors in
+     * @param storeOffset The index in store of the first color
+     * @param components Scratch array of 4 components
+     * @param tmp Scratch array of bpp bytes, may be null if the codec does 
+     * not need it
+     */
+    public void readPixels(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                           boolean toLinear, float[] store, int storeOffset, 
+                           int[] components, byte[] tmp) {
+        for (int i = 0; i < count; i++) {
+            readComponents(buf, x + i, y, width, offset, components, tmp);
+            int j = storeOffset + i * 4;
+            switch (type) {
+                case FLAG_F16:
+                    store[j    ] = FastMath.convertHalfToFloat((short) components[1]);
+                    store[j + 1] = FastMath.convertHalfToFloat((short) components[2]);
+                    store[j + 2] = FastMath.convertHalfToFloat((short) components[3]);
+                    store[j + 3] = FastMath.convertHalfToFloat((short) components[0]);
+                    break;
+                case FLAG_F32:
+                    store[j    ] = Float.intBitsToFloat(components[1]);
+                    store[j + 1] = Float.intBitsToFloat(components[2]);
+                    store[j + 2] = Float.intBitsToFloat(components[3]);
+                    store[j + 3] = Float.intBitsToFloat(components[0]);
+                    break;
+                default:
+                    store[j    ] = (float) components[1] / maxRed;
+                    store[j + 1] = (float) components[2] / maxGreen;
+                    store[j + 2] = (float) components[3] / maxBlue;
+                    store[j + 3] = (float) components[0] / maxAlpha;
+                    break;
+            }
+            fillMissing(store, j);
+            if (toLinear) {
+                toLinear(store, j);
+            }
+        }
+    }
+    
+    /**
+     * Writes a run of RGBA float colors, four per pixel, into a row. 
+     * Conversions are the same as 
+     * {@link ImageRaster#setPixel(int, int, com.jme3.math.ColorRGBA) }.
+     * 
+     * @param buf The image data
+     * @param x The first pixel to write
+     * @param y The row to write
+     * @param count The number of pixels to write
+     * @param width The width of the image
+     * @param offset The byte offset of the mipmap level in the data
+     * @param fromLinear If true, colors are converted from linear to sRGB
+     * @param colors The colors to write
+     * @param colorsOffset The index in colors of the first color
+     * @param components Scratch array of 4 components
+     * @param tmp Scratch array of bpp bytes, may be null if the codec does 
+     * not need it
+     */
+    public void writePixels(ByteBuffer buf, int x, int y, int count, int width, int offset, 
+                            boolean fromLinear, float[] colors, int colorsOffset, 
+                            int[] components, byte[] tmp) {
+        for (int i = 0; i < count; i++) {
+            int j = colorsOffset + i * 4;
+            float r = colors[j], g = colors[j + 1], b = colors[j + 2], a = colors[j + 3];
+            if (fromLinear) {
+                r = toSrgb(r);
+                g = toSrgb(g);
+                b = toSrgb(b);
+            }
+            if (isGray) {
+                r = g = b = r * 0.27f + g * 0.67f + b * 0.06f;
+            }
+            switch (type) {
+                case FLAG_F16:
+                    components[0] = (int) FastMath.convertFloatToHalf(a);
+                    components[1] = (int) FastMath.convertFloatToHalf(r);
+                    components[2] = (int) FastMath.convertFloatToHalf(g);
+                    components[3] = (int) FastMath.convertFloatToHalf(b);
+                    break;
+                case FLAG_F32:
+                    components[0] = Float.floatToIntBits(a);
+                    components[1] = Float.floatToIntBits(r);
+                    components[2] = Float.floatToIntBits(g);
+                    components[3] = Float.floatToIntBits(b);
+                    break;
+                default:
+                    components[0] = Math.min((int) (a * maxAlpha + 0.5f), maxAlpha);
+                    components[1] = Math.min((int) (r * maxRed + 0.5f), maxRed);
+                    components[2] = Math.min((int) (g * maxGreen + 0.5f), maxGreen);
+                    components[3] = Math.min((int) (b * maxBlue + 0.5f), maxBlue);
+                    break;
+            }
+            writeComponents(buf, x + i, y, width, offset, components, tmp);
+        }
+    }
+    
+    /**
+     * Replicates luminance or sets components the format lacks to 1.
+     */
+    protected final void fillMissing(float[] color, int i) {
+        if (isGray) {
+            color[i + 1] = color[i + 2] = color[i];
+        } else {
+            if (maxRed == 0) {
+                color[i] = 1;
+            }
+            if (maxGreen == 0) {
+                color[i + 1] = 1;
+            }
+            if (maxBlue == 0) {
+                color[i + 2] = 1;
+            }
+        }
+        if (maxAlpha == 0) {
+            color[i + 3] = 1;
+        }
+    }
+    
+    /**
+     * Same conversion as {@link ColorRGBA#setAsSrgb(float, float, float, float) }.
+     */
+    protected static void toLinear(float[] color, int i) {
+        color[i    ] = (float) Math.pow(color[i    ], GAMMA);
+        color[i + 1] = (float) Math.pow(color[i + 1], GAMMA);
+        color[i + 2] = (float) Math.pow(color[i + 2], GAMMA);
+    }
+    
+    /**
+     * Same conversion as {@link ColorRGBA#getAsSrgb() }.
+     */
+    protected static float toSrgb(float c) {
+        return (float) Math.pow(c, INV_GAMMA);
+    }
+    
     /**
      * Looks up the format in the codec registry.
      * The codec will be able to decode the given format.
@@ -201,4 +201,135 @@ public abstract class ImageRaster {
     public ColorRGBA getPixel(int x, int y) { 
         return getPixel(x, y, null);
     }
+    
+    /**
+     * Reads a rectangle of pixels as RGBA floats.
+     * <p>
+     * The colors are stored row after row, four floats per pixel, with the 
+     * same conversions as {@link #getPixel(int, int, com.jme3.math.ColorRGBA) }.
+     * Reading many pixels at once is much faster than reading them one by 
+     * one for the common 8 bit and 32 bit float formats.
+     * 
+     * @param x The x coordinate of the first pixel.
+     * @param y The y coordinate of the first pixel.
+     * @param width The number of pixels to read in each row.
+     * @param height The number of rows to read.
+     * @param store The array to store the colors in, must have room for 
+     * <code>width * height * 4</code> floats after offset.
+     * @param offset The index in store of the first color.
+     * @throws IllegalArgumentException If the rectangle is not inside 
+     * the image dimensions.
+     */
+    public void getPixels(int x, int y, int width, int height, float[] store, int offset) {
+        rangeCheck(x, y, width, height);
+        ColorRGBA color = new ColorRGBA();
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                getPixel(x + i, y + j, color);
+                store[offset++] = color.r;
+                store[offset++] = color.g;
+                store[offset++] = color.b;
+                store[offset++] = color.a;
+            }
+        }
+    }
+    
+    /**
+     * Writes a rectangle of pixels from RGBA floats.
+     * <p>
+     * The colors are read row after row, four floats per pixel, and 
+     * converted the same way as 
+     * {@link #setPixel(int, int, com.jme3.math.ColorRGBA) } does.
+     * 
+     * @param x The x coordinate of the first pixel.
+     * @param y The y coordinate of the first pixel.
+     * @param width The number of pixels to write in each row.
+     * @param height The number of rows to write.
+     * @param colors The colors to write.
+     * @param offset The index in colors of the first color.
+     * @throws IllegalArgumentException If the rectangle is not inside 
+     * the image dimensions.
+     */
+    public void setPixels(int x, int y, int width, int height, float[] colors, int offset) {
+        rangeCheck(x, y, width, height);
+        ColorRGBA color = new ColorRGBA();
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                color.set(colors[offset], colors[offset + 1], colors[offset + 2], colors[offset + 3]);
+                setPixel(x + i, y + j, color);
+                offset += 4;
+            }
+        }
+    }
+    
+    /**
+     * Reads a rectangle of pixels as packed ARGB integers, 8 bits per 
+     * component, in the layout of {@link ColorRGBA#asIntARGB() }.
+     * <p>
+     * Components are clamped to 0.0 - 1.0 and rounded, so 8 bit formats 
+     * are read back exactly.
+     * 
+     * @param x The x coordinate of the first pixel.
+     * @param y The y coordinate of the first pixel.
+     * @param width The number of pixels to read in each row.
+     * @param height The number of rows to read.
+     * @param store The array to store the colors in, must have room for 
+     * <code>width * height</code> integers after offset.
+     * @param offset The index in store of the first color.
+     * @throws IllegalArgumentException If the rectangle is not inside 
+     * the image dimensions.
+     */
+    public void getPixels(int x, int y, int width, int height, int[] store, int offset) {
+        rangeCheck(x, y, width, height);
+        ColorRGBA color = new ColorRGBA();
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                getPixel(x + i, y + j, color);
+                store[offset++] = toARGB(color.r, color.g, color.b, color.a);
+            }
+        }
+    }
+    
+    /**
+     * Writes a rectangle of pixels from packed ARGB integers, 8 bits per 
+     * component, in the layout of {@link ColorRGBA#fromIntARGB(int) }.
+     * 
+     * @param x The x coordinate of the first pixel.
+     * @param y The y coordinate of the first pixel.
+     * @param width The number of pixels to write in each row.
+     * @param height The number of rows to write.
+     * @param colors The colors to write.
+     * @param offset The index in colors of the first color.
+     * @throws IllegalArgumentException If the rectangle is not inside 
+     * the image dimensions.
+     */
+    public void setPixels(int x, int y, int width, int height, int[] colors, int offset) {
+        rangeCheck(x, y, width, height);
+        ColorRGBA color = new ColorRGBA();
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                setPixel(x + i, y + j, color.fromIntARGB(colors[offset++]));
+            }
+        }
+    }
+    
+    void rangeCheck(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 
+                || x + width > getWidth() || y + height > getHeight()) {
+            throw new IllegalArgumentException("Rectangle must be inside the image dimensions:" 
+                                                + x + ", " + y + ", " + width + ", " + height 
+                                                + " in:" + getWidth() + ", " + getHeight());
+        }
+    }
+    
+    static int toARGB(float r, float g, float b, float a) {
+        return (toByte(a) << 24) | (toByte(r) << 16) | (toByte(g) << 8) | toByte(b);
+    }
+    
+    private static int toByte(float c) {
+        if (!(c > 0f)) {
+            return 0;
+        }
+        return c >= 1f ? 255 : (int) (c * 255 + 0.5f);
+    }
 }
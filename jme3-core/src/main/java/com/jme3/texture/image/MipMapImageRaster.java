@@ -169,6 +169,9 @@ public class MipMapImageRaster extends ImageRaster {
         }
         if (codec.isGray) {
             store.g = store.b = store.r;
+            if (codec.maxAlpha == 0) {
+                store.a = 1;
+            }
         } else {
             if (codec.maxRed == 0) {
                 store.r = 1;
@@ -36,11 +36,57 @@ import com.jme3.math.FastMath;
 import com.jme3.texture.Image;
 import com.jme3.texture.Image.Format;
 import com.jme3.texture.image.ImageRaster;
+import com.jme3.texture.image.ColorSpace;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class MipMapGenerator {
 
+    /**
+     * Filter used to compute a mip level from the level above it.
+     */
+    public enum Filter {
+        /**
+         * Averages each 2x2 block of the level above. Cheapest, slightly 
+         * blurry and prone to aliasing on high frequency detail.
+         */
+        Box,
+        /**
+         * Kaiser windowed sinc over 8x8 texels. Keeps the smaller levels 
+         * sharper, at roughly eight times the cost of {@link #Box}.
+         */
+        Kaiser
+    }
+
+    /**
+     * Minimum number of texels a task should filter, smaller levels are 
+     * computed on the calling thread.
+     */
+    private static final int TEXELS_PER_TASK = 16384;
+
+    private static final float[] KAISER_WEIGHTS = createKaiserWeights(4f);
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    /**
+     * Linear value at which the sRGB encoding crosses from byte i to i + 1.
+     */
+    private static final float[] SRGB_THRESHOLDS = new float[255];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            SRGB_TO_LINEAR[i] = srgbToLinear(i / 255f);
+        }
+        for (int i = 0; i < 255; i++) {
+            SRGB_THRESHOLDS[i] = srgbToLinear((i + 0.5f) / 255f);
+        }
+    }
+
     private MipMapGenerator() {
     }
     
@@ -101,7 +147,31 @@ public class MipMapGenerator {
         return scaleImage(original, potWidth, potHeight);
     }
     
+    /**
+     * Generates the mip chain of the image, replacing its data.
+     * <p>
+     * Formats supported by {@link #isFormatSupported(Format)} are filtered
+     * directly in their byte buffer with a box filter. Other formats go
+     * through {@link ImageRaster}.
+     * <p>
+     * Note that images in the {@link ColorSpace#sRGB sRGB} color space with
+     * a supported format are filtered gamma correct: their color components
+     * are converted to linear before they are averaged and back to sRGB
+     * after. Earlier versions averaged the encoded values, which darkens
+     * the smaller levels, so the result differs from theirs. Call
+     * {@link #generateMipMaps(com.jme3.texture.Image, com.jme3.util.MipMapGenerator.Filter, boolean, java.util.concurrent.ExecutorService) }
+     * with <code>gammaCorrect</code> set to false to average the encoded
+     * values as before. Images in the linear color space and images going
+     * through {@link ImageRaster} are never gamma corrected.
+     *
+     * @param image The image to generate mip maps for
+     */
     public static void generateMipMaps(Image image){
+        if (isFormatSupported(image.getFormat())) {
+            generateMipMaps(image, Filter.Box, 
+                    image.getColorSpace() == ColorSpace.sRGB, null);
+            return;
+        }
         int width = image.getWidth();
         int height = image.getHeight();
 
@@ -137,4 +207,410 @@ public class MipMapGenerator {
         image.setData(0, combinedData);
         image.setMipMapSizes(mipSizes);
     }
+
+    /**
+     * Returns true if the format can be handled by 
+     * {@link #generateMipMaps(com.jme3.texture.Image, com.jme3.util.MipMapGenerator.Filter, boolean, java.util.concurrent.ExecutorService) }.
+     * These are the formats with 8 bit normalized or 32 bit float 
+     * components.
+     * 
+     * @param format The format to check
+     * @return true if mip maps can be generated for the format
+     */
+    public static boolean isFormatSupported(Format format) {
+        return getAlphaComponent(format) != UNSUPPORTED;
+    }
+
+    /**
+     * Generates the complete mip chain of the image down to 1x1, replacing 
+     * its data. Each level is filtered from the one above it directly in the 
+     * image buffer, without going through {@link ColorRGBA}.
+     * <p>
+     * If an executor is given, the rows of the larger levels are split 
+     * among its threads; the method returns once all of them are done. Pass 
+     * null to do all the work on the calling thread.
+     * 
+     * @param image The image to generate mip maps for, its format must be 
+     * supported by {@link #isFormatSupported(Format)}
+     * @param filter The filter to use
+     * @param gammaCorrect If true, 8 bit color components are converted from 
+     * sRGB to linear before filtering and back after, alpha is always 
+     * filtered as is. Float formats are assumed to be linear already.
+     * @param executor The executor to run the rows on, or null
+     */
+    public static void generateMipMaps(Image image, Filter filter, 
+                                       boolean gammaCorrect, 
+                                       ExecutorService executor) {
+        Format format = image.getFormat();
+        int alpha = getAlphaComponent(format);
+        if (alpha == UNSUPPORTED) {
+            throw new UnsupportedOperationException("Cannot generate mip maps for format " + format);
+        }
+        if (image.getData().size() != 1) {
+            throw new UnsupportedOperationException("Cannot generate mip maps for cube, array or 3D images");
+        }
+
+        int bytesPerPixel = format.getBitsPerPixel() / 8;
+        int componentSize = format.isFloatingPont() ? 4 : 1;
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int levels = 1;
+        int totalSize = width * height * bytesPerPixel;
+        for (int w = width, h = height; w > 1 || h > 1; levels++) {
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+            totalSize += w * h * bytesPerPixel;
+        }
+
+        ByteBuffer source = image.getData(0);
+        ByteBuffer combinedData = BufferUtils.createByteBuffer(totalSize);
+        combinedData.order(source.order());
+        ByteBuffer base = source.duplicate();
+        base.clear().limit(width * height * bytesPerPixel);
+        combinedData.put(base);
+        combinedData.clear();
+
+        int[] mipSizes = new int[levels];
+        mipSizes[0] = width * height * bytesPerPixel;
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        int srcOffset = 0;
+        for (int i = 1; i < levels; i++) {
+            int dstWidth = Math.max(1, width / 2);
+            int dstHeight = Math.max(1, height / 2);
+            int dstOffset = srcOffset + width * height * bytesPerPixel;
+            mipSizes[i] = dstWidth * dstHeight * bytesPerPixel;
+
+            int rowsPerTask = Math.max(1, TEXELS_PER_TASK / dstWidth);
+            for (int row = 0; row < dstHeight; row += rowsPerTask) {
+                LevelTask task = new LevelTask(combinedData, filter, 
+                        componentSize, bytesPerPixel / componentSize, 
+                        gammaCorrect ? alpha : NO_GAMMA,
+                        srcOffset, width, height, 
+                        dstOffset, dstWidth, dstHeight, 
+                        row, Math.min(dstHeight, row + rowsPerTask));
+                if (executor == null || rowsPerTask >= dstHeight) {
+                    task.run();
+                } else {
+                    futures.add(executor.submit(task));
+                }
+            }
+            // the next level reads this one
+            waitFor(futures);
+            futures.clear();
+
+            srcOffset = dstOffset;
+            width = dstWidth;
+            height = dstHeight;
+        }
+
+        image.setData(0, combinedData);
+        image.setMipMapSizes(mipSizes);
+    }
+
+    private static final int UNSUPPORTED = -3;
+    private static final int NO_GAMMA = -2;
+    private static final int NO_ALPHA = -1;
+
+    /**
+     * Index of the alpha component in the pixels of the format, NO_ALPHA if 
+     * there is none or UNSUPPORTED if the fast path cannot handle it. 
+     */
+    private static int getAlphaComponent(Format format) {
+        switch (format) {
+            case Luminance8:
+            case RGB8:
+            case BGR8:
+            case Luminance32F:
+            case RGB32F:
+                return NO_ALPHA;
+            case Alpha8:
+            case ABGR8:
+            case ARGB8:
+                return 0;
+            case Luminance8Alpha8:
+                return 1;
+            case RGBA8:
+            case BGRA8:
+            case RGBA32F:
+                return 3;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    private static void waitFor(List<Future<?>> futures) {
+        boolean interrupted = false;
+        try {
+            for (Future<?> f : futures) {
+                while (true) {
+                    try {
+                        f.get();
+                        break;
+                    } catch (InterruptedException ex) {
+                        // The next level reads this one, all rows must be 
+                        // finished before continuing.
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Mip map generation failed", cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static float srgbToLinear(float c) {
+        if (c <= 0.04045f) {
+            return c / 12.92f;
+        }
+        return (float) Math.pow((c + 0.055f) / 1.055f, 2.4f);
+    }
+
+    private static int linearToSrgb(float c) {
+        // binary search of the rounding thresholds, exact and cheaper than pow
+        int lo = 0;
+        int hi = 255;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (c < SRGB_THRESHOLDS[mid]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Weights of the 8 taps around a texel pair of the source level, from a 
+     * sinc with half the source frequency windowed by a Kaiser window.
+     */
+    private static float[] createKaiserWeights(float alpha) {
+        float[] weights = new float[8];
+        float sum = 0;
+        for (int i = 0; i < 8; i++) {
+            float d = i - 3.5f;
+            float x = d * 0.5f * FastMath.PI;
+            float sinc = x == 0 ? 1f : FastMath.sin(x) / x;
+            float r = d / 4f;
+            float window = besselI0(alpha * FastMath.sqrt(1f - r * r)) / besselI0(alpha);
+            weights[i] = sinc * window;
+            sum += weights[i];
+        }
+        for (int i = 0; i < 8; i++) {
+            weights[i] /= sum;
+        }
+        return weights;
+    }
+
+    private static float besselI0(float x) {
+        float sum = 1f;
+        float term = 1f;
+        float halfX = x * 0.5f;
+        for (int k = 1; k < 20; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * Filters a range of rows of one mip level from the level above it, 
+     * both stored in the same buffer.
+     */
+    private static final class LevelTask implements Runnable {
+
+        private final ByteBuffer data;
+        private final Filter filter;
+        private final int componentSize;
+        private final int components;
+        private final int alpha;
+        private final int srcOffset, srcWidth, srcHeight;
+        private final int dstOffset, dstWidth, dstHeight;
+        private final int firstRow, endRow;
+
+        LevelTask(ByteBuffer data, Filter filter, int componentSize, 
+                  int components, int alpha, 
+                  int srcOffset, int srcWidth, int srcHeight, 
+                  int dstOffset, int dstWidth, int dstHeight, 
+                  int firstRow, int endRow) {
+            this.data = data;
+            this.filter = filter;
+            this.componentSize = componentSize;
+            this.components = components;
+            this.alpha = alpha;
+            this.srcOffset = srcOffset;
+            this.srcWidth = srcWidth;
+            this.srcHeight = srcHeight;
+            this.dstOffset = dstOffset;
+            this.dstWidth = dstWidth;
+            this.dstHeight = dstHeight;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        public void run() {
+            if (filter == Filter.Kaiser) {
+                runKaiser();
+            } else if (componentSize == 1 && alpha == NO_GAMMA) {
+                runBoxBytes();
+            } else {
+                runBox();
+            }
+        }
+
+        private float read(int index, int component) {
+            if (componentSize == 4) {
+                return data.getFloat(index);
+            }
+            int value = data.get(index) & 0xFF;
+            if (alpha != NO_GAMMA && component != alpha) {
+                return SRGB_TO_LINEAR[value];
+            }
+            return value / 255f;
+        }
+
+        private void write(int index, int component, float value) {
+            if (componentSize == 4) {
+                data.putFloat(index, value);
+                return;
+            }
+            int result;
+            if (!(value > 0f)) {
+                result = 0;
+            } else if (alpha != NO_GAMMA && component != alpha) {
+                result = linearToSrgb(value);
+            } else if (value >= 1f) {
+                result = 255;
+            } else {
+                result = (int) (value * 255f + 0.5f);
+            }
+            data.put(index, (byte) result);
+        }
+
+        /**
+         * Returns the end of the source texels averaged into the given 
+         * destination texel. The last texel of an odd sized level also 
+         * covers the last source texel, which would be dropped otherwise.
+         */
+        private static int sampleEnd(int i, int srcSize, int dstSize) {
+            return i == dstSize - 1 ? srcSize : i * 2 + 2;
+        }
+
+        private void runBoxBytes() {
+            int pixelSize = components;
+            int srcStride = srcWidth * pixelSize;
+            for (int y = firstRow; y < endRow; y++) {
+                int y0 = y * 2;
+                int y1 = sampleEnd(y, srcHeight, dstHeight);
+                int dst = dstOffset + y * dstWidth * pixelSize;
+                for (int x = 0; x < dstWidth; x++) {
+                    int x0 = x * 2;
+                    int x1 = sampleEnd(x, srcWidth, dstWidth);
+                    int count = (y1 - y0) * (x1 - x0);
+                    for (int c = 0; c < components; c++) {
+                        int sum = 0;
+                        for (int sy = y0; sy < y1; sy++) {
+                            int row = srcOffset + sy * srcStride + c;
+                            for (int sx = x0; sx < x1; sx++) {
+                                sum += data.get(row + sx * pixelSize) & 0xFF;
+                            }
+                        }
+                        data.put(dst++, (byte) ((sum + count / 2) / count));
+                    }
+                }
+            }
+        }
+
+        private void runBox() {
+            int pixelSize = components * componentSize;
+            int srcStride = srcWidth * pixelSize;
+            for (int y = firstRow; y < endRow; y++) {
+                int y0 = y * 2;
+                int y1 = sampleEnd(y, srcHeight, dstHeight);
+                int dst = dstOffset + y * dstWidth * pixelSize;
+                for (int x = 0; x < dstWidth; x++) {
+                    int x0 = x * 2;
+                    int x1 = sampleEnd(x, srcWidth, dstWidth);
+                    float scale = 1f / ((y1 - y0) * (x1 - x0));
+                    for (int c = 0; c < components; c++) {
+                        int offset = c * componentSize;
+                        float sum = 0f;
+                        for (int sy = y0; sy < y1; sy++) {
+                            int row = srcOffset + sy * srcStride + offset;
+                            for (int sx = x0; sx < x1; sx++) {
+                                sum += read(row + sx * pixelSize, c);
+                            }
+                        }
+                        write(dst + offset, c, sum * scale);
+                    }
+                    dst += pixelSize;
+                }
+            }
+        }
+
+        private void runKaiser() {
+            int pixelSize = components * componentSize;
+            int srcStride = srcWidth * pixelSize;
+            // consecutive rows share 6 of their 8 source rows, keep the 
+            // horizontally filtered ones around
+            float[][] filtered = new float[8][dstWidth * components];
+            int[] filteredRow = new int[8];
+            Arrays.fill(filteredRow, Integer.MIN_VALUE);
+            float[] sum = new float[dstWidth * components];
+            for (int y = firstRow; y < endRow; y++) {
+                Arrays.fill(sum, 0f);
+                for (int ty = 0; ty < 8; ty++) {
+                    int row = y * 2 + ty - 3;
+                    int slot = row & 7;
+                    int sy = clamp(row, srcHeight);
+                    if (filteredRow[slot] != row) {
+                        filterRow(srcOffset + sy * srcStride, pixelSize, filtered[slot]);
+                        filteredRow[slot] = row;
+                    }
+                    float[] values = filtered[slot];
+                    float weight = KAISER_WEIGHTS[ty];
+                    for (int i = 0; i < sum.length; i++) {
+                        sum[i] += values[i] * weight;
+                    }
+                }
+                int dst = dstOffset + y * dstWidth * pixelSize;
+                for (int x = 0, i = 0; x < dstWidth; x++) {
+                    for (int c = 0; c < components; c++, i++) {
+                        write(dst + c * componentSize, c, sum[i]);
+                    }
+                    dst += pixelSize;
+                }
+            }
+        }
+
+        private void filterRow(int row, int pixelSize, float[] store) {
+            for (int x = 0, i = 0; x < dstWidth; x++) {
+                for (int c = 0; c < components; c++, i++) {
+                    int offset = row + c * componentSize;
+                    float value = 0;
+                    for (int tx = 0; tx < 8; tx++) {
+                        int sx = clamp(x * 2 + tx - 3, srcWidth);
+                        value += read(offset + sx * pixelSize, c) * KAISER_WEIGHTS[tx];
+                    }
+                    store[i] = value;
+                }
+            }
+        }
+
+        private static int clamp(int index, int size) {
+            return index < 0 ? 0 : (index >= size ? size - 1 : index);
+        }
+    }
 }
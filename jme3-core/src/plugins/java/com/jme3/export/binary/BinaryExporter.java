@@ -136,6 +136,12 @@ import java.util.logging.Logger;
  * 18. "field data" - 1...X bytes representing the field data. The data length
  * is dependent on the field type and contents.
  * </p>
+ * <p>
+ * When compression is enabled, the version number carries
+ * {@link FormatVersion#FLAG_COMPRESSED} and the object data section is
+ * stored in independently compressed chunks, see {@link ChunkCompressor}.
+ * Locations in the data lookup table refer to the uncompressed data.
+ * </p>
  *
  * @author Joshua Slack
  */
@@ -161,10 +167,46 @@ public class BinaryExporter implements JmeExporter {
 
     public static boolean debug = false;
     public static boolean useFastBufs = true;
+
+    private boolean compressed = false;
+    private int chunkSize = ChunkCompressor.DEFAULT_CHUNK_SIZE;
       
     public BinaryExporter() {
     }
 
+    /**
+     * Enables compression of the object data section. Compressed files
+     * are decompressed in parallel when loaded, but can only be read by
+     * importers that support the compressed format.
+     * 
+     * @param compressed true to write compressed files
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Sets the uncompressed size of the chunks the object data is split
+     * into when compression is enabled. Smaller chunks can be processed
+     * by more threads at once, larger chunks compress slightly better.
+     * 
+     * @param chunkSize the chunk size in bytes, 256 KB by default
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
     public static BinaryExporter getInstance() {
         return new BinaryExporter();
     }
@@ -205,7 +247,11 @@ public class BinaryExporter implements JmeExporter {
         
         // write signature and version
         os.write(ByteUtils.convertToBytes(FormatVersion.SIGNATURE));
-        os.write(ByteUtils.convertToBytes(FormatVersion.VERSION));
+        int formatVersion = FormatVersion.VERSION;
+        if (compressed) {
+            formatVersion |= FormatVersion.FLAG_COMPRESSED;
+        }
+        os.write(ByteUtils.convertToBytes(formatVersion));
         
         int id = processBinarySavable(object);
 
@@ -306,7 +352,11 @@ public class BinaryExporter implements JmeExporter {
         os.write(ByteUtils.convertToBytes(id));
 
         // append stream to the output stream
-        out.writeTo(os);
+        if (compressed) {
+            ChunkCompressor.write(out.toByteArray(), out.size(), chunkSize, os);
+        } else {
+            out.writeTo(os);
+        }
 
 
         out = null;
@@ -36,10 +36,18 @@ import com.jme3.asset.AssetManager;
 import com.jme3.export.*;
 import com.jme3.math.FastMath;
 import java.io.*;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,6 +70,11 @@ public final class BinaryImporter implements JmeImporter {
     //Key - savable, object - capsule
     private IdentityHashMap<Savable, BinaryInputCapsule> capsuleTable
              = new IdentityHashMap<Savable, BinaryInputCapsule>();
+    //Key - id, object - savable still alive from an earlier loadObject
+    private HashMap<Integer, ResidentReference> residentTable
+             = new HashMap<Integer, ResidentReference>();
+    //the references of residentTable whose savable was collected
+    private final ReferenceQueue<Savable> releasedObjects = new ReferenceQueue<Savable>();
     //Key - id, opject - location in the file
     private HashMap<Integer, Integer> locationTable
              = new HashMap<Integer, Integer>();
@@ -69,6 +82,9 @@ public final class BinaryImporter implements JmeImporter {
     public static boolean debug = false;
 
     private byte[] dataArray;
+    private int dataOffset;
+    private boolean opened;
+    private boolean compressed;
     private int aliasWidth;
     private int formatVersion;
 
@@ -80,6 +96,14 @@ public final class BinaryImporter implements JmeImporter {
     public int getFormatVersion(){
         return formatVersion;
     }
+
+    /**
+     * @return true if the last file read had a compressed object data
+     * section
+     */
+    public boolean isCompressed(){
+        return compressed;
+    }
     
     public static boolean canUseFastBuffers(){
         return fastRead;
@@ -130,18 +154,73 @@ public final class BinaryImporter implements JmeImporter {
     }
 
     public Savable load(InputStream is, ReadListener listener, ByteArrayOutputStream baos) throws IOException {
+        return load(readFully(is, listener, baos));
+    }
+
+    /**
+     * Reads the remaining content of the stream into a single array.
+     * File streams are read through their channel in one bulk transfer,
+     * other streams are copied through the given (reusable) byte
+     * array output stream.
+     */
+    private byte[] readFully(InputStream is, ReadListener listener, ByteArrayOutputStream baos) throws IOException {
+        if (is instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) is).getChannel();
+            long remaining = channel.size() - channel.position();
+            if (remaining > Integer.MAX_VALUE) {
+                throw new IOException("The binary file is too large to be loaded: " + remaining + " bytes");
+            }
+            byte[] data = new byte[(int) remaining];
+            ByteBuffer target = ByteBuffer.wrap(data);
+            while (target.hasRemaining()) {
+                int read = channel.read(target);
+                if (read == -1) {
+                    throw new EOFException("Unexpected end of file");
+                }
+                if (listener != null) listener.readBytes(read);
+            }
+            return data;
+        }
+
+        if (baos == null) {
+            baos = new ByteArrayOutputStream(Math.max(is.available(), 4096));
+        } else {
+            baos.reset();
+        }
+        int size = -1;
+        byte[] cache = new byte[8192];
+        while ((size = is.read(cache)) != -1) {
+            baos.write(cache, 0, size);
+            if (listener != null) listener.readBytes(size);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Parses the class table and the object location index, leaving the
+     * object data in place so that objects can be read by id.
+     *
+     * @return the id of the root object
+     */
+    private int readIndex(byte[] data) throws IOException {
         contentTable.clear();
-        BufferedInputStream bis = new BufferedInputStream(is);
-        
+        residentTable.clear();
+        int pos = 0;
+
         int numClasses;
-        
+
         // Try to read signature
-        int maybeSignature = ByteUtils.readInt(bis);
+        int maybeSignature = ByteUtils.convertIntFromBytes(data, pos);
+        pos += 4;
         if (maybeSignature == FormatVersion.SIGNATURE){
             // this is a new version J3O file
-            formatVersion = ByteUtils.readInt(bis);
-            numClasses = ByteUtils.readInt(bis);
-            
+            formatVersion = ByteUtils.convertIntFromBytes(data, pos);
+            numClasses = ByteUtils.convertIntFromBytes(data, pos + 4);
+            pos += 8;
+
+            compressed = (formatVersion & FormatVersion.FLAG_COMPRESSED) != 0;
+            formatVersion &= FormatVersion.VERSION_MASK;
+
             // check if this binary is from the future
             if (formatVersion > FormatVersion.VERSION){
                 throw new IOException("The binary file is of newer version than expected! " + 
@@ -155,99 +234,94 @@ public final class BinaryImporter implements JmeImporter {
             // 0 indicates version before we started adding
             // version numbers
             formatVersion = 0; 
+            compressed = false;
         }
-        
-        int bytes = 4;
+
         aliasWidth = ((int)FastMath.log(numClasses, 256) + 1);
 
         classes.clear();
         for(int i = 0; i < numClasses; i++) {
-            String alias = readString(bis, aliasWidth);
+            String alias = readString(data, pos, aliasWidth);
+            pos += aliasWidth;
             
             // jME3 NEW: Read class version number
             int[] classHierarchyVersions;
             if (formatVersion >= 1){
-                int classHierarchySize = bis.read();
+                int classHierarchySize = data[pos++] & 0xFF;
                 classHierarchyVersions = new int[classHierarchySize];
                 for (int j = 0; j < classHierarchySize; j++){
-                    classHierarchyVersions[j] = ByteUtils.readInt(bis);
+                    classHierarchyVersions[j] = ByteUtils.convertIntFromBytes(data, pos);
+                    pos += 4;
                 }
             }else{
                 classHierarchyVersions = new int[]{ 0 };
             }
             
             // read classname and classname size
-            int classLength = ByteUtils.readInt(bis);
-            String className = readString(bis, classLength);
+            int classLength = ByteUtils.convertIntFromBytes(data, pos);
+            pos += 4;
+            String className = readString(data, pos, classLength);
+            pos += classLength;
             
             BinaryClassObject bco = new BinaryClassObject();
             bco.alias = alias.getBytes();
             bco.className = className;
             bco.classHierarchyVersions = classHierarchyVersions;
             
-            int fields = ByteUtils.readInt(bis);
-            bytes += (8 + aliasWidth + classLength);
+            int fields = ByteUtils.convertIntFromBytes(data, pos);
+            pos += 4;
 
             bco.nameFields = new HashMap<String, BinaryClassField>(fields);
             bco.aliasFields = new HashMap<Byte, BinaryClassField>(fields);
             for (int x = 0; x < fields; x++) {
-                byte fieldAlias = (byte)bis.read();
-                byte fieldType = (byte)bis.read();
+                byte fieldAlias = data[pos++];
+                byte fieldType = data[pos++];
 
-                int fieldNameLength = ByteUtils.readInt(bis);
-                String fieldName = readString(bis, fieldNameLength);
+                int fieldNameLength = ByteUtils.convertIntFromBytes(data, pos);
+                pos += 4;
+                String fieldName = readString(data, pos, fieldNameLength);
+                pos += fieldNameLength;
                 BinaryClassField bcf = new BinaryClassField(fieldName, fieldAlias, fieldType);
                 bco.nameFields.put(fieldName, bcf);
                 bco.aliasFields.put(fieldAlias, bcf);
-                bytes += (6 + fieldNameLength);
             }
             classes.put(alias, bco);
         }
-        if (listener != null) listener.readBytes(bytes);
 
-        int numLocs = ByteUtils.readInt(bis);
-        bytes = 4;
+        int numLocs = ByteUtils.convertIntFromBytes(data, pos);
+        pos += 4;
 
         capsuleTable.clear();
         locationTable.clear();
         for(int i = 0; i < numLocs; i++) {
-            int id = ByteUtils.readInt(bis);
-            int loc = ByteUtils.readInt(bis);
+            int id = ByteUtils.convertIntFromBytes(data, pos);
+            int loc = ByteUtils.convertIntFromBytes(data, pos + 4);
             locationTable.put(id, loc);
-            bytes += 8;
+            pos += 8;
         }
 
         @SuppressWarnings("unused")
-        int numbIDs = ByteUtils.readInt(bis); // XXX: NOT CURRENTLY USED
-        int id = ByteUtils.readInt(bis);
-        bytes += 8;
-        if (listener != null) listener.readBytes(bytes);
-
-        if (baos == null) {
-                baos = new ByteArrayOutputStream(bytes);
+        int numbIDs = ByteUtils.convertIntFromBytes(data, pos); // XXX: NOT CURRENTLY USED
+        int id = ByteUtils.convertIntFromBytes(data, pos + 4);
+        pos += 8;
+
+        // object locations are relative to the start of the data section,
+        // which is read in place instead of being copied out of the file
+        if (compressed) {
+            dataArray = ChunkCompressor.read(data, pos);
+            dataOffset = 0;
         } else {
-                baos.reset();
+            dataArray = data;
+            dataOffset = pos;
         }
-        int size = -1;
-        byte[] cache = new byte[4096];
-        while((size = bis.read(cache)) != -1) {
-            baos.write(cache, 0, size);
-            if (listener != null) listener.readBytes(size);
-        }
-        bis = null;
-
-        dataArray = baos.toByteArray();
-        baos = null;
 
-        Savable rVal = readObject(id);
         if (debug) {
             logger.fine("Importer Stats: ");
             logger.log(Level.FINE, "Tags: {0}", numClasses);
             logger.log(Level.FINE, "Objects: {0}", numLocs);
-            logger.log(Level.FINE, "Data Size: {0}", dataArray.length);
+            logger.log(Level.FINE, "Data Size: {0}", dataArray.length - dataOffset);
         }
-        dataArray = null;
-        return rVal;
+        return id;
     }
 
     public Savable load(URL f) throws IOException {
@@ -275,10 +349,200 @@ public final class BinaryImporter implements JmeImporter {
     }
 
     public Savable load(byte[] data) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        Savable rVal = load(bais);
-        bais.close();
-        return rVal;
+        opened = false;
+        try {
+            return readObject(readIndex(data));
+        } finally {
+            dataArray = null;
+            contentTable.clear();
+        }
+    }
+
+    /**
+     * Opens a binary file for partial loading. Only the class table and
+     * the object index are parsed; no object is materialized until it is
+     * requested through {@link #loadObject(int) }. The file content is
+     * kept in memory until {@link #close() } is called.
+     * <p>
+     * Objects loaded through an opened importer are only weakly cached,
+     * so a subtree that was detached from the scene and is no longer
+     * referenced can be garbage collected and paged back in later,
+     * while objects shared between resident subtrees (meshes, materials)
+     * are still shared.
+     *
+     * @return the id of the root object of the file
+     * @see #getReferencedIds(int, java.lang.String)
+     */
+    public int open(byte[] data) throws IOException {
+        close();
+        int rootId = readIndex(data);
+        opened = true;
+        return rootId;
+    }
+
+    public int open(InputStream is) throws IOException {
+        return open(readFully(is, null, null));
+    }
+
+    public int open(File f) throws IOException {
+        FileInputStream fis = new FileInputStream(f);
+        try {
+            return open(fis);
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Releases the data and the object cache of an opened file.
+     */
+    public void close() {
+        opened = false;
+        dataArray = null;
+        contentTable.clear();
+        residentTable.clear();
+        capsuleTable.clear();
+    }
+
+    /**
+     * @return true if a file has been opened for partial loading
+     */
+    public boolean isOpen() {
+        return opened;
+    }
+
+    /**
+     * Materializes the object with the given id, and everything it
+     * references, from the opened file. Objects that are still resident
+     * from an earlier call are returned as is.
+     */
+    public Savable loadObject(int id) {
+        checkOpen();
+        pruneResidentTable();
+        try {
+            return readObject(id);
+        } finally {
+            for (Map.Entry<Integer, Savable> entry : contentTable.entrySet()) {
+                residentTable.put(entry.getKey(), new ResidentReference(entry.getKey(), entry.getValue(), releasedObjects));
+            }
+            contentTable.clear();
+        }
+    }
+
+    /**
+     * Checks if the object with the given id is currently materialized,
+     * i.e. it has been loaded and is still referenced somewhere.
+     */
+    public boolean isResident(int id) {
+        checkOpen();
+        pruneResidentTable();
+        WeakReference<Savable> ref = residentTable.get(id);
+        return ref != null && ref.get() != null;
+    }
+
+    /**
+     * @return the number of objects loaded from the opened file that have 
+     * not been garbage collected yet
+     */
+    public int getResidentCount() {
+        checkOpen();
+        pruneResidentTable();
+        return residentTable.size();
+    }
+
+    /**
+     * Removes the entries of the objects that were garbage collected, so 
+     * paging subtrees in and out does not grow the table.
+     */
+    private void pruneResidentTable() {
+        Reference<? extends Savable> ref;
+        while ((ref = releasedObjects.poll()) != null) {
+            ResidentReference released = (ResidentReference) ref;
+            // the object may have been loaded again since
+            if (residentTable.get(released.id) == released) {
+                residentTable.remove(released.id);
+            }
+        }
+    }
+
+    private static class ResidentReference extends WeakReference<Savable> {
+
+        private final int id;
+
+        ResidentReference(int id, Savable savable, ReferenceQueue<Savable> queue) {
+            super(savable, queue);
+            this.id = id;
+        }
+    }
+
+    /**
+     * @return the ids of all objects in the opened file
+     */
+    public Set<Integer> getObjectIds() {
+        checkOpen();
+        return Collections.unmodifiableSet(locationTable.keySet());
+    }
+
+    /**
+     * @return the class name of the object with the given id,
+     * or null if there is no such object
+     */
+    public String getObjectClassName(int id) {
+        BinaryClassObject bco = getClassObject(id);
+        return bco != null ? bco.className : null;
+    }
+
+    /**
+     * @return the size in bytes of the serialized data of the object
+     * with the given id, not counting the objects it references
+     */
+    public int getObjectSize(int id) {
+        checkOpen();
+        Integer loc = locationTable.get(id);
+        if (loc == null) {
+            return 0;
+        }
+        return ByteUtils.convertIntFromBytes(dataArray, loc + dataOffset + aliasWidth);
+    }
+
+    /**
+     * Returns the ids of the objects referenced by a field of an object in
+     * the opened file, without materializing any of them. For example,
+     * <code>getReferencedIds(rootId, "children")</code> lists the children
+     * of a serialized Node so they can be loaded one by one.
+     *
+     * @param id the id of the referencing object
+     * @param fieldName the name the field was written with
+     * @return the ids of the referenced objects, empty if the field is
+     * not present
+     */
+    public int[] getReferencedIds(int id, String fieldName) {
+        BinaryClassObject bco = getClassObject(id);
+        if (bco == null) {
+            return new int[0];
+        }
+        int loc = locationTable.get(id) + dataOffset + aliasWidth;
+        int dataLength = ByteUtils.convertIntFromBytes(dataArray, loc);
+        loc += 4;
+
+        BinaryInputCapsule cap = new BinaryInputCapsule(this, null, bco);
+        cap.setContent(dataArray, loc, loc + dataLength);
+        return cap.getReferencedIds(fieldName);
+    }
+
+    private BinaryClassObject getClassObject(int id) {
+        checkOpen();
+        Integer loc = locationTable.get(id);
+        if (loc == null) {
+            return null;
+        }
+        return classes.get(readString(dataArray, loc + dataOffset, aliasWidth));
+    }
+
+    private void checkOpen() {
+        if (!opened) {
+            throw new IllegalStateException("No binary file has been opened");
+        }
     }
 
     @Override
@@ -296,12 +560,11 @@ public final class BinaryImporter implements JmeImporter {
     }
 
     protected String readString(int length, int offset) throws IOException {
-        byte[] data = new byte[length];
-        for(int j = 0; j < length; j++) {
-            data[j] = dataArray[j+offset];
-        }
+        return readString(dataArray, offset, length);
+    }
 
-        return new String(data);
+    private static String readString(byte[] content, int offset, int length) {
+        return new String(content, offset, length);
     }
 
     public Savable readObject(int id) {
@@ -310,8 +573,13 @@ public final class BinaryImporter implements JmeImporter {
             return contentTable.get(id);
         }
 
+        WeakReference<Savable> resident = residentTable.get(id);
+        if (resident != null && resident.get() != null) {
+            return resident.get();
+        }
+
         try {
-            int loc = locationTable.get(id);
+            int loc = locationTable.get(id) + dataOffset;
 
             String alias = readString(aliasWidth, loc);
             loc+=aliasWidth;
@@ -39,6 +39,7 @@ import com.jme3.util.IntMap;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
@@ -64,6 +65,12 @@ final class BinaryInputCapsule implements InputCapsule {
 
     protected int index = 0;
 
+    /**
+     * The content the fields were read from, kept around so that buffer
+     * fields can be copied out on first access instead of eagerly.
+     */
+    protected byte[] content;
+
     public BinaryInputCapsule(BinaryImporter importer, Savable savable, BinaryClassObject bco) {
         this.importer = importer;
         this.cObj = bco;
@@ -71,6 +78,7 @@ final class BinaryInputCapsule implements InputCapsule {
     }
 
     public void setContent(byte[] content, int start, int limit) {
+        this.content = content;
         fieldData = new HashMap<Byte, Object>();
         for (index = start; index < limit;) {
             byte alias = content[index];
@@ -111,7 +119,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.BYTEBUFFER: {
-                        value = readByteBuffer(content);
+                        value = skipBuffer(content, 1);
                         break;
                     }
                     case BinaryClassField.DOUBLE: {
@@ -139,7 +147,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.FLOATBUFFER: {
-                        value = readFloatBuffer(content);
+                        value = skipBuffer(content, 4);
                         break;
                     }
                     case BinaryClassField.FLOATBUFFER_ARRAYLIST: {
@@ -163,7 +171,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.INTBUFFER: {
-                        value = readIntBuffer(content);
+                        value = skipBuffer(content, 4);
                         break;
                     }
                     case BinaryClassField.LONG: {
@@ -227,7 +235,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.SHORTBUFFER: {
-                        value = readShortBuffer(content);
+                        value = skipBuffer(content, 2);
                         break;
                     }
                     case BinaryClassField.STRING: {
@@ -319,7 +327,13 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (ByteBuffer) fieldData.get(field.alias);
+        Object value = fieldData.get(field.alias);
+        if (value instanceof BufferRef) {
+            index = ((BufferRef) value).offset;
+            value = readByteBuffer(content);
+            fieldData.put(field.alias, value);
+        }
+        return (ByteBuffer) value;
     }
 
     @SuppressWarnings("unchecked")
@@ -382,7 +396,13 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (FloatBuffer) fieldData.get(field.alias);
+        Object value = fieldData.get(field.alias);
+        if (value instanceof BufferRef) {
+            index = ((BufferRef) value).offset;
+            value = readFloatBuffer(content);
+            fieldData.put(field.alias, value);
+        }
+        return (FloatBuffer) value;
     }
 
     @SuppressWarnings("unchecked")
@@ -421,7 +441,13 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (IntBuffer) fieldData.get(field.alias);
+        Object value = fieldData.get(field.alias);
+        if (value instanceof BufferRef) {
+            index = ((BufferRef) value).offset;
+            value = readIntBuffer(content);
+            fieldData.put(field.alias, value);
+        }
+        return (IntBuffer) value;
     }
 
     public long readLong(String name, long defVal) throws IOException {
@@ -475,6 +501,35 @@ final class BinaryInputCapsule implements InputCapsule {
             return defVal;
     }
 
+    /**
+     * Returns the ids of all savables referenced by the given field
+     * without reading the referenced objects.
+     */
+    int[] getReferencedIds(String name) {
+        BinaryClassField field = cObj.nameFields.get(name);
+        if (field == null || !fieldData.containsKey(field.alias))
+            return new int[0];
+        ArrayList<ID> ids = new ArrayList<ID>();
+        collectIDs(fieldData.get(field.alias), ids);
+        int[] result = new int[ids.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = ids.get(i).id;
+        return result;
+    }
+
+    private static void collectIDs(Object value, ArrayList<ID> store) {
+        if (value instanceof ID) {
+            store.add((ID) value);
+        } else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value)
+                collectIDs(element, store);
+        } else if (value instanceof StringIDMap) {
+            collectIDs(((StringIDMap) value).values, store);
+        } else if (value instanceof IntIDMap) {
+            collectIDs(((IntIDMap) value).values, store);
+        }
+    }
+
     private Savable[] resolveIDs(Object[] values) {
         if (values != null) {
             Savable[] savables = new Savable[values.length];
@@ -716,7 +771,13 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (ShortBuffer) fieldData.get(field.alias);
+        Object value = fieldData.get(field.alias);
+        if (value instanceof BufferRef) {
+            index = ((BufferRef) value).offset;
+            value = readShortBuffer(content);
+            fieldData.put(field.alias, value);
+        }
+        return (ShortBuffer) value;
     }
 
     public String readString(String name, String defVal) throws IOException {
@@ -761,8 +822,8 @@ final class BinaryInputCapsule implements InputCapsule {
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
         byte[] value = new byte[length];
-        for (int x = 0; x < length; x++)
-            value[x] = readByte(content);
+        System.arraycopy(content, index, value, 0, length);
+        index += length;
         return value;
     }
 
@@ -836,8 +897,8 @@ final class BinaryInputCapsule implements InputCapsule {
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
         float[] value = new float[length];
-        for (int x = 0; x < length; x++)
-            value[x] = readFloat(content);
+        ByteBuffer.wrap(content, index, length * 4).asFloatBuffer().get(value);
+        index += length * 4;
         return value;
     }
 
@@ -864,8 +925,8 @@ final class BinaryInputCapsule implements InputCapsule {
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
         double[] value = new double[length];
-        for (int x = 0; x < length; x++)
-            value[x] = readDouble(content);
+        ByteBuffer.wrap(content, index, length * 8).asDoubleBuffer().get(value);
+        index += length * 8;
         return value;
     }
 
@@ -929,8 +990,8 @@ final class BinaryInputCapsule implements InputCapsule {
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
         short[] value = new short[length];
-        for (int x = 0; x < length; x++)
-            value[x] = readShort(content);
+        ByteBuffer.wrap(content, index, length * 2).asShortBuffer().get(value);
+        index += length * 2;
         return value;
     }
 
@@ -1275,10 +1336,11 @@ final class BinaryInputCapsule implements InputCapsule {
             index += length * 4;
             return value.asFloatBuffer();
         }else{
+            // buffer data is stored little endian, let NIO do the swapping
             FloatBuffer value = BufferUtils.createFloatBuffer(length);
-            for (int x = 0; x < length; x++) {
-                value.put(readFloatForBuffer(content));
-            }
+            value.put(ByteBuffer.wrap(content, index, length * 4)
+                                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer());
+            index += length * 4;
             value.rewind();
             return value;
         }
@@ -1297,10 +1359,11 @@ final class BinaryInputCapsule implements InputCapsule {
             index += length * 4;
             return value.asIntBuffer();
         }else{
+            // buffer data is stored little endian, let NIO do the swapping
             IntBuffer value = BufferUtils.createIntBuffer(length);
-            for (int x = 0; x < length; x++) {
-                value.put(readIntForBuffer(content));
-            }
+            value.put(ByteBuffer.wrap(content, index, length * 4)
+                                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+            index += length * 4;
             value.rewind();
             return value;
         }
@@ -1341,15 +1404,37 @@ final class BinaryInputCapsule implements InputCapsule {
             index += length * 2;
             return value.asShortBuffer();
         }else{
+            // buffer data is stored little endian, let NIO do the swapping
             ShortBuffer value = BufferUtils.createShortBuffer(length);
-            for (int x = 0; x < length; x++) {
-                value.put(readShortForBuffer(content));
-            }
+            value.put(ByteBuffer.wrap(content, index, length * 2)
+                                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+            index += length * 2;
             value.rewind();
             return value;
         }
     }
 
+    /**
+     * Skips over the data of a buffer field, leaving the copy into a
+     * direct buffer until the field is actually requested.
+     */
+    protected BufferRef skipBuffer(byte[] content, int elementSize) throws IOException {
+        int offset = index;
+        int length = readInt(content);
+        if (length == BinaryOutputCapsule.NULL_OBJECT)
+            return null;
+        index += length * elementSize;
+        return new BufferRef(offset);
+    }
+
+    static private class BufferRef {
+        public int offset;
+
+        public BufferRef(int offset) {
+            this.offset = offset;
+        }
+    }
+
     static private class ID {
         public int id;
 
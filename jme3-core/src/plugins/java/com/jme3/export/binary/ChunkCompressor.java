@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.export.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Compresses the object data section of binary files in independent chunks
+ * using the LZ4 block format, so that the chunks can be compressed and
+ * decompressed on several threads at once.
+ * <p>
+ * Layout of a compressed section:
+ * <p>
+ * 1. "data length" - four bytes - the uncompressed length of the section.
+ * </p>
+ * <p>
+ * 2. "chunk size" - four bytes - the uncompressed length of every chunk,
+ * except the last one that holds the remaining bytes.
+ * </p>
+ * <p>
+ * 3. per chunk: "stored length" - four bytes - followed by that many bytes.
+ * A chunk whose stored length equals its uncompressed length is stored as is.
+ * </p>
+ */
+final class ChunkCompressor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 14;
+
+    private static ExecutorService executor;
+
+    private ChunkCompressor() {
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        private int nextThreadId = 0;
+
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "jME3-binary-codec-" + (nextThreadId++));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    /**
+     * Compresses <code>length</code> bytes of <code>data</code> and writes
+     * the compressed section to the given stream.
+     */
+    public static void write(final byte[] data, int length, int chunkSize, OutputStream os) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        int numChunks = (length + chunkSize - 1) / chunkSize;
+        ArrayList<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            final int start = i * chunkSize;
+            final int end = Math.min(length, start + chunkSize);
+            tasks.add(new Callable<byte[]>() {
+                public byte[] call() {
+                    byte[] out = new byte[maxCompressedLength(end - start)];
+                    int compressed = compress(data, start, end - start, out, 0);
+                    if (compressed >= end - start) {
+                        return Arrays.copyOfRange(data, start, end);
+                    }
+                    return Arrays.copyOf(out, compressed);
+                }
+            });
+        }
+
+        os.write(ByteUtils.convertToBytes(length));
+        os.write(ByteUtils.convertToBytes(chunkSize));
+        for (byte[] chunk : invokeAll(tasks)) {
+            os.write(ByteUtils.convertToBytes(chunk.length));
+            os.write(chunk);
+        }
+    }
+
+    /**
+     * Decompresses the section starting at <code>offset</code> into a new
+     * array.
+     */
+    public static byte[] read(final byte[] data, int offset) throws IOException {
+        final int length = ByteUtils.convertIntFromBytes(data, offset);
+        final int chunkSize = ByteUtils.convertIntFromBytes(data, offset + 4);
+        if (length < 0 || chunkSize <= 0) {
+            throw new IOException("Corrupt compressed data section");
+        }
+        int pos = offset + 8;
+
+        final byte[] result = new byte[length];
+        int numChunks = (length + chunkSize - 1) / chunkSize;
+        ArrayList<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            final int storedLength = ByteUtils.convertIntFromBytes(data, pos);
+            final int src = pos + 4;
+            final int dst = i * chunkSize;
+            final int rawLength = Math.min(length - dst, chunkSize);
+            pos = src + storedLength;
+            if (storedLength < 0 || pos > data.length) {
+                throw new IOException("Corrupt compressed data section");
+            }
+            if (storedLength == rawLength) {
+                System.arraycopy(data, src, result, dst, rawLength);
+                continue;
+            }
+            tasks.add(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    decompress(data, src, storedLength, result, dst, rawLength);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+        return result;
+    }
+
+    private static <T> ArrayList<T> invokeAll(ArrayList<Callable<T>> tasks) throws IOException {
+        ArrayList<T> results = new ArrayList<T>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+                return results;
+            }
+            for (Future<T> future : getExecutor().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing compressed data", ex);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8)
+                | ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    /**
+     * Compresses a block into the LZ4 block format.
+     *
+     * @return the compressed length, the destination must have room for
+     * {@link #maxCompressedLength(int) } bytes
+     */
+    static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+        int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+
+        int end = srcOff + srcLen;
+        int matchLimit = end - LAST_LITERALS;
+        int mfLimit = end - MF_LIMIT;
+        int anchor = srcOff;
+        int ip = srcOff;
+        int op = dstOff;
+
+        while (ip < mfLimit) {
+            int sequence = readInt(src, ip);
+            int h = hash(sequence);
+            int ref = table[h];
+            table[h] = ip;
+            if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+
+            // extend the match backwards into the pending literals
+            while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+
+            int literals = ip - anchor;
+            int token = op++;
+            if (literals >= 15) {
+                dst[token] = (byte) (15 << 4);
+                op = writeLength(dst, op, literals - 15);
+            } else {
+                dst[token] = (byte) (literals << 4);
+            }
+            System.arraycopy(src, anchor, dst, op, literals);
+            op += literals;
+
+            int offset = ip - ref;
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+
+            int extra = matchLength - MIN_MATCH;
+            if (extra >= 15) {
+                dst[token] |= 15;
+                op = writeLength(dst, op, extra - 15);
+            } else {
+                dst[token] |= extra;
+            }
+
+            ip += matchLength;
+            anchor = ip;
+        }
+
+        int literals = end - anchor;
+        if (literals >= 15) {
+            dst[op++] = (byte) (15 << 4);
+            op = writeLength(dst, op, literals - 15);
+        } else {
+            dst[op++] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        return op - dstOff;
+    }
+
+    /**
+     * Decompresses a block in the LZ4 block format that must expand to
+     * exactly <code>dstLen</code> bytes.
+     */
+    static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        int ip = srcOff;
+        int end = srcOff + srcLen;
+        int op = dstOff;
+        int dstEnd = dstOff + dstLen;
+        try {
+            while (ip < end) {
+                int token = src[ip++] & 0xFF;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (op + literals > dstEnd) {
+                    throw new IOException("Corrupt compressed chunk");
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip >= end) {
+                    // the last sequence only has literals
+                    break;
+                }
+
+                int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+                ip += 2;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+
+                int ref = op - offset;
+                if (offset == 0 || ref < dstOff || op + matchLength > dstEnd) {
+                    throw new IOException("Corrupt compressed chunk");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    // overlapping match, repeats the last offset bytes
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("Corrupt compressed chunk", ex);
+        }
+        if (op != dstEnd) {
+            throw new IOException("Corrupt compressed chunk");
+        }
+    }
+}
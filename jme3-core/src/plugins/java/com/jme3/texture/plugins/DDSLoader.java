@@ -39,11 +39,13 @@ import com.jme3.texture.Image.Format;
 import com.jme3.texture.Texture;
 import com.jme3.texture.image.ColorSpace;
 import com.jme3.util.BufferUtils;
-import com.jme3.util.LittleEndien;
-import java.io.DataInput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -51,8 +53,14 @@ import java.util.logging.Logger;
 /**
  * 
  * <code>DDSLoader</code> is an image loader that reads in a DirectX DDS file.
- * Supports DXT1, DXT3, DXT5, RGB, RGBA, Grayscale, Alpha pixel formats.
- * 2D images, mipmapped 2D images, and cubemaps.
+ * Supports DXT1, DXT3, DXT5, ATI1/BC4, ATI2/BC5, RGB, RGBA, Grayscale, 
+ * Alpha pixel formats. 2D images, mipmapped 2D images, cubemaps, 3D images
+ * and DX10 texture arrays.
+ * <p>
+ * Image data is read level by level straight into the direct buffers of
+ * the resulting image. The top mipmap levels can be skipped at load time
+ * with {@link TextureKey#setSkipMipLevels(int) }, in which case they are
+ * discarded from the stream without being read into memory.
  * 
  * @author Gareth Jenkins-Jones
  * @author Kirill Vainer
@@ -87,6 +95,8 @@ public class DDSLoader implements AssetLoader {
     private static final int PF_DXT5 = 0x35545844;
     private static final int PF_ATI1 = 0x31495441;
     private static final int PF_ATI2 = 0x32495441; // 0x41544932;
+    private static final int PF_BC4U = 0x55344342;
+    private static final int PF_BC5U = 0x55354342;
     private static final int PF_DX10 = 0x30315844; // a DX10 format
     private static final int DX10DIM_BUFFER = 0x1,
             DX10DIM_TEXTURE1D = 0x2,
@@ -94,6 +104,16 @@ public class DDSLoader implements AssetLoader {
             DX10DIM_TEXTURE3D = 0x4;
     private static final int DX10MISC_GENERATE_MIPS = 0x1,
             DX10MISC_TEXTURECUBE = 0x4;
+    private static final int DXGI_FORMAT_R8G8B8A8_UNORM = 28,
+            DXGI_FORMAT_R8G8B8A8_UNORM_SRGB = 29,
+            DXGI_FORMAT_BC1_UNORM = 71,
+            DXGI_FORMAT_BC1_UNORM_SRGB = 72,
+            DXGI_FORMAT_BC2_UNORM = 74,
+            DXGI_FORMAT_BC2_UNORM_SRGB = 75,
+            DXGI_FORMAT_BC3_UNORM = 77,
+            DXGI_FORMAT_BC3_UNORM_SRGB = 78,
+            DXGI_FORMAT_BC4_UNORM = 80,
+            DXGI_FORMAT_BC5_UNORM = 83;
     private static final double LOG2 = Math.log(2);
     private int width;
     private int height;
@@ -106,13 +126,19 @@ public class DDSLoader implements AssetLoader {
     private boolean directx10;
     private boolean compressed;
     private boolean texture3D;
+    private boolean textureArray;
     private boolean grayscaleOrAlpha;
     private boolean normal;
     private Format pixelFormat;
     private int bpp;
     private int[] sizes;
+    private int skippedSize;
     private int redMask, greenMask, blueMask, alphaMask;
-    private DataInput in;
+    private InputStream stream;
+    private ReadableByteChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer scanline;
+    private byte[] rowA, rowB;
 
     public DDSLoader() {
     }
@@ -122,85 +148,178 @@ public class DDSLoader implements AssetLoader {
             throw new IllegalArgumentException("Texture assets must be loaded using a TextureKey");
         }
 
-        InputStream stream = null;
+        TextureKey key = (TextureKey) info.getKey();
         try {
             stream = info.openStream();
-            in = new LittleEndien(stream);
-            loadHeader();
+            channel = Channels.newChannel(stream);
+            loadHeader(key.getSkipMipLevels());
             if (texture3D) {
-                ((TextureKey) info.getKey()).setTextureTypeHint(Texture.Type.ThreeDimensional);
+                key.setTextureTypeHint(Texture.Type.ThreeDimensional);
+            } else if (textureArray) {
+                key.setTextureTypeHint(Texture.Type.TwoDimensionalArray);
             } else if (depth > 1) {
-                ((TextureKey) info.getKey()).setTextureTypeHint(Texture.Type.CubeMap);
+                key.setTextureTypeHint(Texture.Type.CubeMap);
             }
-            ArrayList<ByteBuffer> data = readData(((TextureKey) info.getKey()).isFlipY());
-            return new Image(pixelFormat, width, height, depth, data, sizes, ColorSpace.sRGB);
+            ArrayList<ByteBuffer> data = readData(key.isFlipY());
+            return new Image(pixelFormat, width, height, depth, data, sizes, getColorSpace());
         } finally {
             if (stream != null){
                 stream.close();
             }
+            stream = null;
+            channel = null;
         }
     }
 
     public Image load(InputStream stream) throws IOException {
-        in = new LittleEndien(stream);
-        loadHeader();
-        ArrayList<ByteBuffer> data = readData(false);
-        return new Image(pixelFormat, width, height, depth, data, sizes, ColorSpace.sRGB);
+        return load(stream, 0);
+    }
+
+    /**
+     * Loads a DDS image from the given stream, leaving the stream open.
+     * 
+     * @param stream The stream to read from
+     * @param skipMipLevels Number of top mipmap levels to discard, the 
+     * smallest level is always kept.
+     * @return The loaded image
+     * @throws IOException If an error occured while reading from the stream
+     */
+    public Image load(InputStream stream, int skipMipLevels) throws IOException {
+        try {
+            this.stream = stream;
+            channel = Channels.newChannel(stream);
+            loadHeader(skipMipLevels);
+            ArrayList<ByteBuffer> data = readData(false);
+            return new Image(pixelFormat, width, height, depth, data, sizes, getColorSpace());
+        } finally {
+            this.stream = null;
+            channel = null;
+        }
+    }
+
+    private ColorSpace getColorSpace() {
+        // two channel and single channel compressed formats hold data
+        // such as normals and heights, not colors
+        if (pixelFormat == Format.RGTC1 || pixelFormat == Format.RGTC2) {
+            return ColorSpace.Linear;
+        }
+        return ColorSpace.sRGB;
+    }
+
+    /**
+     * Reads the next part of the header into the header buffer.
+     */
+    private void readHeader(int size) throws IOException {
+        header.clear();
+        header.limit(size);
+        readFully(header);
+        header.flip();
+    }
+
+    private void skipHeader(int count) {
+        header.position(header.position() + count);
     }
 
     private void loadDX10Header() throws IOException {
-        int dxgiFormat = in.readInt();
-        if (dxgiFormat == 0) {
+        readHeader(20);
+        int dxgiFormat = header.getInt();
+        compressed = true;
+        switch (dxgiFormat) {
+            case 0:
                 pixelFormat = Format.ETC1;
                 bpp = 4;
-        } else {
+                break;
+            case DXGI_FORMAT_BC1_UNORM:
+            case DXGI_FORMAT_BC1_UNORM_SRGB:
+                pixelFormat = Format.DXT1A;
+                bpp = 4;
+                break;
+            case DXGI_FORMAT_BC2_UNORM:
+            case DXGI_FORMAT_BC2_UNORM_SRGB:
+                pixelFormat = Format.DXT3;
+                bpp = 8;
+                break;
+            case DXGI_FORMAT_BC3_UNORM:
+            case DXGI_FORMAT_BC3_UNORM_SRGB:
+                pixelFormat = Format.DXT5;
+                bpp = 8;
+                break;
+            case DXGI_FORMAT_BC4_UNORM:
+                pixelFormat = Format.RGTC1;
+                bpp = 4;
+                break;
+            case DXGI_FORMAT_BC5_UNORM:
+                pixelFormat = Format.RGTC2;
+                bpp = 8;
+                break;
+            case DXGI_FORMAT_R8G8B8A8_UNORM:
+            case DXGI_FORMAT_R8G8B8A8_UNORM_SRGB:
+                // stored in the same layout as the jME3 format,
+                // read like grayscale data without conversion
+                pixelFormat = Format.RGBA8;
+                bpp = 32;
+                compressed = false;
+                grayscaleOrAlpha = true;
+                break;
+            default:
                 throw new IOException("Unsupported DX10 format: " + dxgiFormat);
         }
-        compressed = true;
         
-        int resDim = in.readInt();
+        int resDim = header.getInt();
         if (resDim == DX10DIM_TEXTURE3D) {
             texture3D = true;
         }
-        int miscFlag = in.readInt();
-        int arraySize = in.readInt();
-        if (is(miscFlag, DX10MISC_TEXTURECUBE)) {
-            // mark texture as cube
-            if (arraySize != 6) {
+        int miscFlag = header.getInt();
+        int arraySize = header.getInt();
+        if (texture3D) {
+            depth = Math.max(depth, 1);
+        } else if (is(miscFlag, DX10MISC_TEXTURECUBE)) {
+            // mark texture as cube, the array size either counts
+            // cubes or faces
+            if (arraySize != 1 && arraySize != 6) {
                 throw new IOException("Cubemaps should consist of 6 images!");
             }
+            depth = 6;
+        } else {
+            depth = Math.max(arraySize, 1);
+            textureArray = depth > 1;
         }
 
-        in.skipBytes(4); // skip reserved value
+        skipHeader(4); // skip reserved value
     }
 
     /**
      * Reads the header (first 128 bytes) of a DDS File
+     * 
+     * @param skipMipLevels Number of top mipmap levels to skip
      */
-    private void loadHeader() throws IOException {
-        if (in.readInt() != 0x20534444 || in.readInt() != 124) {
+    private void loadHeader(int skipMipLevels) throws IOException {
+        readHeader(128);
+        if (header.getInt() != 0x20534444 || header.getInt() != 124) {
             throw new IOException("Not a DDS file");
         }
 
-        flags = in.readInt();
+        flags = header.getInt();
 
         if (!is(flags, DDSD_MANDATORY) && !is(flags, DDSD_MANDATORY_DX10)) {
             throw new IOException("Mandatory flags missing");
         }
 
-        height = in.readInt();
-        width = in.readInt();
-        pitchOrSize = in.readInt();
-        depth = in.readInt();
-        mipMapCount = in.readInt();
-        in.skipBytes(44);
+        height = header.getInt();
+        width = header.getInt();
+        pitchOrSize = header.getInt();
+        depth = header.getInt();
+        mipMapCount = header.getInt();
+        skipHeader(44);
         pixelFormat = null;
         directx10 = false;
+        grayscaleOrAlpha = false;
         readPixelFormat();
-        caps1 = in.readInt();
-        caps2 = in.readInt();
-        in.skipBytes(12);
+        caps1 = header.getInt();
+        caps2 = header.getInt();
+        skipHeader(12);
         texture3D = false;
+        textureArray = false;
 
         if (!directx10) {
             if (!is(caps1, DDSCAPS_TEXTURE)) {
@@ -239,26 +358,47 @@ public class DDSLoader implements AssetLoader {
             loadDX10Header();
         }
 
+        skipMipLevels(skipMipLevels);
         loadSizes();
     }
 
+    /**
+     * Drops the given amount of top mipmap levels from the image, the 
+     * smallest level is always kept. Computes how many bytes of each 
+     * mipmap chain in the file must be skipped.
+     */
+    private void skipMipLevels(int levels) {
+        skippedSize = 0;
+        levels = Math.min(levels, mipMapCount - 1);
+        for (int i = 0; i < levels; i++) {
+            skippedSize += getStoredSize(width, height);
+            width = Math.max(width / 2, 1);
+            height = Math.max(height / 2, 1);
+        }
+        if (levels > 0) {
+            mipMapCount -= levels;
+            logger.log(Level.FINE, "Skipped {0} mipmap levels, loading {1}x{2}",
+                    new Object[]{levels, width, height});
+        }
+    }
+
     /**
      * Reads the PixelFormat structure in a DDS file
      */
     private void readPixelFormat() throws IOException {
-        int pfSize = in.readInt();
+        int pfSize = header.getInt();
         if (pfSize != 32) {
             throw new IOException("Pixel format size is " + pfSize + ", not 32");
         }
 
-        int pfFlags = in.readInt();
+        int pfFlags = header.getInt();
         normal = is(pfFlags, DDPF_NORMAL);
 
         if (is(pfFlags, DDPF_FOURCC)) {
             compressed = true;
-            int fourcc = in.readInt();
-            int swizzle = in.readInt();
-            in.skipBytes(16);
+            int fourcc = header.getInt();
+            int swizzle = header.getInt();
+            skipHeader(16);
 
             switch (fourcc) {
                 case PF_DXT1:
@@ -280,16 +420,16 @@ public class DDSLoader implements AssetLoader {
                         normal = true;
                     }
                     break;
-                /*
                 case PF_ATI1:
+                case PF_BC4U:
                     bpp = 4;
-                    pixelFormat = Image.Format.LTC;
+                    pixelFormat = Image.Format.RGTC1;
                     break;
                 case PF_ATI2:
+                case PF_BC5U:
                     bpp = 8;
-                    pixelFormat = Image.Format.LATC;
+                    pixelFormat = Image.Format.RGTC2;
                     break;
-                */
                 case PF_DX10:
                     compressed = false;
                     directx10 = true;
@@ -317,13 +457,13 @@ public class DDSLoader implements AssetLoader {
             compressed = false;
 
             // skip fourCC
-            in.readInt();
+            header.getInt();
 
-            bpp = in.readInt();
-            redMask = in.readInt();
-            greenMask = in.readInt();
-            blueMask = in.readInt();
-            alphaMask = in.readInt();
+            bpp = header.getInt();
+            redMask = header.getInt();
+            greenMask = header.getInt();
+            blueMask = header.getInt();
+            alphaMask = header.getInt();
 
             if (is(pfFlags, DDPF_RGB)) {
                 if (is(pfFlags, DDPF_ALPHAPIXELS)) {
@@ -430,299 +570,175 @@ public class DDSLoader implements AssetLoader {
     }
 
     /**
-     * Reads a grayscale image with mipmaps from the InputStream
-     * @param flip Flip the loaded image by Y axis
-     * @param totalSize Total size of the image in bytes including the mipmaps
-     * @return A ByteBuffer containing the grayscale image data with mips.
-     * @throws java.io.IOException If an error occured while reading from InputStream
+     * Flips the scanlines of one image level stored in the given buffer
+     * on the Y axis, without copying the level out of the buffer.
      */
-    public ByteBuffer readGrayscale2D(boolean flip, int totalSize) throws IOException {
-        ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize);
-
-        if (bpp == 8) {
-            logger.finest("Source image format: R8");
+    private void flipRows(ByteBuffer buffer, int offset, int scanlineSize, int height) {
+        if (rowA == null || rowA.length < scanlineSize) {
+            rowA = new byte[scanlineSize];
+            rowB = new byte[scanlineSize];
         }
-
-        assert bpp == pixelFormat.getBitsPerPixel();
-
-        int mipWidth = width;
-        int mipHeight = height;
-
-        for (int mip = 0; mip < mipMapCount; mip++) {
-            byte[] data = new byte[sizes[mip]];
-            in.readFully(data);
-            if (flip) {
-                data = flipData(data, mipWidth * bpp / 8, mipHeight);
-            }
-            buffer.put(data);
-
-            mipWidth = Math.max(mipWidth / 2, 1);
-            mipHeight = Math.max(mipHeight / 2, 1);
+        ByteBuffer dup = buffer.duplicate();
+        for (int y = 0; y < height / 2; y++) {
+            int top = offset + y * scanlineSize;
+            int bottom = offset + (height - y - 1) * scanlineSize;
+            dup.position(top);
+            dup.get(rowA, 0, scanlineSize);
+            dup.position(bottom);
+            dup.get(rowB, 0, scanlineSize);
+            dup.position(bottom);
+            dup.put(rowA, 0, scanlineSize);
+            dup.position(top);
+            dup.put(rowB, 0, scanlineSize);
         }
-
-        return buffer;
     }
 
     /**
-     * Reads an uncompressed RGB or RGBA image.
-     *
-     * @param flip Flip the image on the Y axis
-     * @param totalSize Size of the image in bytes including mipmaps
-     * @return ByteBuffer containing image data with mipmaps in the format specified by pixelFormat_
-     * @throws java.io.IOException If an error occured while reading from InputStream
+     * Size in bytes of a single image level as it is stored in the file.
      */
-    public ByteBuffer readRGB2D(boolean flip, int totalSize) throws IOException {
-        int redCount = count(redMask),
-                blueCount = count(blueMask),
-                greenCount = count(greenMask),
-                alphaCount = count(alphaMask);
-
-        if (redMask == 0x00FF0000 && greenMask == 0x0000FF00 && blueMask == 0x000000FF) {
-            if (alphaMask == 0xFF000000 && bpp == 32) {
-                logger.finest("Data source format: BGRA8");
-            } else if (bpp == 24) {
-                logger.finest("Data source format: BGR8");
-            }
+    private int getStoredSize(int mipWidth, int mipHeight) {
+        if (compressed) {
+            return ((mipWidth + 3) / 4) * ((mipHeight + 3) / 4) * bpp * 2;
+        } else {
+            return mipWidth * mipHeight * bpp / 8;
         }
+    }
 
-        int sourcebytesPP = bpp / 8;
-        int targetBytesPP = pixelFormat.getBitsPerPixel() / 8;
-
-        ByteBuffer dataBuffer = BufferUtils.createByteBuffer(totalSize);
-
-        int mipWidth = width;
-        int mipHeight = height;
-
-        int offset = 0;
-        byte[] b = new byte[sourcebytesPP];
-        for (int mip = 0; mip < mipMapCount; mip++) {
-            for (int y = 0; y < mipHeight; y++) {
-                for (int x = 0; x < mipWidth; x++) {
-                    in.readFully(b);
-
-                    int i = byte2int(b);
-
-                    byte red = (byte) (((i & redMask) >> redCount));
-                    byte green = (byte) (((i & greenMask) >> greenCount));
-                    byte blue = (byte) (((i & blueMask) >> blueCount));
-                    byte alpha = (byte) (((i & alphaMask) >> alphaCount));
-
-                    if (flip) {
-                        dataBuffer.position(offset + ((mipHeight - y - 1) * mipWidth + x) * targetBytesPP);
-                    }
-                    //else
-                    //    dataBuffer.position(offset + (y * width + x) * targetBytesPP);
-
-                    if (alphaMask == 0) {
-                        dataBuffer.put(red).put(green).put(blue);
-                    } else {
-                        dataBuffer.put(red).put(green).put(blue).put(alpha);
-                    }
-                }
+    /**
+     * Reads exactly as many bytes as the buffer has remaining.
+     */
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of DDS file");
             }
-
-            offset += mipWidth * mipHeight * targetBytesPP;
-
-            mipWidth = Math.max(mipWidth / 2, 1);
-            mipHeight = Math.max(mipHeight / 2, 1);
         }
-
-        return dataBuffer;
     }
 
     /**
-     * Reads a DXT compressed image from the InputStream
-     *
-     * @param totalSize Total size of the image in bytes, including mipmaps
-     * @return ByteBuffer containing compressed DXT image in the format specified by pixelFormat_
-     * @throws java.io.IOException If an error occured while reading from InputStream
+     * Discards the given amount of bytes from the stream.
      */
-    public ByteBuffer readDXT2D(boolean flip, int totalSize) throws IOException {
-        logger.finest("Source image format: DXT");
-
-        ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize);
-
-        int mipWidth = width;
-        int mipHeight = height;
-
-        for (int mip = 0; mip < mipMapCount; mip++) {
-            if (flip) {
-                byte[] data = new byte[sizes[mip]];
-                in.readFully(data);
-                ByteBuffer wrapped = ByteBuffer.wrap(data);
-                wrapped.rewind();
-                ByteBuffer flipped = DXTFlipper.flipDXT(wrapped, mipWidth, mipHeight, pixelFormat);
-                buffer.put(flipped);
-            } else {
-                byte[] data = new byte[sizes[mip]];
-                in.readFully(data);
-                buffer.put(data);
+    private void skipFully(long count) throws IOException {
+        while (count > 0) {
+            long skipped = stream.skip(count);
+            if (skipped <= 0) {
+                if (stream.read() < 0) {
+                    throw new EOFException("Unexpected end of DDS file");
+                }
+                skipped = 1;
             }
-
-            mipWidth = Math.max(mipWidth / 2, 1);
-            mipHeight = Math.max(mipHeight / 2, 1);
+            count -= skipped;
         }
-        buffer.rewind();
-
-        return buffer;
     }
 
     /**
-     * Reads a grayscale image with mipmaps from the InputStream
-     * @param flip Flip the loaded image by Y axis
-     * @param totalSize Total size of the image in bytes including the mipmaps
-     * @return A ByteBuffer containing the grayscale image data with mips.
-     * @throws java.io.IOException If an error occured while reading from InputStream
+     * Reads one level of compressed data, or uncompressed data already
+     * stored in the target format, straight into the image buffer.
      */
-    public ByteBuffer readGrayscale3D(boolean flip, int totalSize) throws IOException {
-        ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize * depth);
-
-        if (bpp == 8) {
-            logger.finest("Source image format: R8");
-        }
+    private void readLevel(ByteBuffer buffer, int offset, int mipWidth, int mipHeight, boolean flip) throws IOException {
+        ByteBuffer level = buffer.duplicate();
+        level.limit(offset + getStoredSize(mipWidth, mipHeight));
+        level.position(offset);
+        readFully(level);
 
-        assert bpp == pixelFormat.getBitsPerPixel();
-
-
-        for (int i = 0; i < depth; i++) {
-            int mipWidth = width;
-            int mipHeight = height;
-
-            for (int mip = 0; mip < mipMapCount; mip++) {
-                byte[] data = new byte[sizes[mip]];
-                in.readFully(data);
-                if (flip) {
-                    data = flipData(data, mipWidth * bpp / 8, mipHeight);
-                }
-                buffer.put(data);
-
-                mipWidth = Math.max(mipWidth / 2, 1);
-                mipHeight = Math.max(mipHeight / 2, 1);
+        if (flip) {
+            if (compressed) {
+                DXTFlipper.flipDXT(buffer, offset, mipWidth, mipHeight, pixelFormat);
+            } else {
+                flipRows(buffer, offset, mipWidth * bpp / 8, mipHeight);
             }
         }
-        buffer.rewind();
-        return buffer;
     }
 
     /**
-     * Reads an uncompressed RGB or RGBA image.
-     *
-     * @param flip Flip the image on the Y axis
-     * @param totalSize Size of the image in bytes including mipmaps
-     * @return ByteBuffer containing image data with mipmaps in the format specified by pixelFormat_
-     * @throws java.io.IOException If an error occured while reading from InputStream
+     * Reads one level of an uncompressed RGB or RGBA image, converting it
+     * scanline by scanline into the format specified by pixelFormat.
      */
-    public ByteBuffer readRGB3D(boolean flip, int totalSize) throws IOException {
+    private void readRGBLevel(ByteBuffer buffer, int offset, int mipWidth, int mipHeight, boolean flip) throws IOException {
         int redCount = count(redMask),
                 blueCount = count(blueMask),
                 greenCount = count(greenMask),
                 alphaCount = count(alphaMask);
 
-        if (redMask == 0x00FF0000 && greenMask == 0x0000FF00 && blueMask == 0x000000FF) {
-            if (alphaMask == 0xFF000000 && bpp == 32) {
-                logger.finest("Data source format: BGRA8");
-            } else if (bpp == 24) {
-                logger.finest("Data source format: BGR8");
-            }
-        }
-
         int sourcebytesPP = bpp / 8;
         int targetBytesPP = pixelFormat.getBitsPerPixel() / 8;
 
-        ByteBuffer dataBuffer = BufferUtils.createByteBuffer(totalSize * depth);
+        int scanlineSize = mipWidth * sourcebytesPP;
+        if (scanline == null || scanline.capacity() < scanlineSize) {
+            scanline = ByteBuffer.allocate(scanlineSize);
+        }
 
-        for (int k = 0; k < depth; k++) {
-            //   ByteBuffer dataBuffer = BufferUtils.createByteBuffer(totalSize);
-            int mipWidth = width;
-            int mipHeight = height;
-            int offset = k * totalSize;
-            byte[] b = new byte[sourcebytesPP];
-            for (int mip = 0; mip < mipMapCount; mip++) {
-                for (int y = 0; y < mipHeight; y++) {
-                    for (int x = 0; x < mipWidth; x++) {
-                        in.readFully(b);
-
-                        int i = byte2int(b);
-
-                        byte red = (byte) (((i & redMask) >> redCount));
-                        byte green = (byte) (((i & greenMask) >> greenCount));
-                        byte blue = (byte) (((i & blueMask) >> blueCount));
-                        byte alpha = (byte) (((i & alphaMask) >> alphaCount));
-
-                        if (flip) {
-                            dataBuffer.position(offset + ((mipHeight - y - 1) * mipWidth + x) * targetBytesPP);
-                        }
-                        //else
-                        //    dataBuffer.position(offset + (y * width + x) * targetBytesPP);
-
-                        if (alphaMask == 0) {
-                            dataBuffer.put(red).put(green).put(blue);
-                        } else {
-                            dataBuffer.put(red).put(green).put(blue).put(alpha);
-                        }
-                    }
+        for (int y = 0; y < mipHeight; y++) {
+            scanline.clear();
+            scanline.limit(scanlineSize);
+            readFully(scanline);
+
+            byte[] src = scanline.array();
+            int row = flip ? mipHeight - y - 1 : y;
+            int pos = offset + row * mipWidth * targetBytesPP;
+            for (int x = 0; x < mipWidth; x++) {
+                int i = 0;
+                for (int b = 0; b < sourcebytesPP; b++) {
+                    i |= (src[x * sourcebytesPP + b] & 0xFF) << (b * 8);
                 }
 
-                offset += (mipWidth * mipHeight * targetBytesPP);
-
-                mipWidth = Math.max(mipWidth / 2, 1);
-                mipHeight = Math.max(mipHeight / 2, 1);
+                buffer.put(pos++, (byte) (((i & redMask) >> redCount)));
+                buffer.put(pos++, (byte) (((i & greenMask) >> greenCount)));
+                buffer.put(pos++, (byte) (((i & blueMask) >> blueCount)));
+                if (alphaMask != 0) {
+                    buffer.put(pos++, (byte) (((i & alphaMask) >> alphaCount)));
+                }
             }
         }
-        dataBuffer.rewind();
-        return dataBuffer;
     }
 
     /**
-     * Reads a DXT compressed image from the InputStream
-     *
-     * @param totalSize Total size of the image in bytes, including mipmaps
-     * @return ByteBuffer containing compressed DXT image in the format specified by pixelFormat_
-     * @throws java.io.IOException If an error occured while reading from InputStream
+     * Reads the given amount of consecutive mipmap chains into the buffer,
+     * level by level. The top levels that were requested to be skipped
+     * are discarded from each chain without being read.
      */
-    public ByteBuffer readDXT3D(boolean flip, int totalSize) throws IOException {
-        logger.finest("Source image format: DXT");
+    private void readSlices(ByteBuffer buffer, int slices, boolean flip) throws IOException {
+        if (compressed) {
+            logger.finest("Source image format: DXT");
+        } else if (grayscaleOrAlpha) {
+            logger.finest("Source image format: Grayscale");
+        } else if (redMask == 0x00FF0000 && greenMask == 0x0000FF00 && blueMask == 0x000000FF) {
+            if (alphaMask == 0xFF000000 && bpp == 32) {
+                logger.finest("Data source format: BGRA8");
+            } else if (bpp == 24) {
+                logger.finest("Data source format: BGR8");
+            }
+        }
 
-        ByteBuffer bufferAll = BufferUtils.createByteBuffer(totalSize * depth);
+        int offset = 0;
+        for (int i = 0; i < slices; i++) {
+            skipFully(skippedSize);
 
-        for (int i = 0; i < depth; i++) {
-            ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize);
             int mipWidth = width;
             int mipHeight = height;
             for (int mip = 0; mip < mipMapCount; mip++) {
-                if (flip) {
-                    byte[] data = new byte[sizes[mip]];
-                    in.readFully(data);
-                    ByteBuffer wrapped = ByteBuffer.wrap(data);
-                    wrapped.rewind();
-                    ByteBuffer flipped = DXTFlipper.flipDXT(wrapped, mipWidth, mipHeight, pixelFormat);
-                    flipped.rewind();
-                    buffer.put(flipped);
+                if (compressed || grayscaleOrAlpha) {
+                    readLevel(buffer, offset, mipWidth, mipHeight, flip);
                 } else {
-                    byte[] data = new byte[sizes[mip]];
-                    in.readFully(data);
-                    buffer.put(data);
+                    readRGBLevel(buffer, offset, mipWidth, mipHeight, flip);
                 }
+                offset += sizes[mip];
 
                 mipWidth = Math.max(mipWidth / 2, 1);
                 mipHeight = Math.max(mipHeight / 2, 1);
             }
-            buffer.rewind();
-            bufferAll.put(buffer);
         }
-
-        return bufferAll;
     }
 
     /**
      * Reads the image data from the InputStream in the required format.
-     * If the file contains a cubemap image, it is loaded as 6 ByteBuffers
-     * (potentially containing mipmaps if they were specified), otherwise
-     * a single ByteBuffer is returned for a 2D image.
+     * If the file contains a cubemap or an array image, it is loaded as one
+     * ByteBuffer per face or layer (potentially containing mipmaps if they
+     * were specified), otherwise a single ByteBuffer is returned for a 2D
+     * or 3D image.
      *
      * @param flip Flip the image data or not.
      *        For cubemaps, each of the cubemap faces is flipped individually.
-     *        If the image is DXT compressed, no flipping is done.
      * @return An ArrayList containing a single ByteBuffer for a 2D image, or 6 ByteBuffers for a cubemap.
      *         The cubemap ByteBuffer order is PositiveX, NegativeX, PositiveY, NegativeY, PositiveZ, NegativeZ.
      *
@@ -738,31 +754,15 @@ public class DDSLoader implements AssetLoader {
         ArrayList<ByteBuffer> allMaps = new ArrayList<ByteBuffer>();
         if (depth > 1 && !texture3D) {
             for (int i = 0; i < depth; i++) {
-                if (compressed) {
-                    allMaps.add(readDXT2D(flip, totalSize));
-                } else if (grayscaleOrAlpha) {
-                    allMaps.add(readGrayscale2D(flip, totalSize));
-                } else {
-                    allMaps.add(readRGB2D(flip, totalSize));
-                }
+                ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize);
+                readSlices(buffer, 1, flip);
+                allMaps.add(buffer);
             }
-        } else if (texture3D) {
-            if (compressed) {
-                allMaps.add(readDXT3D(flip, totalSize));
-            } else if (grayscaleOrAlpha) {
-                allMaps.add(readGrayscale3D(flip, totalSize));
-            } else {
-                allMaps.add(readRGB3D(flip, totalSize));
-            }
-
         } else {
-            if (compressed) {
-                allMaps.add(readDXT2D(flip, totalSize));
-            } else if (grayscaleOrAlpha) {
-                allMaps.add(readGrayscale2D(flip, totalSize));
-            } else {
-                allMaps.add(readRGB2D(flip, totalSize));
-            }
+            int slices = texture3D ? depth : 1;
+            ByteBuffer buffer = BufferUtils.createByteBuffer(totalSize * slices);
+            readSlices(buffer, slices, flip);
+            allMaps.add(buffer);
         }
 
         return allMaps;
@@ -796,23 +796,6 @@ public class DDSLoader implements AssetLoader {
         return i;
     }
 
-    /**
-     * Converts a 1 to 4 sized byte array to an integer
-     */
-    private static int byte2int(byte[] b) {
-        if (b.length == 1) {
-            return b[0] & 0xFF;
-        } else if (b.length == 2) {
-            return (b[0] & 0xFF) | ((b[1] & 0xFF) << 8);
-        } else if (b.length == 3) {
-            return (b[0] & 0xFF) | ((b[1] & 0xFF) << 8) | ((b[2] & 0xFF) << 16);
-        } else if (b.length == 4) {
-            return (b[0] & 0xFF) | ((b[1] & 0xFF) << 8) | ((b[2] & 0xFF) << 16) | ((b[3] & 0xFF) << 24);
-        } else {
-            return 0;
-        }
-    }
-
     /**
      * Converts a int representing a FourCC into a String
      */
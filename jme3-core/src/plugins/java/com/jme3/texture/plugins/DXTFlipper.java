@@ -317,4 +317,126 @@ public class DXTFlipper {
         return retImg;
     }
 
+
+    /**
+     * Flips the rows of pixels inside an 8 byte block, stored as a little
+     * endian long.
+     * 
+     * @param block The block data
+     * @param shift Bit offset of the first row
+     * @param bits Amount of bits per row
+     * @param rows Amount of rows to flip
+     */
+    private static long flipBlockRows(long block, int shift, int bits, int rows) {
+        long mask = (1L << bits) - 1;
+        long result = block;
+        for (int r = 0; r < rows; r++) {
+            long row = (block >>> (shift + r * bits)) & mask;
+            int target = shift + (rows - 1 - r) * bits;
+            result = (result & ~(mask << target)) | (row << target);
+        }
+        return result;
+    }
+
+    private static long readBlock(ByteBuffer img, int index) {
+        long block = 0;
+        for (int i = 0; i < 8; i++) {
+            block |= (img.get(index + i) & 0xFFL) << (i * 8);
+        }
+        return block;
+    }
+
+    private static void writeBlock(ByteBuffer img, int index, long block) {
+        for (int i = 0; i < 8; i++) {
+            img.put(index + i, (byte) (block >>> (i * 8)));
+        }
+    }
+
+    /**
+     * Flips a compressed block (consisting of 8 byte sub-blocks)
+     * read from the source index and writes it to the target index.
+     */
+    private static void flipBlock(ByteBuffer img, int src, int dst, int[] layout, int rows) {
+        for (int i = 0; i < layout.length; i++) {
+            long block = readBlock(img, src + i * 8);
+            switch (layout[i]) {
+                case 1: // color block, 8 bit indices per row after the endpoints
+                    block = flipBlockRows(block, 32, 8, rows);
+                    break;
+                case 2: // DXT3 alpha block, 16 bits per row
+                    block = flipBlockRows(block, 0, 16, rows);
+                    break;
+                case 3: // DXT5 alpha or RGTC block, 12 bits per row after the endpoints
+                    block = flipBlockRows(block, 16, 12, rows);
+                    break;
+            }
+            writeBlock(img, dst + i * 8, block);
+        }
+    }
+
+    /**
+     * Flips a compressed image along the Y axis in place.
+     * Unlike {@link #flipDXT(java.nio.ByteBuffer, int, int, com.jme3.texture.Image.Format) }
+     * no copy of the image is created, which allows to flip a single mipmap 
+     * level inside the buffer holding the whole mipmap chain.
+     * 
+     * @param img The buffer containing the image
+     * @param offset Byte offset of the image inside the buffer
+     * @param w Width of the image
+     * @param h Height of the image
+     * @param format Format of the image, DXT or RGTC
+     */
+    public static void flipDXT(ByteBuffer img, int offset, int w, int h, Format format) {
+        int[] layout;
+        switch (format) {
+            case DXT1:
+            case DXT1A:
+                layout = new int[]{1};
+                break;
+            case DXT3:
+                layout = new int[]{2, 1};
+                break;
+            case DXT5:
+                layout = new int[]{3, 1};
+                break;
+            case RGTC1:
+                layout = new int[]{3};
+                break;
+            case RGTC2:
+                layout = new int[]{3, 3};
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+
+        int bpb = layout.length * 8;
+        int blocksX = (w + 3) / 4;
+        int blocksY = (h + 3) / 4;
+        int rows = Math.min(h, 4);
+        int rowSize = blocksX * bpb;
+        long[] tmp = new long[layout.length];
+
+        for (int y = 0; y < blocksY / 2; y++) {
+            int top = offset + y * rowSize;
+            int bottom = offset + (blocksY - y - 1) * rowSize;
+            for (int x = 0; x < blocksX; x++) {
+                // swap the blocks, flipping them on the way
+                for (int i = 0; i < layout.length; i++) {
+                    tmp[i] = readBlock(img, top + x * bpb + i * 8);
+                }
+                flipBlock(img, bottom + x * bpb, top + x * bpb, layout, rows);
+                for (int i = 0; i < layout.length; i++) {
+                    writeBlock(img, bottom + x * bpb + i * 8, tmp[i]);
+                }
+                flipBlock(img, bottom + x * bpb, bottom + x * bpb, layout, rows);
+            }
+        }
+        if (blocksY % 2 == 1) {
+            int middle = offset + (blocksY / 2) * rowSize;
+            for (int x = 0; x < blocksX; x++) {
+                flipBlock(img, middle + x * bpb, middle + x * bpb, layout, rows);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import org.junit.Test;
+
+/**
+ * Verifies that controls with the same update interval are spread over
+ * different frames.
+ */
+public class AnimControlTest {
+
+    /**
+     * @return The first frame on which the control evaluates its animations.
+     */
+    private static int getFirstEvaluation(AnimControl control) {
+        for (int frame = 0; frame < control.getUpdateInterval(); frame++) {
+            control.update(1 / 60f);
+            if (control.getEvaluationCount() > 0) {
+                return frame;
+            }
+        }
+        throw new AssertionError("not evaluated within the interval");
+    }
+
+    @Test
+    public void testStaggeredUpdates() {
+        AnimControl first = new AnimControl();
+        first.setUpdateInterval(4);
+        AnimControl second;
+        do {
+            second = new AnimControl();
+            second.setUpdateInterval(4);
+        } while (second.getUpdateOffset() == first.getUpdateOffset());
+
+        int firstFrame = getFirstEvaluation(first);
+        int secondFrame = getFirstEvaluation(second);
+        assert firstFrame != secondFrame : firstFrame;
+
+        // after that every control evaluates once per interval
+        for (int i = 0; i < 8; i++) {
+            first.update(1 / 60f);
+        }
+        assert first.getEvaluationCount() == 3 : first.getEvaluationCount();
+    }
+
+    @Test
+    public void testClonesStaggered() {
+        AnimControl control = new AnimControl();
+        control.setUpdateInterval(3);
+        boolean[] frames = new boolean[3];
+        for (int i = 0; i < 60; i++) {
+            AnimControl clone = (AnimControl) control.cloneForSpatial(null);
+            frames[getFirstEvaluation(clone)] = true;
+        }
+        assert frames[0] && frames[1] && frames[2];
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.Spatial.CullHint;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Verifies that controls evaluated by a stage end up in the same state as
+ * controls updated serially, and that the scene can be rendered after the
+ * stage ran.
+ */
+public class AnimEvaluationStageTest {
+
+    private static final int MODEL_COUNT = 24;
+
+    private static Animation createWalk() {
+        Animation walk = new Animation("walk", 1f);
+        for (int bone = 0; bone < 3; bone++) {
+            float[] times = {0f, 0.5f, 1f};
+            Vector3f[] translations = new Vector3f[3];
+            Quaternion[] rotations = new Quaternion[3];
+            for (int i = 0; i < 3; i++) {
+                translations[i] = new Vector3f(0, 1 + 0.1f * i * bone, 0);
+                rotations[i] = new Quaternion().fromAngles(0.3f * i, 0.2f * bone, 0.1f * i * bone);
+            }
+            walk.addTrack(new BoneTrack(bone, times, translations, rotations));
+        }
+        return walk;
+    }
+
+    private static Animation createWave() {
+        Animation wave = new Animation("wave", 0.75f);
+        float[] times = {0f, 0.75f};
+        wave.addTrack(new BoneTrack(1, times,
+                new Vector3f[]{new Vector3f(0, 1, 0), new Vector3f(0, 1.5f, 0)},
+                new Quaternion[]{new Quaternion(), new Quaternion().fromAngles(0, FastMath.HALF_PI, 0)}));
+        wave.addTrack(new SpatialTrack(times,
+                new Vector3f[]{new Vector3f(0, 0, 0), new Vector3f(2, 0, 1)},
+                new Quaternion[]{new Quaternion(), new Quaternion()},
+                new Vector3f[]{new Vector3f(1, 1, 1), new Vector3f(1, 1, 1)}));
+        return wave;
+    }
+
+    private static Skeleton createSkeleton() {
+        Bone root = new Bone("root");
+        Bone spine = new Bone("spine");
+        Bone arm = new Bone("arm");
+        root.addChild(spine);
+        spine.addChild(arm);
+        spine.setBindTransforms(new Vector3f(0, 1, 0), new Quaternion(), new Vector3f(1, 1, 1));
+        arm.setBindTransforms(new Vector3f(0, 1, 0), new Quaternion(), new Vector3f(1, 1, 1));
+        return new Skeleton(new Bone[]{root, spine, arm});
+    }
+
+    /**
+     * Builds models of four kinds: plain bone animations, with a listener,
+     * with an attachment node and with a spatial track whose listener moves
+     * the model.
+     */
+    private static Node createScene(final List<String> events, AnimEvaluationStage stage) {
+        Node scene = new Node("scene");
+        scene.setCullHint(CullHint.Never);
+        Skeleton skeleton = createSkeleton();
+        Animation walk = createWalk();
+        Animation wave = createWave();
+        for (int i = 0; i < MODEL_COUNT; i++) {
+            final Node model = new Node("model" + i);
+            scene.attachChild(model);
+            AnimControl control = new AnimControl(new Skeleton(skeleton));
+            control.addAnim(walk);
+            control.addAnim(wave);
+            model.addControl(control);
+            control.setEvaluationStage(stage);
+
+            AnimChannel channel = control.createChannel();
+            channel.setSpeed(0.5f + 0.1f * i);
+            switch (i % 4) {
+                case 0:
+                    channel.setAnim("walk");
+                    break;
+                case 1:
+                    channel.setAnim("walk");
+                    channel.setLoopMode(LoopMode.Cycle);
+                    control.addListener(new Recorder(events, model));
+                    break;
+                case 2:
+                    channel.setAnim("walk");
+                    model.attachChild(control.getSkeleton().getBone("arm").getAttachmentsNode());
+                    break;
+                default:
+                    channel.setAnim("wave");
+                    control.addListener(new Recorder(events, model) {
+                        @Override
+                        public void onAnimCycleDone(AnimControl control, AnimChannel channel, String animName) {
+                            super.onAnimCycleDone(control, channel, animName);
+                            model.move(0, 0, 1);
+                            channel.setAnim(animName.equals("wave") ? "walk" : "wave", 0.2f);
+                        }
+                    });
+                    break;
+            }
+        }
+        return scene;
+    }
+
+    private static class Recorder implements AnimEventListener {
+
+        private final List<String> events;
+        private final Spatial model;
+
+        Recorder(List<String> events, Spatial model) {
+            this.events = events;
+            this.model = model;
+        }
+
+        public void onAnimCycleDone(AnimControl control, AnimChannel channel, String animName) {
+            events.add(model.getName() + " done " + animName);
+        }
+
+        public void onAnimChange(AnimControl control, AnimChannel channel, String animName) {
+            events.add(model.getName() + " change " + animName);
+        }
+    }
+
+    private static void assertSameState(Node expected, Node actual) {
+        for (int i = 0; i < MODEL_COUNT; i++) {
+            Node expectedModel = (Node) expected.getChild(i);
+            Node actualModel = (Node) actual.getChild(i);
+            assert expectedModel.getWorldTranslation().equals(actualModel.getWorldTranslation()) : actualModel.getName();
+            for (int c = 0; c < expectedModel.getQuantity(); c++) {
+                Spatial expectedChild = expectedModel.getChild(c);
+                Spatial actualChild = actualModel.getChild(c);
+                assert expectedChild.getWorldTranslation().equals(actualChild.getWorldTranslation()) : actualChild.getName();
+                assert expectedChild.getWorldRotation().equals(actualChild.getWorldRotation()) : actualChild.getName();
+            }
+
+            Skeleton expectedSkeleton = expectedModel.getControl(AnimControl.class).getSkeleton();
+            Skeleton actualSkeleton = actualModel.getControl(AnimControl.class).getSkeleton();
+            for (int b = 0; b < expectedSkeleton.getBoneCount(); b++) {
+                Bone expectedBone = expectedSkeleton.getBone(b);
+                Bone actualBone = actualSkeleton.getBone(b);
+                assert expectedBone.getLocalPosition().equals(actualBone.getLocalPosition());
+                assert expectedBone.getLocalRotation().equals(actualBone.getLocalRotation());
+                assert expectedBone.getModelSpacePosition().equals(actualBone.getModelSpacePosition());
+                assert expectedBone.getModelSpaceRotation().equals(actualBone.getModelSpaceRotation());
+            }
+        }
+    }
+
+    @Test
+    public void testStageMatchesSerialUpdate() {
+        AnimEvaluationStage stage = new AnimEvaluationStage(4);
+        try {
+            List<String> serialEvents = new ArrayList<String>();
+            List<String> stageEvents = new ArrayList<String>();
+            Node serial = createScene(serialEvents, null);
+            Node staged = createScene(stageEvents, stage);
+            final Camera cam = new Camera(640, 480);
+
+            for (int frame = 0; frame < 120; frame++) {
+                serial.updateLogicalState(1 / 30f);
+                serial.updateGeometricState();
+
+                // as with ParallelAnimationState, the stage runs after the
+                // geometric update
+                staged.updateLogicalState(1 / 30f);
+                staged.updateGeometricState();
+                assert !stage.evaluate();
+                assert stage.getLastParallelCount() == MODEL_COUNT / 4 : stage.getLastParallelCount();
+                staged.depthFirstTraversal(new SceneGraphVisitor() {
+                    public void visit(Spatial spatial) {
+                        spatial.checkCulling(cam);
+                    }
+                });
+
+                assertSameState(serial, staged);
+            }
+            assert serialEvents.size() > 20 : serialEvents.size();
+            assert serialEvents.equals(stageEvents);
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void testLateListenerEvaluatedOnCallingThread() {
+        AnimEvaluationStage stage = new AnimEvaluationStage(2);
+        try {
+            List<String> events = new ArrayList<String>();
+            Node staged = createScene(events, stage);
+            staged.updateLogicalState(1 / 30f);
+            staged.updateGeometricState();
+
+            // a listener added once the control was queued
+            Node model = (Node) staged.getChild(0);
+            model.getControl(AnimControl.class).addListener(new Recorder(events, model));
+            assert stage.evaluate();
+            assert stage.getLastParallelCount() == MODEL_COUNT / 4 - 1;
+            assert stage.getLastSerialCount() == MODEL_COUNT * 3 / 4 + 1;
+        } finally {
+            stage.shutdown();
+        }
+    }
+}
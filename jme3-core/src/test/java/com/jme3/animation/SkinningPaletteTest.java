@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.opengl.GLRenderer;
+import com.jme3.renderer.opengl.RecordingGL;
+import com.jme3.renderer.opengl.RecordingGL.Call;
+import com.jme3.shader.Uniform;
+import com.jme3.shader.VarType;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Verifies that {@link SkinningPalette} only uploads the bones that changed
+ * and that unchanged bone matrix uniforms are not uploaded again.
+ */
+public class SkinningPaletteTest {
+
+    private static Matrix4f[] createMatrices(int count) {
+        Matrix4f[] matrices = new Matrix4f[count];
+        for (int i = 0; i < count; i++) {
+            matrices[i] = new Matrix4f();
+            matrices[i].setTransform(new Vector3f(i, 0, 0), Vector3f.UNIT_XYZ, 
+                    new Quaternion().fromAngles(0, i * 0.1f, 0).toRotationMatrix());
+        }
+        return matrices;
+    }
+
+    @Test
+    public void testDirtyRangeUpload() {
+        RecordingGL gl = new RecordingGL("GL_ARB_texture_float GL_ARB_half_float_pixel GL_ARB_texture_non_power_of_two GL_EXT_framebuffer_object");
+        GLRenderer renderer = gl.createRenderer();
+
+        Matrix4f[] matrices = createMatrices(24);
+        SkinningPalette palette = new SkinningPalette(30);
+        float[] packed = SoftwareSkinning.packPalette(matrices, null);
+
+        // not uploaded yet, the first bind uploads the whole texture
+        int changed = palette.update(packed, renderer);
+        assert changed == 24 : changed;
+        assert gl.getCalls().isEmpty();
+        renderer.setTexture(0, palette.getTexture());
+        List<Call> uploads = gl.getCalls("glTexImage2D");
+        assert uploads.size() == 1;
+        assert uploads.get(0).intArg(3) == 30 * SkinningPalette.TEXELS_PER_BONE;
+        assert gl.getCalls("glTexSubImage2D").isEmpty();
+
+        // unchanged pose, nothing is uploaded
+        gl.clear();
+        changed = palette.update(packed, renderer);
+        assert changed == 0 : changed;
+        renderer.setTexture(0, palette.getTexture());
+        assert gl.getCalls("glTexImage2D").isEmpty();
+        assert gl.getCalls("glTexSubImage2D").isEmpty();
+
+        // two bones changed, the range between them is uploaded
+        gl.clear();
+        matrices[5].setTranslation(1, 2, 3);
+        matrices[7].setTranslation(4, 5, 6);
+        packed = SoftwareSkinning.packPalette(matrices, packed);
+        changed = palette.update(packed, renderer);
+        assert changed == 3 : changed;
+        renderer.setTexture(0, palette.getTexture());
+        assert gl.getCalls("glTexImage2D").isEmpty();
+        uploads = gl.getCalls("glTexSubImage2D");
+        assert uploads.size() == 1;
+        Call upload = uploads.get(0);
+        assert upload.intArg(2) == 5 * SkinningPalette.TEXELS_PER_BONE;
+        assert upload.intArg(4) == 3 * SkinningPalette.TEXELS_PER_BONE;
+        assert upload.remaining(8) == 3 * SoftwareSkinning.PALETTE_STRIDE * 4;
+        assert palette.getUploadCount() == 1;
+        assert palette.getUploadedBoneCount() == 3;
+    }
+
+    @Test
+    public void testUnchangedUniformNotUploaded() {
+        Matrix4f[] matrices = createMatrices(10);
+        Uniform uniform = new Uniform();
+        uniform.setLocation(1);
+        uniform.setValue(VarType.Matrix4Array, matrices);
+        assert uniform.isUpdateNeeded();
+        uniform.clearUpdateNeeded();
+
+        uniform.setValue(VarType.Matrix4Array, createMatrices(10));
+        assert !uniform.isUpdateNeeded();
+
+        matrices[3].setTranslation(1, 2, 3);
+        uniform.setValue(VarType.Matrix4Array, matrices);
+        assert uniform.isUpdateNeeded();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.util.TempVars;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+/**
+ * Verifies that compressed tracks stay within the tolerances and that 
+ * their quantized arrays behave like regular compact arrays.
+ */
+public class TrackCompressorTest {
+
+    private static final int KEY_COUNT = 61;
+
+    private static BoneTrack createTrack() {
+        float[] times = new float[KEY_COUNT];
+        Vector3f[] translations = new Vector3f[KEY_COUNT];
+        Quaternion[] rotations = new Quaternion[KEY_COUNT];
+        Vector3f[] scales = new Vector3f[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            float t = i / 30f;
+            times[i] = t;
+            translations[i] = new Vector3f(FastMath.sin(t * 2f), 0.5f * t, FastMath.cos(t));
+            rotations[i] = new Quaternion().fromAngles(0.3f * t, FastMath.sin(t), -t);
+            scales[i] = new Vector3f(1f, 1f + 0.1f * t, 1f);
+        }
+        return new BoneTrack(0, times, translations, rotations, scales);
+    }
+
+    /**
+     * The angle between unit rotations, computed from their distance which
+     * is exact for equal rotations.
+     */
+    private static float angle(Quaternion a, Quaternion b) {
+        float sign = a.dot(b) < 0 ? -1f : 1f;
+        float x = a.getX() - b.getX() * sign;
+        float y = a.getY() - b.getY() * sign;
+        float z = a.getZ() - b.getZ() * sign;
+        float w = a.getW() - b.getW() * sign;
+        return 4f * FastMath.asin(Math.min(FastMath.sqrt(x * x + y * y + z * z + w * w) * 0.5f, 1f));
+    }
+
+    /**
+     * Samples both tracks at each key and halfway between them.
+     */
+    private static void assertClose(BoneTrack expected, BoneTrack actual, float tolerance) {
+        Vector3f t0 = new Vector3f(), t1 = new Vector3f();
+        Vector3f s0 = new Vector3f(), s1 = new Vector3f();
+        Quaternion r0 = new Quaternion(), r1 = new Quaternion();
+        TempVars vars = TempVars.get();
+        try {
+            float[] times = expected.getTimes();
+            for (int i = 0; i < times.length * 2 - 1; i++) {
+                float time = (times[i / 2] + times[(i + 1) / 2]) * 0.5f;
+                KeyframeSampler.sample(time, times, expected.isCurveInterpolation(),
+                        expected.getCompactTranslations(), expected.getCompactRotations(),
+                        expected.getCompactScales(), t0, r0, s0, vars);
+                KeyframeSampler.sample(time, actual.getTimes(), actual.isCurveInterpolation(),
+                        actual.getCompactTranslations(), actual.getCompactRotations(),
+                        actual.getCompactScales(), t1, r1, s1, vars);
+                assert t0.distance(t1) <= tolerance : time + " " + t0 + " " + t1;
+                assert angle(r0, r1) <= tolerance : time + " " + r0 + " " + r1;
+                assert s0.distance(s1) <= tolerance : time + " " + s0 + " " + s1;
+            }
+        } finally {
+            vars.release();
+        }
+    }
+
+    private static void assertQuantized(BoneTrack track) {
+        assert track.getCompactTranslations() instanceof QuantizedVector3Array;
+        assert track.getCompactRotations() instanceof QuantizedQuaternionArray;
+        assert track.getCompactScales() instanceof QuantizedVector3Array;
+    }
+
+    @Test
+    public void testRoundTripError() {
+        BoneTrack original = createTrack();
+        TrackCompressor compressor = new TrackCompressor();
+        BoneTrack compressed = compressor.compress(original);
+
+        assertQuantized(compressed);
+        assert compressed.getTimes().length < KEY_COUNT : compressed.getTimes().length;
+        assert compressor.getCompressedSize() < compressor.getOriginalSize();
+        assert compressor.getMaxRotationError() <= compressor.getRotationTolerance();
+        assertClose(original, compressed, 0.001f);
+    }
+
+    @Test
+    public void testRecompression() {
+        BoneTrack original = createTrack();
+        BoneTrack compressed = new TrackCompressor().compress(original);
+        BoneTrack recompressed = new TrackCompressor().compress(compressed);
+
+        assertQuantized(recompressed);
+        assert recompressed.getTimes().length <= compressed.getTimes().length;
+        assertClose(compressed, recompressed, 0.0015f);
+    }
+
+    @Test
+    public void testClone() {
+        BoneTrack compressed = new TrackCompressor().compress(createTrack());
+        BoneTrack clone = compressed.clone();
+
+        assertQuantized(clone);
+        assert clone.getCompactRotations() != compressed.getCompactRotations();
+        assertClose(compressed, clone, 0f);
+
+        SpatialTrack spatial = new SpatialTrack(compressed.getTimes(), compressed.getTranslations(),
+                compressed.getRotations(), null);
+        SpatialTrack compressedSpatial = new TrackCompressor().compress(spatial);
+        SpatialTrack spatialClone = compressedSpatial.clone();
+        assert spatialClone.getCompactRotations() instanceof QuantizedQuaternionArray;
+        assert spatialClone.getCompactScales() == null;
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        BoneTrack compressed = new TrackCompressor().compress(createTrack());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryExporter().save(compressed, out);
+        BoneTrack loaded = (BoneTrack) new BinaryImporter().load(out.toByteArray());
+
+        assertQuantized(loaded);
+        assertClose(compressed, loaded, 0f);
+    }
+
+    @Test
+    public void testModifyQuantizedArray() {
+        BoneTrack compressed = new TrackCompressor().compress(createTrack());
+        QuantizedQuaternionArray rotations = (QuantizedQuaternionArray) compressed.getCompactRotations();
+        QuantizedVector3Array translations = (QuantizedVector3Array) compressed.getCompactTranslations();
+        int count = rotations.getCompactObjectSize();
+
+        Quaternion rotation = new Quaternion().fromAngles(0.1f, 0.2f, 0.3f);
+        Vector3f translation = new Vector3f(0.25f, -0.5f, 0.75f);
+        rotations.set(1, rotation);
+        translations.set(1, translation);
+        assert rotations.get(1, new Quaternion()).equals(rotation);
+        assert translations.get(1, new Vector3f()).equals(translation);
+        assert rotations.getSerializedData().length == count * 4;
+
+        rotations.freeze();
+        translations.freeze();
+        assert angle(rotations.get(1, new Quaternion()), rotation) < 0.0001f;
+        assert translations.get(1, new Vector3f()).distance(translation) < 0.001f;
+        assert rotations.getCompactObjectSize() == count;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import com.jme3.asset.AssetLoadRecord.CacheOutcome;
+import com.jme3.asset.plugins.FileLocator;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Test;
+
+/**
+ * Loads assets from files of known sizes with loaders taking a known time.
+ */
+public class AssetLoadProfilerTest {
+
+    private static final long SLEEP_MILLIS = 20;
+
+    /**
+     * Reads the asset as named by its extension: ".skip" skips the first
+     * ten bytes, ".channel" reads through the FileChannel, ".slow" sleeps
+     * before reading and ".parent" loads "a.data" and "missing.data" first.
+     */
+    public static class ReadingLoader implements AssetLoader {
+
+        public Object load(AssetInfo assetInfo) throws IOException {
+            String extension = assetInfo.getKey().getExtension();
+            if (extension.equals("parent")) {
+                assetInfo.getManager().loadAsset(new AssetKey<Integer>("a.data"));
+                try {
+                    assetInfo.getManager().loadAsset(new AssetKey<Integer>("missing.data"));
+                    assert false;
+                } catch (AssetNotFoundException ex) {
+                }
+            } else if (extension.equals("slow")) {
+                try {
+                    Thread.sleep(SLEEP_MILLIS);
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            } else if (extension.equals("fail")) {
+                throw new IOException("failed on purpose");
+            }
+
+            InputStream in = assetInfo.openStream();
+            try {
+                int count = 0;
+                if (extension.equals("skip")) {
+                    in.skip(10);
+                }
+                if (extension.equals("channel")) {
+                    ByteBuffer buffer = ByteBuffer.allocate(64);
+                    int read;
+                    while ((read = ((FileInputStream) in).getChannel().read(buffer)) > 0) {
+                        count += read;
+                        buffer.clear();
+                    }
+                } else {
+                    byte[] buffer = new byte[64];
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        count += read;
+                    }
+                }
+                return count;
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static File createRoot() throws IOException {
+        File root = File.createTempFile("assets", "");
+        root.delete();
+        root.mkdir();
+        root.deleteOnExit();
+        String[] names = {"a.data", "b.skip", "c.channel", "d.slow", "e.fail", "f.parent"};
+        int[] sizes = {100, 200, 300, 50, 10, 1000};
+        for (int i = 0; i < names.length; i++) {
+            File file = new File(root, names[i]);
+            file.deleteOnExit();
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(new byte[sizes[i]]);
+            out.close();
+        }
+        return root;
+    }
+
+    private static AssetLoadRecord load(AssetManager assetManager, AssetLoadProfiler profiler, String name) {
+        profiler.reset();
+        assetManager.loadAsset(new AssetKey<Integer>(name));
+        List<AssetLoadRecord> records = profiler.getRecords();
+        return records.get(records.size() - 1);
+    }
+
+    @Test
+    public void testBytesAndTimes() throws IOException {
+        AssetManager assetManager = new DesktopAssetManager();
+        assetManager.registerLocator(createRoot().getAbsolutePath(), FileLocator.class);
+        assetManager.registerLoader(ReadingLoader.class, "data", "skip", "channel", "slow", "fail", "parent");
+        AssetLoadProfiler profiler = new AssetLoadProfiler();
+        assetManager.addAssetEventListener(profiler);
+
+        AssetLoadRecord a = load(assetManager, profiler, "a.data");
+        assert a.getBytesRead() == 100 : a;
+        assert a.getLoaderClass() == ReadingLoader.class;
+        assert a.getCacheOutcome() == CacheOutcome.Miss;
+        assert a.getParentKey() == null;
+        assert !a.isFailed();
+        assert a.getTotalTime() >= a.getLocateTime() + a.getLoadTime() + a.getProcessTime() + a.getCloneTime();
+
+        // taken from the cache
+        AssetLoadRecord hit = load(assetManager, profiler, "a.data");
+        assert hit.getCacheOutcome() == CacheOutcome.Hit;
+        assert hit.getBytesRead() == 0;
+        assert hit.getLoaderClass() == null;
+        assert hit.getLoadTime() == 0;
+
+        AssetLoadRecord skip = load(assetManager, profiler, "b.skip");
+        assert skip.getBytesRead() == 190 : skip;
+        AssetLoadRecord channel = load(assetManager, profiler, "c.channel");
+        assert channel.getBytesRead() == 300 : channel;
+
+        AssetLoadRecord slow = load(assetManager, profiler, "d.slow");
+        assert slow.getBytesRead() == 50;
+        assert slow.getLoadTime() >= SLEEP_MILLIS * 1000000 : slow.getLoadTime();
+        assert slow.getTotalTime() >= slow.getLoadTime() + slow.getLocateTime();
+
+        profiler.reset();
+        try {
+            assetManager.loadAsset(new AssetKey<Integer>("e.fail"));
+            assert false;
+        } catch (AssetLoadException ex) {
+        }
+        AssetLoadRecord fail = profiler.getRecords().get(0);
+        assert fail.isFailed();
+        assert fail.getBytesRead() == 0;
+        assert fail.getTotalTime() > 0;
+    }
+
+    @Test
+    public void testDependencies() throws IOException {
+        AssetManager assetManager = new DesktopAssetManager();
+        assetManager.registerLocator(createRoot().getAbsolutePath(), FileLocator.class);
+        assetManager.registerLoader(ReadingLoader.class, "data", "parent");
+        AssetLoadProfiler profiler = new AssetLoadProfiler();
+        assetManager.addAssetEventListener(profiler);
+
+        assetManager.loadAsset(new AssetKey<Integer>("f.parent"));
+        List<AssetLoadRecord> records = profiler.getRecords();
+        // in completion order
+        assert records.size() == 3 : records;
+        AssetLoadRecord child = records.get(0);
+        AssetLoadRecord missing = records.get(1);
+        AssetLoadRecord parent = records.get(2);
+        assert child.getKey().getName().equals("a.data");
+        assert child.getParentKey().equals(parent.getKey());
+        assert missing.isFailed();
+        assert missing.getLoaderClass() == null;
+        assert missing.getParentKey().equals(parent.getKey());
+
+        // the bytes of the dependencies are not counted twice, their time is
+        assert child.getBytesRead() == 100;
+        assert parent.getBytesRead() == 1000 : parent;
+        assert parent.getLoadTime() >= child.getTotalTime() + missing.getTotalTime();
+
+        StringWriter report = new StringWriter();
+        profiler.writeReport(report, 10);
+        String text = report.toString();
+        assert text.contains("3 requests (0 cache hits, 1 failed)") : text;
+        assert text.contains(String.format(Locale.US, "%.2f ms in top level requests, 1100 bytes read",
+                parent.getTotalTime() / 1e6)) : text;
+        assert text.contains("Missing dependencies:") && text.contains("missing.data") : text;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import com.jme3.asset.AssetStreamer.Request;
+import com.jme3.asset.AssetStreamer.State;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.Test;
+
+/**
+ * Streams assets with a loader recording the order it is called in.
+ */
+public class AssetStreamerTest {
+
+    private static final Logger streamerLogger = Logger.getLogger(AssetStreamer.class.getName());
+    private static final List<String> loadOrder = Collections.synchronizedList(new ArrayList<String>());
+    private static volatile CountDownLatch blockEntered;
+    private static volatile CountDownLatch blockReleased;
+
+    /**
+     * Serves an empty stream for any asset.
+     */
+    public static class EmptyLocator implements AssetLocator {
+
+        public void setRootPath(String rootPath) {
+        }
+
+        public AssetInfo locate(AssetManager manager, AssetKey key) {
+            return new AssetInfo(manager, key) {
+                @Override
+                public InputStream openStream() {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the name of the asset. Names starting with "fail" throw an
+     * exception, "error" an Error, and "block" waits for the test.
+     */
+    public static class NameLoader implements AssetLoader {
+
+        public Object load(AssetInfo assetInfo) {
+            String name = assetInfo.getKey().getName();
+            loadOrder.add(name);
+            if (name.startsWith("fail")) {
+                throw new IllegalStateException(name);
+            } else if (name.startsWith("error")) {
+                throw new OutOfMemoryError(name);
+            } else if (name.startsWith("block")) {
+                blockEntered.countDown();
+                try {
+                    blockReleased.await();
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            return name;
+        }
+    }
+
+    /**
+     * Records the delivered results.
+     */
+    private static class Results implements AssetStreamer.Listener<String> {
+
+        final List<String> streamed = new ArrayList<String>();
+        final List<Throwable> failed = new ArrayList<Throwable>();
+
+        public void assetStreamed(Request<String> request, String asset) {
+            streamed.add(asset);
+        }
+
+        public void assetFailed(Request<String> request, Throwable error) {
+            failed.add(error);
+        }
+    }
+
+    private static AssetStreamer createStreamer() {
+        AssetManager assetManager = new DesktopAssetManager();
+        assetManager.registerLocator("/", EmptyLocator.class);
+        assetManager.registerLoader(NameLoader.class, "name");
+        loadOrder.clear();
+        return new AssetStreamer(assetManager, 1);
+    }
+
+    private static void waitForLoaded(AssetStreamer streamer, int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (streamer.getLoadedCount() < count) {
+            assert System.currentTimeMillis() < end : "only " + streamer.getLoadedCount() + " loaded";
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testPriorityOrder() throws InterruptedException {
+        AssetStreamer streamer = createStreamer();
+        try {
+            Results results = new Results();
+            float[] priorities = {5, 1, 3, 4, 2};
+            List<Request<String>> requests = new ArrayList<Request<String>>();
+            for (int i = 0; i < priorities.length; i++) {
+                requests.add(streamer.request(new AssetKey<String>("a" + i + ".name"), priorities[i], results));
+            }
+            // reordered while queued
+            requests.get(3).setPriority(0);
+            streamer.start();
+            waitForLoaded(streamer, priorities.length);
+            assert loadOrder.equals(Arrays.asList("a3.name", "a1.name", "a4.name", "a2.name", "a0.name")) : loadOrder;
+
+            // reordered while waiting for delivery
+            requests.get(0).setPriority(-1);
+            streamer.setFrameBudget(1000);
+            assert streamer.update() == priorities.length;
+            assert results.streamed.equals(Arrays.asList("a0.name", "a3.name", "a1.name", "a4.name", "a2.name")) : results.streamed;
+            for (Request<String> request : requests) {
+                assert request.getState() == State.Delivered;
+            }
+        } finally {
+            streamer.shutdown();
+        }
+    }
+
+    @Test
+    public void testFrameBudget() throws InterruptedException {
+        AssetStreamer streamer = createStreamer();
+        try {
+            Results results = new Results();
+            for (int i = 0; i < 6; i++) {
+                streamer.request(new AssetKey<String>("b" + i + ".name"), i, results);
+            }
+            streamer.start();
+            waitForLoaded(streamer, 6);
+
+            // one result per frame at least, even without a budget
+            streamer.setFrameBudget(0);
+            assert streamer.update() == 1;
+            assert streamer.update() == 1;
+            assert results.streamed.size() == 2;
+            assert streamer.getLoadedCount() == 4;
+
+            streamer.setFrameBudget(1000);
+            assert streamer.update() == 4;
+            assert streamer.update() == 0;
+            assert results.streamed.size() == 6;
+        } finally {
+            streamer.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        AssetStreamer streamer = createStreamer();
+        try {
+            Results results = new Results();
+            streamer.setFrameBudget(1000);
+            Request<String> queued = streamer.request(new AssetKey<String>("c0.name"), 0, results);
+            Request<String> kept = streamer.request(new AssetKey<String>("c1.name"), 1, results);
+            assert queued.cancel();
+            assert queued.getState() == State.Cancelled;
+            assert streamer.getQueuedCount() == 1;
+
+            blockEntered = new CountDownLatch(1);
+            blockReleased = new CountDownLatch(1);
+            Request<String> loading = streamer.request(new AssetKey<String>("block.name"), 2, results);
+            streamer.start();
+            blockEntered.await();
+            assert loading.getState() == State.Loading;
+            assert loading.cancel();
+            blockReleased.countDown();
+
+            Request<String> loaded = streamer.request(new AssetKey<String>("c2.name"), 3, results);
+            while (loaded.getState() != State.Loaded) {
+                Thread.sleep(1);
+            }
+            assert loaded.cancel();
+            assert loading.getState() == State.Cancelled;
+
+            assert streamer.update() == 1;
+            assert !loadOrder.contains("c0.name");
+            assert results.streamed.equals(Collections.singletonList("c1.name")) : results.streamed;
+            assert kept.getState() == State.Delivered;
+            assert !kept.cancel();
+        } finally {
+            streamer.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailingLoader() throws InterruptedException {
+        Level level = streamerLogger.getLevel();
+        streamerLogger.setLevel(Level.OFF);
+        AssetStreamer streamer = createStreamer();
+        try {
+            Results results = new Results();
+            Request<String> failed = streamer.request(new AssetKey<String>("fail.name"), 0, results);
+            Request<String> error = streamer.request(new AssetKey<String>("error.name"), 1, results);
+            Request<String> after = streamer.request(new AssetKey<String>("d0.name"), 2, results);
+            streamer.start();
+            // the thread keeps loading after an Error
+            waitForLoaded(streamer, 3);
+
+            streamer.setFrameBudget(1000);
+            assert streamer.update() == 3;
+            assert results.failed.size() == 2;
+            assert results.failed.get(0) instanceof IllegalStateException : results.failed.get(0);
+            assert results.failed.get(1) instanceof OutOfMemoryError : results.failed.get(1);
+            assert results.streamed.equals(Collections.singletonList("d0.name"));
+            assert failed.getState() == State.Delivered;
+            assert error.getState() == State.Delivered;
+            assert after.getState() == State.Delivered;
+
+            streamer.request(new AssetKey<String>("d1.name"), 0, results);
+            waitForLoaded(streamer, 1);
+            assert streamer.update() == 1;
+            assert results.streamed.size() == 2;
+        } finally {
+            streamer.shutdown();
+            streamerLogger.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.export.binary;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.export.Savable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Loads parts of a file through {@link BinaryImporter#open(byte[]) }.
+ */
+public class BinaryImporterTest {
+
+    public static class Item implements Savable {
+
+        String name;
+        Item[] children;
+        Item shared;
+
+        public Item() {
+        }
+
+        Item(String name, Item shared, Item... children) {
+            this.name = name;
+            this.shared = shared;
+            this.children = children;
+        }
+
+        public void write(JmeExporter ex) throws IOException {
+            OutputCapsule oc = ex.getCapsule(this);
+            oc.write(name, "name", null);
+            oc.write(children, "children", null);
+            oc.write(shared, "shared", null);
+        }
+
+        public void read(JmeImporter im) throws IOException {
+            InputCapsule ic = im.getCapsule(this);
+            name = ic.readString("name", null);
+            Savable[] savables = ic.readSavableArray("children", null);
+            if (savables != null) {
+                children = new Item[savables.length];
+                for (int i = 0; i < savables.length; i++) {
+                    children[i] = (Item) savables[i];
+                }
+            }
+            shared = (Item) ic.readSavable("shared", null);
+        }
+    }
+
+    private static byte[] save(Savable root) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryExporter().save(root, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] createFile() throws IOException {
+        Item shared = new Item("shared", null);
+        Item leaf = new Item("leaf", shared);
+        Item root = new Item("root", null,
+                new Item("a", shared, leaf),
+                new Item("b", shared),
+                new Item("c", null));
+        return save(root);
+    }
+
+    @Test
+    public void testLoadObjectsById() throws IOException {
+        BinaryImporter importer = new BinaryImporter();
+        int rootId = importer.open(createFile());
+        assert importer.isOpen();
+        assert importer.getObjectIds().size() == 6 : importer.getObjectIds();
+        assert importer.getObjectClassName(rootId).equals(Item.class.getName());
+        assert importer.getObjectSize(rootId) > 0;
+
+        int[] childIds = importer.getReferencedIds(rootId, "children");
+        assert childIds.length == 3 : Arrays.toString(childIds);
+        assert importer.getReferencedIds(rootId, "shared").length == 0;
+        assert importer.getReferencedIds(rootId, "unknown").length == 0;
+        // listing the references does not load anything
+        assert importer.getResidentCount() == 0;
+        assert !importer.isResident(rootId);
+
+        Item a = (Item) importer.loadObject(childIds[0]);
+        assert a.name.equals("a");
+        assert a.children[0].name.equals("leaf");
+        assert a.shared.name.equals("shared");
+        // a, leaf and shared
+        assert importer.getResidentCount() == 3;
+        assert importer.isResident(childIds[0]);
+        assert !importer.isResident(rootId);
+        assert !importer.isResident(childIds[1]);
+
+        // objects that are still resident are shared
+        Item b = (Item) importer.loadObject(childIds[1]);
+        assert b.name.equals("b");
+        assert b.shared == a.shared;
+        assert a.children[0].shared == a.shared;
+        assert importer.loadObject(childIds[0]) == a;
+        assert importer.getResidentCount() == 4;
+
+        Item root = (Item) importer.loadObject(rootId);
+        assert root.children[0] == a && root.children[1] == b;
+        assert root.children[2].name.equals("c");
+        assert importer.getResidentCount() == 6;
+
+        importer.close();
+        assert !importer.isOpen();
+    }
+
+    @Test
+    public void testCollectedObjectsArePruned() throws IOException, InterruptedException {
+        BinaryImporter importer = new BinaryImporter();
+        int rootId = importer.open(createFile());
+        int[] childIds = importer.getReferencedIds(rootId, "children");
+        Item c = (Item) importer.loadObject(childIds[2]);
+        Item b = (Item) importer.loadObject(childIds[1]);
+        assert importer.getResidentCount() == 3;
+
+        // c is paged out, b and the shared item stay
+        c = null;
+        List<byte[]> garbage = new ArrayList<byte[]>();
+        for (int i = 0; i < 100 && importer.isResident(childIds[2]); i++) {
+            garbage.add(new byte[1 << 20]);
+            if (garbage.size() > 16) {
+                garbage.clear();
+            }
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert !importer.isResident(childIds[2]);
+        assert importer.getResidentCount() == 2 : importer.getResidentCount();
+        assert importer.isResident(childIds[1]);
+
+        // and loaded again from the file
+        Item reloaded = (Item) importer.loadObject(childIds[2]);
+        assert reloaded.name.equals("c");
+        assert importer.getResidentCount() == 3;
+        assert ((Item) importer.loadObject(childIds[1])) == b;
+    }
+
+    @Test
+    public void testRequiresOpenFile() throws IOException {
+        BinaryImporter importer = new BinaryImporter();
+        assert !importer.isOpen();
+        assertNotOpen(importer);
+
+        int rootId = importer.open(createFile());
+        importer.loadObject(rootId);
+        importer.close();
+        assertNotOpen(importer);
+
+        // a regular load does not open the file
+        Item root = (Item) importer.load(createFile());
+        assert root.children.length == 3;
+        assertNotOpen(importer);
+    }
+
+    private static void assertNotOpen(BinaryImporter importer) {
+        try {
+            importer.isResident(0);
+            assert false;
+        } catch (IllegalStateException ex) {
+        }
+        try {
+            importer.loadObject(0);
+            assert false;
+        } catch (IllegalStateException ex) {
+        }
+        try {
+            importer.getReferencedIds(0, "children");
+            assert false;
+        } catch (IllegalStateException ex) {
+        }
+    }
+}
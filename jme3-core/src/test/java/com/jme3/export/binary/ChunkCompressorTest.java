@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.export.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Verifies that {@link ChunkCompressor} restores the data it compressed.
+ */
+public class ChunkCompressorTest {
+
+    private byte[] roundTrip(byte[] data, int chunkSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[3]);
+        ChunkCompressor.write(data, data.length, chunkSize, out);
+        return ChunkCompressor.read(out.toByteArray(), 3);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(1234);
+        for (int size : new int[]{ 0, 1, 12, 13, 100, 4096, 300000 }) {
+            byte[] noise = new byte[size];
+            random.nextBytes(noise);
+
+            byte[] repeating = new byte[size];
+            for (int i = 0; i < size; i++) {
+                repeating[i] = (byte) (i % 7);
+            }
+
+            byte[] mixed = new byte[size];
+            for (int i = 0; i < size; i++) {
+                if (i > 16 && random.nextInt(8) != 0) {
+                    mixed[i] = mixed[i - 1 - random.nextInt(16)];
+                } else {
+                    mixed[i] = (byte) random.nextInt(256);
+                }
+            }
+
+            for (int chunkSize : new int[]{ 1, 1000, 65536, 1 << 20 }) {
+                assert Arrays.equals(noise, roundTrip(noise, chunkSize));
+                assert Arrays.equals(repeating, roundTrip(repeating, chunkSize));
+                assert Arrays.equals(mixed, roundTrip(mixed, chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void testCompressesRedundantData() throws IOException {
+        byte[] data = new byte[100000];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkCompressor.write(data, data.length, ChunkCompressor.DEFAULT_CHUNK_SIZE, out);
+        assert out.size() < data.length / 100;
+    }
+}
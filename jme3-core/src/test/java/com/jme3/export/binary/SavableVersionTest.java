@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.export.binary;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.Savable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+/**
+ * Verifies that the savable versions of a class hierarchy survive a
+ * round trip through {@link BinaryExporter} and {@link BinaryImporter}.
+ */
+public class SavableVersionTest {
+
+    public static class BaseSavable implements Savable {
+
+        public static final int SAVABLE_VERSION = 7;
+
+        int baseVersion = -1;
+
+        public void write(JmeExporter ex) throws IOException {
+            ex.getCapsule(this).write(1, "value", 0);
+        }
+
+        public void read(JmeImporter im) throws IOException {
+            InputCapsule ic = im.getCapsule(this);
+            baseVersion = ic.getSavableVersion(BaseSavable.class);
+        }
+    }
+
+    public static class DerivedSavable extends BaseSavable {
+
+        public static final int SAVABLE_VERSION = 3;
+
+        int derivedVersion = -1;
+
+        @Override
+        public void read(JmeImporter im) throws IOException {
+            super.read(im);
+            derivedVersion = im.getCapsule(this).getSavableVersion(DerivedSavable.class);
+        }
+    }
+
+    @Test
+    public void testSavableVersionRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryExporter().save(new DerivedSavable(), out);
+        DerivedSavable loaded = (DerivedSavable) new BinaryImporter().load(out.toByteArray());
+
+        assert loaded.derivedVersion == DerivedSavable.SAVABLE_VERSION : loaded.derivedVersion;
+        assert loaded.baseVersion == BaseSavable.SAVABLE_VERSION : loaded.baseVersion;
+    }
+}
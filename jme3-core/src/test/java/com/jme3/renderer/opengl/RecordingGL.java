@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.renderer.opengl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fake OpenGL 2.1 implementation that records the calls made to it, used
+ * to verify what a {@link GLRenderer} sends to the driver without a 
+ * context.
+ * <p>
+ * Object names are allocated from a counter, queried limits return 4096 
+ * and everything else returns zero.
+ */
+public class RecordingGL implements InvocationHandler {
+
+    /**
+     * A recorded call.
+     */
+    public static class Call {
+
+        public final String name;
+        public final Object[] args;
+        private final int[] remaining;
+
+        Call(String name, Object[] args) {
+            this.name = name;
+            this.args = args != null ? args : new Object[0];
+            this.remaining = new int[this.args.length];
+            for (int i = 0; i < this.args.length; i++) {
+                if (this.args[i] instanceof Buffer) {
+                    remaining[i] = ((Buffer) this.args[i]).remaining();
+                }
+            }
+        }
+
+        public int intArg(int index) {
+            return ((Number) args[index]).intValue();
+        }
+
+        /**
+         * @return the number of elements remaining in a buffer argument at
+         * the time of the call
+         */
+        public int remaining(int index) {
+            return remaining[index];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(name).append('(');
+            for (int i = 0; i < args.length; i++) {
+                sb.append(i > 0 ? ", " : "").append(args[i]);
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    private final List<Call> calls = new ArrayList<Call>();
+    private final String extensions;
+    private int nextName = 1;
+
+    /**
+     * @param extensions the space separated extensions to report
+     */
+    public RecordingGL(String extensions) {
+        this.extensions = extensions;
+    }
+
+    /**
+     * Creates an initialized renderer on top of this fake implementation.
+     */
+    public GLRenderer createRenderer() {
+        Object gl = Proxy.newProxyInstance(getClass().getClassLoader(), 
+                new Class<?>[]{ GL2.class, GLExt.class, GLFbo.class }, this);
+        GLRenderer renderer = new GLRenderer((GL) gl, (GLExt) gl, (GLFbo) gl);
+        renderer.initialize();
+        calls.clear();
+        return renderer;
+    }
+
+    /**
+     * @return the calls made since the last {@link #clear()}.
+     */
+    public List<Call> getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the calls to the given function made since the last 
+     * {@link #clear()}.
+     */
+    public List<Call> getCalls(String name) {
+        List<Call> result = new ArrayList<Call>();
+        for (Call call : calls) {
+            if (call.name.equals(name)) {
+                result.add(call);
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        calls.clear();
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        calls.add(new Call(name, args));
+
+        if (name.equals("glGetString")) {
+            int param = (Integer) args[0];
+            if (param == GL.GL_VERSION) {
+                return "2.1.0";
+            } else if (param == GL.GL_SHADING_LANGUAGE_VERSION) {
+                return "1.20";
+            } else if (param == GL.GL_EXTENSIONS) {
+                return extensions;
+            }
+            return "RecordingGL";
+        } else if (name.equals("glGetInteger")) {
+            IntBuffer buf = (IntBuffer) args[1];
+            buf.put(buf.position(), 4096);
+        } else if (name.startsWith("glGen")) {
+            IntBuffer buf = (IntBuffer) args[0];
+            for (int i = buf.position(); i < buf.limit(); i++) {
+                buf.put(i, nextName++);
+            }
+        } else if (name.equals("glCreateShader") || name.equals("glCreateProgram")) {
+            return nextName++;
+        } else if (name.equals("toString")) {
+            return "RecordingGL";
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (name.equals("equals")) {
+            return proxy == args[0];
+        }
+
+        Class<?> type = method.getReturnType();
+        if (type == int.class) {
+            return 0;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLoader;
+import com.jme3.asset.AssetLocator;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.AssetStreamer;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.TextureKey;
+import com.jme3.system.NullRenderer;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.TextureStreamer.StreamedTexture;
+import com.jme3.util.BufferUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import org.junit.Test;
+
+/**
+ * Streams generated textures with simulated usage feedback.
+ */
+public class TextureStreamerTest {
+
+    private static final int SIZE = 256;
+    private static final int LEVELS = 9;
+
+    /**
+     * Serves an empty stream for any asset.
+     */
+    public static class EmptyLocator implements AssetLocator {
+
+        public void setRootPath(String rootPath) {
+        }
+
+        public AssetInfo locate(AssetManager manager, AssetKey key) {
+            return new AssetInfo(manager, key) {
+                @Override
+                public InputStream openStream() {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+            };
+        }
+    }
+
+    /**
+     * Generates a mipmapped RGBA8 image honoring the skipped levels, each 
+     * level is filled with its number.
+     */
+    public static class LevelLoader implements AssetLoader {
+
+        public Object load(AssetInfo assetInfo) throws IOException {
+            int skip = Math.min(((TextureKey) assetInfo.getKey()).getSkipMipLevels(), LEVELS - 1);
+            int size = SIZE >> skip;
+            int[] sizes = new int[LEVELS - skip];
+            ArrayList<ByteBuffer> data = new ArrayList<ByteBuffer>();
+            int total = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = Math.max(size >> i, 1) * Math.max(size >> i, 1) * 4;
+                total += sizes[i];
+            }
+            ByteBuffer buffer = BufferUtils.createByteBuffer(total);
+            for (int i = 0; i < sizes.length; i++) {
+                for (int j = 0; j < sizes[i]; j++) {
+                    buffer.put((byte) (skip + i));
+                }
+            }
+            buffer.flip();
+            data.add(buffer);
+            return new Image(Format.RGBA8, size, size, 1, data, sizes, null);
+        }
+    }
+
+    private static AssetManager createAssetManager() {
+        AssetManager assetManager = new DesktopAssetManager();
+        assetManager.registerLocator("/", EmptyLocator.class);
+        assetManager.registerLoader(LevelLoader.class, "level");
+        return assetManager;
+    }
+
+    private static Texture load(AssetManager assetManager, String name, int skip) {
+        TextureKey key = new TextureKey(name);
+        key.setSkipMipLevels(skip);
+        return assetManager.loadTexture(key);
+    }
+
+    /**
+     * Runs frames, reporting the given sizes for the textures, until 
+     * all textures reached their target level.
+     */
+    private static void run(AssetStreamer streamer, TextureStreamer textureStreamer, 
+            Texture[] textures, float[] sizes) throws InterruptedException {
+        for (int frame = 0; frame < 5000; frame++) {
+            for (int i = 0; i < textures.length; i++) {
+                if (sizes[i] > 0) {
+                    textureStreamer.reportUsage(textures[i], sizes[i]);
+                }
+            }
+            streamer.update();
+            textureStreamer.update();
+
+            boolean done = true;
+            for (StreamedTexture st : textureStreamer.getStreamedTextures()) {
+                done &= !st.isLoading() && st.getResidentLevel() == st.getTargetLevel();
+            }
+            if (done) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        throw new AssertionError("Streaming did not settle");
+    }
+
+    private static void checkLevel(Texture texture, int level) {
+        Image image = texture.getImage();
+        assert image.getWidth() == SIZE >> level;
+        assert image.getMipMapSizes().length == LEVELS - level;
+        assert image.getData(0).get(0) == level;
+        assert image.getData(0).get(image.getData(0).limit() - 1) == LEVELS - 1;
+    }
+
+    @Test
+    public void testStreamAndEvict() throws InterruptedException {
+        AssetStreamer streamer = new AssetStreamer(createAssetManager(), 1);
+        streamer.start();
+        TextureStreamer textureStreamer = new TextureStreamer(streamer);
+        textureStreamer.setRenderer(new NullRenderer());
+        textureStreamer.setEvictionDelay(5);
+        try {
+            Texture texture = load(createAssetManager(), "a.level", 5);
+            StreamedTexture st = textureStreamer.register(texture);
+            assert st.getBaseLevel() == 5;
+            checkLevel(texture, 5);
+
+            // 64 pixels on screen need level 2 of the 256 pixel texture
+            run(streamer, textureStreamer, new Texture[]{texture}, new float[]{64});
+            assert st.getResidentLevel() == 2;
+            checkLevel(texture, 2);
+
+            run(streamer, textureStreamer, new Texture[]{texture}, new float[]{SIZE});
+            checkLevel(texture, 0);
+
+            // coarser levels needed, the finer ones are kept while there
+            // is memory left
+            run(streamer, textureStreamer, new Texture[]{texture}, new float[]{32});
+            checkLevel(texture, 0);
+
+            // no longer used, dropped back to the base level after the delay
+            for (int i = 0; i < 10; i++) {
+                textureStreamer.update();
+            }
+            checkLevel(texture, 5);
+            assert textureStreamer.getResidentMemory() == st.getMemory(5);
+        } finally {
+            streamer.shutdown();
+        }
+    }
+
+    @Test
+    public void testMemoryBudget() throws InterruptedException {
+        AssetStreamer streamer = new AssetStreamer(createAssetManager(), 1);
+        streamer.start();
+        TextureStreamer textureStreamer = new TextureStreamer(streamer);
+        try {
+            AssetManager assetManager = createAssetManager();
+            Texture near = load(assetManager, "near.level", 4);
+            Texture far = load(assetManager, "far.level", 4);
+            StreamedTexture nearState = textureStreamer.register(near);
+            StreamedTexture farState = textureStreamer.register(far);
+
+            // room for level 1 of one texture, but not of both
+            textureStreamer.setMemoryBudget(nearState.getMemory(1) + farState.getMemory(3));
+            Texture[] textures = {near, far};
+            run(streamer, textureStreamer, textures, new float[]{SIZE, SIZE / 2});
+            assert nearState.getResidentLevel() == 0 || nearState.getResidentLevel() == 1;
+            assert farState.getResidentLevel() > 1;
+            assert textureStreamer.getResidentMemory() <= textureStreamer.getMemoryBudget();
+
+            // the other texture becomes more important
+            run(streamer, textureStreamer, textures, new float[]{SIZE / 8, SIZE});
+            assert farState.getResidentLevel() <= 1;
+            assert nearState.getResidentLevel() >= 3;
+            assert textureStreamer.getResidentMemory() <= textureStreamer.getMemoryBudget();
+        } finally {
+            streamer.shutdown();
+        }
+    }
+}
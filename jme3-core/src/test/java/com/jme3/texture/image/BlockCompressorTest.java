@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.image;
+
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.util.BufferUtils;
+import com.jme3.util.MipMapGenerator;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+/**
+ * Checks the block layout written by {@link BlockCompressor}.
+ */
+public class BlockCompressorTest {
+
+    private static Image createImage(int width, int height, int[] argb) {
+        ByteBuffer data = BufferUtils.createByteBuffer(width * height * 4);
+        Image image = new Image(Format.RGBA8, width, height, data, ColorSpace.Linear);
+        ImageRaster.create(image).setPixels(0, 0, width, height, argb, 0);
+        return image;
+    }
+
+    private static int getShort(ByteBuffer data, int index) {
+        return (data.get(index) & 0xff) | (data.get(index + 1) & 0xff) << 8;
+    }
+
+    @Test
+    public void testSolidColor() {
+        int[] argb = new int[16];
+        for (int i = 0; i < 16; i++) {
+            argb[i] = 0xFFFF0000;
+        }
+        Image image = createImage(4, 4, argb);
+        for (BlockCompressor.Quality quality : BlockCompressor.Quality.values()) {
+            Image dxt1 = new BlockCompressor(quality, null).compress(image, Format.DXT1);
+            ByteBuffer data = dxt1.getData(0);
+            assert data.capacity() == 8;
+            assert getShort(data, 0) == 0xF800 && getShort(data, 2) == 0xF800;
+            assert data.getInt(4) == 0;
+        }
+    }
+
+    @Test
+    public void testTransparentTexels() {
+        int[] argb = new int[16];
+        for (int i = 0; i < 16; i++) {
+            argb[i] = i < 8 ? 0x00000000 : 0xFF0000FF;
+        }
+        Image dxt1a = new BlockCompressor().compress(createImage(4, 4, argb), Format.DXT1A);
+        ByteBuffer data = dxt1a.getData(0);
+        // three color mode, the first two rows use the transparent index
+        assert getShort(data, 0) <= getShort(data, 2);
+        assert (data.get(4) & 0xff) == 0xff && (data.get(5) & 0xff) == 0xff;
+        assert data.get(6) == 0 && data.get(7) == 0;
+    }
+
+    @Test
+    public void testFourColorBlocks() {
+        int[] argb = new int[16];
+        for (int i = 0; i < 16; i++) {
+            int v = i * 17;
+            argb[i] = 0xFF000000 | v << 16 | v << 8 | v;
+        }
+        for (Format format : new Format[]{ Format.DXT3, Format.DXT5 }) {
+            ByteBuffer data = new BlockCompressor().compress(createImage(4, 4, argb), format).getData(0);
+            // decode the color part like DXT3 and DXT5 decoders do, with
+            // four colors whatever the endpoint order, 85 apart
+            int c0 = getShort(data, 8) >> 11, c1 = getShort(data, 10) >> 11;
+            int r0 = c0 << 3 | c0 >> 2, r1 = c1 << 3 | c1 >> 2;
+            int[] palette = { r0, r1, (2 * r0 + r1) / 3, (r0 + 2 * r1) / 3 };
+            int bits = data.getInt(12);
+            for (int i = 0; i < 16; i++) {
+                int red = palette[(bits >> (i * 2)) & 3];
+                assert Math.abs(red - i * 17) <= 48 : format + " " + i + " " + red;
+            }
+        }
+    }
+
+    @Test
+    public void testTwoChannels() {
+        int[] argb = new int[16];
+        for (int i = 0; i < 16; i++) {
+            argb[i] = (i & 1) == 0 ? 0xFF20C000 : 0xFF805000;
+        }
+        Image rgtc2 = new BlockCompressor().compress(createImage(4, 4, argb), Format.RGTC2);
+        ByteBuffer data = rgtc2.getData(0);
+        assert data.capacity() == 16;
+        // both values of each channel are endpoints
+        assert (data.get(0) & 0xff) == 0x80 && (data.get(1) & 0xff) == 0x20;
+        assert (data.get(8) & 0xff) == 0xC0 && (data.get(9) & 0xff) == 0x50;
+    }
+
+    @Test
+    public void testMipMapsAndThreads() {
+        int width = 302, height = 198;
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = (i * 0x9E3779B1) ^ (i << 3);
+        }
+        Image image = createImage(width, height, argb);
+        MipMapGenerator.generateMipMaps(image);
+        int levels = image.getMipMapSizes().length;
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BlockCompressor compressor = new BlockCompressor();
+            Image serial = compressor.compress(image, Format.DXT5);
+            compressor.setExecutor(executor);
+            Image parallel = compressor.compress(image, Format.DXT5);
+
+            int[] sizes = serial.getMipMapSizes();
+            assert sizes.length == levels;
+            // 76x50 blocks of 16 bytes, then 38x25 ...
+            assert sizes[0] == 76 * 50 * 16 && sizes[1] == 38 * 25 * 16;
+            assert sizes[levels - 1] == 16;
+            assert serial.getData(0).equals(parallel.getData(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadsWithPositionedCodecs() {
+        // these codecs read through the position of the buffer, RGTC1 blocks
+        // are quick to encode so the tasks spend most of their time reading
+        Format[] sources = {Format.RGB565, Format.RGBA16F};
+        int width = 256, height = 256;
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = (i * 0x9E3779B1) ^ (i << 5) | 0xFF000000;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (Format source : sources) {
+                ByteBuffer data = BufferUtils.createByteBuffer(width * height * source.getBitsPerPixel() / 8);
+                Image image = new Image(source, width, height, data, ColorSpace.Linear);
+                ImageRaster.create(image).setPixels(0, 0, width, height, argb, 0);
+
+                BlockCompressor compressor = new BlockCompressor();
+                Image serial = compressor.compress(image, Format.RGTC1);
+                compressor.setExecutor(executor);
+                for (int i = 0; i < 10; i++) {
+                    Image parallel = compressor.compress(image, Format.RGTC1);
+                    assert serial.getData(0).equals(parallel.getData(0)) : source;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
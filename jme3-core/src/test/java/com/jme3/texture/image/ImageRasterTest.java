@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.image;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+/**
+ * Checks that the bulk methods of {@link ImageRaster} match reading and 
+ * writing pixel by pixel.
+ */
+public class ImageRasterTest {
+
+    private static Image createImage(Format format, ColorSpace colorSpace) {
+        int[] mipSizes = {8 * 4 * format.getBitsPerPixel() / 8, 
+                          4 * 2 * format.getBitsPerPixel() / 8};
+        ByteBuffer data = BufferUtils.createByteBuffer(mipSizes[0] + mipSizes[1]);
+        return new Image(format, 8, 4, data, mipSizes, colorSpace);
+    }
+
+    private static void checkFormat(Format format, ColorSpace colorSpace, int mipLevel) {
+        Image image = createImage(format, colorSpace);
+        ImageRaster raster = ImageRaster.create(image, 0, mipLevel, true);
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        float[] colors = new float[width * height * 4];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = (i * 7 % 13) / 12f;
+        }
+        raster.setPixels(0, 0, width, height, colors, 0);
+
+        float[] read = new float[colors.length];
+        int[] argb = new int[width * height];
+        raster.getPixels(0, 0, width, height, read, 0);
+        raster.getPixels(0, 0, width, height, argb, 0);
+
+        Image expected = createImage(format, colorSpace);
+        ImageRaster expectedRaster = ImageRaster.create(expected, 0, mipLevel, true);
+        ColorRGBA color = new ColorRGBA();
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i += 4) {
+                color.set(colors[i], colors[i + 1], colors[i + 2], colors[i + 3]);
+                expectedRaster.setPixel(x, y, color);
+                expectedRaster.getPixel(x, y, color);
+                assert color.r == read[i] && color.g == read[i + 1] 
+                    && color.b == read[i + 2] && color.a == read[i + 3] : format;
+                assert argb[y * width + x] == ImageRaster.toARGB(color.r, color.g, color.b, color.a) : format;
+            }
+        }
+        // the per pixel path moves the buffer position
+        ByteBuffer data = image.getData(0).duplicate();
+        ByteBuffer expectedData = expected.getData(0).duplicate();
+        data.clear();
+        expectedData.clear();
+        assert data.equals(expectedData) : format;
+    }
+
+    @Test
+    public void testBulkMatchesPerPixel() {
+        Format[] formats = {Format.RGBA8, Format.RGB8, Format.BGR8, Format.Luminance8, 
+                            Format.Luminance8Alpha8, Format.Alpha8, Format.RGB565, 
+                            Format.RGBA16F, Format.RGBA32F, Format.RGB32F, Format.Luminance32F};
+        for (Format format : formats) {
+            for (ColorSpace colorSpace : ColorSpace.values()) {
+                checkFormat(format, colorSpace, 0);
+                checkFormat(format, colorSpace, 1);
+            }
+        }
+    }
+
+    @Test
+    public void testARGBRoundTrip() {
+        Image image = createImage(Format.BGRA8, ColorSpace.Linear);
+        ImageRaster raster = ImageRaster.create(image, 0, 0, false);
+        int[] argb = {0x80FF4020, 0x00000000, 0xFFFFFFFF, 0x12345678};
+        raster.setPixels(3, 1, 2, 2, argb, 0);
+        int[] read = new int[4];
+        raster.getPixels(3, 1, 2, 2, read, 0);
+        for (int i = 0; i < 4; i++) {
+            assert read[i] == argb[i];
+        }
+        assert raster.getPixel(3, 1).a == 0x80 / 255f;
+    }
+
+    @Test
+    public void testDirtyRegion() {
+        Image image = new Image(Format.RGBA8, 8, 4, BufferUtils.createByteBuffer(8 * 4 * 4), ColorSpace.Linear);
+        ImageRaster raster = ImageRaster.create(image);
+
+        // a new image is always uploaded whole
+        raster.setPixel(1, 1, ColorRGBA.Red);
+        assert image.isUpdateNeeded() && !image.hasDirtyRegion();
+
+        image.clearUpdateNeeded();
+        raster.setPixel(1, 1, ColorRGBA.Red);
+        raster.setPixels(4, 2, 3, 2, new int[6], 0);
+        assert image.hasDirtyRegion();
+        assert image.getDirtyX() == 1 && image.getDirtyY() == 1;
+        assert image.getDirtyWidth() == 6 && image.getDirtyHeight() == 3;
+
+        // a full update replaces the region
+        image.setUpdateNeeded();
+        image.setUpdateNeeded(0, 0, 1, 1);
+        assert image.isUpdateNeeded() && !image.hasDirtyRegion();
+
+        image.clearUpdateNeeded();
+        assert !image.isUpdateNeeded() && !image.hasDirtyRegion();
+    }
+}
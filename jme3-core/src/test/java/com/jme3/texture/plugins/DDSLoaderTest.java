@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.plugins;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.TextureKey;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.Texture;
+import com.jme3.texture.image.ColorSpace;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+/**
+ * Loads DDS files built in memory with {@link DDSLoader}.
+ */
+public class DDSLoaderTest {
+
+    private static final int DDPF_FOURCC = 0x4;
+    private static final int DDPF_GRAYSCALE = 0x20000;
+    private static final int PF_DX10 = 0x30315844;
+
+    /**
+     * Writes a DDS header, the pixel format can either be a grayscale or 
+     * a DX10 extended header with the given DXGI format.
+     */
+    private static ByteBuffer createHeader(int width, int height, int mips, int dxgiFormat, int arraySize, int dataSize) {
+        ByteBuffer dds = ByteBuffer.allocate(148 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        dds.putInt(0x20534444).putInt(124);
+        dds.putInt(0x1007 | 0x20000).putInt(height).putInt(width).putInt(0);
+        dds.putInt(0).putInt(mips);
+        dds.position(dds.position() + 44);
+        dds.putInt(32);
+        if (dxgiFormat == 0) {
+            dds.putInt(DDPF_GRAYSCALE).putInt(0).putInt(8).putInt(0xFF).putInt(0).putInt(0).putInt(0);
+        } else {
+            dds.putInt(DDPF_FOURCC).putInt(PF_DX10).position(dds.position() + 20);
+        }
+        dds.putInt(mips > 1 ? 0x1000 | 0x400008 : 0x1000).putInt(0).position(dds.position() + 12);
+        if (dxgiFormat != 0) {
+            dds.putInt(dxgiFormat).putInt(3).putInt(0).putInt(arraySize).putInt(0);
+        }
+        return dds;
+    }
+
+    /**
+     * Creates a grayscale image with a full mip chain, each texel holds
+     * its mipmap level in the upper bits and its row in the lower bits.
+     */
+    private static ByteBuffer createGrayscale(int size) {
+        int mips = Integer.numberOfTrailingZeros(size) + 1;
+        ByteBuffer dds = createHeader(size, size, mips, 0, 1, size * size * 2);
+        for (int level = 0, s = size; level < mips; level++, s /= 2) {
+            for (int y = 0; y < s; y++) {
+                for (int x = 0; x < s; x++) {
+                    dds.put((byte) (level << 4 | y));
+                }
+            }
+        }
+        dds.flip();
+        return dds;
+    }
+
+    private static Image load(ByteBuffer dds, TextureKey key) throws IOException {
+        final byte[] bytes = new byte[dds.remaining()];
+        dds.get(bytes);
+        return (Image) new DDSLoader().load(new AssetInfo(null, key) {
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(bytes);
+            }
+        });
+    }
+
+    @Test
+    public void testSkipMipLevels() throws IOException {
+        TextureKey key = new TextureKey("test.dds", false);
+        key.setSkipMipLevels(2);
+        Image image = load(createGrayscale(16), key);
+
+        assert image.getWidth() == 4 && image.getHeight() == 4;
+        assert image.getMipMapSizes().length == 3;
+        ByteBuffer data = image.getData(0);
+        assert data.get(0) == (2 << 4);
+        assert data.get(4 * 4) == (3 << 4);
+        assert data.get(4 * 4 + 4) == (4 << 4);
+
+        // the smallest level is always kept
+        key.setSkipMipLevels(10);
+        image = load(createGrayscale(16), key);
+        assert image.getWidth() == 1 && image.getHeight() == 1;
+        assert image.getData(0).get(0) == (4 << 4);
+    }
+
+    @Test
+    public void testFlip() throws IOException {
+        TextureKey key = new TextureKey("test.dds", true);
+        key.setSkipMipLevels(1);
+        Image image = load(createGrayscale(16), key);
+
+        ByteBuffer data = image.getData(0);
+        for (int y = 0; y < 8; y++) {
+            assert data.get(y * 8) == (1 << 4 | (7 - y));
+        }
+        assert data.get(8 * 8) == (2 << 4 | 3);
+    }
+
+    @Test
+    public void testTextureArray() throws IOException {
+        // three layers of 8x8 BC4 without mipmaps, 4 blocks each
+        ByteBuffer dds = createHeader(8, 8, 1, 80, 3, 3 * 4 * 8);
+        for (int i = 0; i < 3 * 4 * 8; i++) {
+            dds.put((byte) i);
+        }
+        dds.flip();
+
+        TextureKey key = new TextureKey("test.dds", false);
+        Image image = load(dds, key);
+        assert image.getFormat() == Format.RGTC1;
+        assert image.getColorSpace() == ColorSpace.Linear;
+        assert key.getTextureTypeHint() == Texture.Type.TwoDimensionalArray;
+        assert image.getData().size() == 3;
+        assert image.getData(2).get(0) == 2 * 4 * 8;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.util;
+
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.image.ColorSpace;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+/**
+ * Checks the buffer based mip chain of {@link MipMapGenerator}.
+ */
+public class MipMapGeneratorTest {
+
+    private static Image createImage(int width, int height, ColorSpace colorSpace) {
+        ByteBuffer data = BufferUtils.createByteBuffer(width * height * 4);
+        for (int i = 0; i < data.capacity(); i++) {
+            data.put(i, (byte) (i * 37 + (i / 7)));
+        }
+        return new Image(Format.RGBA8, width, height, data, colorSpace);
+    }
+
+    @Test
+    public void testBoxFilter() {
+        Image image = createImage(5, 2, ColorSpace.Linear);
+        ByteBuffer base = image.getData(0);
+        int first = (base.get(0) & 0xFF) + (base.get(4) & 0xFF)
+                  + (base.get(20) & 0xFF) + (base.get(24) & 0xFF);
+        // the last texel of the odd row also covers the last column
+        int last = 0;
+        for (int x = 2; x < 5; x++) {
+            last += (base.get(x * 4) & 0xFF) + (base.get(20 + x * 4) & 0xFF);
+        }
+
+        MipMapGenerator.generateMipMaps(image);
+
+        // 5x2, 2x1, 1x1
+        int[] sizes = image.getMipMapSizes();
+        assert sizes.length == 3;
+        assert sizes[1] == 2 * 4 && sizes[2] == 4;
+        assert (image.getData(0).get(40) & 0xFF) == (first + 2) / 4;
+        assert (image.getData(0).get(44) & 0xFF) == (last + 3) / 6;
+    }
+
+    @Test
+    public void testGammaCorrect() {
+        ByteBuffer data = BufferUtils.createByteBuffer(2 * 2 * 4);
+        for (int i = 0; i < 4; i++) {
+            byte value = (byte) (i == 1 || i == 2 ? 255 : 0);
+            data.put(value).put(value).put(value).put((byte) 255);
+        }
+        data.flip();
+        Image image = new Image(Format.RGBA8, 2, 2, data, ColorSpace.sRGB);
+        MipMapGenerator.generateMipMaps(image);
+
+        // half white in linear space, alpha is untouched
+        assert (image.getData(0).get(16) & 0xFF) == 188;
+        assert (image.getData(0).get(19) & 0xFF) == 255;
+
+        // the encoded values are averaged when gamma correction is off
+        data.clear();
+        Image encoded = new Image(Format.RGBA8, 2, 2, data, ColorSpace.sRGB);
+        MipMapGenerator.generateMipMaps(encoded, MipMapGenerator.Filter.Box, false, null);
+        assert (encoded.getData(0).get(16) & 0xFF) == 128;
+    }
+
+    @Test
+    public void testParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (MipMapGenerator.Filter filter : MipMapGenerator.Filter.values()) {
+                Image serial = createImage(600, 400, ColorSpace.sRGB);
+                Image parallel = createImage(600, 400, ColorSpace.sRGB);
+                MipMapGenerator.generateMipMaps(serial, filter, true, null);
+                MipMapGenerator.generateMipMaps(parallel, filter, true, executor);
+                assert serial.getData(0).equals(parallel.getData(0));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3tools.optimize;
+
+import com.jme3.animation.AnimControl;
+import com.jme3.animation.Animation;
+import com.jme3.animation.TrackCompressor;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+import com.jme3.system.JmeSystem;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compresses the animations of a model with a {@link TrackCompressor} and
+ * reports the size and the error of each animation before and after.
+ * <p>
+ * Command line usage:
+ * <code><pre>
+ * AnimationCompressionReport [-curves] [-noquantize] [-tolerance t] 
+ *         assetRoot model [out.j3o]
+ * </pre></code>
+ * The tolerance applies to translations, rotations (in radians) and 
+ * scales. When an output file is given, the compressed model is saved to 
+ * it.
+ * 
+ * @see TrackCompressor
+ */
+public class AnimationCompressionReport {
+
+    /**
+     * Compresses all the animations of the controls in the given scene 
+     * graph and prints a line per animation and a total.
+     * 
+     * @param model the model whose animations to compress
+     * @param compressor the compressor to use, its statistics are reset
+     * @param out the stream to print to
+     */
+    public static void compress(Spatial model, TrackCompressor compressor, PrintStream out) {
+        final List<AnimControl> controls = new ArrayList<AnimControl>();
+        model.depthFirstTraversal(new SceneGraphVisitor() {
+            public void visit(Spatial spatial) {
+                AnimControl control = spatial.getControl(AnimControl.class);
+                if (control != null) {
+                    controls.add(control);
+                }
+            }
+        });
+
+        int originalSize = 0, compressedSize = 0;
+        int originalKeys = 0, compressedKeys = 0;
+        float translationError = 0, rotationError = 0, scaleError = 0;
+        out.println(String.format("%-24s %10s %10s %7s %9s %9s %9s %9s", 
+                "animation", "bytes", "after", "ratio", "keys", "after", 
+                "maxTrans", "maxRot"));
+        for (AnimControl control : controls) {
+            for (String name : new ArrayList<String>(control.getAnimationNames())) {
+                compressor.resetStatistics();
+                Animation anim = compressor.compress(control.getAnim(name));
+                control.addAnim(anim);
+                print(out, name, compressor.getOriginalSize(), compressor.getCompressedSize(),
+                        compressor.getOriginalKeyCount(), compressor.getCompressedKeyCount(),
+                        compressor.getMaxTranslationError(), compressor.getMaxRotationError());
+                originalSize += compressor.getOriginalSize();
+                compressedSize += compressor.getCompressedSize();
+                originalKeys += compressor.getOriginalKeyCount();
+                compressedKeys += compressor.getCompressedKeyCount();
+                translationError = Math.max(translationError, compressor.getMaxTranslationError());
+                rotationError = Math.max(rotationError, compressor.getMaxRotationError());
+                scaleError = Math.max(scaleError, compressor.getMaxScaleError());
+            }
+        }
+        print(out, "total", originalSize, compressedSize, originalKeys, compressedKeys, 
+                translationError, rotationError);
+        out.println("max scale error: " + scaleError);
+    }
+
+    private static void print(PrintStream out, String name, int size, int compressedSize, 
+            int keys, int compressedKeys, float translationError, float rotationError) {
+        float ratio = compressedSize > 0 ? (float) size / compressedSize : 0f;
+        out.println(String.format("%-24s %10d %10d %6.1fx %9d %9d %9.6f %9.6f", 
+                name, size, compressedSize, ratio, keys, compressedKeys, 
+                translationError, rotationError));
+    }
+
+    public static void main(String[] args) throws IOException {
+        TrackCompressor compressor = new TrackCompressor();
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-curves")) {
+                compressor.setCurves(true);
+            } else if (args[i].equals("-noquantize")) {
+                compressor.setQuantize(false);
+            } else if (args[i].equals("-tolerance") && i + 1 < args.length) {
+                float tolerance = Float.parseFloat(args[++i]);
+                compressor.setTranslationTolerance(tolerance);
+                compressor.setRotationTolerance(tolerance);
+                compressor.setScaleTolerance(tolerance);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() < 2) {
+            System.err.println("Usage: AnimationCompressionReport [-curves] [-noquantize] "
+                    + "[-tolerance t] assetRoot model [out.j3o]");
+            System.exit(1);
+        }
+
+        AssetManager assetManager = JmeSystem.newAssetManager();
+        assetManager.registerLocator(files.get(0), FileLocator.class);
+        Spatial model = assetManager.loadModel(files.get(1));
+
+        compress(model, compressor, System.out);
+
+        if (files.size() > 2) {
+            BinaryExporter.getInstance().save(model, new File(files.get(2)));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.stress;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.image.ColorSpace;
+import com.jme3.texture.image.ImageRaster;
+import com.jme3.util.BufferUtils;
+
+/**
+ * Compares reading and writing a whole image pixel by pixel against the 
+ * bulk row methods of {@link ImageRaster}.
+ */
+public class TestImageRasterBulk {
+
+    private static final int SIZE = 1024;
+
+    public static void main(String[] args) {
+        Format[] formats = {Format.RGBA8, Format.RGB8, Format.Luminance8, 
+                            Format.RGBA32F, Format.Luminance32F, Format.RGBA16F};
+        for (int i = 0; i < 5; i++) {
+            for (Format format : formats) {
+                Image image = new Image(format, SIZE, SIZE, 
+                        BufferUtils.createByteBuffer(SIZE * SIZE * format.getBitsPerPixel() / 8), 
+                        ColorSpace.Linear);
+                ImageRaster raster = ImageRaster.create(image);
+                float[] colors = new float[SIZE * 4];
+                int[] argb = new int[SIZE];
+                ColorRGBA color = new ColorRGBA();
+
+                long start = System.nanoTime();
+                for (int y = 0; y < SIZE; y++) {
+                    for (int x = 0; x < SIZE; x++) {
+                        raster.getPixel(x, y, color);
+                        color.r = 1f - color.r;
+                        raster.setPixel(x, y, color);
+                    }
+                }
+                long perPixel = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int y = 0; y < SIZE; y++) {
+                    raster.getPixels(0, y, SIZE, 1, colors, 0);
+                    for (int x = 0; x < SIZE; x++) {
+                        colors[x * 4] = 1f - colors[x * 4];
+                    }
+                    raster.setPixels(0, y, SIZE, 1, colors, 0);
+                }
+                long bulk = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int y = 0; y < SIZE; y++) {
+                    raster.getPixels(0, y, SIZE, 1, argb, 0);
+                    for (int x = 0; x < SIZE; x++) {
+                        argb[x] ^= 0x00FF0000;
+                    }
+                    raster.setPixels(0, y, SIZE, 1, argb, 0);
+                }
+                long bulkInt = System.nanoTime() - start;
+
+                System.out.println(format + ": per pixel " + perPixel / 1000000 + " ms, "
+                                 + "bulk float " + bulk / 1000000 + " ms, "
+                                 + "bulk ARGB " + bulkInt / 1000000 + " ms");
+            }
+        }
+    }
+}
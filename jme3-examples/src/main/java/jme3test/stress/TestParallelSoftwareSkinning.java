@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2009-2016 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.stress;
+
+import com.jme3.animation.AnimControl;
+import com.jme3.animation.SkeletonControl;
+import com.jme3.asset.AssetManager;
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+import com.jme3.system.JmeSystem;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares software skinning on the render thread with software skinning
+ * split across an executor, without a display.
+ */
+public class TestParallelSoftwareSkinning {
+
+    static ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    static final String[] MODELS = {
+        "Models/Elephant/Elephant.mesh.xml",
+        "Models/Jaime/Jaime.j3o",
+        "Models/Oto/Oto.mesh.xml",
+        "Models/Ninja/Ninja.mesh.xml"
+    };
+
+    static final int COPIES = 20;
+    static final int FRAMES = 200;
+
+    public static void main(String[] args) {
+        AssetManager assetManager = JmeSystem.newAssetManager(
+                TestParallelSoftwareSkinning.class.getResource("/com/jme3/asset/Desktop.cfg"));
+
+        for (String model : MODELS) {
+            for (int i = 0; i < 3; i++) {
+                Node serial = createCrowd(assetManager, model, null);
+                System.out.println(model + " serial " + run(serial) + " ms");
+
+                Node parallel = createCrowd(assetManager, model, executor);
+                System.out.println(model + " parallel " + run(parallel) + " ms");
+            }
+        }
+        executor.shutdown();
+    }
+
+    private static Node createCrowd(AssetManager assetManager, String model, final ExecutorService executor) {
+        Node root = new Node("Root");
+        for (int i = 0; i < COPIES; i++) {
+            root.attachChild(assetManager.loadModel(model));
+        }
+        root.depthFirstTraversal(new SceneGraphVisitor() {
+            @Override
+            public void visit(Spatial spatial) {
+                SkeletonControl skeletonControl = spatial.getControl(SkeletonControl.class);
+                if (skeletonControl != null) {
+                    skeletonControl.setHardwareSkinningPreferred(false);
+                    skeletonControl.setSoftwareSkinningExecutor(executor);
+                }
+                AnimControl animControl = spatial.getControl(AnimControl.class);
+                if (animControl != null) {
+                    String anim = animControl.getAnimationNames().iterator().next();
+                    animControl.createChannel().setAnim(anim);
+                }
+            }
+        });
+        return root;
+    }
+
+    private static long run(Node root) {
+        long start = System.currentTimeMillis();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            root.updateLogicalState(1f / 60f);
+            // software skinning does not use the render manager
+            root.runControlRender(null, null);
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
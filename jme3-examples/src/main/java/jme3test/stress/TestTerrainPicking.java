@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.stress;
+
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.FastMath;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.terrain.geomipmap.TerrainQuad;
+import com.jme3.terrain.geomipmap.picking.BresenhamTerrainPicker;
+import com.jme3.terrain.geomipmap.picking.MinMaxTerrainPicker;
+import com.jme3.terrain.geomipmap.picking.TerrainPicker;
+import java.util.Random;
+
+/**
+ * Compares the time per ray of {@link BresenhamTerrainPicker} and 
+ * {@link MinMaxTerrainPicker}, with steep and grazing rays, and counts the
+ * rays for which they return different hits.
+ */
+public class TestTerrainPicking {
+
+    private static final int RAYS = 2000;
+
+    private static TerrainQuad createTerrain(int size) {
+        Random random = new Random(size);
+        float[] heights = new float[size * size];
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                heights[z * size + x] = FastMath.sin(x * 0.02f) * FastMath.cos(z * 0.03f) * 60f
+                        + random.nextFloat() * 4f;
+            }
+        }
+        TerrainQuad terrain = new TerrainQuad("terrain", 65, size, heights);
+        terrain.updateGeometricState();
+        return terrain;
+    }
+
+    private static Ray[] createRays(int size) {
+        Random random = new Random(1);
+        Ray[] rays = new Ray[RAYS];
+        for (int i = 0; i < RAYS; i++) {
+            Vector3f origin = new Vector3f((random.nextFloat() - 0.5f) * size, 
+                    70f + random.nextFloat() * 100f, (random.nextFloat() - 0.5f) * size);
+            float slope = i % 2 == 0 ? 0.5f + random.nextFloat() * 4f : 0.02f + random.nextFloat() * 0.2f;
+            float angle = random.nextFloat() * FastMath.TWO_PI;
+            rays[i] = new Ray(origin, new Vector3f(FastMath.cos(angle), -slope, FastMath.sin(angle)).normalizeLocal());
+        }
+        return rays;
+    }
+
+    private static float[] pick(TerrainPicker picker, Ray[] rays) {
+        float[] distances = new float[rays.length];
+        for (int i = 0; i < rays.length; i++) {
+            CollisionResults results = new CollisionResults();
+            Vector3f hit = picker.getTerrainIntersection(rays[i], results);
+            distances[i] = hit != null ? results.getClosestCollision().getDistance() : -1f;
+        }
+        return distances;
+    }
+
+    public static void main(String[] args) {
+        for (int size : new int[]{ 257, 513, 1025 }) {
+            TerrainQuad terrain = createTerrain(size);
+            Ray[] rays = createRays(size);
+            BresenhamTerrainPicker bresenham = new BresenhamTerrainPicker(terrain);
+            MinMaxTerrainPicker minMax = new MinMaxTerrainPicker(terrain);
+            CollisionResult[] store = new CollisionResult[RAYS];
+
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                float[] stepped = pick(bresenham, rays);
+                long bresenhamTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                float[] pyramid = pick(minMax, rays);
+                long minMaxTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                minMax.getTerrainIntersections(rays, store);
+                long batchTime = System.nanoTime() - start;
+
+                int different = 0;
+                for (int r = 0; r < RAYS; r++) {
+                    if (Math.abs(stepped[r] - pyramid[r]) > 1e-3f * Math.max(1f, stepped[r]))
+                        different++;
+                }
+                System.out.println(size + ": Bresenham " + bresenhamTime / 1000 / RAYS + " us/ray, "
+                                 + "min/max " + minMaxTime / 1000 / RAYS + " us/ray, "
+                                 + "batched " + batchTime / 1000 / RAYS + " us/ray, "
+                                 + different + " different hits");
+            }
+        }
+    }
+}
@@ -44,11 +44,17 @@ import java.nio.IntBuffer;
 
 /**
  * Constructs heightfields to be used in Terrain.
+ * <p>
+ * The heights can be stored quantized to 16 bits, see 
+ * {@link #quantize(float, float)}, which halves the memory of the height data.
  */
 public class GeoMap implements Savable {
     
     protected float[] hdata;
     protected int width, height, maxval;
+    // the quantized heights, only set while hdata is null
+    protected short[] qdata;
+    protected float heightScale, heightOffset;
     
     public GeoMap() {}
     
@@ -75,12 +81,75 @@ public class GeoMap implements Savable {
         return BufferUtils.createFloatBuffer(hdata);
     }
     
+    /**
+     * Returns the heights. When the heights are quantized, this is a decoded
+     * copy and changes to it are not reflected in the geomap, use 
+     * {@link #setValue(int, float)} instead.
+     */
     public float[] getHeightArray(){
         if (!isLoaded())
             return null;
+        if (hdata == null && qdata != null) {
+            float[] heights = new float[qdata.length];
+            for (int i = 0; i < heights.length; i++)
+                heights[i] = getValue(i);
+            return heights;
+        }
         return hdata;
     }
 
+    /**
+     * Stores the heights as 16 bit values between minHeight and maxHeight,
+     * with a precision of (maxHeight - minHeight) / 65535. Heights outside of
+     * the range are clamped, also the ones set later with setValue().
+     * <p>
+     * Geomaps that are quantized with the same range decode equal heights 
+     * to equal values, so the shared edges of terrain patches stay seamless.
+     */
+    public void quantize(float minHeight, float maxHeight) {
+        if (maxHeight < minHeight)
+            throw new IllegalArgumentException("maxHeight is smaller than minHeight");
+        float[] heights = getHeightArray();
+        heightOffset = minHeight;
+        heightScale = (maxHeight - minHeight) / 65535f;
+        qdata = new short[heights.length];
+        hdata = null;
+        for (int i = 0; i < heights.length; i++)
+            setValue(i, heights[i]);
+    }
+
+    /**
+     * Stores the heights as floats again, the precision lost by 
+     * quantize() is not restored.
+     */
+    public void dequantize() {
+        if (qdata == null)
+            return;
+        hdata = getHeightArray();
+        qdata = null;
+    }
+
+    /**
+     * @return true if the heights are stored as 16 bit values
+     */
+    public boolean isQuantized() {
+        return hdata == null && qdata != null;
+    }
+
+    /**
+     * @return the height of one quantization step, 0 if not quantized
+     */
+    public float getHeightScale() {
+        return isQuantized() ? heightScale : 0;
+    }
+
+    /**
+     * @return the height of the quantized value 0, 0 if not quantized
+     */
+    public float getHeightOffset() {
+        return isQuantized() ? heightOffset : 0;
+    }
+
     /**
      * @return The maximum possible value that <code>getValue()</code> can 
      * return. Mostly depends on the source data format (byte, short, int, etc).
@@ -101,7 +170,7 @@ public class GeoMap implements Savable {
      * @throws NullPointerException If isLoaded() is false
      */
     public float getValue(int x, int y) {
-        return hdata[y*width+x];
+        return getValue(y*width+x);
     }
 
     /**
@@ -116,7 +185,25 @@ public class GeoMap implements Savable {
      * @throws NullPointerException If isLoaded() is false
      */
     public float getValue(int i) {
-        return hdata[i];
+        if (hdata != null)
+            return hdata[i];
+        return heightOffset + (qdata[i] & 0xFFFF) * heightScale;
+    }
+
+    /**
+     * Sets the height value at the given index, quantized heights are
+     * clamped to the range of the quantization.
+     *
+     * @param i The index
+     * @param value the new height
+     */
+    public void setValue(int i, float value) {
+        if (hdata != null) {
+            hdata[i] = value;
+        } else {
+            int q = heightScale > 0 ? Math.round((value - heightOffset) / heightScale) : 0;
+            qdata[i] = (short) Math.max(0, Math.min(65535, q));
+        }
     }
 
 
@@ -244,7 +331,7 @@ public class GeoMap implements Savable {
             store = BufferUtils.createFloatBuffer(width*height*3);
         }
 
-        assert hdata.length == height*width;
+        assert (hdata != null ? hdata.length : qdata.length) == height*width;
 
         Vector3f offset = new Vector3f(-getWidth() * scale.x * 0.5f,
                                        0,
@@ -256,7 +343,7 @@ public class GeoMap implements Savable {
         for (int z = 0; z < height; z++){
             for (int x = 0; x < width; x++){
                 store.put( (float)x*scale.x + offset.x );
-                store.put( (float)hdata[i++]*scale.y );
+                store.put( getValue(i++)*scale.y );
                 store.put( (float)z*scale.z + offset.z );
             }
         }
@@ -342,6 +429,11 @@ public class GeoMap implements Savable {
     public void write(JmeExporter ex) throws IOException {
         OutputCapsule oc = ex.getCapsule(this);
         oc.write(hdata, "hdataarray", null);
+        if (isQuantized()) {
+            oc.write(qdata, "qdataarray", null);
+            oc.write(heightScale, "heightScale", 0);
+            oc.write(heightOffset, "heightOffset", 0);
+        }
         oc.write(width, "width", 0);
         oc.write(height, "height", 0);
         oc.write(maxval, "maxval", 0);
@@ -350,7 +442,10 @@ public class GeoMap implements Savable {
     public void read(JmeImporter im) throws IOException {
         InputCapsule ic = im.getCapsule(this);
         hdata = ic.readFloatArray("hdataarray", null);
-        if (hdata == null) {
+        qdata = ic.readShortArray("qdataarray", null);
+        heightScale = ic.readFloat("heightScale", 0);
+        heightOffset = ic.readFloat("heightOffset", 0);
+        if (hdata == null && qdata == null) {
             FloatBuffer buf = ic.readFloatBuffer("hdata", null);
             if (buf != null) {
                 hdata = new float[buf.limit()];
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.image.ImageRaster;
+
+/**
+ * Paints texture layers into the alpha maps of a terrain.
+ * <p>
+ * Each channel of an alpha map, such as the AlphaMap of the TerrainLighting
+ * material, holds the weight of one texture layer. Painting a layer raises
+ * its weight inside a round brush with a linear falloff and lowers the other
+ * channels by the same factor, so weights that sum up to one keep doing so.
+ * <p>
+ * Only the pixels under the brush are read and written, and only their 
+ * rectangle is marked with {@link Image#setUpdateNeeded(int, int, int, int) },
+ * so the renderer uploads just that rectangle instead of the whole alpha map
+ * after each stroke.
+ */
+public class AlphaMapPainter {
+
+    private final Image image;
+    private final ImageRaster raster;
+    private float[] pixels;
+
+    public AlphaMapPainter(Texture alphaMap) {
+        this(alphaMap.getImage());
+    }
+
+    public AlphaMapPainter(Image alphaMap) {
+        this.image = alphaMap;
+        this.raster = ImageRaster.create(alphaMap, 0, 0, false);
+    }
+
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Paints a layer around a location on the terrain, the alpha map is 
+     * expected to cover the whole terrain once.
+     * 
+     * @param terrain The terrain the alpha map belongs to.
+     * @param worldLocation The center of the brush, in world coordinates.
+     * @param radius The radius of the brush, in world units along x.
+     * @param strength The weight added in the center of the brush, 0 to 1.
+     * @param channel The channel of the layer, 0 to 3 for red to alpha.
+     */
+    public void paint(TerrainQuad terrain, Vector3f worldLocation, float radius, float strength, int channel) {
+        Vector3f translation = terrain.getWorldTranslation();
+        Vector3f scale = terrain.getWorldScale();
+        float size = terrain.getTerrainSize() - 1;
+        // same grid coordinates as TerrainQuad.getHeight(), the texture 
+        // coordinates are flipped along z
+        float u = ((worldLocation.x - translation.x) / scale.x + size / 2f) / size;
+        float v = 1f - ((worldLocation.z - translation.z) / scale.z + size / 2f) / size;
+        paint(u * raster.getWidth(), v * raster.getHeight(), 
+              radius / scale.x / size * raster.getWidth(), strength, channel);
+    }
+
+    /**
+     * Paints a layer around a position in the alpha map.
+     * 
+     * @param x The x coordinate of the center of the brush, in pixels.
+     * @param y The y coordinate of the center of the brush, in pixels.
+     * @param radius The radius of the brush, in pixels.
+     * @param strength The weight added in the center of the brush, 0 to 1.
+     * @param channel The channel of the layer, 0 to 3 for red to alpha.
+     */
+    public void paint(float x, float y, float radius, float strength, int channel) {
+        if (channel < 0 || channel > 3) {
+            throw new IllegalArgumentException("channel must be between 0 and 3: " + channel);
+        }
+        int minX = Math.max(0, (int) FastMath.floor(x - radius));
+        int minY = Math.max(0, (int) FastMath.floor(y - radius));
+        int maxX = Math.min(raster.getWidth(), (int) FastMath.ceil(x + radius));
+        int maxY = Math.min(raster.getHeight(), (int) FastMath.ceil(y + radius));
+        int width = maxX - minX;
+        int height = maxY - minY;
+        if (width <= 0 || height <= 0 || radius <= 0) {
+            return;
+        }
+
+        if (pixels == null || pixels.length < width * height * 4) {
+            pixels = new float[width * height * 4];
+        }
+        raster.getPixels(minX, minY, width, height, pixels, 0);
+
+        strength = FastMath.clamp(strength, 0f, 1f);
+        for (int j = 0, i = 0; j < height; j++) {
+            float dy = minY + j + 0.5f - y;
+            for (int k = 0; k < width; k++, i += 4) {
+                float dx = minX + k + 0.5f - x;
+                float dist = FastMath.sqrt(dx * dx + dy * dy);
+                if (dist >= radius) {
+                    continue;
+                }
+                float weight = strength * (1f - dist / radius);
+                for (int c = 0; c < 4; c++) {
+                    if (c == channel) {
+                        pixels[i + c] += (1f - pixels[i + c]) * weight;
+                    } else {
+                        pixels[i + c] *= 1f - weight;
+                    }
+                }
+            }
+        }
+
+        // marks only the brush rectangle for upload
+        raster.setPixels(minX, minY, width, height, pixels, 0);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+/**
+ * A vertex buffer of a terrain patch that only holds its data on the CPU 
+ * until it was uploaded.
+ * <p>
+ * The positions of a patch are computed from its heights, the tangents and
+ * binormals from its normals. Once the data was sent to the GPU it is 
+ * dropped, and computed again when it is read or has to be uploaded again.
+ * With quantized heights a patch then keeps 2 bytes of height and the 12
+ * bytes of its normal per vertex in memory, instead of 52 bytes.
+ * <p>
+ * The normals are not derived: along the edges of the patch they depend on
+ * the heights of the neighbours.
+ *
+ * @see TerrainQuad#quantizeHeights(float, float)
+ */
+final class DerivedVertexBuffer extends VertexBuffer {
+
+    private final TerrainPatch patch;
+    private int elements;
+
+    DerivedVertexBuffer(VertexBuffer source, TerrainPatch patch) {
+        super(source.getBufferType());
+        if (source.getBufferType() != Type.Position 
+                && source.getBufferType() != Type.Tangent 
+                && source.getBufferType() != Type.Binormal)
+            throw new IllegalArgumentException("Cannot derive a " + source.getBufferType() + " buffer");
+        this.patch = patch;
+        setupData(source.getUsage(), 3, Format.Float, source.getData());
+    }
+
+    @Override
+    public Buffer getData() {
+        // the renderer may drop the data meanwhile
+        Buffer d = data;
+        if (d == null) {
+            d = derive();
+            data = d;
+        }
+        return d;
+    }
+
+    @Override
+    public Buffer getDataReadOnly() {
+        getData();
+        return super.getDataReadOnly();
+    }
+
+    @Override
+    public int getNumElements() {
+        return data != null ? super.getNumElements() : elements;
+    }
+
+    @Override
+    public void clearUpdateNeeded() {
+        super.clearUpdateNeeded();
+        Buffer d = data;
+        if (d != null) {
+            elements = d.limit() / components;
+            data = null;
+        }
+    }
+
+    /**
+     * @return True if the data is currently held on the CPU.
+     */
+    boolean isResident() {
+        return data != null;
+    }
+
+    private FloatBuffer derive() {
+        if (bufType == Type.Position)
+            return patch.geomap.writeVertexArray(null, patch.stepScale, false);
+
+        FloatBuffer normals = patch.getMesh().getFloatBuffer(Type.Normal);
+        FloatBuffer[] tb = patch.geomap.writeTangentArray(normals, null, null, null, patch.stepScale);
+        return bufType == Type.Tangent ? tb[0] : tb[1];
+    }
+
+    /**
+     * Derived buffers are cloned into regular vertex buffers holding a copy
+     * of the data.
+     */
+    @Override
+    public VertexBuffer clone() {
+        return clone(bufType);
+    }
+}
@@ -39,18 +39,16 @@ import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Mesh.Mode;
+import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.terrain.GeoMap;
 import com.jme3.util.BufferUtils;
 import com.jme3.util.TempVars;
 import java.io.IOException;
-import java.nio.Buffer;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
 
 /**
  * Produces the mesh for the TerrainPatch.
@@ -85,14 +83,9 @@ public class LODGeomap extends GeoMap {
 
     public Mesh createMesh(Vector3f scale, Vector2f tcScale, Vector2f tcOffset, float offsetAmount, int totalSize, boolean center, int lod, boolean rightLod, boolean topLod, boolean leftLod, boolean bottomLod) {
         FloatBuffer pb = writeVertexArray(null, scale, center);
-        FloatBuffer texb = writeTexCoordArray(null, tcOffset, tcScale, offsetAmount, totalSize);
+        VertexBuffer texCoords = TexCoordCache.getTexCoords(this, tcOffset, tcScale, offsetAmount, totalSize);
+        FloatBuffer texb = (FloatBuffer) texCoords.getData();
         FloatBuffer nb = writeNormalArray(null, scale);
-        Buffer ib;
-        IndexBuffer idxB = writeIndexArrayLodDiff(lod, rightLod, topLod, leftLod, bottomLod, totalSize);
-        if (idxB.getBuffer() instanceof IntBuffer)
-            ib = (IntBuffer)idxB.getBuffer();
-        else
-            ib = (ShortBuffer)idxB.getBuffer();
         FloatBuffer bb = BufferUtils.createFloatBuffer(getWidth() * getHeight() * 3);
         FloatBuffer tanb = BufferUtils.createFloatBuffer(getWidth() * getHeight() * 3);
         writeTangentArray(nb, tanb, bb, texb, scale);
@@ -102,12 +95,11 @@ public class LODGeomap extends GeoMap {
         m.setBuffer(Type.Normal, 3, nb);
         m.setBuffer(Type.Tangent, 3, tanb);
         m.setBuffer(Type.Binormal, 3, bb);
-        m.setBuffer(Type.TexCoord, 2, texb);
-        if (ib instanceof IntBuffer)
-            m.setBuffer(Type.Index, 3, (IntBuffer)ib);
-        else if (ib instanceof ShortBuffer)
-            m.setBuffer(Type.Index, 3, (ShortBuffer)ib);
+        // only the buffers of this mesh, the usage of the shared ones is
+        // not changed
         m.setStatic();
+        m.setBuffer(texCoords);
+        m.setBuffer(LODIndexCache.getLodDiff(this, lod, rightLod, topLod, leftLod, bottomLod, totalSize));
         m.updateBound();
         return m;
     }
@@ -673,8 +665,8 @@ public class LODGeomap extends GeoMap {
                 
                 int idx = (r * getWidth() + c) * 3;
                 normal.set(normalBuffer.get(idx), normalBuffer.get(idx+1), normalBuffer.get(idx+2));
-                tangent.set(normal.cross(new Vector3f(0,0,1)));
-                binormal.set(new Vector3f(1,0,0).cross(normal));
+                tangent.set(normal).crossLocal(Vector3f.UNIT_Z);
+                binormal.set(Vector3f.UNIT_X).crossLocal(normal);
                 
                 BufferUtils.setInBuffer(tangent.normalizeLocal(), tangentStore, (r * getWidth() + c)); // save the tangent
                 BufferUtils.setInBuffer(binormal.normalizeLocal(), binormalStore, (r * getWidth() + c)); // save the binormal
@@ -793,6 +785,26 @@ public class LODGeomap extends GeoMap {
 
         TempVars vars = TempVars.get();
         
+        Vector3f normal = vars.vect8;
+
+        // calculate normals for each polygon
+        for (int r = 0; r < getHeight(); r++) {
+            for (int c = 0; c < getWidth(); c++) {
+                getNormal(c, r, scale, vars, normal);
+                BufferUtils.setInBuffer(normal, store, (r * getWidth() + c)); // save the normal
+            }
+        }
+        vars.release();
+        
+        return store;
+    }
+
+    /**
+     * Calculates the normal of the vertex at column c and row r, using its
+     * direct neighbours in this map.
+     * Uses vect1 to vect6 of the given TempVars as scratch space.
+     */
+    private Vector3f getNormal(int c, int r, Vector3f scale, TempVars vars, Vector3f normal) {
         Vector3f rootPoint = vars.vect1;
         Vector3f rightPoint = vars.vect2;
         Vector3f leftPoint = vars.vect3;
@@ -801,81 +813,108 @@ public class LODGeomap extends GeoMap {
         
         Vector3f tmp1 = vars.vect6;
 
-        // calculate normals for each polygon
-        for (int r = 0; r < getHeight(); r++) {
-            for (int c = 0; c < getWidth(); c++) {
+        rootPoint.set(0, getValue(c, r), 0);
+        if (r == 0) { // first row
+            if (c == 0) { // first column
+                rightPoint.set(1, getValue(c + 1, r), 0);
+                bottomPoint.set(0, getValue(c, r + 1), 1);
+                getNormal(bottomPoint, rootPoint, rightPoint, scale, normal);
+            } else if (c == getWidth() - 1) { // last column
+                leftPoint.set(-1, getValue(c - 1, r), 0);
+                bottomPoint.set(0, getValue(c, r + 1), 1);
+                getNormal(leftPoint, rootPoint, bottomPoint, scale, normal);
+            } else { // all middle columns
+                leftPoint.set(-1, getValue(c - 1, r), 0);
+                rightPoint.set(1, getValue(c + 1, r), 0);
+                bottomPoint.set(0, getValue(c, r + 1), 1);
+                
+                normal.set( getNormal(leftPoint, rootPoint, bottomPoint, scale, tmp1) );
+                normal.addLocal( getNormal(bottomPoint, rootPoint, rightPoint, scale, tmp1) );
+            }
+        } else if (r == getHeight() - 1) { // last row
+            if (c == 0) { // first column
+                topPoint.set(0, getValue(c, r - 1), -1);
+                rightPoint.set(1, getValue(c + 1, r), 0);
+                getNormal(rightPoint, rootPoint, topPoint, scale, normal);
+            } else if (c == getWidth() - 1) { // last column
+                topPoint.set(0, getValue(c, r - 1), -1);
+                leftPoint.set(-1, getValue(c - 1, r), 0);
+                getNormal(topPoint, rootPoint, leftPoint, scale, normal);
+            } else { // all middle columns
+                topPoint.set(0, getValue(c, r - 1), -1);
+                leftPoint.set(-1, getValue(c - 1, r), 0);
+                rightPoint.set(1, getValue(c + 1, r), 0);
+                
+                normal.set( getNormal(topPoint, rootPoint, leftPoint, scale, tmp1) );
+                normal.addLocal( getNormal(rightPoint, rootPoint, topPoint, scale, tmp1) );
+            }
+        } else { // all middle rows
+            if (c == 0) { // first column
+                topPoint.set(0, getValue(c, r - 1), -1);
+                rightPoint.set(1, getValue(c + 1, r), 0);
+                bottomPoint.set(0, getValue(c, r + 1), 1);
+                
+                normal.set( getNormal(rightPoint, rootPoint, topPoint, scale, tmp1) );
+                normal.addLocal( getNormal(bottomPoint, rootPoint, rightPoint, scale, tmp1) );
+            } else if (c == getWidth() - 1) { // last column
+                topPoint.set(0, getValue(c, r - 1), -1);
+                leftPoint.set(-1, getValue(c - 1, r), 0);
+                bottomPoint.set(0, getValue(c, r + 1), 1);
+
+                normal.set( getNormal(topPoint, rootPoint, leftPoint, scale, tmp1) );
+                normal.addLocal( getNormal(leftPoint, rootPoint, bottomPoint, scale, tmp1) );
+            } else { // all middle columns
+                topPoint.set(0, getValue(c, r - 1), -1);
+                leftPoint.set(-1, getValue(c - 1, r), 0);
+                rightPoint.set(1, getValue(c + 1, r), 0);
+                bottomPoint.set(0, getValue(c, r + 1), 1);
+                
+                normal.set( getNormal(topPoint,  rootPoint, leftPoint, scale, tmp1 ) );
+                normal.addLocal( getNormal(leftPoint, rootPoint, bottomPoint, scale, tmp1) );
+                normal.addLocal( getNormal(bottomPoint, rootPoint, rightPoint, scale, tmp1) );
+                normal.addLocal( getNormal(rightPoint, rootPoint, topPoint, scale, tmp1) );
+            }
+        }
+        return normal.normalizeLocal();
+    }
 
-                rootPoint.set(0, getValue(c, r), 0);
-                Vector3f normal = vars.vect8;
-
-                if (r == 0) { // first row
-                    if (c == 0) { // first column
-                        rightPoint.set(1, getValue(c + 1, r), 0);
-                        bottomPoint.set(0, getValue(c, r + 1), 1);
-                        getNormal(bottomPoint, rootPoint, rightPoint, scale, normal);
-                    } else if (c == getWidth() - 1) { // last column
-                        leftPoint.set(-1, getValue(c - 1, r), 0);
-                        bottomPoint.set(0, getValue(c, r + 1), 1);
-                        getNormal(leftPoint, rootPoint, bottomPoint, scale, normal);
-                    } else { // all middle columns
-                        leftPoint.set(-1, getValue(c - 1, r), 0);
-                        rightPoint.set(1, getValue(c + 1, r), 0);
-                        bottomPoint.set(0, getValue(c, r + 1), 1);
-                        
-                        normal.set( getNormal(leftPoint, rootPoint, bottomPoint, scale, tmp1) );
-                        normal.addLocal( getNormal(bottomPoint, rootPoint, rightPoint, scale, tmp1) );
-                    }
-                } else if (r == getHeight() - 1) { // last row
-                    if (c == 0) { // first column
-                        topPoint.set(0, getValue(c, r - 1), -1);
-                        rightPoint.set(1, getValue(c + 1, r), 0);
-                        getNormal(rightPoint, rootPoint, topPoint, scale, normal);
-                    } else if (c == getWidth() - 1) { // last column
-                        topPoint.set(0, getValue(c, r - 1), -1);
-                        leftPoint.set(-1, getValue(c - 1, r), 0);
-                        getNormal(topPoint, rootPoint, leftPoint, scale, normal);
-                    } else { // all middle columns
-                        topPoint.set(0, getValue(c, r - 1), -1);
-                        leftPoint.set(-1, getValue(c - 1, r), 0);
-                        rightPoint.set(1, getValue(c + 1, r), 0);
-                        
-                        normal.set( getNormal(topPoint, rootPoint, leftPoint, scale, tmp1) );
-                        normal.addLocal( getNormal(rightPoint, rootPoint, topPoint, scale, tmp1) );
-                    }
-                } else { // all middle rows
-                    if (c == 0) { // first column
-                        topPoint.set(0, getValue(c, r - 1), -1);
-                        rightPoint.set(1, getValue(c + 1, r), 0);
-                        bottomPoint.set(0, getValue(c, r + 1), 1);
-                        
-                        normal.set( getNormal(rightPoint, rootPoint, topPoint, scale, tmp1) );
-                        normal.addLocal( getNormal(bottomPoint, rootPoint, rightPoint, scale, tmp1) );
-                    } else if (c == getWidth() - 1) { // last column
-                        topPoint.set(0, getValue(c, r - 1), -1);
-                        leftPoint.set(-1, getValue(c - 1, r), 0);
-                        bottomPoint.set(0, getValue(c, r + 1), 1);
-
-                        normal.set( getNormal(topPoint, rootPoint, leftPoint, scale, tmp1) );
-                        normal.addLocal( getNormal(leftPoint, rootPoint, bottomPoint, scale, tmp1) );
-                    } else { // all middle columns
-                        topPoint.set(0, getValue(c, r - 1), -1);
-                        leftPoint.set(-1, getValue(c - 1, r), 0);
-                        rightPoint.set(1, getValue(c + 1, r), 0);
-                        bottomPoint.set(0, getValue(c, r + 1), 1);
-                        
-                        normal.set( getNormal(topPoint,  rootPoint, leftPoint, scale, tmp1 ) );
-                        normal.addLocal( getNormal(leftPoint, rootPoint, bottomPoint, scale, tmp1) );
-                        normal.addLocal( getNormal(bottomPoint, rootPoint, rightPoint, scale, tmp1) );
-                        normal.addLocal( getNormal(rightPoint, rootPoint, topPoint, scale, tmp1) );
-                    }
-                }
-                normal.normalizeLocal();
-                BufferUtils.setInBuffer(normal, store, (r * getWidth() + c)); // save the normal
+    /**
+     * Recalculates the normals, tangents and binormals of the vertices
+     * between (minX, minZ) and (maxX, maxZ) inclusive, and writes them into
+     * the given buffers in place. The values are the same as the ones
+     * writeNormalArray() and writeTangentArray() produce, but only the
+     * affected area is touched and no objects are allocated, so it can be
+     * used while the terrain is being edited.
+     * The area is clamped to the size of this map.
+     */
+    public void writeNormalTangentArea(int minX, int minZ, int maxX, int maxZ, FloatBuffer normalStore, FloatBuffer tangentStore, FloatBuffer binormalStore, Vector3f scale) {
+        if (!isLoaded()) {
+            throw new NullPointerException();
+        }
+
+        minX = Math.max(minX, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, getWidth() - 1);
+        maxZ = Math.min(maxZ, getHeight() - 1);
+
+        TempVars vars = TempVars.get();
+        Vector3f normal = vars.vect8;
+        Vector3f tangent = vars.vect9;
+        Vector3f binormal = vars.vect10;
+
+        for (int r = minZ; r <= maxZ; r++) {
+            for (int c = minX; c <= maxX; c++) {
+                int i = r * getWidth() + c;
+                getNormal(c, r, scale, vars, normal);
+                tangent.set(normal).crossLocal(Vector3f.UNIT_Z);
+                binormal.set(Vector3f.UNIT_X).crossLocal(normal);
+
+                BufferUtils.setInBuffer(normal, normalStore, i);
+                BufferUtils.setInBuffer(tangent.normalizeLocal(), tangentStore, i);
+                BufferUtils.setInBuffer(binormal.normalizeLocal(), binormalStore, i);
             }
         }
         vars.release();
-        
-        return store;
     }
 
     private Vector3f getNormal(Vector3f firstPoint, Vector3f rootPoint, Vector3f secondPoint, Vector3f scale, Vector3f store) {
@@ -983,10 +1022,10 @@ public class LODGeomap extends GeoMap {
             return Float.NaN;
         }
         
-        float h1 = hdata[index];                // top left
-        float h2 = hdata[index + 1];            // top right
-        float h3 = hdata[index + width];        // bottom left
-        float h4 = hdata[index + width + 1];    // bottom right
+        float h1 = getValue(index);                // top left
+        float h2 = getValue(index + 1);            // top right
+        float h3 = getValue(index + width);        // bottom left
+        float h4 = getValue(index + width + 1);    // bottom right
 
         //float dix = (x % 1f) ;
         //float diz = (z % 1f) ;
@@ -1088,10 +1127,10 @@ public class LODGeomap extends GeoMap {
         Triangle t = new Triangle(new Vector3f(), new Vector3f(), new Vector3f());
         Triangle t2 = new Triangle(new Vector3f(), new Vector3f(), new Vector3f());
 
-        float h1 = hdata[index];                // top left
-        float h2 = hdata[index + 1];            // top right
-        float h3 = hdata[index + width];        // bottom left
-        float h4 = hdata[index + width + 1];    // bottom right
+        float h1 = getValue(index);                // top left
+        float h2 = getValue(index + 1);            // top right
+        float h3 = getValue(index + width);        // bottom left
+        float h4 = getValue(index + width + 1);    // bottom right
 
 
         if ((gridX == 0 && gridY == 0) || (gridX == width - 2 && gridY == width - 2)) {
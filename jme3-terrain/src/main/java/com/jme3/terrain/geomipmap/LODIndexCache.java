@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
+import com.jme3.scene.mesh.IndexBuffer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the LOD index buffers of terrain patches.
+ * <p>
+ * The triangle strip of a patch depends only on the size of the patch, its
+ * LOD and the LODs of its four neighbours, so every combination is 
+ * generated once by {@link LODGeomap} and the resulting index 
+ * {@link VertexBuffer} is reused by all patches of that size, in all
+ * terrains. A patch changing LOD then swaps in a buffer that is already 
+ * generated, and usually already uploaded to the GPU, instead of writing a
+ * new one.
+ * <p>
+ * The cached buffers are shared and must not be modified. Meshes holding
+ * one must remove it with {@link com.jme3.scene.Mesh#clearBuffer(com.jme3.scene.VertexBuffer.Type) }
+ * before setting another index buffer. They are only weakly referenced 
+ * and released once no patch uses them anymore. The cache is safe to use 
+ * from the LOD threads.
+ */
+public final class LODIndexCache {
+
+    private static final ConcurrentHashMap<Long, BufferReference> cache = new ConcurrentHashMap<Long, BufferReference>();
+    private static final ReferenceQueue<VertexBuffer> released = new ReferenceQueue<VertexBuffer>();
+
+    private LODIndexCache() {
+    }
+
+    /**
+     * Gets the index buffer written by 
+     * {@link LODGeomap#writeIndexArrayLodDiff(int, boolean, boolean, boolean, boolean, int) }.
+     */
+    public static VertexBuffer getLodDiff(LODGeomap geomap, int lod, boolean rightLod, boolean topLod, boolean leftLod, boolean bottomLod, int totalSize) {
+        if (!isPowerOfTwo(lod)) {
+            // not a LOD the terrain produces, do not cache it
+            return createBuffer(geomap.writeIndexArrayLodDiff(lod, rightLod, topLod, leftLod, bottomLod, totalSize));
+        }
+        int edges = (rightLod ? 1 : 0) | (topLod ? 2 : 0) | (leftLod ? 4 : 0) | (bottomLod ? 8 : 0);
+        long key = key(geomap.getWidth(), false, lod, edges);
+        VertexBuffer vb = get(key);
+        if (vb == null) {
+            vb = put(key, geomap.writeIndexArrayLodDiff(lod, rightLod, topLod, leftLod, bottomLod, totalSize));
+        }
+        return vb;
+    }
+
+    /**
+     * Gets the index buffer written by 
+     * {@link LODGeomap#writeIndexArrayLodVariable(int, int, int, int, int, int) }.
+     */
+    public static VertexBuffer getLodVariable(LODGeomap geomap, int lod, int rightLod, int topLod, int leftLod, int bottomLod, int totalSize) {
+        if (!isPowerOfTwo(lod) || !isPowerOfTwo(rightLod) || !isPowerOfTwo(topLod) 
+                || !isPowerOfTwo(leftLod) || !isPowerOfTwo(bottomLod)) {
+            // not a LOD the terrain produces, do not cache it
+            return createBuffer(geomap.writeIndexArrayLodVariable(lod, rightLod, topLod, leftLod, bottomLod, totalSize));
+        }
+        int edges = log2(rightLod) | log2(topLod) << 5 | log2(leftLod) << 10 | log2(bottomLod) << 15;
+        long key = key(geomap.getWidth(), true, lod, edges);
+        VertexBuffer vb = get(key);
+        if (vb == null) {
+            vb = put(key, geomap.writeIndexArrayLodVariable(lod, rightLod, topLod, leftLod, bottomLod, totalSize));
+        }
+        return vb;
+    }
+
+    /**
+     * @return The number of cached index buffers, some may already be
+     * released.
+     */
+    public static int size() {
+        purge();
+        return cache.size();
+    }
+
+    /**
+     * Removes all cached index buffers. Buffers in use by patches stay 
+     * valid, but are no longer shared with patches changing LOD afterwards.
+     */
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static long key(int width, boolean variable, int lod, int edges) {
+        return ((long) width << 40) | (variable ? 1L << 39 : 0) | ((long) log2(lod) << 32) | (edges & 0xFFFFFFFFL);
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
+    private static int log2(int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private static VertexBuffer get(long key) {
+        purge();
+        BufferReference ref = cache.get(key);
+        return ref != null ? ref.get() : null;
+    }
+
+    private static VertexBuffer put(long key, IndexBuffer indices) {
+        VertexBuffer vb = createBuffer(indices);
+        // if another thread created it meanwhile, both buffers stay valid
+        cache.put(key, new BufferReference(key, vb));
+        return vb;
+    }
+
+    private static void purge() {
+        Reference<? extends VertexBuffer> ref;
+        while ((ref = released.poll()) != null) {
+            cache.remove(((BufferReference) ref).key, ref);
+        }
+    }
+
+    private static VertexBuffer createBuffer(IndexBuffer indices) {
+        Buffer data = indices.getBuffer();
+        VertexBuffer vb = new VertexBuffer(Type.Index);
+        vb.setupData(Usage.Static, 3, data instanceof IntBuffer ? Format.UnsignedInt : Format.UnsignedShort, data);
+        return vb;
+    }
+
+    private static final class BufferReference extends WeakReference<VertexBuffer> {
+
+        private final Long key;
+
+        BufferReference(Long key, VertexBuffer vb) {
+            super(vb, released);
+            this.key = key;
+        }
+    }
+}
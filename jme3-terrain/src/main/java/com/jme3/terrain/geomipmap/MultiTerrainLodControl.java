@@ -127,7 +127,7 @@ public class MultiTerrainLodControl extends TerrainLodControl {
             
             for (TerrainQuad terrainQuad : terrains) {
                 // go through each patch and calculate its LOD based on camera distance
-                terrainQuad.calculateLod(camLocations, updated, lodCalculator); // 'updated' gets populated here
+                terrainQuad.calculateLod(camLocations, updated, lodCalculator, pool); // 'updated' gets populated here
             }
             
             for (TerrainQuad terrainQuad : terrains) {
@@ -142,7 +142,7 @@ public class MultiTerrainLodControl extends TerrainLodControl {
             
             for (TerrainQuad terrainQuad : terrains) {
                 // perform the edge seaming, if it requires it
-                terrainQuad.reIndexPages(updated, lodCalculator.usesVariableLod());
+                terrainQuad.reIndexPages(updated, lodCalculator.usesVariableLod(), pool);
             }
             
             //setUpdateQuadLODs(updated); // set back to main ogl thread
@@ -46,18 +46,14 @@ import com.jme3.terrain.Terrain;
 import com.jme3.terrain.heightmap.HeightMap;
 import com.jme3.terrain.heightmap.HeightMapGrid;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,7 +65,8 @@ import java.util.logging.Logger;
  * TerrainGrid will piggyback on the TerrainLodControl so it can use the camera for its
  * updates as well. It does this in the overwritten update() method.
  * </p><p>
- * It uses an LRU (Least Recently Used) cache of 16 terrain tiles (full TerrainQuadTrees). The
+ * It keeps a cache of terrain tiles (full TerrainQuadTrees) within a memory budget, see
+ * {@link TerrainGridTileStreamer}. The 4x4 tiles around the camera cell are kept loaded, the
  * center 4 are the ones that are visible. As the camera moves, it checks what camera cell it is in
  * and will attach the now visible tiles.
  * </p><p>
@@ -93,9 +90,9 @@ import java.util.logging.Logger;
  * This results in the effect of when the camera gets half way across one of the sides of a quad to
  * an empty (non-loaded) area, it will trigger the system to load in the next tiles.
  * </p><p>
- * The tile loading is done on a background thread, and once the tile is loaded, then it is
- * attached to the qrid quad tree, back on the OGL thread. It will grab the terrain quad from
- * the LRU cache if it exists. If it does not exist, it will load in the new TerrainQuad tile.
+ * The tile loading is done on background threads, ahead of the direction the camera moves in.
+ * Once the four visible tiles of the camera cell are loaded, they are attached to the grid quad
+ * tree, back on the OGL thread.
  * </p><p>
  * The loading of new tiles triggers events for any TerrainGridListeners. The events are:
  * <ul>
@@ -119,13 +116,34 @@ public class TerrainGrid extends TerrainQuad {
     protected Vector3f[] quadIndex;
     protected Set<TerrainGridListener> listeners = new HashSet<TerrainGridListener>();
     protected Material material;
-    //cache  needs to be 1 row (4 cells) larger than what we care is cached
-    protected LRUCache<Vector3f, TerrainQuad> cache = new LRUCache<Vector3f, TerrainQuad>(20);
+    protected TerrainGridTileStreamer tileStreamer;
+    /**
+     * @deprecated the tiles are cached by the tile streamer, this view of
+     * its tiles is kept for compatibility, use {@link #getTileStreamer() }
+     */
+    @Deprecated
+    protected LRUCache<Vector3f, TerrainQuad> cache = new StreamerCache();
+    protected Vector3f attachedCell; // the camera cell whose tiles are attached
     protected int cellsLoaded = 0;
     protected int[] gridOffset;
     protected boolean runOnce = false;
+    /**
+     * @deprecated no longer used, the tiles load on the threads of the
+     * tile streamer, see {@link TerrainGridTileStreamer#setThreadCount(int) }
+     */
+    @Deprecated
     protected ExecutorService cacheExecutor;
+    protected boolean quantizeTiles = false;
+    protected float tileMinHeight, tileMaxHeight;
 
+    /**
+     * Loads the tiles around a camera cell on the calling thread and makes 
+     * them the current cell, they get attached on the next update.
+     * 
+     * @deprecated the tile streamer loads the tiles around the camera in 
+     * the background, see {@link #getTileStreamer() }
+     */
+    @Deprecated
     protected class UpdateQuadCache implements Runnable {
 
         protected final Vector3f location;
@@ -134,83 +152,60 @@ public class TerrainGrid extends TerrainQuad {
             this.location = location;
         }
 
-        /**
-         * This is executed if the camera has moved into a new CameraCell and will load in
-         * the new TerrainQuad tiles to be children of this TerrainGrid parent.
-         * It will first check the LRU cache to see if the terrain tile is already there,
-         * if it is not there, it will load it in and then cache that tile.
-         * The terrain tiles get added to the quad tree back on the OGL thread using the
-         * attachQuadAt() method. It also resets any cached values in TerrainQuad (such as
-         * neighbours).
-         */
         public void run() {
-            for (int i = 0; i < 4; i++) {
-                for (int j = 0; j < 4; j++) {
-                    int quadIdx = i * 4 + j;
-                    final Vector3f quadCell = location.add(quadIndex[quadIdx]);
-                    TerrainQuad q = cache.get(quadCell);
-                    if (q == null) {
-                        if (heightMapGrid != null) {
-                            // create the new Quad since it doesn't exist
-                            HeightMap heightMapAt = heightMapGrid.getHeightMapAt(quadCell);
-                            q = new TerrainQuad(getName() + "Quad" + quadCell, patchSize, quadSize, heightMapAt == null ? null : heightMapAt.getHeightMap());
-                            q.setMaterial(material.clone());
-                            log.log(Level.FINE, "Loaded TerrainQuad {0} from HeightMapGrid", q.getName());
-                        } else if (gridTileLoader != null) {
-                            q = gridTileLoader.getTerrainQuadAt(quadCell);
-                            // only clone the material to the quad if it doesn't have a material of its own
-                            if(q.getMaterial()==null) q.setMaterial(material.clone());
-                            log.log(Level.FINE, "Loaded TerrainQuad {0} from TerrainQuadGrid", q.getName());
-                        }
-                    }
-                    cache.put(quadCell, q);
-
-                    
-                    final int quadrant = getQuadrant(quadIdx);
-                    final TerrainQuad newQuad = q;
-                    
-                    if (isCenter(quadIdx)) {
-                        // if it should be attached as a child right now, attach it
-                        getControl(UpdateControl.class).enqueue(new Callable() {
-                            // back on the OpenGL thread:
-                            public Object call() throws Exception {
-                                if (newQuad.getParent() != null) {
-                                    attachQuadAt(newQuad, quadrant, quadCell, true);
-                                }
-                                else {
-                                    attachQuadAt(newQuad, quadrant, quadCell, false);
-                                }
-                                return null;
-                            }
-                        });
-                    } else {
-                        getControl(UpdateControl.class).enqueue(new Callable() {
-                            public Object call() throws Exception {
-                                removeQuad(newQuad);
-                                return null;
-                            }
-                        });
-                    }
+            for (int i = 0; i < 16; i++) {
+                Vector3f quadCell = location.add(quadIndex[i]);
+                if (cache.get(quadCell) == null) {
+                    TerrainQuad q = loadTile(quadCell);
+                    if (q != null)
+                        cache.put(quadCell, q);
                 }
             }
-
-            getControl(UpdateControl.class).enqueue(new Callable() {
-                    // back on the OpenGL thread:
-                    public Object call() throws Exception {
-                        for (Spatial s : getChildren()) {
-                            if (s instanceof TerrainQuad) {
-                                TerrainQuad tq = (TerrainQuad)s;
-                                tq.resetCachedNeighbours();
-                            }
-                        }
-                        System.out.println("fixed normals "+location.clone().mult(size));
-                        setNeedToRecalculateNormals();
-                        return null;
-                    }
+            getControl(UpdateControl.class).enqueue(new Callable<Object>() {
+                // back on the OpenGL thread:
+                public Object call() throws Exception {
+                    updateChildren(location);
+                    return null;
+                }
             });
         }
     }
 
+    /**
+     * The deprecated LRU cache of the tiles, backed by the tile streamer.
+     */
+    private class StreamerCache extends LRUCache<Vector3f, TerrainQuad> {
+
+        StreamerCache() {
+            super(0);
+        }
+
+        @Override
+        public TerrainQuad get(Vector3f key) {
+            return getTileStreamer().getTile(key);
+        }
+
+        @Override
+        public void put(Vector3f key, TerrainQuad value) {
+            getTileStreamer().putTile(key, value);
+        }
+
+        @Override
+        public void clear() {
+            getTileStreamer().clearTiles();
+        }
+
+        @Override
+        public int usedEntries() {
+            return getTileStreamer().getLoadedTileCount();
+        }
+
+        @Override
+        public Collection<Map.Entry<Vector3f, TerrainQuad>> getAll() {
+            return new ArrayList<Map.Entry<Vector3f, TerrainQuad>>(getTileStreamer().getTiles().entrySet());
+        }
+    }
+
     protected boolean isCenter(int quadIndex) {
         return quadIndex == 9 || quadIndex == 5 || quadIndex == 10 || quadIndex == 6;
     }
@@ -319,7 +314,7 @@ public class TerrainGrid extends TerrainQuad {
             return null;
         Vector3f tileCell = getTileCell(worldLocation.setY(0));
         tileCell = new Vector3f(Math.round(tileCell.x), tileCell.y, Math.round(tileCell.z));
-        return cache.get(tileCell);
+        return getTileStreamer().getTile(tileCell);
     }
     
     /**
@@ -328,7 +323,7 @@ public class TerrainGrid extends TerrainQuad {
      * @return the terrain tile at that location
      */
     public Terrain getTerrainAtCell(Vector3f cellCoordinate) {
-        return cache.get(cellCoordinate);
+        return getTileStreamer().getTile(cellCoordinate);
     }
     
     /**
@@ -382,62 +377,91 @@ public class TerrainGrid extends TerrainQuad {
 
     
     /**
-     * Called when the camera has moved into a new cell. We need to
-     * update what quads are in the scene now.
-     * 
-     * Step 1: touch cache
-     * LRU cache is used, so elements that need to remain
-     * should be touched.
-     *
-     * Step 2: load new quads in background thread
-     * if the camera has moved into a new cell, we load in new quads
+     * Called when the camera has moved into a new cell. The tiles of the
+     * new cell get loaded by the tile streamer, and they are attached by
+     * updateTiles() once the four visible ones are loaded.
      * @param camCell the cell the camera is in
      */
     protected void updateChildren(Vector3f camCell) {
+        this.currentCamCell = camCell;
+    }
 
-        int dx = 0;
-        int dy = 0;
-        if (currentCamCell != null) {
-            dx = (int) (camCell.x - currentCamCell.x);
-            dy = (int) (camCell.z - currentCamCell.z);
+    /**
+     * Streams the tiles around the camera location and attaches the visible
+     * tiles of the current camera cell once they are all loaded.
+     * Runs on the rendering thread.
+     */
+    protected void updateTiles(Vector3f camLocation, float tpf) {
+        TerrainGridTileStreamer streamer = getTileStreamer();
+        streamer.update(camLocation, tpf);
+
+        if (currentCamCell.equals(attachedCell))
+            return;
+        for (int i = 0; i < 16; i++) {
+            if (isCenter(i) && !streamer.isLoaded(currentCamCell.add(quadIndex[i])))
+                return; // wait for all four, so the grid never has holes
         }
 
-        int xMin = 0;
-        int xMax = 4;
-        int yMin = 0;
-        int yMax = 4;
-        if (dx == -1) { // camera moved to -X direction
-            xMax = 3;
-        } else if (dx == 1) { // camera moved to +X direction
-            xMin = 1;
+        Set<TerrainQuad> visible = new HashSet<TerrainQuad>();
+        for (int i = 0; i < 16; i++) {
+            if (isCenter(i)) {
+                Vector3f quadCell = currentCamCell.add(quadIndex[i]);
+                TerrainQuad q = streamer.getTile(quadCell);
+                attachQuadAt(q, getQuadrant(i), quadCell, q.getParent() != null);
+                visible.add(q);
+            }
         }
-
-        if (dy == -1) { // camera moved to -Y direction
-            yMax = 3;
-        } else if (dy == 1) { // camera moved to +Y direction
-            yMin = 1;
+        for (Spatial s : getChildren().toArray(new Spatial[0])) {
+            if (s instanceof TerrainQuad && !visible.contains(s))
+                removeQuad((TerrainQuad) s);
         }
-
-        // Touch the items in the cache that we are and will be interested in.
-        // We activate cells in the direction we are moving. If we didn't move 
-        // either way in one of the axes (say X or Y axis) then they are all touched.
-        for (int i = yMin; i < yMax; i++) {
-            for (int j = xMin; j < xMax; j++) {
-                cache.get(camCell.add(quadIndex[i * 4 + j]));
-            }
+        for (Spatial s : getChildren()) {
+            if (s instanceof TerrainQuad)
+                ((TerrainQuad) s).resetCachedNeighbours();
         }
-        
-        // ---------------------------------------------------
-        // ---------------------------------------------------
+        setNeedToRecalculateNormals();
+        attachedCell = currentCamCell;
+    }
 
-        if (cacheExecutor == null) {
-            // use the same executor as the LODControl
-            cacheExecutor = createExecutorService();
+    /**
+     * Creates the TerrainQuad tile for the cell from the HeightMapGrid or
+     * the TerrainGridTileLoader. Called on the tile streamer threads.
+     */
+    protected TerrainQuad loadTile(Vector3f quadCell) {
+        TerrainQuad q = null;
+        if (heightMapGrid != null) {
+            // create the new Quad since it doesn't exist
+            HeightMap heightMapAt = heightMapGrid.getHeightMapAt(quadCell);
+            q = new TerrainQuad(getName() + "Quad" + quadCell, patchSize, quadSize, heightMapAt == null ? null : heightMapAt.getHeightMap());
+            q.setMaterial(material.clone());
+            log.log(Level.FINE, "Loaded TerrainQuad {0} from HeightMapGrid", q.getName());
+        } else if (gridTileLoader != null) {
+            q = gridTileLoader.getTerrainQuadAt(quadCell);
+            // only clone the material to the quad if it doesn't have a material of its own
+            if(q.getMaterial()==null) q.setMaterial(material.clone());
+            log.log(Level.FINE, "Loaded TerrainQuad {0} from TerrainQuadGrid", q.getName());
         }
+        if (q != null && quantizeTiles)
+            q.quantizeHeights(tileMinHeight, tileMaxHeight);
+        return q;
+    }
 
-        cacheExecutor.submit(new UpdateQuadCache(camCell));
+    /**
+     * @return the streamer that loads and caches the tiles of this grid
+     */
+    public TerrainGridTileStreamer getTileStreamer() {
+        if (tileStreamer == null)
+            tileStreamer = new TerrainGridTileStreamer(this);
+        return tileStreamer;
+    }
 
-        this.currentCamCell = camCell;
+    /**
+     * @deprecated the tiles load on the threads of the tile streamer, this
+     * creates an executor like the streamer does
+     */
+    @Deprecated
+    protected ExecutorService createExecutorService() {
+        return getTileStreamer().createExecutorService();
     }
 
     public void addListener(TerrainGridListener listener) {
@@ -458,6 +482,24 @@ public class TerrainGrid extends TerrainQuad {
         super.setMaterial(mat);
     }
 
+    /**
+     * Also quantizes the tiles that get loaded later with the same range,
+     * so the edges between the tiles stay seamless.
+     */
+    @Override
+    public void quantizeHeights(float minHeight, float maxHeight) {
+        super.quantizeHeights(minHeight, maxHeight);
+        quantizeTiles = true;
+        tileMinHeight = minHeight;
+        tileMaxHeight = maxHeight;
+    }
+
+    @Override
+    public void dequantizeHeights() {
+        super.dequantizeHeights();
+        quantizeTiles = false;
+    }
+
     public void setQuadSize(int quadSize) {
         this.quadSize = quadSize;
     }
@@ -487,50 +529,12 @@ public class TerrainGrid extends TerrainQuad {
         if (worldLocation == null)
             return null;
         Vector3f tileCell = getTileCell(worldLocation);
-        Terrain terrain = cache.get(tileCell);
+        Terrain terrain = getTileStreamer().getTile(tileCell);
         if (terrain == null)
             return null; // terrain not loaded for that cell yet!
         return terrain.getMaterial(worldLocation);
     }
 
-    /**
-     * This will print out any exceptions from the thread
-     */
-    protected ExecutorService createExecutorService() {
-        final ThreadFactory threadFactory = new ThreadFactory() {
-            public Thread newThread(Runnable r) {
-                Thread th = new Thread(r);
-                th.setName("jME TerrainGrid Thread");
-                th.setDaemon(true);
-                return th;
-            }
-        };
-        ThreadPoolExecutor ex = new ThreadPoolExecutor(1, 1,
-                                    0L, TimeUnit.MILLISECONDS,
-                                    new LinkedBlockingQueue<Runnable>(), 
-                                    threadFactory) {
-            protected void afterExecute(Runnable r, Throwable t) {
-                super.afterExecute(r, t);
-                if (t == null && r instanceof Future<?>) {
-                    try {
-                        Future<?> future = (Future<?>) r;
-                        if (future.isDone())
-                            future.get();
-                    } catch (CancellationException ce) {
-                        t = ce;
-                    } catch (ExecutionException ee) {
-                        t = ee.getCause();
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt(); // ignore/reset
-                    }
-                }
-                if (t != null)
-                    t.printStackTrace();
-            }
-        };
-        return ex;
-    }
-    
     @Override
     public void read(JmeImporter im) throws IOException {
         super.read(im);
@@ -543,6 +547,9 @@ public class TerrainGrid extends TerrainQuad {
         offsetAmount = c.readFloat("offsetAmount", 0);
         gridTileLoader = (TerrainGridTileLoader) c.readSavable("terrainQuadGrid", null);
         material = (Material) c.readSavable("material", null);
+        quantizeTiles = c.readBoolean("quantizeTiles", false);
+        tileMinHeight = c.readFloat("tileMinHeight", 0);
+        tileMaxHeight = c.readFloat("tileMaxHeight", 0);
         initData();
         if (gridTileLoader != null) {
             gridTileLoader.setPatchSize(this.patchSize);
@@ -561,5 +568,8 @@ public class TerrainGrid extends TerrainQuad {
         c.write(offset, "offset", null);
         c.write(offsetAmount, "offsetAmount", 0);
         c.write(material, "material", null);
+        c.write(quantizeTiles, "quantizeTiles", false);
+        c.write(tileMinHeight, "tileMinHeight", 0);
+        c.write(tileMaxHeight, "tileMaxHeight", 0);
     }
 }
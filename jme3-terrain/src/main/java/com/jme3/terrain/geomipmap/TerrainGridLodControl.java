@@ -45,10 +45,27 @@ import java.util.List;
  */
 public class TerrainGridLodControl extends TerrainLodControl {
     
+    private float tpf;
+    
     public TerrainGridLodControl(Terrain terrain, Camera camera) {
         super(terrain, camera);
     }
     
+    @Override
+    protected void controlUpdate(float tpf) {
+        this.tpf = tpf; // the tile streamer needs it to track the camera speed
+        super.controlUpdate(tpf);
+    }
+    
+    /**
+     * Also stops the threads that load the tiles of the grid.
+     */
+    @Override
+    public void detachAndCleanUpControl() {
+        ((TerrainGrid) getSpatial()).getTileStreamer().shutdown();
+        super.detachAndCleanUpControl();
+    }
+    
     @Override
     protected void updateLOD(List<Vector3f> locations, LodCalculator lodCalculator) {
         TerrainGrid terrainGrid = (TerrainGrid)getSpatial();
@@ -72,6 +89,7 @@ public class TerrainGridLodControl extends TerrainLodControl {
             }
         }
         terrainGrid.runOnce = true;
+        terrainGrid.updateTiles(cam, tpf);
         super.updateLOD(locations, lodCalculator);
     }
 }
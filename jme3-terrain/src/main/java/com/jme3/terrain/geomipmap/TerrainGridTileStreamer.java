@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.VertexBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the tiles of a {@link TerrainGrid} in the background and keeps the
+ * loaded tiles within a memory budget.
+ * <p>
+ * Every frame the streamer works out which cells are wanted: the 4x4 block
+ * around the camera cell, plus the visible cells along the direction the
+ * camera is moving, up to {@link #setPrefetchTime(float) prefetchTime}
+ * seconds ahead. Missing cells are loaded on up to
+ * {@link #setThreadCount(int) threadCount} threads. The visible cells are
+ * loaded first, then the closest cells to where the camera is heading.
+ * Requests for cells that are no longer wanted are dropped before they
+ * start, and tiles that finish loading after their cell stopped being 
+ * wanted are discarded.
+ * <p>
+ * Loaded tiles stay cached until their total size goes over the memory
+ * budget. Then the least recently used tiles are evicted, except for tiles
+ * that are wanted or attached to the grid.
+ * <p>
+ * A stall is counted whenever the camera is in a cell whose visible tiles are
+ * not loaded yet, see {@link #getStallCount()} and {@link #getStallTime()}.
+ * <p>
+ * With more than one thread the TerrainGridTileLoader or HeightMapGrid of the
+ * grid has to be thread-safe.
+ */
+public class TerrainGridTileStreamer {
+
+    private static final Logger logger = Logger.getLogger(TerrainGridTileStreamer.class.getName());
+
+    // the four visible cells of the 4x4 quadIndex block
+    private static final int[] CENTER = {5, 6, 9, 10};
+    private static final int MAX_PREFETCH_STEPS = 16;
+
+    private final TerrainGrid grid;
+    private final LinkedHashMap<Vector3f, Tile> tiles = new LinkedHashMap<Vector3f, Tile>(32, 0.75f, true);
+    private final HashMap<Vector3f, Future<TerrainQuad>> loading = new HashMap<Vector3f, Future<TerrainQuad>>();
+    private final HashMap<Vector3f, Float> pending = new HashMap<Vector3f, Float>();
+    private ExecutorService executor;
+    private int threadCount = 1;
+    private long memoryBudget = 128 * 1024 * 1024;
+    private long residentMemory = 0;
+    private float prefetchTime = 2f;
+
+    private final Vector3f lastLocation = new Vector3f();
+    private final Vector3f velocity = new Vector3f();
+    private boolean hasLocation = false;
+
+    private boolean stalled = false;
+    private int stallCount = 0;
+    private float stallTime = 0;
+    private int loadedCount = 0;
+    private int cancelledCount = 0;
+    private int evictedCount = 0;
+
+    private static class Tile {
+        final TerrainQuad quad;
+        final long memory;
+
+        Tile(TerrainQuad quad, long memory) {
+            this.quad = quad;
+            this.memory = memory;
+        }
+    }
+
+    public TerrainGridTileStreamer(TerrainGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Updates the wanted cells for the given camera location, collects the
+     * tiles that finished loading, starts new loads and evicts tiles when
+     * over budget. Call this on the render thread.
+     */
+    public void update(Vector3f location, float tpf) {
+        updateVelocity(location, tpf);
+
+        Vector3f camCell = grid.getCamCell(location);
+        Map<Vector3f, Float> wanted = getWantedCells(location, camCell);
+
+        collectLoadedTiles(wanted);
+
+        // drop the requests that have not started and are no longer wanted
+        for (Iterator<Vector3f> it = pending.keySet().iterator(); it.hasNext();) {
+            if (!wanted.containsKey(it.next())) {
+                it.remove();
+                cancelledCount++;
+            }
+        }
+
+        synchronized (this) {
+            for (Map.Entry<Vector3f, Float> entry : wanted.entrySet()) {
+                Vector3f cell = entry.getKey();
+                if (tiles.get(cell) == null && !loading.containsKey(cell)) {
+                    pending.put(cell, entry.getValue());
+                }
+            }
+        }
+
+        startLoading();
+        evict(wanted);
+        updateStall(camCell, tpf);
+    }
+
+    private void updateVelocity(Vector3f location, float tpf) {
+        if (hasLocation && tpf > 0) {
+            float maxDistance = grid.quadSize * grid.getWorldScale().x;
+            float distance = location.distance(lastLocation);
+            if (distance > maxDistance) {
+                // the camera jumped, there is nothing to predict
+                velocity.set(0, 0, 0);
+            } else {
+                Vector3f current = location.subtract(lastLocation).divideLocal(tpf);
+                velocity.interpolateLocal(current, Math.min(1f, tpf * 4f));
+            }
+        }
+        lastLocation.set(location);
+        hasLocation = true;
+    }
+
+    /**
+     * Returns the wanted cells with their priority, the lowest value loads
+     * first.
+     */
+    Map<Vector3f, Float> getWantedCells(Vector3f location, Vector3f camCell) {
+        HashMap<Vector3f, Float> wanted = new HashMap<Vector3f, Float>();
+        Vector3f camTile = grid.getTileCell(location);
+        Vector3f prefetch = velocity.mult(prefetchTime);
+        Vector3f predictedTile = grid.getTileCell(location.add(prefetch));
+
+        for (int i = 0; i < 16; i++) {
+            Vector3f cell = camCell.add(grid.quadIndex[i]);
+            float priority = distanceXZ(cell, predictedTile);
+            wanted.put(cell, grid.isCenter(i) ? priority : 1000 + priority);
+        }
+
+        // the visible cells along the way the camera is heading,
+        // sampled every half tile
+        float tileLength = grid.quadSize * grid.getWorldScale().x;
+        int steps = Math.min(MAX_PREFETCH_STEPS, (int) (prefetch.length() * 2 / tileLength));
+        for (int s = 1; s <= steps; s++) {
+            Vector3f ahead = location.add(prefetch.mult(s / (float) steps));
+            Vector3f aheadCell = grid.getCamCell(ahead);
+            for (int i : CENTER) {
+                Vector3f cell = aheadCell.add(grid.quadIndex[i]);
+                if (!wanted.containsKey(cell)) {
+                    wanted.put(cell, 2000 + distanceXZ(cell, camTile));
+                }
+            }
+        }
+        return wanted;
+    }
+
+    private static float distanceXZ(Vector3f cell, Vector3f tile) {
+        float dx = cell.x - tile.x;
+        float dz = cell.z - tile.z;
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    private void collectLoadedTiles(Map<Vector3f, Float> wanted) {
+        for (Iterator<Map.Entry<Vector3f, Future<TerrainQuad>>> it = loading.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Vector3f, Future<TerrainQuad>> entry = it.next();
+            if (!entry.getValue().isDone()) {
+                continue;
+            }
+            it.remove();
+            try {
+                TerrainQuad quad = entry.getValue().get();
+                if (quad == null) {
+                    continue;
+                }
+                if (wanted.containsKey(entry.getKey())) {
+                    putTile(entry.getKey(), quad);
+                    loadedCount++;
+                } else {
+                    // the camera moved away while the tile was loading
+                    cancelledCount++;
+                }
+            } catch (InterruptedException ex) {
+                logger.log(Level.SEVERE, null, ex);
+            } catch (ExecutionException ex) {
+                logger.log(Level.SEVERE, "Could not load terrain tile " + entry.getKey(), ex.getCause());
+            }
+        }
+    }
+
+    private void startLoading() {
+        if (pending.isEmpty() || loading.size() >= threadCount) {
+            return;
+        }
+        List<Map.Entry<Vector3f, Float>> sorted = new ArrayList<Map.Entry<Vector3f, Float>>(pending.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<Vector3f, Float>>() {
+            public int compare(Map.Entry<Vector3f, Float> a, Map.Entry<Vector3f, Float> b) {
+                return Float.compare(a.getValue(), b.getValue());
+            }
+        });
+
+        if (executor == null) {
+            executor = createExecutorService();
+        }
+        for (int i = 0; i < sorted.size() && loading.size() < threadCount; i++) {
+            final Vector3f cell = sorted.get(i).getKey();
+            pending.remove(cell);
+            loading.put(cell, executor.submit(new Callable<TerrainQuad>() {
+                public TerrainQuad call() throws Exception {
+                    return grid.loadTile(cell);
+                }
+            }));
+        }
+    }
+
+    private synchronized void evict(Map<Vector3f, Float> wanted) {
+        // the iteration order of the tiles is least recently used first
+        for (Iterator<Map.Entry<Vector3f, Tile>> it = tiles.entrySet().iterator(); it.hasNext() && residentMemory > memoryBudget;) {
+            Map.Entry<Vector3f, Tile> entry = it.next();
+            Tile tile = entry.getValue();
+            if (wanted.containsKey(entry.getKey()) || tile.quad.getParent() != null) {
+                continue;
+            }
+            it.remove();
+            residentMemory -= tile.memory;
+            evictedCount++;
+        }
+    }
+
+    private void updateStall(Vector3f camCell, float tpf) {
+        boolean missing = false;
+        synchronized (this) {
+            for (int i : CENTER) {
+                if (!tiles.containsKey(camCell.add(grid.quadIndex[i]))) {
+                    missing = true;
+                    break;
+                }
+            }
+        }
+        if (missing) {
+            if (!stalled) {
+                stallCount++;
+            }
+            stallTime += tpf;
+        }
+        stalled = missing;
+    }
+
+    /**
+     * Estimates the memory used by a tile: the vertex data and the height
+     * maps of its patches. Index buffers and texture coordinates are shared
+     * between tiles by {@link LODIndexCache} and {@link TexCoordCache} and
+     * are not counted.
+     */
+    protected long getTileMemory(TerrainQuad quad) {
+        final long[] memory = {0};
+        quad.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                for (VertexBuffer vb : geom.getMesh().getBufferList()) {
+                    if (vb.getBufferType() != VertexBuffer.Type.Index && vb.getBufferType() != VertexBuffer.Type.TexCoord
+                            && vb.getData() != null) {
+                        memory[0] += (long) vb.getData().capacity() * vb.getFormat().getComponentSize();
+                    }
+                }
+                if (geom instanceof TerrainPatch) {
+                    LODGeomap geomap = ((TerrainPatch) geom).geomap;
+                    memory[0] += (geomap.isQuantized() ? 2L : 4L) * geomap.getWidth() * geomap.getHeight();
+                }
+            }
+        });
+        return memory[0];
+    }
+
+    protected ExecutorService createExecutorService() {
+        return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread th = new Thread(r);
+                th.setName("jME TerrainGrid Thread");
+                th.setDaemon(true);
+                return th;
+            }
+        });
+    }
+
+    /**
+     * @return the loaded tile at the cell, or null if it is not loaded
+     */
+    public synchronized TerrainQuad getTile(Vector3f cell) {
+        Tile tile = tiles.get(cell);
+        return tile != null ? tile.quad : null;
+    }
+
+    /**
+     * Adds a tile that was loaded outside of the streamer, replacing the 
+     * tile of the cell if it is loaded already.
+     */
+    public synchronized void putTile(Vector3f cell, TerrainQuad quad) {
+        Tile tile = new Tile(quad, getTileMemory(quad));
+        Tile old = tiles.put(cell, tile);
+        if (old != null) {
+            residentMemory -= old.memory;
+        }
+        residentMemory += tile.memory;
+    }
+
+    /**
+     * @return a copy of the loaded tiles by cell, least recently used first
+     */
+    public synchronized Map<Vector3f, TerrainQuad> getTiles() {
+        Map<Vector3f, TerrainQuad> result = new LinkedHashMap<Vector3f, TerrainQuad>();
+        for (Map.Entry<Vector3f, Tile> entry : tiles.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().quad);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all loaded tiles, attached tiles stay attached to the grid 
+     * until they are replaced.
+     */
+    public synchronized void clearTiles() {
+        tiles.clear();
+        residentMemory = 0;
+    }
+
+    /**
+     * @return true if the tile at the cell is loaded
+     */
+    public synchronized boolean isLoaded(Vector3f cell) {
+        return tiles.containsKey(cell);
+    }
+
+    /**
+     * Stops the loading threads, tiles that are still loading are dropped.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        loading.clear();
+        pending.clear();
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads that load tiles, 1 by default.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        if (this.threadCount != threadCount && executor != null) {
+            // tiles that are loading still finish on the old threads
+            executor.shutdown();
+            executor = null;
+        }
+        this.threadCount = threadCount;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the number of bytes the loaded tiles may use before the least
+     * recently used ones are evicted, 128 MB by default.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public float getPrefetchTime() {
+        return prefetchTime;
+    }
+
+    /**
+     * Sets how many seconds ahead of the camera movement tiles are loaded,
+     * 2 by default. 0 only loads the cells around the camera.
+     */
+    public void setPrefetchTime(float prefetchTime) {
+        this.prefetchTime = prefetchTime;
+    }
+
+    /**
+     * @return the estimated memory of the loaded tiles in bytes
+     */
+    public synchronized long getResidentMemory() {
+        return residentMemory;
+    }
+
+    public synchronized int getLoadedTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * @return the number of tiles loading or waiting to load
+     */
+    public int getPendingCount() {
+        return loading.size() + pending.size();
+    }
+
+    /**
+     * @return the number of times the camera entered a cell whose visible
+     * tiles were not loaded yet
+     */
+    public int getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * @return the time in seconds the camera spent in cells whose visible
+     * tiles were not loaded yet
+     */
+    public float getStallTime() {
+        return stallTime;
+    }
+
+    /**
+     * @return true if the visible tiles of the current camera cell are not
+     * all loaded
+     */
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    /**
+     * @return the number of tiles loaded so far
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * @return the number of requests dropped or tiles discarded because 
+     * their cell was no longer wanted
+     */
+    public int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * @return the number of tiles evicted to stay within the memory budget
+     */
+    public int getEvictedCount() {
+        return evictedCount;
+    }
+}
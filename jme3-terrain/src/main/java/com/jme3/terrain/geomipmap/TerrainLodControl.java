@@ -54,6 +54,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -78,6 +79,11 @@ import java.util.logging.Logger;
  * to handle the LOD processing. If you supply your own executor service, then
  * you have to handle its thread termination yourself.
  * 
+ * By default the whole quad tree is processed on that single thread. With
+ * setThreadCount(int) the LOD calculation and the re-indexing of the patches
+ * are split up per quad subtree over a fork-join pool with that many threads.
+ * The results are the same for any thread count.
+ * 
  * @author Brent Owens
  */
 public class TerrainLodControl extends AbstractControl {
@@ -98,6 +104,9 @@ public class TerrainLodControl extends AbstractControl {
     protected ExecutorService executor;
     protected Future<HashMap<String, UpdatedTerrainPatch>> indexer;
     private boolean forceUpdate = true;
+    private int threadCount = 1;
+    private boolean forkJoinPoolStale = false;
+    protected ForkJoinPool forkJoinPool;
     
     public TerrainLodControl() {
     }
@@ -133,6 +142,30 @@ public class TerrainLodControl extends AbstractControl {
         this.executor = executor;
     }
     
+    /**
+     * Sets the number of threads used to calculate the LOD of the quad
+     * subtrees in parallel. With 1, the default, everything runs on the
+     * executor's thread.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        if (this.threadCount != threadCount) {
+            // a running calculation may still use the pool, it is replaced
+            // before the next one
+            forkJoinPoolStale = true;
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    protected ForkJoinPool createForkJoinPool() {
+        return new ForkJoinPool(threadCount);
+    }
+
     protected ExecutorService createExecutorService() {
         return Executors.newSingleThreadExecutor(new ThreadFactory() {
             public Thread newThread(Runnable r) {
@@ -176,6 +209,10 @@ public class TerrainLodControl extends AbstractControl {
     public void detachAndCleanUpControl() {
         if (executor != null)
             executor.shutdownNow();
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdownNow();
+            forkJoinPool = null;
+        }
         getSpatial().removeControl(this);
     }
 
@@ -216,6 +253,14 @@ public class TerrainLodControl extends AbstractControl {
 
         if (executor == null)
             executor = createExecutorService();
+        if (forkJoinPoolStale && forkJoinPool != null) {
+            // no calculation is running, nothing uses the old pool anymore
+            forkJoinPool.shutdown();
+            forkJoinPool = null;
+        }
+        forkJoinPoolStale = false;
+        if (threadCount > 1 && forkJoinPool == null)
+            forkJoinPool = createForkJoinPool();
         
         prepareTerrain();
         
@@ -311,6 +356,7 @@ public class TerrainLodControl extends AbstractControl {
             }
             TerrainLodControl cloned = new TerrainLodControl((Terrain) spatial, cameraClone);
             cloned.setLodCalculator(lodCalculator.clone());
+            cloned.setThreadCount(threadCount);
             return cloned;
         }
         return null;
@@ -369,10 +415,12 @@ public class TerrainLodControl extends AbstractControl {
     protected class UpdateLOD implements Callable<HashMap<String,UpdatedTerrainPatch>> {
         protected List<Vector3f> camLocations;
         protected LodCalculator lodCalculator;
+        protected ForkJoinPool pool; // null when running on a single thread
 
         protected UpdateLOD(List<Vector3f> camLocations, LodCalculator lodCalculator) {
             this.camLocations = camLocations;
             this.lodCalculator = lodCalculator;
+            this.pool = forkJoinPool;
         }
 
         public HashMap<String, UpdatedTerrainPatch> call() throws Exception {
@@ -386,7 +434,7 @@ public class TerrainLodControl extends AbstractControl {
             
             // go through each patch and calculate its LOD based on camera distance
             HashMap<String,UpdatedTerrainPatch> updated = new HashMap<String,UpdatedTerrainPatch>();
-            boolean lodChanged = terrainQuad.calculateLod(camLocations, updated, lodCalculator); // 'updated' gets populated here
+            boolean lodChanged = terrainQuad.calculateLod(camLocations, updated, lodCalculator, pool); // 'updated' gets populated here
 
             if (!lodChanged) {
                 // not worth updating anything else since no one's LOD changed
@@ -400,7 +448,7 @@ public class TerrainLodControl extends AbstractControl {
 
             terrainQuad.fixEdges(updated); // 'updated' can get added to here
 
-            terrainQuad.reIndexPages(updated, lodCalculator.usesVariableLod());
+            terrainQuad.reIndexPages(updated, lodCalculator.usesVariableLod(), pool);
 
             //setUpdateQuadLODs(updated); // set back to main ogl thread
 
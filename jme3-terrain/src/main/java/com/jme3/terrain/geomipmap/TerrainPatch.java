@@ -46,15 +46,13 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.VertexBuffer.Type;
-import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.terrain.geomipmap.TerrainQuad.LocationHeight;
 import com.jme3.terrain.geomipmap.lodcalc.util.EntropyComputeUtil;
+import com.jme3.terrain.geomipmap.picking.HeightPyramid;
 import com.jme3.util.BufferUtils;
+import com.jme3.util.TempVars;
 import java.io.IOException;
-import java.nio.Buffer;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
 import java.util.HashMap;
 import java.util.List;
 
@@ -114,6 +112,13 @@ public class TerrainPatch extends Geometry {
 
     protected float[] lodEntropy;
 
+    // largest height difference to the full detail mesh per LOD, dropped when the heights change.
+    // Built lazily on the LOD thread too, so only touched while holding the lock of this patch
+    protected float[] lodErrors;
+
+    // built on first pick or LOD update, dropped when the heights change. Guarded like lodErrors
+    protected HeightPyramid heightPyramid;
+
     public TerrainPatch() {
         super("TerrainPatch");
         setBatchHint(BatchHint.Never);
@@ -198,13 +203,8 @@ public class TerrainPatch extends Geometry {
         float[] entropies = new float[getMaxLod()+1];
         for (int i = 0; i <= getMaxLod(); i++){
             int curLod = (int) Math.pow(2, i);
-            IndexBuffer idxB = geomap.writeIndexArrayLodDiff(curLod, false, false, false, false, totalSize);
-            Buffer ib;
-            if (idxB.getBuffer() instanceof IntBuffer)
-                ib = (IntBuffer)idxB.getBuffer();
-            else
-                ib = (ShortBuffer)idxB.getBuffer();
-            entropies[i] = EntropyComputeUtil.computeLodEntropy(mesh, ib);
+            VertexBuffer idxB = LODIndexCache.getLodDiff(geomap, curLod, false, false, false, false, totalSize);
+            entropies[i] = EntropyComputeUtil.computeLodEntropy(mesh, idxB.getData());
         }
 
         lodEntropy = entropies;
@@ -217,6 +217,28 @@ public class TerrainPatch extends Geometry {
         return lodEntropy;
     }
 
+    /**
+     * Computes the geometric error of each LOD straight from the heightmap.
+     * Much faster than generateLodEntropies(), the values never decrease
+     * with the LOD.
+     */
+    public synchronized void generateLodErrors() {
+        float[] errors = new float[getMaxLod()+1];
+        for (int i = 1; i <= getMaxLod(); i++){
+            float error = EntropyComputeUtil.computeLodError(geomap, 1 << i) * stepScale.y;
+            errors[i] = Math.max(errors[i-1], error);
+        }
+
+        lodErrors = errors;
+    }
+
+    public synchronized float[] getLodErrors(){
+        if (lodErrors == null){
+            generateLodErrors();
+        }
+        return lodErrors;
+    }
+
     @Deprecated
     public FloatBuffer getHeightmap() {
         return BufferUtils.createFloatBuffer(geomap.getHeightArray());
@@ -251,18 +273,13 @@ public class TerrainPatch extends Geometry {
             boolean right = utp.getRightLod() > utp.getNewLod();
             boolean bottom = utp.getBottomLod() > utp.getNewLod();
 
-            IndexBuffer idxB;
+            VertexBuffer idxB;
             if (useVariableLod)
-                idxB = geomap.writeIndexArrayLodVariable(pow, (int) Math.pow(2, utp.getRightLod()), (int) Math.pow(2, utp.getTopLod()), (int) Math.pow(2, utp.getLeftLod()), (int) Math.pow(2, utp.getBottomLod()), totalSize);
+                idxB = LODIndexCache.getLodVariable(geomap, pow, (int) Math.pow(2, utp.getRightLod()), (int) Math.pow(2, utp.getTopLod()), (int) Math.pow(2, utp.getLeftLod()), (int) Math.pow(2, utp.getBottomLod()), totalSize);
             else
-                idxB = geomap.writeIndexArrayLodDiff(pow, right, top, left, bottom, totalSize);
+                idxB = LODIndexCache.getLodDiff(geomap, pow, right, top, left, bottom, totalSize);
             
-            Buffer b;
-            if (idxB.getBuffer() instanceof IntBuffer)
-                b = (IntBuffer)idxB.getBuffer();
-            else
-                b = (ShortBuffer)idxB.getBuffer();
-            utp.setNewIndexBuffer(b);
+            utp.setNewIndexBuffer(idxB);
         }
 
     }
@@ -278,11 +295,31 @@ public class TerrainPatch extends Geometry {
                          getMesh().getFloatBuffer(Type.TexCoord).get(idx*2+1) );
     }
     
+    /**
+     * @return the min/max height pyramid of this patch, used for picking
+     */
+    public synchronized HeightPyramid getHeightPyramid() {
+        if (heightPyramid == null) {
+            heightPyramid = new HeightPyramid(geomap);
+        }
+        return heightPyramid;
+    }
+
+    /**
+     * Drops the LOD errors and the height pyramid after the heights changed.
+     * Holding the lock means a LOD thread that is still building them from
+     * the old heights cannot store them after they were dropped.
+     */
+    protected synchronized void clearHeightCaches() {
+        heightPyramid = null;
+        lodErrors = null;
+    }
+
     public float getHeightmapHeight(float x, float z) {
         if (x < 0 || z < 0 || x >= size || z >= size)
             return 0;
         int idx = (int) (z * size + x);
-        return getMesh().getFloatBuffer(Type.Position).get(idx*3+1); // 3 floats per entry (x,y,z), the +1 is to get the Y
+        return geomap.getValue(idx) * stepScale.y; // the Y of the vertex position
     }
     
     /**
@@ -312,17 +349,48 @@ public class TerrainPatch extends Geometry {
                 continue;
             int idx = lh.z * size + lh.x;
             if (overrideHeight) {
-                geomap.getHeightArray()[idx] = lh.h;
+                geomap.setValue(idx, lh.h);
             } else {
-                float h = getMesh().getFloatBuffer(Type.Position).get(idx*3+1);
-                geomap.getHeightArray()[idx] = h+lh.h;
+                float h = geomap.getValue(idx) * stepScale.y;
+                geomap.setValue(idx, h+lh.h);
             }
             
         }
 
+        clearHeightCaches();
         FloatBuffer newVertexBuffer = geomap.writeVertexArray(null, stepScale, false);
-        getMesh().clearBuffer(Type.Position);
-        getMesh().setBuffer(Type.Position, 3, newVertexBuffer);
+        getMesh().getBuffer(Type.Position).updateData(newVertexBuffer);
+    }
+
+    /**
+     * Rewrites the vertex positions from the heights of the geomap, after
+     * they were changed without setHeight(). The normals are not updated.
+     */
+    protected void updateHeights() {
+        clearHeightCaches();
+        getMesh().getBuffer(Type.Position).updateData(geomap.writeVertexArray(null, stepScale, false));
+        updateModelBound();
+    }
+
+    /**
+     * Lets the mesh drop its positions, tangents and binormals on the CPU 
+     * once they were uploaded, they are computed again from the heights and
+     * the normals when they are needed. Used for quantized heights, where
+     * they take most of the memory of the patch.
+     * 
+     * @param release true to drop them, false to keep them in memory again
+     */
+    protected void setDerivedBuffersReleased(boolean release) {
+        Mesh mesh = getMesh();
+        Type[] types = {Type.Position, Type.Tangent, Type.Binormal};
+        for (Type type : types) {
+            VertexBuffer vb = mesh.getBuffer(type);
+            if (vb == null || (vb instanceof DerivedVertexBuffer) == release)
+                continue;
+            VertexBuffer replacement = release ? new DerivedVertexBuffer(vb, this) : vb.clone();
+            mesh.clearBuffer(type);
+            mesh.setBuffer(replacement);
+        }
     }
 
     /**
@@ -340,6 +408,45 @@ public class TerrainPatch extends Geometry {
         getMesh().getBuffer(Type.Binormal).updateData(newBinormalBuffer);
     }
 
+    /**
+     * Recalculates only the normal vectors that can be changed by a height
+     * change inside the affected area, which is in the same space as the
+     * world bound of this patch.
+     * A height change also tilts the normals of the surrounding vertices,
+     * so the area is grown by one vertex on each side.
+     */
+    protected void updateNormals(BoundingBox affectedArea) {
+        Vector3f center = affectedArea.getCenter();
+        Vector3f translation = getWorldTranslation();
+        float stepX = getWorldScale().x * stepScale.x;
+        float stepZ = getWorldScale().z * stepScale.z;
+
+        float minX = FastMath.floor((center.x - affectedArea.getXExtent() - translation.x) / stepX) - 1;
+        float minZ = FastMath.floor((center.z - affectedArea.getZExtent() - translation.z) / stepZ) - 1;
+        float maxX = FastMath.ceil((center.x + affectedArea.getXExtent() - translation.x) / stepX) + 1;
+        float maxZ = FastMath.ceil((center.z + affectedArea.getZExtent() - translation.z) / stepZ) + 1;
+        if (maxX < 0 || maxZ < 0 || minX > size - 1 || minZ > size - 1)
+            return;
+
+        updateNormals((int) FastMath.clamp(minX, 0, size - 1), (int) FastMath.clamp(minZ, 0, size - 1),
+                      (int) FastMath.clamp(maxX, 0, size - 1), (int) FastMath.clamp(maxZ, 0, size - 1));
+    }
+
+    /**
+     * Recalculates the normal, tangent and binormal vectors of the vertices
+     * between (minX, minZ) and (maxX, maxZ) inclusive, in the heightmap
+     * coordinates of this patch. The existing buffers are updated in place.
+     */
+    protected void updateNormals(int minX, int minZ, int maxX, int maxZ) {
+        VertexBuffer NB = getMesh().getBuffer(Type.Normal);
+        VertexBuffer TB = getMesh().getBuffer(Type.Tangent);
+        VertexBuffer BB = getMesh().getBuffer(Type.Binormal);
+        geomap.writeNormalTangentArea(minX, minZ, maxX, maxZ, (FloatBuffer)NB.getData(), (FloatBuffer)TB.getData(), (FloatBuffer)BB.getData(), getWorldScale());
+        NB.setUpdateNeeded();
+        TB.setUpdateNeeded();
+        BB.setUpdateNeeded();
+    }
+
     private void setInBuffer(Mesh mesh, int index, Vector3f normal, Vector3f tangent, Vector3f binormal) {
         VertexBuffer NB = mesh.getBuffer(Type.Normal);
         VertexBuffer TB = mesh.getBuffer(Type.Tangent);
@@ -377,16 +484,17 @@ public class TerrainPatch extends Geometry {
                                 TerrainPatch topRight,
                                 TerrainPatch topLeft)
     {
-        Vector3f rootPoint = new Vector3f();
-        Vector3f rightPoint = new Vector3f();
-        Vector3f leftPoint = new Vector3f();
-        Vector3f topPoint = new Vector3f();
+        TempVars vars = TempVars.get();
+        Vector3f rootPoint = vars.vect1;
+        Vector3f rightPoint = vars.vect2;
+        Vector3f leftPoint = vars.vect3;
+        Vector3f topPoint = vars.vect4;
 
-        Vector3f bottomPoint = new Vector3f();
+        Vector3f bottomPoint = vars.vect5;
 
-        Vector3f tangent = new Vector3f();
-        Vector3f binormal = new Vector3f();
-        Vector3f normal = new Vector3f();
+        Vector3f tangent = vars.vect6;
+        Vector3f binormal = vars.vect7;
+        Vector3f normal = vars.vect8;
 
         
         int s = this.getSize()-1;
@@ -546,6 +654,7 @@ public class TerrainPatch extends Geometry {
             }
             
         }
+        vars.release();
     }
 
     protected void averageNormalsTangents(
@@ -559,38 +668,41 @@ public class TerrainPatch extends Geometry {
             Vector3f binormal)
     {
         Vector3f scale = getWorldScale();
-        
-        Vector3f n1 = new Vector3f(0,0,0);
+        TempVars vars = TempVars.get();
+        Vector3f n = vars.vect1;
+
+        normal.set(0, 0, 0);
         if (topPoint != null && leftPoint != null) {
-            n1.set(calculateNormal(topPoint.mult(scale), rootPoint.mult(scale), leftPoint.mult(scale)));
+            normal.addLocal(calculateNormal(topPoint, rootPoint, leftPoint, scale, vars, n));
         }
-        Vector3f n2 = new Vector3f(0,0,0);
         if (leftPoint != null && bottomPoint != null) {
-            n2.set(calculateNormal(leftPoint.mult(scale), rootPoint.mult(scale), bottomPoint.mult(scale)));
+            normal.addLocal(calculateNormal(leftPoint, rootPoint, bottomPoint, scale, vars, n));
         }
-        Vector3f n3 = new Vector3f(0,0,0);
         if (rightPoint != null && bottomPoint != null) {
-            n3.set(calculateNormal(bottomPoint.mult(scale), rootPoint.mult(scale), rightPoint.mult(scale)));
+            normal.addLocal(calculateNormal(bottomPoint, rootPoint, rightPoint, scale, vars, n));
         }
-        Vector3f n4 = new Vector3f(0,0,0);
         if (rightPoint != null && topPoint != null) {
-            n4.set(calculateNormal(rightPoint.mult(scale), rootPoint.mult(scale), topPoint.mult(scale)));
+            normal.addLocal(calculateNormal(rightPoint, rootPoint, topPoint, scale, vars, n));
         }
         
         //if (bottomPoint != null && rightPoint != null && rootTex != null && rightTex != null && bottomTex != null)
         //    LODGeomap.calculateTangent(new Vector3f[]{rootPoint.mult(scale),rightPoint.mult(scale),bottomPoint.mult(scale)}, new Vector2f[]{rootTex,rightTex,bottomTex}, tangent, binormal);
 
-        normal.set(n1.add(n2).add(n3).add(n4).normalize());
+        normal.normalizeLocal();
         
-        tangent.set(normal.cross(new Vector3f(0,0,1)).normalize());
-        binormal.set(new Vector3f(1,0,0).cross(normal).normalize());
+        tangent.set(normal).crossLocal(Vector3f.UNIT_Z).normalizeLocal();
+        binormal.set(Vector3f.UNIT_X).crossLocal(normal).normalizeLocal();
+        vars.release();
     }
 
-    private Vector3f calculateNormal(Vector3f firstPoint, Vector3f rootPoint, Vector3f secondPoint) {
-        Vector3f normal = new Vector3f();
-        normal.set(firstPoint).subtractLocal(rootPoint)
-                  .crossLocal(secondPoint.subtract(rootPoint)).normalizeLocal();
-        return normal;
+    /**
+     * Uses vect2 to vect4 of the given TempVars as scratch space.
+     */
+    private Vector3f calculateNormal(Vector3f firstPoint, Vector3f rootPoint, Vector3f secondPoint, Vector3f scale, TempVars vars, Vector3f store) {
+        Vector3f root = vars.vect4.set(rootPoint).multLocal(scale);
+        Vector3f first = vars.vect2.set(firstPoint).multLocal(scale).subtractLocal(root);
+        Vector3f second = vars.vect3.set(secondPoint).multLocal(scale).subtractLocal(root);
+        return store.set(first).crossLocal(second).normalizeLocal();
     }
     
     protected Vector3f getMeshNormal(int x, int z) {
@@ -615,7 +727,7 @@ public class TerrainPatch extends Geometry {
      * But it it not editable then. Set unlock to make it editable.
      */
     public void lockMesh() {
-        getMesh().setStatic();
+        setUsage(VertexBuffer.Usage.Static);
     }
 
     /**
@@ -624,7 +736,20 @@ public class TerrainPatch extends Geometry {
      * Call lockMesh to improve performance.
      */
     public void unlockMesh() {
-        getMesh().setDynamic();
+        setUsage(VertexBuffer.Usage.Dynamic);
+    }
+
+    /**
+     * Sets the usage of the buffers of this patch. The index and texture 
+     * coordinate buffers are shared with other patches, see 
+     * {@link LODIndexCache} and {@link TexCoordCache}, and keep theirs.
+     */
+    private void setUsage(VertexBuffer.Usage usage) {
+        for (VertexBuffer vb : getMesh().getBufferList()) {
+            if (vb.getBufferType() != Type.Index && vb.getBufferType() != Type.TexCoord) {
+                vb.setUsage(usage);
+            }
+        }
     }
 	
     /**
@@ -907,6 +1032,9 @@ public class TerrainPatch extends Geometry {
         //oc.write(lodCalculator, "lodCalculator", null);
         //oc.write(lodCalculatorFactory, "lodCalculatorFactory", null);
         oc.write(lodEntropy, "lodEntropy", null);
+        synchronized (this) {
+            oc.write(lodErrors, "lodErrors", null);
+        }
         oc.write(geomap, "geomap", null);
         
         setMesh(temp);
@@ -926,10 +1054,13 @@ public class TerrainPatch extends Geometry {
         //lodCalculator.setTerrainPatch(this);
         //lodCalculatorFactory = (LodCalculatorFactory) ic.readSavable("lodCalculatorFactory", null);
         lodEntropy = ic.readFloatArray("lodEntropy", null);
+        lodErrors = ic.readFloatArray("lodErrors", null);
         geomap = (LODGeomap) ic.readSavable("geomap", null);
         
         Mesh regen = geomap.createMesh(stepScale, new Vector2f(1,1), offset, offsetAmount, totalSize, false);
         setMesh(regen);
+        if (geomap.isQuantized())
+            setDerivedBuffersReleased(true);
         //TangentBinormalGenerator.generate(this); // note that this will be removed
         ensurePositiveVolumeBBox();
     }
@@ -944,13 +1075,22 @@ public class TerrainPatch extends Geometry {
         clone.stepScale = stepScale.clone();
         clone.offset = offset.clone();
         clone.offsetAmount = offsetAmount;
+        // keep the precomputed values, so terrains loaded through the asset cache do not compute them again
+        clone.lodEntropy = lodEntropy;
+        synchronized (this) {
+            clone.lodErrors = lodErrors;
+        }
         //clone.lodCalculator = lodCalculator.clone();
         //clone.lodCalculator.setTerrainPatch(clone);
         //clone.setLodCalculator(lodCalculatorFactory.clone());
         clone.geomap = new LODGeomap(size, geomap.getHeightArray());
+        if (geomap.isQuantized())
+            clone.geomap.quantize(geomap.getHeightOffset(), geomap.getHeightOffset() + geomap.getHeightScale() * 65535f);
         clone.setLocalTranslation(getLocalTranslation().clone());
         Mesh m = clone.geomap.createMesh(clone.stepScale, Vector2f.UNIT_XY, clone.offset, clone.offsetAmount, clone.totalSize, false);
         clone.setMesh(m);
+        if (geomap.isQuantized())
+            clone.setDerivedBuffersReleased(true);
         clone.setMaterial(material.clone());
         return clone;
     }
@@ -51,7 +51,7 @@ import com.jme3.scene.debug.WireBox;
 import com.jme3.terrain.ProgressMonitor;
 import com.jme3.terrain.Terrain;
 import com.jme3.terrain.geomipmap.lodcalc.LodCalculator;
-import com.jme3.terrain.geomipmap.picking.BresenhamTerrainPicker;
+import com.jme3.terrain.geomipmap.picking.MinMaxTerrainPicker;
 import com.jme3.terrain.geomipmap.picking.TerrainPickData;
 import com.jme3.terrain.geomipmap.picking.TerrainPicker;
 import com.jme3.util.TangentBinormalGenerator;
@@ -60,6 +60,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -289,7 +292,7 @@ public class TerrainQuad extends Node implements Terrain {
 
     private int collideWithRay(Ray ray, CollisionResults results) {
         if (picker == null)
-            picker = new BresenhamTerrainPicker(this);
+            picker = new MinMaxTerrainPicker(this);
 
         Vector3f intersection = picker.getTerrainIntersection(ray, results);
         if (intersection != null) {
@@ -324,6 +327,7 @@ public class TerrainQuad extends Node implements Terrain {
                         ((TerrainQuad) child).generateEntropy(progressMonitor);
                 } else if (child instanceof TerrainPatch) {
                     ((TerrainPatch) child).generateLodEntropies();
+                    ((TerrainPatch) child).generateLodErrors();
                     if (progressMonitor != null)
                         progressMonitor.incrementProgress(1);
                 }
@@ -336,6 +340,30 @@ public class TerrainQuad extends Node implements Terrain {
                 progressMonitor.progressComplete();
     }
 
+    /**
+     * Generates the entropy values of all patches below this quad on the
+     * given pool, one patch per task. The values are saved with the terrain,
+     * so this only needs to run once before the terrain is exported.
+     * @param progressMonitor optional, called from the pool threads
+     * @param pool null to generate them on the calling thread
+     */
+    public void generateEntropy(ProgressMonitor progressMonitor, ForkJoinPool pool) {
+        if (pool == null) {
+            generateEntropy(progressMonitor);
+            return;
+        }
+
+        if (progressMonitor != null) {
+            int numCalc = (totalSize-1)/(patchSize-1);
+            progressMonitor.setMonitorMax(numCalc*numCalc);
+        }
+
+        pool.invoke(new GenerateEntropyTask(this, progressMonitor));
+
+        if (progressMonitor != null)
+            progressMonitor.progressComplete();
+    }
+
     protected boolean isRootQuad() {
         return (getParent() != null && !(getParent() instanceof TerrainQuad) );
     }
@@ -386,6 +414,24 @@ public class TerrainQuad extends Node implements Terrain {
         return lodChanged;
     }
 
+    /**
+     * Calculates the LOD of all child patches, with each child quad
+     * calculated as its own task in the given pool. Every subtree
+     * collects its patches in its own map, and they are merged into
+     * 'updates' once the subtree is done, so the result is the same
+     * as the one of {@link #calculateLod(List, HashMap, LodCalculator)}.
+     * If the pool is null the LOD is calculated on the calling thread.
+     */
+    protected boolean calculateLod(List<Vector3f> location, HashMap<String,UpdatedTerrainPatch> updates, LodCalculator lodCalculator, ForkJoinPool pool) {
+        if (pool == null)
+            return calculateLod(location, updates, lodCalculator);
+
+        CalculateLodTask task = new CalculateLodTask(this, location, lodCalculator);
+        boolean lodChanged = pool.invoke(task);
+        updates.putAll(task.updates);
+        return lodChanged;
+    }
+
     protected synchronized void findNeighboursLod(HashMap<String,UpdatedTerrainPatch> updated) {
         if (children != null) {
             for (int x = children.size(); --x >= 0;) {
@@ -565,6 +611,141 @@ public class TerrainQuad extends Node implements Terrain {
         }
     }
 
+    /**
+     * Re-indexes the child patches, with each child quad re-indexed as
+     * its own task in the given pool. The 'updated' map is only read
+     * here, each patch writes its new index buffer into its own
+     * UpdatedTerrainPatch. If the pool is null the patches are
+     * re-indexed on the calling thread.
+     */
+    protected void reIndexPages(HashMap<String,UpdatedTerrainPatch> updated, boolean usesVariableLod, ForkJoinPool pool) {
+        if (pool == null)
+            reIndexPages(updated, usesVariableLod);
+        else
+            pool.invoke(new ReIndexTask(this, updated, usesVariableLod));
+    }
+
+    /**
+     * Calculates the LOD of the patches of one quad, forking a task for
+     * each of its child quads.
+     */
+    private static class CalculateLodTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1;
+        private final TerrainQuad quad;
+        private final List<Vector3f> location;
+        private final LodCalculator lodCalculator;
+        private final HashMap<String,UpdatedTerrainPatch> updates = new HashMap<String,UpdatedTerrainPatch>();
+
+        CalculateLodTask(TerrainQuad quad, List<Vector3f> location, LodCalculator lodCalculator) {
+            this.quad = quad;
+            this.location = location;
+            this.lodCalculator = lodCalculator;
+        }
+
+        @Override
+        protected Boolean compute() {
+            boolean lodChanged = false;
+            List<CalculateLodTask> tasks = new ArrayList<CalculateLodTask>(4);
+            if (quad.children != null) {
+                for (int i = quad.children.size(); --i >= 0;) {
+                    Spatial child = quad.children.get(i);
+                    if (child instanceof TerrainQuad) {
+                        CalculateLodTask task = new CalculateLodTask((TerrainQuad) child, location, lodCalculator);
+                        task.fork();
+                        tasks.add(task);
+                    } else if (child instanceof TerrainPatch) {
+                        if (lodCalculator.calculateLod((TerrainPatch) child, location, updates))
+                            lodChanged = true;
+                    }
+                }
+            }
+            for (int i = tasks.size(); --i >= 0;) {
+                CalculateLodTask task = tasks.get(i);
+                if (task.join())
+                    lodChanged = true;
+                updates.putAll(task.updates);
+            }
+            return lodChanged;
+        }
+    }
+
+    /**
+     * Generates the LOD entropies and errors of the patches below a spatial,
+     * forking a task for each of its children.
+     */
+    private static class GenerateEntropyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1;
+        private final Spatial spatial;
+        private final ProgressMonitor progressMonitor;
+
+        GenerateEntropyTask(Spatial spatial, ProgressMonitor progressMonitor) {
+            this.spatial = spatial;
+            this.progressMonitor = progressMonitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (spatial instanceof TerrainPatch) {
+                ((TerrainPatch) spatial).generateLodEntropies();
+                ((TerrainPatch) spatial).generateLodErrors();
+                if (progressMonitor != null) {
+                    synchronized (progressMonitor) {
+                        progressMonitor.incrementProgress(1);
+                    }
+                }
+                return;
+            }
+
+            TerrainQuad quad = (TerrainQuad) spatial;
+            if (quad.children != null) {
+                List<GenerateEntropyTask> tasks = new ArrayList<GenerateEntropyTask>(4);
+                for (int i = quad.children.size(); --i >= 0;) {
+                    Spatial child = quad.children.get(i);
+                    if (child instanceof TerrainQuad || child instanceof TerrainPatch)
+                        tasks.add(new GenerateEntropyTask(child, progressMonitor));
+                }
+                invokeAll(tasks);
+            }
+        }
+    }
+
+    /**
+     * Re-indexes the patches of one quad, forking a task for each of its
+     * child quads.
+     */
+    private static class ReIndexTask extends RecursiveAction {
+        private static final long serialVersionUID = 1;
+        private final TerrainQuad quad;
+        private final HashMap<String,UpdatedTerrainPatch> updated;
+        private final boolean usesVariableLod;
+
+        ReIndexTask(TerrainQuad quad, HashMap<String,UpdatedTerrainPatch> updated, boolean usesVariableLod) {
+            this.quad = quad;
+            this.updated = updated;
+            this.usesVariableLod = usesVariableLod;
+        }
+
+        @Override
+        protected void compute() {
+            List<ReIndexTask> tasks = new ArrayList<ReIndexTask>(4);
+            if (quad.children != null) {
+                for (int i = quad.children.size(); --i >= 0;) {
+                    Spatial child = quad.children.get(i);
+                    if (child instanceof TerrainQuad) {
+                        ReIndexTask task = new ReIndexTask((TerrainQuad) child, updated, usesVariableLod);
+                        task.fork();
+                        tasks.add(task);
+                    } else if (child instanceof TerrainPatch) {
+                        ((TerrainPatch) child).reIndexGeometry(updated, usesVariableLod);
+                    }
+                }
+            }
+            for (int i = tasks.size(); --i >= 0;) {
+                tasks.get(i).join();
+            }
+        }
+    }
+
     /**
      * <code>split</code> divides the heightmap data for four children. The
      * children are either quads or patches. This is dependent on the size of the
@@ -1607,7 +1788,7 @@ public class TerrainQuad extends Node implements Terrain {
                     ((TerrainQuad) child).fixNormals(affectedArea);
             } else if (child instanceof TerrainPatch) {
                 if (affectedArea != null && affectedArea.intersects(((TerrainPatch) child).getWorldBound()) )
-                    ((TerrainPatch) child).updateNormals(); // recalculate the patch's normals
+                    ((TerrainPatch) child).updateNormals(affectedArea); // recalculate the affected normals of the patch
             }
         }
     }
@@ -1909,5 +2090,87 @@ public class TerrainQuad extends Node implements Terrain {
 
         return hm;
     }
+
+    /**
+     * Stores the heights of all patches as 16 bit values between minHeight
+     * and maxHeight, see {@link com.jme3.terrain.GeoMap#quantize(float, float)}.
+     * Heights outside of the range are clamped, also the ones adjusted later.
+     * All patches use the same range so their edges stay seamless, use the
+     * same range for terrains that are placed next to each other.
+     * <p>
+     * The vertex positions and normals are rebuilt from the quantized 
+     * heights, so what is drawn matches getHeight() and picking. Once they 
+     * were uploaded, the positions, tangents and binormals of the patches 
+     * are dropped on the CPU and computed again from the heights and normals
+     * when they are needed, only the quantized heights and the normals stay
+     * in memory.
+     */
+    public void quantizeHeights(float minHeight, float maxHeight) {
+        quantizePatches(minHeight, maxHeight);
+        setNeedToRecalculateNormals();
+        updateNormals();
+    }
+
+    private void quantizePatches(float minHeight, float maxHeight) {
+        if (children != null) {
+            for (int i = children.size(); --i >= 0;) {
+                Spatial child = children.get(i);
+                if (child instanceof TerrainQuad) {
+                    ((TerrainQuad) child).quantizePatches(minHeight, maxHeight);
+                } else if (child instanceof TerrainPatch) {
+                    ((TerrainPatch) child).geomap.quantize(minHeight, maxHeight);
+                    ((TerrainPatch) child).updateHeights();
+                    ((TerrainPatch) child).setDerivedBuffersReleased(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the heights of all patches as 16 bit values within the current
+     * height range of this terrain.
+     */
+    public void quantizeHeights() {
+        float[] range = {Float.MAX_VALUE, -Float.MAX_VALUE};
+        findHeightRange(range);
+        if (range[0] <= range[1])
+            quantizeHeights(range[0], range[1]);
+    }
+
+    /**
+     * Stores the heights of all patches as floats again.
+     */
+    public void dequantizeHeights() {
+        if (children != null) {
+            for (int i = children.size(); --i >= 0;) {
+                Spatial child = children.get(i);
+                if (child instanceof TerrainQuad) {
+                    ((TerrainQuad) child).dequantizeHeights();
+                } else if (child instanceof TerrainPatch) {
+                    ((TerrainPatch) child).geomap.dequantize();
+                    ((TerrainPatch) child).clearHeightCaches();
+                    ((TerrainPatch) child).setDerivedBuffersReleased(false);
+                }
+            }
+        }
+    }
+
+    private void findHeightRange(float[] range) {
+        if (children != null) {
+            for (int i = children.size(); --i >= 0;) {
+                Spatial child = children.get(i);
+                if (child instanceof TerrainQuad) {
+                    ((TerrainQuad) child).findHeightRange(range);
+                } else if (child instanceof TerrainPatch) {
+                    LODGeomap geomap = ((TerrainPatch) child).geomap;
+                    for (int j = geomap.getWidth() * geomap.getHeight(); --j >= 0;) {
+                        float h = geomap.getValue(j);
+                        range[0] = Math.min(range[0], h);
+                        range[1] = Math.max(range[1], h);
+                    }
+                }
+            }
+        }
+    }
 }
 
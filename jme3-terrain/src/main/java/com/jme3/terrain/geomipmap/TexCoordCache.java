@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.Vector2f;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the texture coordinate buffers of terrain patches.
+ * <p>
+ * The texture coordinates of a patch only depend on its size, its place in
+ * the terrain quad and the size of the quad, not on its heights. Every tile 
+ * of a {@link TerrainGrid}, every clone and every terrain of the same size
+ * therefore uses the same coordinates for the patch at the same place, and
+ * they get the same {@link VertexBuffer}. It is kept in memory and on the 
+ * GPU once, and a tile streaming in does not upload it again.
+ * <p>
+ * The cached buffers are shared and must not be modified. They are only 
+ * weakly referenced and released once no patch uses them anymore. The cache
+ * is safe to use from the loading threads.
+ */
+public final class TexCoordCache {
+
+    private static final ConcurrentHashMap<Key, BufferReference> cache = new ConcurrentHashMap<Key, BufferReference>();
+    private static final ReferenceQueue<VertexBuffer> released = new ReferenceQueue<VertexBuffer>();
+
+    private TexCoordCache() {
+    }
+
+    /**
+     * Gets the texture coordinates written by 
+     * {@link LODGeomap#writeTexCoordArray(java.nio.FloatBuffer, com.jme3.math.Vector2f, com.jme3.math.Vector2f, float, int) }.
+     */
+    public static VertexBuffer getTexCoords(LODGeomap geomap, Vector2f offset, Vector2f scale, float offsetAmount, int totalSize) {
+        purge();
+        Key key = new Key(geomap.getWidth(), geomap.getHeight(), offset, scale, offsetAmount, totalSize);
+        BufferReference ref = cache.get(key);
+        VertexBuffer vb = ref != null ? ref.get() : null;
+        if (vb == null) {
+            vb = new VertexBuffer(Type.TexCoord);
+            vb.setupData(Usage.Static, 2, Format.Float, geomap.writeTexCoordArray(null, offset, scale, offsetAmount, totalSize));
+            // if another thread created it meanwhile, both buffers stay valid
+            cache.put(key, new BufferReference(key, vb));
+        }
+        return vb;
+    }
+
+    /**
+     * @return The number of cached texture coordinate buffers, some may 
+     * already be released.
+     */
+    public static int size() {
+        purge();
+        return cache.size();
+    }
+
+    /**
+     * Removes all cached buffers. Buffers in use by patches stay valid, but 
+     * are no longer shared with patches created afterwards.
+     */
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static void purge() {
+        Reference<? extends VertexBuffer> ref;
+        while ((ref = released.poll()) != null) {
+            cache.remove(((BufferReference) ref).key, ref);
+        }
+    }
+
+    private static final class BufferReference extends WeakReference<VertexBuffer> {
+
+        private final Key key;
+
+        BufferReference(Key key, VertexBuffer vb) {
+            super(vb, released);
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+
+        private final int width, height, totalSize;
+        private final float offsetX, offsetY, scaleX, scaleY, offsetAmount;
+
+        Key(int width, int height, Vector2f offset, Vector2f scale, float offsetAmount, int totalSize) {
+            this.width = width;
+            this.height = height;
+            this.totalSize = totalSize;
+            this.offsetX = offset != null ? offset.x : 0;
+            this.offsetY = offset != null ? offset.y : 0;
+            this.scaleX = scale.x;
+            this.scaleY = scale.y;
+            this.offsetAmount = offsetAmount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return width == other.width && height == other.height && totalSize == other.totalSize
+                    && Float.compare(offsetX, other.offsetX) == 0 && Float.compare(offsetY, other.offsetY) == 0
+                    && Float.compare(scaleX, other.scaleX) == 0 && Float.compare(scaleY, other.scaleY) == 0
+                    && Float.compare(offsetAmount, other.offsetAmount) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = width;
+            hash = 31 * hash + height;
+            hash = 31 * hash + totalSize;
+            hash = 31 * hash + Float.floatToIntBits(offsetX);
+            hash = 31 * hash + Float.floatToIntBits(offsetY);
+            hash = 31 * hash + Float.floatToIntBits(scaleX);
+            hash = 31 * hash + Float.floatToIntBits(scaleY);
+            hash = 31 * hash + Float.floatToIntBits(offsetAmount);
+            return hash;
+        }
+    }
+}
@@ -31,10 +31,8 @@
  */
 package com.jme3.terrain.geomipmap;
 
+import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.VertexBuffer.Type;
-import java.nio.Buffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
 
 /**
  * Stores a terrain patch's details so the LOD background thread can update
@@ -49,7 +47,7 @@ public class UpdatedTerrainPatch {
     private int newLod;
     private int previousLod;
     private int rightLod,topLod,leftLod,bottomLod;
-    private Buffer newIndexBuffer;
+    private VertexBuffer newIndexBuffer;
     //private boolean reIndexNeeded = false;
     private boolean fixEdges = false;
 
@@ -95,7 +93,7 @@ public class UpdatedTerrainPatch {
         return newIndexBuffer;
     }*/
 
-    protected void setNewIndexBuffer(Buffer newIndexBuffer) {
+    protected void setNewIndexBuffer(VertexBuffer newIndexBuffer) {
         this.newIndexBuffer = newIndexBuffer;
     }
 
@@ -175,11 +173,9 @@ public class UpdatedTerrainPatch {
         updatedPatch.setLodBottom(bottomLod);
         if (newIndexBuffer != null && isReIndexNeeded()) {
             updatedPatch.setPreviousLod(previousLod);
+            // the index buffers are shared between patches, see LODIndexCache
             updatedPatch.getMesh().clearBuffer(Type.Index);
-            if (newIndexBuffer instanceof IntBuffer)
-                updatedPatch.getMesh().setBuffer(Type.Index, 3, (IntBuffer)newIndexBuffer);
-            else if (newIndexBuffer instanceof ShortBuffer)
-                updatedPatch.getMesh().setBuffer(Type.Index, 3, (ShortBuffer)newIndexBuffer);
+            updatedPatch.getMesh().setBuffer(newIndexBuffer);
         }
     }
     
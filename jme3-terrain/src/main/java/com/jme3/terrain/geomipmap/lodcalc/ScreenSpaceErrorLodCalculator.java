@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap.lodcalc;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.terrain.geomipmap.TerrainPatch;
+import com.jme3.terrain.geomipmap.UpdatedTerrainPatch;
+import com.jme3.terrain.geomipmap.picking.HeightPyramid;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Picks the coarsest LOD of a patch whose geometric error, projected on
+ * the screen, stays below a pixel limit.
+ * <p>
+ * The error of every LOD is the largest height difference to the full
+ * detail patch, see {@link TerrainPatch#getLodErrors() }. It is computed
+ * from the heightmap when first needed and saved with the terrain. The
+ * error is projected at the distance from the closest camera to the
+ * bounds of the patch, so a patch right under the camera gets full detail
+ * no matter where its center is.
+ */
+public class ScreenSpaceErrorLodCalculator implements LodCalculator {
+
+    private Camera cam;
+    private float pixelError = 2;
+    private boolean turnOffLod = false;
+
+    public ScreenSpaceErrorLodCalculator() {}
+
+    public ScreenSpaceErrorLodCalculator(Camera cam, float pixelError) {
+        this.cam = cam;
+        this.pixelError = pixelError;
+    }
+
+    /**
+     * Computes the number of pixels a vertical unit at distance 1 covers,
+     * divided by the allowed pixel error.
+     */
+    private float getCameraConstant(Camera cam, float pixelLimit) {
+        float n = cam.getFrustumNear();
+        float t = FastMath.abs(cam.getFrustumTop());
+        return n * cam.getHeight() / (2f * t * pixelLimit);
+    }
+
+    public boolean calculateLod(TerrainPatch patch, List<Vector3f> locations, HashMap<String, UpdatedTerrainPatch> updates) {
+        if (locations == null || locations.isEmpty())
+            return false;// no camera yet
+
+        int newLod = 0;
+        if (!turnOffLod) {
+            float[] lodErrors = patch.getLodErrors();
+            float cameraConstant = getCameraConstant(cam, pixelError) * patch.getWorldScaleCached().y;
+
+            float distance = Float.MAX_VALUE;
+            for (int i = 0; i < locations.size(); i++) {
+                distance = Math.min(distance, getDistance(patch, locations.get(i)));
+            }
+
+            // the errors grow with the LOD, find the coarsest one that fits
+            for (int i = patch.getMaxLod(); i > 0; i--) {
+                if (lodErrors[i] * cameraConstant <= distance) {
+                    newLod = i;
+                    break;
+                }
+            }
+        }
+
+        int prevLOD = patch.getLod();
+        UpdatedTerrainPatch utp = updates.get(patch.getName());
+        if (utp == null) {
+            utp = new UpdatedTerrainPatch(patch);//save in here, do not update actual variables
+            updates.put(utp.getName(), utp);
+        }
+        utp.setNewLod(newLod);
+        utp.setPreviousLod(prevLOD);
+        return turnOffLod || newLod != prevLOD;
+    }
+
+    /**
+     * @return the distance from the location to the closest point of the
+     * bounds of the patch
+     */
+    protected float getDistance(TerrainPatch patch, Vector3f location) {
+        Vector3f origin = patch.getWorldTranslationCached();
+        Vector3f scale = patch.getWorldScaleCached();
+        Vector3f stepScale = patch.getStepScale();
+        float width = (patch.getSize() - 1) * stepScale.x * scale.x;
+        float depth = (patch.getSize() - 1) * stepScale.z * scale.z;
+
+        HeightPyramid pyramid = patch.getHeightPyramid();
+        int top = pyramid.getLevelCount() - 1;
+        float minY = origin.y + pyramid.getMin(top, 0, 0) * stepScale.y * scale.y;
+        float maxY = origin.y + pyramid.getMax(top, 0, 0) * stepScale.y * scale.y;
+
+        float dx = Math.max(Math.max(origin.x - location.x, location.x - origin.x - width), 0);
+        float dy = Math.max(Math.max(minY - location.y, location.y - maxY), 0);
+        float dz = Math.max(Math.max(origin.z - location.z, location.z - origin.z - depth), 0);
+        return FastMath.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    @Override
+    public LodCalculator clone() {
+        try {
+            return (LodCalculator) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new AssertionError();
+        }
+    }
+
+    public void write(JmeExporter ex) throws IOException {
+        OutputCapsule oc = ex.getCapsule(this);
+        oc.write(pixelError, "pixelError", 2);
+    }
+
+    public void read(JmeImporter im) throws IOException {
+        InputCapsule ic = im.getCapsule(this);
+        pixelError = ic.readFloat("pixelError", 2);
+    }
+
+    @Override
+    public String toString() {
+        return "ScreenSpaceErrorLodCalculator "+pixelError+"px";
+    }
+
+    /**
+     * Entropy like calculator, neighbouring patches can be more than one
+     * LOD apart.
+     */
+    public boolean usesVariableLod() {
+        return true;
+    }
+
+    public float getPixelError() {
+        return pixelError;
+    }
+
+    public void setPixelError(float pixelError) {
+        this.pixelError = pixelError;
+    }
+
+    public Camera getCam() {
+        return cam;
+    }
+
+    public void setCam(Camera cam) {
+        this.cam = cam;
+    }
+
+    public void turnOffLod() {
+        turnOffLod = true;
+    }
+
+    public boolean isLodOff() {
+        return turnOffLod;
+    }
+
+    public void turnOnLod() {
+        turnOffLod = false;
+    }
+
+}
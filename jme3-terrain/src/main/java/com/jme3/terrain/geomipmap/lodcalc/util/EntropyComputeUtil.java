@@ -39,6 +39,7 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.terrain.GeoMap;
 import com.jme3.util.BufferUtils;
 import java.nio.Buffer;
 import java.nio.FloatBuffer;
@@ -73,11 +74,12 @@ public class EntropyComputeUtil {
         // Set the LOD indices on the block
         VertexBuffer originalIndices = terrainBlock.getBuffer(Type.Index);
 
+        // the indices can be shared with other blocks, work on a view of them
         terrainBlock.clearBuffer(Type.Index);
         if (lodIndices instanceof IntBuffer)
-            terrainBlock.setBuffer(Type.Index, 3, (IntBuffer)lodIndices);
+            terrainBlock.setBuffer(Type.Index, 3, ((IntBuffer)lodIndices).duplicate());
         else if (lodIndices instanceof ShortBuffer) {
-            terrainBlock.setBuffer(Type.Index, 3, (ShortBuffer) lodIndices);
+            terrainBlock.setBuffer(Type.Index, 3, ((ShortBuffer) lodIndices).duplicate());
         }
 
         // Recalculate collision mesh
@@ -109,4 +111,57 @@ public class EntropyComputeUtil {
         return entropy;
     }
 
+    /**
+     * Computes the largest vertical distance between the heightmap and its
+     * LOD surface, that only uses every lod-th height in both directions.
+     * Unlike computeLodEntropy() no mesh or collision data is needed. Both
+     * diagonals of every LOD cell are checked, so the result is an upper
+     * bound for how the LOD mesh is triangulated.
+     *
+     * @param heights the heightmap of the terrain block
+     * @param lod the step between the vertices of the LOD, a power of two
+     * @return the error in heightmap units
+     */
+    public static float computeLodError(GeoMap heights, int lod){
+        int width = heights.getWidth();
+        int height = heights.getHeight();
+        float error = 0;
+        for (int z0 = 0; z0 < height - 1; z0 += lod){
+            int z1 = Math.min(z0 + lod, height - 1);
+            float invHeight = 1f / (z1 - z0);
+            for (int x0 = 0; x0 < width - 1; x0 += lod){
+                int x1 = Math.min(x0 + lod, width - 1);
+                float invWidth = 1f / (x1 - x0);
+                float h00 = heights.getValue(x0, z0);
+                float h10 = heights.getValue(x1, z0);
+                float h01 = heights.getValue(x0, z1);
+                float h11 = heights.getValue(x1, z1);
+
+                for (int z = z0; z <= z1; z++){
+                    float v = (z - z0) * invHeight;
+                    for (int x = x0; x <= x1; x++){
+                        float u = (x - x0) * invWidth;
+                        float h = heights.getValue(x, z);
+
+                        // split along 00-11
+                        float a;
+                        if (u >= v)
+                            a = h00 + u * (h10 - h00) + v * (h11 - h10);
+                        else
+                            a = h00 + v * (h01 - h00) + u * (h11 - h01);
+                        // split along 10-01
+                        float b;
+                        if (u + v <= 1)
+                            b = h00 + u * (h10 - h00) + v * (h01 - h00);
+                        else
+                            b = h11 + (1 - u) * (h01 - h11) + (1 - v) * (h10 - h11);
+
+                        error = Math.max(error, Math.max(Math.abs(h - a), Math.abs(h - b)));
+                    }
+                }
+            }
+        }
+        return error;
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap.picking;
+
+import com.jme3.terrain.GeoMap;
+
+/**
+ * Min/max heights of the grid cells of a heightfield, at every power of two
+ * cell size. Level 0 holds the min and max of the four corners of each grid
+ * cell, every next level the min and max of 2x2 cells of the level below,
+ * up to a single cell covering the whole heightfield.
+ * <p>
+ * Ray queries use it to skip the regions whose height range the ray passes
+ * over or under, see {@link MinMaxTerrainPicker}.
+ */
+public class HeightPyramid {
+
+    private final GeoMap heights;
+    private final int cells;
+    private final float[][] min;
+    private final float[][] max;
+
+    /**
+     * @param heights a square heightfield with a power of two plus one
+     * vertices per side
+     */
+    public HeightPyramid(GeoMap heights) {
+        this.heights = heights;
+        this.cells = heights.getWidth() - 1;
+        if (cells < 1 || (cells & (cells - 1)) != 0)
+            throw new IllegalArgumentException("Heightfield size must be a power of two plus one");
+
+        int levels = Integer.numberOfTrailingZeros(cells) + 1;
+        min = new float[levels][];
+        max = new float[levels][];
+
+        int width = heights.getWidth();
+        float[] min0 = new float[cells * cells];
+        float[] max0 = new float[cells * cells];
+        for (int z = 0; z < cells; z++) {
+            for (int x = 0; x < cells; x++) {
+                int i = z * width + x;
+                float h1 = heights.getValue(i);
+                float h2 = heights.getValue(i + 1);
+                float h3 = heights.getValue(i + width);
+                float h4 = heights.getValue(i + width + 1);
+                min0[z * cells + x] = Math.min(Math.min(h1, h2), Math.min(h3, h4));
+                max0[z * cells + x] = Math.max(Math.max(h1, h2), Math.max(h3, h4));
+            }
+        }
+        min[0] = min0;
+        max[0] = max0;
+
+        for (int level = 1; level < levels; level++) {
+            int n = cells >> level;
+            float[] lmin = new float[n * n];
+            float[] lmax = new float[n * n];
+            float[] cmin = min[level - 1];
+            float[] cmax = max[level - 1];
+            int cn = n * 2;
+            for (int z = 0; z < n; z++) {
+                for (int x = 0; x < n; x++) {
+                    int c = z * 2 * cn + x * 2;
+                    lmin[z * n + x] = Math.min(Math.min(cmin[c], cmin[c + 1]), Math.min(cmin[c + cn], cmin[c + cn + 1]));
+                    lmax[z * n + x] = Math.max(Math.max(cmax[c], cmax[c + 1]), Math.max(cmax[c + cn], cmax[c + cn + 1]));
+                }
+            }
+            min[level] = lmin;
+            max[level] = lmax;
+        }
+    }
+
+    /**
+     * @return the heightfield the pyramid was built from
+     */
+    public GeoMap getHeights() {
+        return heights;
+    }
+
+    /**
+     * @return the number of levels, the last one is a single cell
+     */
+    public int getLevelCount() {
+        return min.length;
+    }
+
+    /**
+     * @return the number of grid cells per side of level 0
+     */
+    public int getCellCount() {
+        return cells;
+    }
+
+    /**
+     * @return the smallest height in the cell at x, z of the level
+     */
+    public float getMin(int level, int x, int z) {
+        return min[level][z * (cells >> level) + x];
+    }
+
+    /**
+     * @return the largest height in the cell at x, z of the level
+     */
+    public float getMax(int level, int x, int z) {
+        return max[level][z * (cells >> level) + x];
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap.picking;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import com.jme3.terrain.GeoMap;
+import com.jme3.terrain.geomipmap.TerrainPatch;
+import com.jme3.terrain.geomipmap.TerrainQuad;
+import java.util.List;
+
+/**
+ * Picks the terrain by walking down the quad tree and the
+ * {@link HeightPyramid} of each patch, front to back. Quads, patches and
+ * pyramid cells are only entered if the ray passes through their bounds
+ * closer than the closest hit found so far, so long rays skip every region
+ * they pass over, and only the triangles of the grid cells that the ray
+ * actually passes through in height are tested.
+ * <p>
+ * Like the BresenhamTerrainPicker the rotation of the terrain is ignored.
+ * A picker is not thread-safe, but several pickers can pick the same terrain
+ * from different threads as long as it is not modified.
+ */
+public class MinMaxTerrainPicker implements TerrainPicker {
+
+    private static final float BOUNDS_EPSILON = 0.001f;
+    private static final float DET_EPSILON = 1e-12f;
+
+    private final TerrainQuad root;
+
+    private final Vector3f origin = new Vector3f();
+    private final Vector3f direction = new Vector3f();
+    // the ray in the grid space of the patch being tested
+    private final Vector3f localOrigin = new Vector3f();
+    private final Vector3f localDirection = new Vector3f();
+    private Vector3f patchScale;
+    private GeoMap heights;
+    private int width;
+
+    // the child cells of each pyramid level, sorted by entry distance
+    private final float[][] childEntries = new float[32][4];
+    private final int[][] childOrder = new int[32][4];
+    private float tNear, tFar;
+
+    // the closest hit so far
+    private float hitDistance;
+    private TerrainPatch hitPatch;
+    private final Vector3f hitNormal = new Vector3f();
+
+    public MinMaxTerrainPicker(TerrainQuad root) {
+        this.root = root;
+    }
+
+    public Vector3f getTerrainIntersection(Ray worldPick, CollisionResults results) {
+        CollisionResult cr = pick(worldPick);
+        if (cr == null)
+            return null;
+        results.addCollision(cr);
+        return cr.getContactPoint();
+    }
+
+    /**
+     * Picks the terrain with many rays, for example all the shells of an
+     * artillery barrage, without the overhead of a CollisionResults per ray.
+     *
+     * @param rays the pick rays, in world space
+     * @param store receives the closest collision of each ray, or null if
+     * the ray does not hit the terrain
+     * @return the number of rays that hit the terrain
+     */
+    public int getTerrainIntersections(Ray[] rays, CollisionResult[] store) {
+        int hits = 0;
+        for (int i = 0; i < rays.length; i++) {
+            store[i] = pick(rays[i]);
+            if (store[i] != null)
+                hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * @return the closest collision of the ray with the terrain, or null
+     */
+    public CollisionResult pick(Ray worldPick) {
+        origin.set(worldPick.getOrigin());
+        direction.set(worldPick.getDirection());
+        hitDistance = worldPick.getLimit();
+        hitPatch = null;
+
+        if (entry(root.getWorldBound()) < hitDistance)
+            pickNode(root);
+
+        if (hitPatch == null)
+            return null;
+        Vector3f intersection = direction.mult(hitDistance).addLocal(origin);
+        CollisionResult cr = new CollisionResult(intersection, origin.distance(intersection));
+        cr.setGeometry(hitPatch);
+        cr.setContactNormal(hitNormal.clone());
+        hitPatch = null;
+        heights = null;
+        return cr;
+    }
+
+    private void pickNode(Spatial spatial) {
+        if (spatial instanceof TerrainPatch) {
+            pickPatch((TerrainPatch) spatial);
+            return;
+        }
+
+        List<Spatial> children = ((TerrainQuad) spatial).getChildren();
+        Spatial[] nodes = new Spatial[children.size()];
+        float[] entries = new float[children.size()];
+        int count = 0;
+        for (int i = 0; i < children.size(); i++) {
+            Spatial child = children.get(i);
+            if (!(child instanceof TerrainQuad) && !(child instanceof TerrainPatch))
+                continue;
+            float t = entry(child.getWorldBound());
+            if (t < hitDistance) {
+                int k = count++;
+                for (; k > 0 && entries[k - 1] > t; k--) {
+                    entries[k] = entries[k - 1];
+                    nodes[k] = nodes[k - 1];
+                }
+                entries[k] = t;
+                nodes[k] = child;
+            }
+        }
+        for (int i = 0; i < count && entries[i] < hitDistance; i++) {
+            pickNode(nodes[i]);
+        }
+    }
+
+    /**
+     * @return the distance where the ray enters the bounds, infinity if it
+     * misses them
+     */
+    private float entry(BoundingVolume bound) {
+        if (!(bound instanceof BoundingBox))
+            return 0; // can't skip it
+        BoundingBox box = (BoundingBox) bound;
+        Vector3f c = box.getCenter();
+        float ex = box.getXExtent() + BOUNDS_EPSILON;
+        float ey = box.getYExtent() + BOUNDS_EPSILON;
+        float ez = box.getZExtent() + BOUNDS_EPSILON;
+        tNear = 0;
+        tFar = hitDistance;
+        if (clip(origin.x, direction.x, c.x - ex, c.x + ex)
+                && clip(origin.y, direction.y, c.y - ey, c.y + ey)
+                && clip(origin.z, direction.z, c.z - ez, c.z + ez))
+            return tNear;
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Narrows tNear and tFar to the part of the ray between min and max on
+     * one axis.
+     * @return false if nothing is left
+     */
+    private boolean clip(float o, float d, float min, float max) {
+        if (d == 0)
+            return o >= min && o <= max;
+        float t1 = (min - o) / d;
+        float t2 = (max - o) / d;
+        if (t1 > t2) {
+            float t = t1;
+            t1 = t2;
+            t2 = t;
+        }
+        if (t1 > tNear)
+            tNear = t1;
+        if (t2 < tFar)
+            tFar = t2;
+        return tNear <= tFar;
+    }
+
+    private void pickPatch(TerrainPatch patch) {
+        HeightPyramid pyramid = patch.getHeightPyramid();
+        patchScale = patch.getWorldScale();
+        heights = pyramid.getHeights();
+        width = heights.getWidth();
+        // the transform is only a translation and a scale, so distances 
+        // along the ray are the same in grid space
+        localOrigin.set(origin).subtractLocal(patch.getWorldTranslation()).divideLocal(patchScale);
+        localDirection.set(direction).divideLocal(patchScale);
+
+        int top = pyramid.getLevelCount() - 1;
+        if (cellEntry(pyramid, top, 0, 0) < hitDistance)
+            pickCell(patch, pyramid, top, 0, 0);
+    }
+
+    private float cellEntry(HeightPyramid pyramid, int level, int x, int z) {
+        int size = 1 << level;
+        float x0 = x << level;
+        float z0 = z << level;
+        tNear = 0;
+        tFar = hitDistance;
+        if (clip(localOrigin.x, localDirection.x, x0 - BOUNDS_EPSILON, x0 + size + BOUNDS_EPSILON)
+                && clip(localOrigin.z, localDirection.z, z0 - BOUNDS_EPSILON, z0 + size + BOUNDS_EPSILON)
+                && clip(localOrigin.y, localDirection.y, pyramid.getMin(level, x, z) - BOUNDS_EPSILON, pyramid.getMax(level, x, z) + BOUNDS_EPSILON))
+            return tNear;
+        return Float.POSITIVE_INFINITY;
+    }
+
+    private void pickCell(TerrainPatch patch, HeightPyramid pyramid, int level, int x, int z) {
+        if (level == 0) {
+            intersectCell(patch, x, z);
+            return;
+        }
+
+        float[] entries = childEntries[level];
+        int[] order = childOrder[level];
+        int count = 0;
+        for (int c = 0; c < 4; c++) {
+            float t = cellEntry(pyramid, level - 1, x * 2 + (c & 1), z * 2 + (c >> 1));
+            if (t < hitDistance) {
+                int k = count++;
+                for (; k > 0 && entries[k - 1] > t; k--) {
+                    entries[k] = entries[k - 1];
+                    order[k] = order[k - 1];
+                }
+                entries[k] = t;
+                order[k] = c;
+            }
+        }
+        for (int k = 0; k < count && entries[k] < hitDistance; k++) {
+            pickCell(patch, pyramid, level - 1, x * 2 + (order[k] & 1), z * 2 + (order[k] >> 1));
+        }
+    }
+
+    /**
+     * Tests the two triangles of a grid cell, they are split the same way
+     * as in LODGeomap.getGridTrianglesAtPoint().
+     */
+    private void intersectCell(TerrainPatch patch, int x, int z) {
+        int i = z * width + x;
+        float h1 = heights.getValue(i);             // top left
+        float h2 = heights.getValue(i + 1);         // top right
+        float h3 = heights.getValue(i + width);     // bottom left
+        float h4 = heights.getValue(i + width + 1); // bottom right
+
+        if ((x == 0 && z == 0) || (x == width - 2 && z == width - 2)) {
+            intersectTriangle(patch, x, h1, z, x, h3, z + 1, x + 1, h4, z + 1);
+            intersectTriangle(patch, x, h1, z, x + 1, h4, z + 1, x + 1, h2, z);
+        } else {
+            intersectTriangle(patch, x, h1, z, x, h3, z + 1, x + 1, h2, z);
+            intersectTriangle(patch, x + 1, h2, z, x, h3, z + 1, x + 1, h4, z + 1);
+        }
+    }
+
+    private void intersectTriangle(TerrainPatch patch, float ax, float ay, float az,
+            float bx, float by, float bz, float cx, float cy, float cz) {
+        float e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        float e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        Vector3f d = localDirection;
+
+        float px = d.y * e2z - d.z * e2y;
+        float py = d.z * e2x - d.x * e2z;
+        float pz = d.x * e2y - d.y * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (det > -DET_EPSILON && det < DET_EPSILON)
+            return; // parallel to the triangle
+        float inv = 1f / det;
+
+        float sx = localOrigin.x - ax, sy = localOrigin.y - ay, sz = localOrigin.z - az;
+        float u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1)
+            return;
+
+        float qx = sy * e1z - sz * e1y;
+        float qy = sz * e1x - sx * e1z;
+        float qz = sx * e1y - sy * e1x;
+        float v = (d.x * qx + d.y * qy + d.z * qz) * inv;
+        if (v < 0 || u + v > 1)
+            return;
+
+        float t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        if (t < 0 || t >= hitDistance)
+            return;
+
+        hitDistance = t;
+        hitPatch = patch;
+        // the normal goes to world space with the inverse scale
+        hitNormal.set(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x);
+        hitNormal.divideLocal(patchScale).normalizeLocal();
+    }
+}
@@ -35,12 +35,67 @@ import com.jme3.terrain.noise.modulator.Modulator;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class FilteredBasis extends AbstractFilter implements Basis {
 
 	private Basis basis;
 	private List<Modulator> modulators = new ArrayList<Modulator>();
 	private float scale;
+	private int tileSize;
+	private ForkJoinPool pool;
+
+	/**
+	 * Filters one tile of the result, reading the tile and its margin from
+	 * the unfiltered buffer.
+	 */
+	private class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1;
+
+		private final float sx, sy, base;
+		private final float[] source, result;
+		private final int workSize, size, margin, tileMargin, tx, ty;
+
+		TileTask(float sx, float sy, float base, float[] source, int workSize, float[] result, int size, int margin, int tileMargin, int tx, int ty) {
+			this.sx = sx;
+			this.sy = sy;
+			this.base = base;
+			this.source = source;
+			this.workSize = workSize;
+			this.result = result;
+			this.size = size;
+			this.margin = margin;
+			this.tileMargin = tileMargin;
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		@Override
+		protected void compute() {
+			int tileSize = FilteredBasis.this.tileSize;
+			// the last tiles are moved back to stay inside the buffer, so
+			// every tile is filtered with the same size
+			int x0 = Math.min(this.tx, this.size - tileSize);
+			int y0 = Math.min(this.ty, this.size - tileSize);
+			int tileWork = tileSize + 2 * this.tileMargin;
+
+			float[] data = new float[tileWork * tileWork];
+			int offset = this.margin - this.tileMargin;
+			for (int y = 0; y < tileWork; y++) {
+				System.arraycopy(this.source, (offset + y0 + y) * this.workSize + offset + x0, data, y * tileWork, tileWork);
+			}
+			float[] filtered = FilteredBasis.this.doFilter(this.sx + x0, this.sy + y0, this.base, FloatBuffer.wrap(data), tileWork).array();
+
+			int width = Math.min(tileSize, this.size - this.tx);
+			int height = Math.min(tileSize, this.size - this.ty);
+			for (int y = this.ty; y < this.ty + height; y++) {
+				System.arraycopy(filtered, (this.tileMargin + y - y0) * tileWork + this.tileMargin + this.tx - x0, this.result, y * this.size + this.tx, width);
+			}
+		}
+	}
 
 	public FilteredBasis() {}
 
@@ -94,9 +149,76 @@ public class FilteredBasis extends AbstractFilter implements Basis {
 		int margin = this.getMargin(size, 0);
 		int workSize = size + 2 * margin;
 		FloatBuffer retval = this.basis.getBuffer(sx - margin, sy - margin, base, workSize);
+		if (this.tileSize > 0 && this.tileSize < size) {
+			int tileMargin = this.getMargin(this.tileSize, 0);
+			if (tileMargin <= margin) {
+				return this.filterTiles(sx, sy, base, retval, workSize, size, margin, tileMargin);
+			}
+		}
 		return this.clip(this.doFilter(sx, sy, base, retval, workSize), workSize, size, margin);
 	}
 
+	private FloatBuffer filterTiles(float sx, float sy, float base, FloatBuffer buf, int workSize, int size, int margin, int tileMargin) {
+		FloatBuffer result = FloatBuffer.allocate(size * size);
+
+		final List<TileTask> tiles = new ArrayList<TileTask>();
+		for (int ty = 0; ty < size; ty += this.tileSize) {
+			for (int tx = 0; tx < size; tx += this.tileSize) {
+				tiles.add(new TileTask(sx, sy, base, buf.array(), workSize, result.array(), size, margin, tileMargin, tx, ty));
+			}
+		}
+		if (this.pool != null) {
+			this.pool.invoke(new RecursiveAction() {
+
+				private static final long serialVersionUID = 1;
+
+				@Override
+				protected void compute() {
+					ForkJoinTask.invokeAll(tiles);
+				}
+			});
+		} else {
+			for (TileTask tile : tiles) {
+				tile.invoke();
+			}
+		}
+
+		result.position(result.limit());
+		return result;
+	}
+
+	/**
+	 * Filters the buffer in square tiles of the given size instead of as a
+	 * whole. Each tile is filtered with the margin its filters ask for, read
+	 * from the same unfiltered buffer, so the tiles match up at their borders.
+	 * The basis is still evaluated for the whole buffer at once.
+	 * 
+	 * @param tileSize
+	 *            the size of a tile, 0 to filter the whole buffer at once
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+
+	public int getTileSize() {
+		return this.tileSize;
+	}
+
+	/**
+	 * Sets the pool the tiles are filtered on, see {@link #setTileSize(int)}.
+	 * The filters have to be safe to call from several threads then.
+	 * 
+	 * @param pool
+	 *            the pool to use, null to filter the tiles on the calling thread
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
 	public FloatBuffer clip(FloatBuffer buf, int origSize, int newSize, int offset) {
 		FloatBuffer result = FloatBuffer.allocate(newSize * newSize);
 
@@ -35,6 +35,9 @@ import com.jme3.terrain.noise.modulator.NoiseModulator;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Utility base class for Noise implementations
@@ -44,10 +47,55 @@ import java.util.List;
  */
 public abstract class Noise implements Basis {
 
+	/**
+	 * Number of rows a single task of getBuffer fills when a pool is set
+	 */
+	protected static final int ROWS_PER_TASK = 8;
+
 	protected List<Modulator> modulators = new ArrayList<Modulator>();
 
 	protected float scale = 1.0f;
 
+	protected ForkJoinPool pool;
+
+	/**
+	 * Fills a range of rows of a buffer, splitting it in half until it is
+	 * small enough.
+	 */
+	protected class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1;
+
+		private final float[] data;
+		private final float sx, sy, base;
+		private final int size, minY, maxY;
+
+		protected RowTask(float[] data, float sx, float sy, float base, int size, int minY, int maxY) {
+			this.data = data;
+			this.sx = sx;
+			this.sy = sy;
+			this.base = base;
+			this.size = size;
+			this.minY = minY;
+			this.maxY = maxY;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.maxY - this.minY > Noise.ROWS_PER_TASK) {
+				int half = (this.minY + this.maxY) / 2;
+				ForkJoinTask.invokeAll(new RowTask(this.data, this.sx, this.sy, this.base, this.size, this.minY, half),
+						new RowTask(this.data, this.sx, this.sy, this.base, this.size, half, this.maxY));
+				return;
+			}
+			for (int y = this.minY; y < this.maxY; y++) {
+				for (int x = 0; x < this.size; x++) {
+					this.data[y * this.size + x] = Noise.this.modulate((this.sx + x) / this.size, (this.sy + y) / this.size, this.base);
+				}
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName();
@@ -56,14 +104,35 @@ public abstract class Noise implements Basis {
 	@Override
 	public FloatBuffer getBuffer(float sx, float sy, float base, int size) {
 		FloatBuffer retval = FloatBuffer.allocate(size * size);
-		for (int y = 0; y < size; y++) {
-			for (int x = 0; x < size; x++) {
-				retval.put(this.modulate((sx + x) / size, (sy + y) / size, base));
+		if (this.pool != null) {
+			this.pool.invoke(new RowTask(retval.array(), sx, sy, base, size, 0, size));
+			retval.position(retval.limit());
+		} else {
+			for (int y = 0; y < size; y++) {
+				for (int x = 0; x < size; x++) {
+					retval.put(this.modulate((sx + x) / size, (sy + y) / size, base));
+				}
 			}
 		}
 		return retval;
 	}
 
+	/**
+	 * Sets the pool getBuffer splits its rows over. The modulators and the
+	 * value function have to be safe to call from several threads then.
+	 * 
+	 * @param pool
+	 *            the pool to use, null to fill the buffer on the calling thread
+	 */
+	public Noise setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
 	public float modulate(float x, float y, float z) {
 		float retval = this.value(x, y, z);
 		for (Modulator m : this.modulators) {
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector3f;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.image.ImageRaster;
+import com.jme3.util.BufferUtils;
+import org.junit.Test;
+
+/**
+ * Paints on a float alpha map covering a translated and scaled terrain.
+ */
+public class AlphaMapPainterTest {
+
+    private static final int SIZE = 64;
+
+    private static Image createAlphaMap() {
+        Image image = new Image(Format.RGBA32F, SIZE, SIZE, BufferUtils.createByteBuffer(SIZE * SIZE * 16));
+        ImageRaster raster = ImageRaster.create(image);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                float r = (x % 5) / 10f;
+                float g = (y % 3) / 10f;
+                raster.setPixel(x, y, new ColorRGBA(r, g, 0.2f, 1f - r - g - 0.2f));
+            }
+        }
+        image.clearUpdateNeeded();
+        return image;
+    }
+
+    private static float[] readPixels(Image image) {
+        float[] pixels = new float[SIZE * SIZE * 4];
+        ImageRaster.create(image).getPixels(0, 0, SIZE, SIZE, pixels, 0);
+        return pixels;
+    }
+
+    private static TerrainQuad createTerrain() {
+        TerrainQuad terrain = new TerrainQuad("terrain", 17, SIZE + 1, new float[(SIZE + 1) * (SIZE + 1)]);
+        terrain.setLocalTranslation(100, 5, -50);
+        terrain.setLocalScale(2, 1, 3);
+        return terrain;
+    }
+
+    /**
+     * @return The world location of a point of the height map grid.
+     */
+    private static Vector3f toWorld(TerrainQuad terrain, float gridX, float gridZ) {
+        Vector3f translation = terrain.getWorldTranslation();
+        Vector3f scale = terrain.getWorldScale();
+        return new Vector3f(translation.x + (gridX - SIZE / 2) * scale.x, 0,
+                            translation.z + (gridZ - SIZE / 2) * scale.z);
+    }
+
+    private static void assertWeightsSumToOne(float[] pixels) {
+        for (int i = 0; i < pixels.length; i += 4) {
+            float sum = pixels[i] + pixels[i + 1] + pixels[i + 2] + pixels[i + 3];
+            assert Math.abs(sum - 1f) < 1e-5f : "sum " + sum + " at pixel " + i / 4;
+        }
+    }
+
+    @Test
+    public void testWorldToPixel() {
+        Image image = createAlphaMap();
+        float[] before = readPixels(image);
+        TerrainQuad terrain = createTerrain();
+        AlphaMapPainter painter = new AlphaMapPainter(image);
+
+        // grid (20.5, 39.5) is the center of pixel (20, 24), the alpha map
+        // is flipped along z; 4 world units along x are 2 grid cells
+        painter.paint(terrain, toWorld(terrain, 20.5f, 39.5f), 4f, 0.5f, 1);
+        float[] after = readPixels(image);
+
+        int center = (24 * SIZE + 20) * 4;
+        assert Math.abs(after[center + 1] - (before[center + 1] + (1f - before[center + 1]) * 0.5f)) < 1e-6f;
+        assert Math.abs(after[center] - before[center] * 0.5f) < 1e-6f;
+        // half way to the edge of the brush
+        int right = (24 * SIZE + 21) * 4;
+        assert Math.abs(after[right] - before[right] * 0.75f) < 1e-6f;
+        int below = (25 * SIZE + 20) * 4;
+        assert Math.abs(after[below] - before[below] * 0.75f) < 1e-6f;
+        // on the edge of the brush
+        int edge = (24 * SIZE + 22) * 4;
+        assert after[edge] == before[edge];
+
+        // the brush covers pixels 18 to 22 on both axes
+        assert image.hasDirtyRegion();
+        assert image.getDirtyX() == 18 && image.getDirtyY() == 22;
+        assert image.getDirtyWidth() == 5 && image.getDirtyHeight() == 5;
+        assertWeightsSumToOne(after);
+    }
+
+    @Test
+    public void testOnlyBrushRectangleChanges() {
+        Image image = createAlphaMap();
+        TerrainQuad terrain = createTerrain();
+        AlphaMapPainter painter = new AlphaMapPainter(image);
+
+        // in the middle, and over the corner of the alpha map
+        float[][] strokes = {{30.3f, 12.8f, 3.5f, 0.8f, 0}, {1f, 62f, 5f, 1f, 3}};
+        for (float[] stroke : strokes) {
+            float[] before = readPixels(image);
+            image.clearUpdateNeeded();
+            painter.paint(terrain, toWorld(terrain, stroke[0], stroke[1]), stroke[2] * 2f, stroke[3], (int) stroke[4]);
+            float[] after = readPixels(image);
+            assertWeightsSumToOne(after);
+
+            assert image.hasDirtyRegion();
+            int minX = image.getDirtyX();
+            int minY = image.getDirtyY();
+            int maxX = minX + image.getDirtyWidth();
+            int maxY = minY + image.getDirtyHeight();
+            float pixelX = stroke[0];
+            float pixelY = SIZE - stroke[1];
+            assert minX == Math.max(0, (int) Math.floor(pixelX - stroke[2]));
+            assert minY == Math.max(0, (int) Math.floor(pixelY - stroke[2]));
+            assert maxX == Math.min(SIZE, (int) Math.ceil(pixelX + stroke[2]));
+            assert maxY == Math.min(SIZE, (int) Math.ceil(pixelY + stroke[2]));
+
+            int changed = 0;
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    boolean inside = x >= minX && x < maxX && y >= minY && y < maxY;
+                    for (int c = 0; c < 4; c++) {
+                        int i = (y * SIZE + x) * 4 + c;
+                        if (after[i] != before[i]) {
+                            assert inside : "pixel " + x + ", " + y + " changed";
+                            changed++;
+                        }
+                    }
+                }
+            }
+            assert changed > 0;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Streams the tiles of a terrain grid from a stub loader, with the loads
+ * run by the test.
+ */
+public class TerrainGridTileStreamerTest {
+
+    private static final int QUAD_SIZE = 17;
+
+    /**
+     * Creates flat tiles and records the cells they were created for.
+     */
+    private static class StubTileLoader implements TerrainGridTileLoader {
+
+        final List<Vector3f> loaded = new ArrayList<Vector3f>();
+
+        public TerrainQuad getTerrainQuadAt(Vector3f location) {
+            loaded.add(location.clone());
+            TerrainQuad quad = new TerrainQuad("tile" + location, QUAD_SIZE, QUAD_SIZE, new float[QUAD_SIZE * QUAD_SIZE]);
+            quad.setMaterial(new Material());
+            return quad;
+        }
+
+        public void setPatchSize(int patchSize) {
+        }
+
+        public void setQuadSize(int quadSize) {
+        }
+
+        public void write(JmeExporter ex) {
+        }
+
+        public void read(JmeImporter im) {
+        }
+    }
+
+    /**
+     * Queues the loads until the test runs them, in the order they were 
+     * submitted.
+     */
+    private static class ManualExecutor extends AbstractExecutorService {
+
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+
+        public void shutdown() {
+        }
+
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        public boolean isShutdown() {
+            return false;
+        }
+
+        public boolean isTerminated() {
+            return false;
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private final StubTileLoader loader = new StubTileLoader();
+    private final TerrainGrid grid = new TerrainGrid("grid", QUAD_SIZE, 2 * QUAD_SIZE - 1, loader);
+    private final ManualExecutor executor = new ManualExecutor();
+
+    private TerrainGridTileStreamer createStreamer(int threadCount) {
+        TerrainGridTileStreamer streamer = new TerrainGridTileStreamer(grid) {
+            @Override
+            protected ExecutorService createExecutorService() {
+                return executor;
+            }
+        };
+        streamer.setThreadCount(threadCount);
+        return streamer;
+    }
+
+    private static float distanceXZ(Vector3f cell, Vector3f tile) {
+        float dx = cell.x - tile.x;
+        float dz = cell.z - tile.z;
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    private boolean isCenter(Vector3f cell, Vector3f camCell) {
+        float dx = cell.x - camCell.x;
+        float dz = cell.z - camCell.z;
+        return (dx == 0 || dx == 1) && (dz == 0 || dz == 1);
+    }
+
+    @Test
+    public void testPrefetchOrder() {
+        TerrainGridTileStreamer streamer = createStreamer(64);
+        Vector3f location = new Vector3f(8, 0, 8);
+        Vector3f camCell = grid.getCamCell(location);
+        Vector3f camTile = grid.getTileCell(location);
+        streamer.update(location, 0.5f);
+        executor.runAll();
+
+        // the visible cells first, then the rest of the block, each by distance
+        assert loader.loaded.size() == 16 : loader.loaded;
+        for (int i = 0; i < 16; i++) {
+            Vector3f cell = loader.loaded.get(i);
+            assert isCenter(cell, camCell) == i < 4 : i + " " + cell;
+            if (i != 0 && i != 4) {
+                assert distanceXZ(cell, camTile) >= distanceXZ(loader.loaded.get(i - 1), camTile) : i + " " + cell;
+            }
+        }
+        streamer.update(location, 0.5f);
+        assert streamer.getLoadedTileCount() == 16;
+        assert streamer.getPendingCount() == 0;
+        assert !streamer.getWantedCells(location, camCell).containsKey(new Vector3f(4, 0, 0));
+
+        // heading along +x at about one tile per second, two seconds ahead
+        TerrainGridTileStreamer moving = createStreamer(1);
+        moving.update(location, 0.5f);
+        location = location.add(8, 0, 0);
+        moving.update(location, 0.5f);
+        camCell = grid.getCamCell(location);
+        Map<Vector3f, Float> wanted = moving.getWantedCells(location, camCell);
+        assert camCell.equals(new Vector3f(1, 0, 0)) : camCell;
+        assert wanted.get(new Vector3f(2, 0, 0)) < wanted.get(new Vector3f(1, 0, 0));
+        assert wanted.get(new Vector3f(2, 0, 1)) < wanted.get(new Vector3f(1, 0, 1));
+        // the visible cells where the camera will be, after the whole block
+        assert wanted.get(new Vector3f(4, 0, 0)) >= 2000 : wanted;
+        assert wanted.get(new Vector3f(3, 0, 0)) < 2000 : wanted;
+        for (Vector3f cell : wanted.keySet()) {
+            assert cell.x >= camCell.x - 1 : cell;
+        }
+    }
+
+    @Test
+    public void testCancelOutOfRange() {
+        TerrainGridTileStreamer streamer = createStreamer(1);
+        Vector3f location = new Vector3f(8, 0, 8);
+        streamer.update(location, 0.1f);
+        // one tile is loading, the others wait
+        assert streamer.getPendingCount() == 16;
+
+        // the camera jumps away: the waiting requests are dropped, the tile
+        // that is loading is discarded when it finishes
+        Vector3f far = new Vector3f(20 * QUAD_SIZE, 0, 8);
+        streamer.update(far, 0.1f);
+        assert streamer.getCancelledCount() == 15 : streamer.getCancelledCount();
+        executor.runAll();
+        assert loader.loaded.size() == 1;
+        Vector3f first = loader.loaded.get(0);
+        assert isCenter(first, grid.getCamCell(location)) : first;
+        streamer.update(far, 0.1f);
+        assert streamer.getCancelledCount() == 16 : streamer.getCancelledCount();
+        assert !streamer.isLoaded(first);
+        assert streamer.getLoadedCount() == 0;
+        assert streamer.getLoadedTileCount() == 0;
+        assert streamer.getResidentMemory() == 0;
+
+        // the tiles around the new location still load
+        for (int i = 0; i < 16; i++) {
+            executor.runAll();
+            streamer.update(far, 0.1f);
+        }
+        assert streamer.getLoadedTileCount() == 16;
+        assert streamer.getCancelledCount() == 16;
+    }
+
+    @Test
+    public void testEvictionWithinBudget() {
+        TerrainGridTileStreamer streamer = createStreamer(64);
+        Vector3f location = new Vector3f(8, 0, 8);
+        streamer.update(location, 0.1f);
+        executor.runAll();
+        streamer.update(location, 0.1f);
+        assert streamer.getLoadedTileCount() == 16;
+        long tileMemory = streamer.getResidentMemory() / 16;
+        assert tileMemory > 0 && streamer.getResidentMemory() == 16 * tileMemory;
+        streamer.setMemoryBudget(20 * tileMemory);
+
+        // an attached tile is never evicted
+        Map<Vector3f, TerrainQuad> oldTiles = streamer.getTiles();
+        Vector3f attachedCell = oldTiles.keySet().iterator().next();
+        new Node("parent").attachChild(oldTiles.get(attachedCell));
+
+        Vector3f far = new Vector3f(20 * QUAD_SIZE, 0, 8);
+        streamer.update(far, 0.1f);
+        executor.runAll();
+        streamer.update(far, 0.1f);
+
+        assert streamer.getResidentMemory() <= streamer.getMemoryBudget() : streamer.getResidentMemory();
+        assert streamer.getLoadedTileCount() == 20 : streamer.getLoadedTileCount();
+        assert streamer.getEvictedCount() == 12 : streamer.getEvictedCount();
+        assert streamer.isLoaded(attachedCell);
+        Map<Vector3f, Float> wanted = streamer.getWantedCells(far, grid.getCamCell(far));
+        for (Vector3f cell : wanted.keySet()) {
+            assert streamer.isLoaded(cell) : cell;
+        }
+        // the oldest tiles went first, the ones used last are kept
+        List<Vector3f> cells = new ArrayList<Vector3f>(oldTiles.keySet());
+        for (int i = 0; i < cells.size(); i++) {
+            Vector3f cell = cells.get(i);
+            if (!cell.equals(attachedCell)) {
+                assert streamer.isLoaded(cell) == i >= 13 : i + " " + cell;
+            }
+        }
+    }
+
+    @Test
+    public void testStallMetrics() {
+        TerrainGridTileStreamer streamer = createStreamer(64);
+        Vector3f location = new Vector3f(8, 0, 8);
+        streamer.update(location, 0.1f);
+        assert streamer.isStalled();
+        assert streamer.getStallCount() == 1;
+        streamer.update(location, 0.25f);
+        assert streamer.getStallCount() == 1;
+        assert Math.abs(streamer.getStallTime() - 0.35f) < 1e-6f;
+
+        executor.runAll();
+        streamer.update(location, 0.25f);
+        assert !streamer.isStalled();
+        assert streamer.getStallCount() == 1;
+        assert Math.abs(streamer.getStallTime() - 0.35f) < 1e-6f;
+
+        // moving within the loaded block does not stall
+        location = location.add(QUAD_SIZE, 0, 0);
+        streamer.update(location, 0.5f);
+        assert !streamer.isStalled();
+
+        Vector3f far = new Vector3f(20 * QUAD_SIZE, 0, 8);
+        streamer.update(far, 0.5f);
+        assert streamer.isStalled();
+        assert streamer.getStallCount() == 2;
+        executor.runAll();
+        streamer.update(far, 0.5f);
+        assert !streamer.isStalled();
+        assert streamer.getStallCount() == 2;
+        assert Math.abs(streamer.getStallTime() - 0.85f) < 1e-6f;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.terrain.geomipmap.lodcalc.DistanceLodCalculator;
+import com.jme3.terrain.geomipmap.lodcalc.LodCalculator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Verifies that the LOD calculated over a fork-join pool is the same as on
+ * a single thread, and that the pool is only replaced between updates.
+ */
+public class TerrainLodControlTest {
+
+    private static TerrainQuad createTerrain() {
+        int size = 129;
+        float[] heights = new float[size * size];
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                heights[z * size + x] = FastMath.sin(x * 0.1f) * FastMath.cos(z * 0.07f) * 20f;
+            }
+        }
+        return new TerrainQuad("terrain", 17, size, heights);
+    }
+
+    /**
+     * Runs the same steps as {@link TerrainLodControl.UpdateLOD} and 
+     * applies the result like the control does on the render thread.
+     */
+    private static void updateLod(TerrainQuad quad, Vector3f location, LodCalculator calculator, ForkJoinPool pool) {
+        List<Vector3f> locations = Collections.singletonList(location);
+        HashMap<String, UpdatedTerrainPatch> updated = new HashMap<String, UpdatedTerrainPatch>();
+        quad.cacheTerrainTransforms();
+        if (!quad.calculateLod(locations, updated, calculator, pool)) {
+            return;
+        }
+        quad.findNeighboursLod(updated);
+        quad.fixEdges(updated);
+        quad.reIndexPages(updated, calculator.usesVariableLod(), pool);
+        for (UpdatedTerrainPatch utp : updated.values()) {
+            utp.updateAll();
+        }
+    }
+
+    private static List<TerrainPatch> getPatches(TerrainQuad quad) {
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quad.getAllTerrainPatches(patches);
+        return patches;
+    }
+
+    @Test
+    public void testParallelLodIsDeterministic() {
+        TerrainQuad serial = createTerrain();
+        TerrainQuad parallel = createTerrain();
+        LodCalculator calculator = new DistanceLodCalculator(17, 2.7f);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Set<Integer> lods = new HashSet<Integer>();
+        try {
+            Vector3f[] path = {
+                new Vector3f(0, 10, 0), new Vector3f(60, 10, -40),
+                new Vector3f(-64, 30, 64), new Vector3f(10, 5, 20)
+            };
+            for (Vector3f location : path) {
+                updateLod(serial, location, calculator, null);
+                updateLod(parallel, location, calculator, pool);
+
+                List<TerrainPatch> expected = getPatches(serial);
+                List<TerrainPatch> actual = getPatches(parallel);
+                assert expected.size() == actual.size();
+                for (int i = 0; i < expected.size(); i++) {
+                    TerrainPatch e = expected.get(i), a = actual.get(i);
+                    assert e.getName().equals(a.getName());
+                    assert e.getLod() == a.getLod() : e.getName() + " at " + location;
+                    lods.add(e.getLod());
+                    assert e.getLodLeft() == a.getLodLeft() && e.getLodTop() == a.getLodTop()
+                            && e.getLodRight() == a.getLodRight() && e.getLodBottom() == a.getLodBottom();
+                    assert e.getMesh().getBuffer(Type.Index).getData()
+                            .equals(a.getMesh().getBuffer(Type.Index).getData()) : e.getName();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assert lods.size() > 2 : lods;
+    }
+
+    @Test
+    public void testThreadCountChangeKeepsRunningPool() throws Exception {
+        TerrainQuad quad = createTerrain();
+        Camera camera = new Camera(640, 480);
+        camera.setLocation(new Vector3f(0, 10, 0));
+        TerrainLodControl control = new TerrainLodControl(quad, camera);
+        quad.addControl(control);
+        control.setThreadCount(4);
+
+        // the first update only records the camera location
+        control.update(0);
+        control.update(0);
+        ForkJoinPool pool = control.forkJoinPool;
+        assert pool != null && pool.getParallelism() == 4;
+
+        // a calculation may still use the pool, it is not shut down yet
+        control.setThreadCount(2);
+        assert !pool.isShutdown();
+        control.indexer.get();
+
+        // the next calculation replaces it
+        camera.setLocation(new Vector3f(50, 10, 50));
+        control.update(0);
+        control.indexer.get();
+        assert pool.isShutdown();
+        assert control.forkJoinPool.getParallelism() == 2;
+        control.detachAndCleanUpControl();
+    }
+}
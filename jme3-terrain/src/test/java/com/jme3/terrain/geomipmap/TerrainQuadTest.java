@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Verifies that the mesh of a quantized terrain matches its heights.
+ */
+public class TerrainQuadTest {
+
+    @Test
+    public void testQuantizedMeshMatchesHeights() {
+        int size = 65;
+        float[] heights = new float[size * size];
+        Random random = new Random(5);
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat() * 300f - 100f;
+        }
+        TerrainQuad quad = new TerrainQuad("terrain", 17, size, heights.clone());
+        quad.quantizeHeights(-100f, 200f);
+
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quad.getAllTerrainPatches(patches);
+        boolean changed = false;
+        for (TerrainPatch patch : patches) {
+            assert patch.geomap.isQuantized();
+            FloatBuffer positions = patch.getMesh().getFloatBuffer(Type.Position);
+            for (int i = 0; i < patch.geomap.getWidth() * patch.geomap.getHeight(); i++) {
+                assert positions.get(i * 3 + 1) == patch.geomap.getValue(i) : patch.getName() + " " + i;
+            }
+        }
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                // the quad is centered on its origin
+                float height = quad.getHeightmapHeight(new Vector2f(x - size / 2, z - size / 2));
+                float original = heights[z * size + x];
+                assert Math.abs(height - original) <= 300f / 65535f : x + "," + z;
+                if (height != original)
+                    changed = true;
+            }
+        }
+        assert changed;
+    }
+
+    @Test
+    public void testQuantizedFootprint() {
+        int size = 129;
+        float[] heights = new float[size * size];
+        Random random = new Random(7);
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat() * 50f;
+        }
+        TerrainQuad full = new TerrainQuad("full", 33, size, heights.clone());
+        TerrainQuad quantized = new TerrainQuad("quantized", 33, size, heights.clone());
+        quantized.quantizeHeights(0f, 50f);
+
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quantized.getAllTerrainPatches(patches);
+        Type[] derived = {Type.Position, Type.Tangent, Type.Binormal};
+        List<float[]> expected = new ArrayList<float[]>();
+        for (TerrainPatch patch : patches) {
+            for (Type type : derived) {
+                FloatBuffer data = patch.getMesh().getFloatBuffer(type);
+                float[] copy = new float[data.limit()];
+                for (int i = 0; i < copy.length; i++) {
+                    copy[i] = data.get(i);
+                }
+                expected.add(copy);
+            }
+        }
+
+        long fullBytes = getFootprint(full);
+        long quantizedBytes = getFootprint(quantized);
+        assert quantizedBytes * 3 < fullBytes : quantizedBytes + " of " + fullBytes;
+
+        // the dropped buffers are computed again when they are read
+        int n = 0;
+        for (TerrainPatch patch : patches) {
+            for (Type type : derived) {
+                VertexBuffer vb = patch.getMesh().getBuffer(type);
+                assert !((DerivedVertexBuffer) vb).isResident();
+                assert vb.getNumElements() == 33 * 33;
+                FloatBuffer data = (FloatBuffer) vb.getData();
+                float[] copy = expected.get(n++);
+                assert data.limit() == copy.length;
+                for (int i = 0; i < copy.length; i++) {
+                    assert data.get(i) == copy[i] : patch.getName() + " " + type + " " + i;
+                }
+            }
+        }
+        assert getFootprint(quantized) == quantizedBytes;
+
+        quantized.dequantizeHeights();
+        for (TerrainPatch patch : patches) {
+            assert !(patch.getMesh().getBuffer(Type.Position) instanceof DerivedVertexBuffer);
+        }
+    }
+
+    /**
+     * Uploads the mesh buffers as the renderer would and counts the bytes of
+     * heights and vertex data still held by the patches. The texture 
+     * coordinates and indices are shared between patches and not counted.
+     */
+    private static long getFootprint(TerrainQuad quad) {
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quad.getAllTerrainPatches(patches);
+        long bytes = 0;
+        for (TerrainPatch patch : patches) {
+            int vertices = patch.geomap.getWidth() * patch.geomap.getHeight();
+            bytes += vertices * (patch.geomap.isQuantized() ? 2 : 4);
+            for (VertexBuffer vb : patch.getMesh().getBufferList()) {
+                vb.clearUpdateNeeded();
+                if (vb.getBufferType() == Type.TexCoord || vb.getBufferType() == Type.Index)
+                    continue;
+                if (vb instanceof DerivedVertexBuffer && !((DerivedVertexBuffer) vb).isResident())
+                    continue;
+                bytes += vb.getData().capacity() * 4;
+            }
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testIncrementalNormalsMatchFullUpdate() {
+        int size = 65;
+        float[] heights = new float[size * size];
+        Random random = new Random(11);
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat() * 20f;
+        }
+        TerrainQuad incremental = new TerrainQuad("incremental", 17, size, heights.clone());
+        TerrainQuad full = new TerrainQuad("full", 17, size, heights.clone());
+
+        // the patches meet at -16, 0 and 16, the terrain ends at -32 and 32
+        List<Vector2f> points = new ArrayList<Vector2f>();
+        points.add(new Vector2f(0, 0));     // corner of four patches
+        points.add(new Vector2f(16, 5));    // on an edge between two patches
+        points.add(new Vector2f(-3, -16));
+        points.add(new Vector2f(15, -9));   // one vertex next to an edge
+        points.add(new Vector2f(-17, 24));
+        points.add(new Vector2f(7, 9));     // inside a patch
+        points.add(new Vector2f(-32, 10));  // on the edge of the terrain
+        points.add(new Vector2f(32, 32));
+        List<Float> heightChanges = new ArrayList<Float>();
+        for (int i = 0; i < points.size(); i++) {
+            heightChanges.add(5f + i);
+        }
+
+        incremental.adjustHeight(points, heightChanges);
+        incremental.updateNormals();
+
+        full.adjustHeight(points, heightChanges);
+        List<TerrainPatch> fullPatches = new ArrayList<TerrainPatch>();
+        full.getAllTerrainPatches(fullPatches);
+        for (TerrainPatch patch : fullPatches) {
+            patch.updateNormals();
+        }
+        full.fixNormalEdges(new BoundingBox(new Vector3f(), Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE));
+        full.setNormalRecalcNeeded(null);
+
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        incremental.getAllTerrainPatches(patches);
+        assert patches.size() == fullPatches.size();
+        Type[] types = {Type.Normal, Type.Tangent, Type.Binormal};
+        for (int p = 0; p < patches.size(); p++) {
+            assert patches.get(p).getWorldTranslation().equals(fullPatches.get(p).getWorldTranslation());
+            for (Type type : types) {
+                FloatBuffer actual = patches.get(p).getMesh().getFloatBuffer(type);
+                FloatBuffer expected = fullPatches.get(p).getMesh().getFloatBuffer(type);
+                for (int i = 0; i < expected.limit(); i++) {
+                    assert Math.abs(actual.get(i) - expected.get(i)) <= 1e-6f
+                            : patches.get(p).getName() + " " + type + " " + (i / 3) + ": " + actual.get(i) + " != " + expected.get(i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPatchNormalAreaMatchesFullUpdate() {
+        int size = 33;
+        float[] heights = new float[size * size];
+        Random random = new Random(13);
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat() * 20f;
+        }
+        TerrainQuad areaQuad = new TerrainQuad("area", 17, size, heights.clone());
+        TerrainQuad fullQuad = new TerrainQuad("full", 17, size, heights.clone());
+        areaQuad.setLocalScale(2f, 1f, 3f);
+        fullQuad.setLocalScale(2f, 1f, 3f);
+        areaQuad.updateGeometricState();
+        fullQuad.updateGeometricState();
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        areaQuad.getAllTerrainPatches(patches);
+        TerrainPatch area = patches.get(0);
+        patches.clear();
+        fullQuad.getAllTerrainPatches(patches);
+        TerrainPatch full = patches.get(0);
+        // without the normals of the neighbours written into the edges
+        area.updateNormals();
+        full.updateNormals();
+
+        // corners, edges, next to the edges and inside
+        int[][] vertices = {{0, 0}, {16, 16}, {0, 7}, {16, 3}, {5, 0}, {9, 16}, {1, 8}, {15, 15}, {8, 1}, {8, 8}};
+        Type[] types = {Type.Normal, Type.Tangent, Type.Binormal};
+        for (int[] vertex : vertices) {
+            List<TerrainQuad.LocationHeight> change = new ArrayList<TerrainQuad.LocationHeight>();
+            change.add(areaQuad.new LocationHeight(vertex[0], vertex[1], 6f));
+            area.setHeight(change, false);
+            full.setHeight(change, false);
+
+            // the area of the change only, the patch grows it by the vertices around it
+            Vector3f scale = area.getWorldScale().mult(area.getStepScale());
+            Vector3f point = area.getWorldTranslation().add(vertex[0] * scale.x, 0, vertex[1] * scale.z);
+            area.updateNormals(new BoundingBox(point, 0, Float.MAX_VALUE, 0));
+            full.updateNormals();
+
+            for (Type type : types) {
+                FloatBuffer actual = area.getMesh().getFloatBuffer(type);
+                FloatBuffer expected = full.getMesh().getFloatBuffer(type);
+                for (int i = 0; i < expected.limit(); i++) {
+                    assert Math.abs(actual.get(i) - expected.get(i)) <= 1e-6f
+                            : vertex[0] + "," + vertex[1] + " " + type + " " + (i / 3) + ": " + actual.get(i) + " != " + expected.get(i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHeightChangeDropsLodErrors() {
+        int size = 33;
+        TerrainQuad quad = new TerrainQuad("terrain", 17, size, new float[size * size]);
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quad.getAllTerrainPatches(patches);
+        for (TerrainPatch patch : patches) {
+            float[] errors = patch.getLodErrors();
+            assert errors[errors.length - 1] == 0f;
+            assert patch.getHeightPyramid().getMax(patch.getHeightPyramid().getLevelCount() - 1, 0, 0) == 0f;
+        }
+
+        // an odd position lies between the vertices of every coarser LOD
+        quad.setHeight(new Vector2f(-3, -5), 10f);
+        boolean raised = false;
+        for (TerrainPatch patch : patches) {
+            float[] errors = patch.getLodErrors();
+            int top = patch.getHeightPyramid().getLevelCount() - 1;
+            if (errors[errors.length - 1] == 10f) {
+                assert patch.getHeightPyramid().getMax(top, 0, 0) == 10f;
+                raised = true;
+            }
+        }
+        assert raised;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.Vector2f;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Verifies that terrain patches share their texture coordinates.
+ */
+public class TexCoordCacheTest {
+
+    private static List<TerrainPatch> createPatches(String name) {
+        TerrainQuad quad = new TerrainQuad(name, 17, 65, new float[65 * 65]);
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quad.getAllTerrainPatches(patches);
+        return patches;
+    }
+
+    @Test
+    public void testEqualKeysShareBuffer() {
+        TexCoordCache.clear();
+        LODGeomap geomap = new LODGeomap(17, new float[17 * 17]);
+        LODGeomap other = new LODGeomap(17, new float[17 * 17]);
+        Vector2f scale = new Vector2f(1, 1);
+        VertexBuffer vb = TexCoordCache.getTexCoords(geomap, new Vector2f(16, 32), scale, 32, 65);
+        assert vb.getBufferType() == Type.TexCoord;
+        assert TexCoordCache.getTexCoords(other, new Vector2f(16, 32), new Vector2f(1, 1), 32, 65) == vb;
+        assert TexCoordCache.getTexCoords(geomap, new Vector2f(32, 16), scale, 32, 65) != vb;
+        assert TexCoordCache.getTexCoords(geomap, new Vector2f(16, 32), new Vector2f(2, 1), 32, 65) != vb;
+        assert TexCoordCache.getTexCoords(geomap, new Vector2f(16, 32), scale, 32, 129) != vb;
+        assert TexCoordCache.getTexCoords(new LODGeomap(33, new float[33 * 33]), new Vector2f(16, 32), scale, 32, 65) != vb;
+        assert TexCoordCache.size() == 5 : TexCoordCache.size();
+    }
+
+    @Test
+    public void testPatchesShareBuffers() {
+        TexCoordCache.clear();
+        List<TerrainPatch> patches = createPatches("a");
+        List<TerrainPatch> others = createPatches("b");
+        assert patches.size() == 16;
+        assert TexCoordCache.size() == 16 : TexCoordCache.size();
+        for (int i = 0; i < patches.size(); i++) {
+            VertexBuffer texCoords = patches.get(i).getMesh().getBuffer(Type.TexCoord);
+            assert others.get(i).getMesh().getBuffer(Type.TexCoord) == texCoords;
+            for (int j = 0; j < i; j++) {
+                assert patches.get(j).getMesh().getBuffer(Type.TexCoord) != texCoords;
+            }
+        }
+
+        // unlocking a patch leaves the shared buffers of the others alone
+        TerrainPatch patch = patches.get(0);
+        patch.unlockMesh();
+        assert patch.getMesh().getBuffer(Type.Position).getUsage() == Usage.Dynamic;
+        assert patch.getMesh().getBuffer(Type.TexCoord).getUsage() == Usage.Static;
+        assert patch.getMesh().getBuffer(Type.Index).getUsage() == Usage.Static;
+        patch.lockMesh();
+        assert patch.getMesh().getBuffer(Type.Position).getUsage() == Usage.Static;
+    }
+
+    @Test
+    public void testReleasedWithPatches() throws InterruptedException {
+        TexCoordCache.clear();
+        List<TerrainPatch> patches = createPatches("a");
+        List<TerrainPatch> others = createPatches("b");
+        VertexBuffer first = patches.get(0).getMesh().getBuffer(Type.TexCoord);
+        assert TexCoordCache.size() == 16;
+
+        // still used by the other terrain
+        patches.clear();
+        waitForSize(0);
+        assert TexCoordCache.size() == 16;
+        assert createPatches("c").get(0).getMesh().getBuffer(Type.TexCoord) == first;
+
+        first = null;
+        others.clear();
+        waitForSize(0);
+        assert TexCoordCache.size() == 0 : TexCoordCache.size();
+    }
+
+    /**
+     * Collects garbage until the cache holds at most the given number of
+     * buffers, or for a second.
+     */
+    private static void waitForSize(int size) throws InterruptedException {
+        // the spatial stack of TempVars still holds the last patches whose
+        // transforms were updated
+        Node node = new Node("root");
+        for (int i = 0; i < 4; i++) {
+            Node child = new Node("child");
+            node.attachChild(child);
+            node = child;
+        }
+        node.getWorldBound();
+
+        List<byte[]> garbage = new ArrayList<byte[]>();
+        for (int i = 0; i < 100 && TexCoordCache.size() > size; i++) {
+            garbage.add(new byte[1 << 20]);
+            if (garbage.size() > 16) {
+                garbage.clear();
+            }
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap.lodcalc.util;
+
+import com.jme3.terrain.GeoMap;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Verifies the geometric LOD error computed from a heightmap.
+ */
+public class EntropyComputeUtilTest {
+
+    private static final int SIZE = 17;
+
+    @Test
+    public void testPlaneHasNoError() {
+        float[] heights = new float[SIZE * SIZE];
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                heights[z * SIZE + x] = 3f * x - 2f * z + 7f;
+            }
+        }
+        GeoMap map = new GeoMap(heights, SIZE, SIZE, 0);
+        for (int lod = 1; lod < SIZE; lod *= 2) {
+            assert Math.abs(EntropyComputeUtil.computeLodError(map, lod)) < 1e-3f;
+        }
+    }
+
+    @Test
+    public void testSpike() {
+        // a spike between the LOD vertices is missed completely
+        float[] heights = new float[SIZE * SIZE];
+        heights[3 * SIZE + 5] = 10f;
+        GeoMap map = new GeoMap(heights, SIZE, SIZE, 0);
+        assert EntropyComputeUtil.computeLodError(map, 1) == 0f;
+        assert EntropyComputeUtil.computeLodError(map, 2) == 10f;
+        assert EntropyComputeUtil.computeLodError(map, 16) == 10f;
+
+        // a spike on a LOD vertex is spread over the cells around it, the
+        // error is largest at the heights next to the vertex
+        heights = new float[SIZE * SIZE];
+        heights[4 * SIZE + 4] = 10f;
+        map = new GeoMap(heights, SIZE, SIZE, 0);
+        assert EntropyComputeUtil.computeLodError(map, 2) == 5f;
+        assert EntropyComputeUtil.computeLodError(map, 4) == 7.5f;
+        assert EntropyComputeUtil.computeLodError(map, 8) == 10f;
+    }
+
+    @Test
+    public void testErrorBoundsBothTriangulations() {
+        float[] heights = new float[SIZE * SIZE];
+        Random random = new Random(3);
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat() * 100f;
+        }
+        GeoMap map = new GeoMap(heights, SIZE, SIZE, 0);
+        for (int lod = 2; lod < SIZE; lod *= 2) {
+            float error = EntropyComputeUtil.computeLodError(map, lod);
+            float expected = Math.max(triangulationError(heights, lod, false), triangulationError(heights, lod, true));
+            assert Math.abs(error - expected) < 1e-3f;
+        }
+    }
+
+    /**
+     * Interpolates every height from the LOD vertices around it, with the
+     * cells split along one diagonal, and returns the largest difference.
+     */
+    private float triangulationError(float[] heights, int lod, boolean otherDiagonal) {
+        float error = 0;
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                int x0 = Math.min(x / lod * lod, SIZE - 1 - lod);
+                int z0 = Math.min(z / lod * lod, SIZE - 1 - lod);
+                float u = (x - x0) / (float) lod;
+                float v = (z - z0) / (float) lod;
+                float h00 = heights[z0 * SIZE + x0];
+                float h10 = heights[z0 * SIZE + x0 + lod];
+                float h01 = heights[(z0 + lod) * SIZE + x0];
+                float h11 = heights[(z0 + lod) * SIZE + x0 + lod];
+                float h;
+                if (!otherDiagonal) {
+                    h = u >= v ? h00 + u * (h10 - h00) + v * (h11 - h10) : h00 + v * (h01 - h00) + u * (h11 - h01);
+                } else {
+                    h = u + v <= 1 ? h00 + u * (h10 - h00) + v * (h01 - h00) : h11 + (1 - u) * (h01 - h11) + (1 - v) * (h10 - h11);
+                }
+                error = Math.max(error, Math.abs(heights[z * SIZE + x] - h));
+            }
+        }
+        return error;
+    }
+}
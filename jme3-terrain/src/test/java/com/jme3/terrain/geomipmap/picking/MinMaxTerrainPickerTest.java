@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap.picking;
+
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.FastMath;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.terrain.geomipmap.TerrainPatch;
+import com.jme3.terrain.geomipmap.TerrainQuad;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Verifies that {@link MinMaxTerrainPicker} finds the closest intersection
+ * of the terrain triangles, and compares it to {@link BresenhamTerrainPicker}.
+ */
+public class MinMaxTerrainPickerTest {
+
+    static TerrainQuad createTerrain(int size, long seed) {
+        Random random = new Random(seed);
+        float[] heights = new float[size * size];
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                heights[z * size + x] = FastMath.sin(x * 0.05f) * FastMath.cos(z * 0.08f) * 30f
+                        + random.nextFloat() * 4f;
+            }
+        }
+        return new TerrainQuad("terrain", 33, size, heights);
+    }
+
+    /**
+     * Creates a ray from above the terrain, steep or grazing.
+     */
+    static Ray createRay(Random random, float extent) {
+        Vector3f origin = new Vector3f((random.nextFloat() * 2f - 1f) * extent, 
+                40f + random.nextFloat() * 60f, (random.nextFloat() * 2f - 1f) * extent);
+        float slope = random.nextBoolean() ? 0.5f + random.nextFloat() * 4f : 0.02f + random.nextFloat() * 0.2f;
+        float angle = random.nextFloat() * FastMath.TWO_PI;
+        Vector3f direction = new Vector3f(FastMath.cos(angle), -slope, FastMath.sin(angle)).normalizeLocal();
+        return new Ray(origin, direction);
+    }
+
+    /**
+     * @return the closest hit of the full detail patch meshes, or NaN
+     */
+    private static float intersectMeshes(List<Geometry> meshes, Ray ray) {
+        CollisionResults results = new CollisionResults();
+        for (Geometry geom : meshes) {
+            geom.collideWith(ray, results);
+        }
+        return results.size() > 0 ? results.getClosestCollision().getDistance() : Float.NaN;
+    }
+
+    private static float distance(Vector3f hit, CollisionResults results) {
+        return hit != null ? results.getClosestCollision().getDistance() : Float.NaN;
+    }
+
+    private static boolean same(float expected, float actual) {
+        if (Float.isNaN(expected) || Float.isNaN(actual))
+            return Float.isNaN(expected) == Float.isNaN(actual);
+        return Math.abs(expected - actual) <= 1e-3f * Math.max(1f, expected);
+    }
+
+    private static void assertClosestHits(TerrainQuad terrain, long seed) {
+        terrain.updateGeometricState();
+        // the patches are at full detail, a plain geometry with the same 
+        // mesh intersects all their triangles
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        terrain.getAllTerrainPatches(patches);
+        List<Geometry> meshes = new ArrayList<Geometry>();
+        for (TerrainPatch patch : patches) {
+            Geometry geom = new Geometry(patch.getName(), patch.getMesh());
+            geom.setLocalTransform(patch.getWorldTransform());
+            geom.updateGeometricState();
+            meshes.add(geom);
+        }
+
+        BresenhamTerrainPicker bresenham = new BresenhamTerrainPicker(terrain);
+        MinMaxTerrainPicker minMax = new MinMaxTerrainPicker(terrain);
+        float extent = 64f * terrain.getWorldScale().x;
+        Random random = new Random(seed);
+        int hits = 0, bresenhamMisses = 0;
+        for (int i = 0; i < 2000; i++) {
+            Ray ray = createRay(random, extent);
+            ray.getOrigin().addLocal(terrain.getWorldTranslation());
+            float expected = intersectMeshes(meshes, ray);
+
+            CollisionResults results = new CollisionResults();
+            float actual = distance(minMax.getTerrainIntersection(ray, results), results);
+            assert same(expected, actual) : i + " " + ray + " " + expected + " " + actual;
+
+            results = new CollisionResults();
+            float stepped = distance(bresenham.getTerrainIntersection(ray, results), results);
+            if (!same(actual, stepped)) {
+                // the grid walk can step over the closest triangle of a 
+                // grazing ray, it never finds a closer one
+                assert Float.isNaN(stepped) || stepped > actual : i + " " + actual + " " + stepped;
+                bresenhamMisses++;
+            }
+            if (!Float.isNaN(expected))
+                hits++;
+        }
+        assert hits > 500 : hits;
+        assert bresenhamMisses < 20 : bresenhamMisses;
+    }
+
+    @Test
+    public void testClosestHits() {
+        assertClosestHits(createTerrain(129, 1), 11);
+    }
+
+    @Test
+    public void testClosestHitsTranslatedAndScaled() {
+        TerrainQuad terrain = createTerrain(129, 2);
+        terrain.setLocalTranslation(37f, -12f, -250f);
+        terrain.setLocalScale(2.5f, 0.75f, 2.5f);
+        assertClosestHits(terrain, 12);
+    }
+
+    @Test
+    public void testBatchedRays() {
+        TerrainQuad terrain = createTerrain(129, 3);
+        terrain.updateGeometricState();
+        MinMaxTerrainPicker picker = new MinMaxTerrainPicker(terrain);
+        Random random = new Random(13);
+        Ray[] rays = new Ray[200];
+        for (int i = 0; i < rays.length; i++) {
+            rays[i] = createRay(random, 64f);
+        }
+        CollisionResult[] store = new CollisionResult[rays.length];
+        int count = picker.getTerrainIntersections(rays, store);
+        int expectedCount = 0;
+        for (int i = 0; i < rays.length; i++) {
+            CollisionResults results = new CollisionResults();
+            float expected = distance(picker.getTerrainIntersection(rays[i], results), results);
+            float actual = store[i] != null ? store[i].getDistance() : Float.NaN;
+            assert same(expected, actual) : i + " " + expected + " " + actual;
+            if (!Float.isNaN(expected))
+                expectedCount++;
+        }
+        assert count == expectedCount : count;
+    }
+}
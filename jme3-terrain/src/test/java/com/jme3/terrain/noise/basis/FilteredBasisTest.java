@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2009-2012 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.noise.basis;
+
+import com.jme3.terrain.noise.filter.HydraulicErodeFilter;
+import com.jme3.terrain.noise.filter.IterativeFilter;
+import com.jme3.terrain.noise.filter.OptimizedErode;
+import com.jme3.terrain.noise.filter.SmoothFilter;
+import com.jme3.terrain.noise.fractal.FractalSum;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Verifies that filling and filtering a buffer on a pool or in tiles gives
+ * the same result as doing it on the calling thread in one piece.
+ */
+public class FilteredBasisTest {
+
+    private static final int SIZE = 129;
+
+    @Test
+    public void testPooledNoiseMatchesSequential() {
+        FractalSum base = createBase();
+        float[] expected = base.getBuffer(256, 128, 0, SIZE).array();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ImprovedNoise noise = new ImprovedNoise();
+            float[] plain = noise.getBuffer(256, 128, 0, SIZE).array();
+            noise.setPool(pool);
+            assert Arrays.equals(plain, noise.getBuffer(256, 128, 0, SIZE).array());
+
+            base.setPool(pool);
+            assert Arrays.equals(expected, base.getBuffer(256, 128, 0, SIZE).array());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTiledErosionMatchesWholeBuffer() {
+        OptimizedErode erode = new OptimizedErode();
+        erode.setRadius(5);
+        erode.setTalus(0.011f);
+
+        SmoothFilter smooth = new SmoothFilter();
+        smooth.setRadius(1);
+        smooth.setEffect(0.7f);
+
+        IterativeFilter iterate = new IterativeFilter();
+        iterate.addPostFilter(smooth);
+        iterate.setFilter(erode);
+        iterate.setIterations(2);
+
+        FilteredBasis ground = new FilteredBasis(createBase());
+        ground.addPreFilter(iterate);
+        checkTiles(ground);
+    }
+
+    @Test
+    public void testTiledHydraulicErosionMatchesWholeBuffer() {
+        HydraulicErodeFilter hydraulic = new HydraulicErodeFilter();
+        hydraulic.setKr(0.01f);
+        hydraulic.setKs(0.01f);
+        hydraulic.setKe(0.5f);
+        hydraulic.setKc(0.01f);
+        hydraulic.setT(0.001f);
+
+        SmoothFilter smooth = new SmoothFilter();
+        smooth.setRadius(1);
+        smooth.setEffect(0.7f);
+
+        IterativeFilter iterate = new IterativeFilter();
+        iterate.addPostFilter(smooth);
+        iterate.setFilter(hydraulic);
+        iterate.setIterations(3);
+
+        FilteredBasis ground = new FilteredBasis(createBase());
+        ground.addPreFilter(iterate);
+        checkTiles(ground);
+    }
+
+    /**
+     * Filters the buffer in tiles on the calling thread and on a pool, and
+     * checks both match the buffer filtered in one piece.
+     */
+    private void checkTiles(FilteredBasis ground) {
+        float[] expected = ground.getBuffer(256, 128, 0, SIZE).array();
+
+        ground.setTileSize(32);
+        float[] tiled = ground.getBuffer(256, 128, 0, SIZE).array();
+        assert Arrays.equals(expected, tiled);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ground.setPool(pool);
+            for (int i = 0; i < 3; i++) {
+                assert Arrays.equals(tiled, ground.getBuffer(256, 128, 0, SIZE).array());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private FractalSum createBase() {
+        FractalSum base = new FractalSum();
+        base.setRoughness(0.7f);
+        base.setFrequency(1.0f);
+        base.setAmplitude(1.0f);
+        base.setLacunarity(2.12f);
+        base.setOctaves(8);
+        base.setScale(0.02125f);
+        return base;
+    }
+}